@@ -0,0 +1,44 @@
+package com.firstrand.banking.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Endpoint groups that each get their own adaptive concurrency limit. A request belongs to the
+ * first group whose methods and paths match it; requests outside every group are not limited.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "concurrency-limit")
+public class ConcurrencyLimitProperties {
+    
+    private boolean enabled = true;
+    
+    private List<Group> groups = new ArrayList<>();
+    
+    @Data
+    public static class Group {
+        
+        private String name;
+        
+        // Ant-style patterns relative to the context path
+        private List<String> paths = new ArrayList<>();
+        
+        // Empty means every method
+        private List<String> methods = new ArrayList<>();
+        
+        private int initialLimit = 20;
+        
+        private int minLimit = 2;
+        
+        // Hard ceiling for the group whatever the latency looks like, i.e. the bulkhead size
+        private int maxLimit = 100;
+        
+        // How much the recent latency may exceed the long-term baseline before the limit shrinks
+        private double rttTolerance = 1.5;
+    }
+}
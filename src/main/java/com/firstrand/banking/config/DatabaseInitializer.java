@@ -3,6 +3,14 @@ package com.firstrand.banking.config;
 import com.firstrand.banking.model.ERole;
 import com.firstrand.banking.model.Role;
 import com.firstrand.banking.repository.RoleRepository;
+import com.firstrand.banking.service.JournalLedgerService;
+import com.firstrand.banking.service.SyntheticDataService;
+import com.firstrand.banking.service.TransactionArchiveService;
+import com.firstrand.banking.service.TransactionSearchIndex;
+import com.firstrand.banking.service.UserExistenceFilter;
+import com.firstrand.banking.service.VelocityService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.security.crypto.password.PasswordEncoder;
@@ -11,13 +19,63 @@ import org.springframework.stereotype.Component;
 @Component
 public class DatabaseInitializer implements CommandLineRunner {
     
+    private static final Logger logger = LoggerFactory.getLogger(DatabaseInitializer.class);
+    
     @Autowired
     private RoleRepository roleRepository;
     
+    @Autowired
+    private JournalLedgerService journalLedgerService;
+    
+    @Autowired
+    private UserExistenceFilter userExistenceFilter;
+    
+    @Autowired
+    private VelocityService velocityService;
+    
+    @Autowired
+    private TransactionArchiveService transactionArchiveService;
+    
+    @Autowired
+    private TransactionSearchIndex transactionSearchIndex;
+    
+    @Autowired
+    private SyntheticDataService syntheticDataService;
+    
+    @Autowired
+    private SyntheticDataProperties syntheticDataProperties;
+    
     @Override
     public void run(String... args) throws Exception {
         // Initialize roles if they don't exist
         initRoles();
+        
+        // Accounts opened before journal mode was switched on start from their stored balance
+        if (journalLedgerService.isEnabled()) {
+            journalLedgerService.openCheckpoints();
+        }
+        
+        // Signup uniqueness checks go straight to the database until this has loaded
+        userExistenceFilter.rebuild();
+        
+        // Velocity limits count the last day of debits from before the restart
+        velocityService.rebuild();
+        
+        // Archived history is served from the segment files registered in the database
+        transactionArchiveService.open();
+        
+        // Admin search answers 503 until this has loaded
+        transactionSearchIndex.rebuild();
+        
+        // Performance environments start from a generated dataset instead of an empty database,
+        // and keep the one they have when restarted against it
+        if (syntheticDataProperties.isLoadOnStartup()) {
+            if (syntheticDataService.hasHistory()) {
+                logger.info("Transactions already present, not loading the synthetic dataset");
+            } else {
+                syntheticDataService.generate(null, null, null);
+            }
+        }
     }
     
     private void initRoles() {
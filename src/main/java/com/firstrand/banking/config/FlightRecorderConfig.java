@@ -0,0 +1,49 @@
+package com.firstrand.banking.config;
+
+import com.firstrand.banking.service.FlightRecorderEvents;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.repository.core.support.RepositoryFactoryBeanSupport;
+
+/**
+ * Wraps every Spring Data repository in a {@link FlightRecorderEvents.RepositoryCall} event, so
+ * a recording shows which repository method a slow request spent its time in.
+ */
+@Configuration
+public class FlightRecorderConfig {
+
+    // Static, so it is registered before the repository factory beans it customizes are created
+    @Bean
+    public static BeanPostProcessor repositoryCallEvents() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization(Object bean, String beanName) {
+                if (bean instanceof RepositoryFactoryBeanSupport<?, ?, ?> factoryBean) {
+                    factoryBean.addRepositoryFactoryCustomizer(factory -> factory.addRepositoryProxyPostProcessor(
+                            (proxyFactory, repository) -> proxyFactory.addAdvice(
+                                    repositoryCallInterceptor(repository.getRepositoryInterface().getSimpleName()))));
+                }
+                return bean;
+            }
+        };
+    }
+
+    private static MethodInterceptor repositoryCallInterceptor(String repository) {
+        return invocation -> {
+            FlightRecorderEvents.RepositoryCall event = new FlightRecorderEvents.RepositoryCall();
+            event.begin();
+            try {
+                return invocation.proceed();
+            } finally {
+                event.end();
+                if (event.shouldCommit()) {
+                    event.repository = repository;
+                    event.method = invocation.getMethod().getName();
+                    event.commit();
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,49 @@
+package com.firstrand.banking.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Per-endpoint rate limits. Every rule owns one token bucket per distinct key value (user id,
+ * client IP or source account number) among the requests matching its path and methods.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "rate-limit")
+public class RateLimitProperties {
+    
+    private boolean enabled = true;
+    
+    private long evictionIntervalMs = 60_000;
+    
+    private List<Rule> rules = new ArrayList<>();
+    
+    public enum Key {
+        USER,
+        IP,
+        ACCOUNT
+    }
+    
+    @Data
+    public static class Rule {
+        
+        private String name;
+        
+        // Ant-style pattern relative to the context path; an {accountNumber} variable is used
+        // as the ACCOUNT key, otherwise the JSON body's sourceAccountNumber is
+        private String path;
+        
+        // Empty means every method
+        private List<String> methods = new ArrayList<>();
+        
+        private Key key = Key.USER;
+        
+        private long capacity = 10;
+        
+        private double refillPerSecond = 5;
+    }
+}
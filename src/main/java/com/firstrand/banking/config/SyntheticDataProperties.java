@@ -0,0 +1,43 @@
+package com.firstrand.banking.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Synthetic datasets for performance environments. Generation is off unless enabled, since it
+ * writes thousands of users who can all sign in with the same password.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "synthetic-data")
+public class SyntheticDataProperties {
+    
+    private boolean enabled = false;
+    
+    // Generate the default dataset once the application has started
+    private boolean loadOnStartup = false;
+    
+    private long seed = 42;
+    
+    private int users = 10_000;
+    
+    // Each user gets between one and this many accounts
+    private int maxAccountsPerUser = 3;
+    
+    private long transactions = 1_000_000;
+    
+    // Transactions are spread over this many days, ending at the start of yesterday
+    private int historyDays = 365;
+    
+    // Zipf exponent of account activity; 0 is uniform, around 1 a few hot accounts see most postings
+    private double skew = 1.0;
+    
+    // Password of every generated user, hashed once
+    private String password = "password";
+    
+    // 0 means one loader thread per available processor
+    private int threads = 0;
+    
+    private int batchSize = 5_000;
+}
@@ -0,0 +1,46 @@
+package com.firstrand.banking.config;
+
+import com.firstrand.banking.model.AccountType;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Velocity limits on withdrawals and outgoing transfers, per source account and configured per
+ * account type. An account type without an entry, or a window without a limit, is unrestricted.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "velocity")
+public class VelocityLimitProperties {
+    
+    private boolean enabled = true;
+    
+    private long evictionIntervalMs = 300_000;
+    
+    private Map<AccountType, Limits> limits = new EnumMap<>(AccountType.class);
+    
+    @Data
+    public static class Limits {
+        
+        private Window perMinute = new Window();
+        
+        private Window perHour = new Window();
+        
+        private Window perDay = new Window();
+    }
+    
+    @Data
+    public static class Window {
+        
+        // 0 means no limit on the number of debits
+        private int maxCount;
+        
+        // Unset means no limit on the debited amount
+        private BigDecimal maxAmount;
+    }
+}
@@ -1,20 +1,34 @@
 package com.firstrand.banking.controller;
 
 import com.firstrand.banking.model.Account;
+import com.firstrand.banking.model.SummaryGranularity;
 import com.firstrand.banking.model.User;
 import com.firstrand.banking.model.dto.AccountRequest;
+import com.firstrand.banking.model.dto.AccountSummaryResponse;
+import com.firstrand.banking.model.dto.BalanceResponse;
 import com.firstrand.banking.model.dto.MessageResponse;
 import com.firstrand.banking.security.UserDetailsImpl;
+import com.firstrand.banking.service.AccountBalanceView;
 import com.firstrand.banking.service.AccountService;
+import com.firstrand.banking.service.AccountSummaryService;
+import com.firstrand.banking.service.AccountStreamPublisher;
+import com.firstrand.banking.service.AccountVersionIndex;
+import com.firstrand.banking.service.BalanceHistoryService;
 import com.firstrand.banking.service.UserService;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.List;
 
 @CrossOrigin(origins = "*", maxAge = 3600)
@@ -26,16 +40,57 @@ public class AccountController {
     private AccountService accountService;
     
     @Autowired
-    private UserService userService;    @GetMapping
+    private UserService userService;
+    
+    @Autowired
+    private AccountSummaryService accountSummaryService;
+    
+    @Autowired
+    private AccountVersionIndex accountVersionIndex;
+    
+    @Autowired
+    private AccountStreamPublisher accountStreamPublisher;
+    
+    @Autowired
+    private AccountBalanceView accountBalanceView;
+    
+    @Autowired
+    private BalanceHistoryService balanceHistoryService;
+    
+    @GetMapping
     @PreAuthorize("hasRole('USER') or hasRole('ADMIN')")
-    public ResponseEntity<List<Account>> getAllAccounts() {
+    public ResponseEntity<List<Account>> getAllAccounts(WebRequest request) {
         UserDetailsImpl userDetails = getCurrentUser();
         
+        // Take the tag before loading so a change committed meanwhile is never hidden behind it
+        String etag = accountVersionIndex.accountsTag(userDetails.getId());
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+        
         // Get the user from the repository, then find their accounts
         User user = userService.getUserByUsername(userDetails.getUsername());
         List<Account> accounts = accountService.getAccountsByUser(user);
         
-        return ResponseEntity.ok(accounts);
+        return ResponseEntity.ok().eTag(etag).body(accounts);
+    }
+    
+    /**
+     * Server-sent events for the user's accounts: a {@code balance} event per account on connect and
+     * whenever a balance changes, a {@code transaction} event per new transaction, and {@code resync}
+     * when updates were dropped and the client should reload over REST.
+     */
+    @GetMapping("/stream")
+    @PreAuthorize("hasRole('USER') or hasRole('ADMIN')")
+    public ResponseEntity<SseEmitter> streamAccounts() {
+        UserDetailsImpl userDetails = getCurrentUser();
+        
+        SseEmitter emitter = accountStreamPublisher.subscribe(userDetails.getId());
+        if (emitter == null) {
+            return ResponseEntity.status(503).header(HttpHeaders.RETRY_AFTER, "30").build();
+        }
+        
+        return ResponseEntity.ok(emitter);
     }
     
     @GetMapping("/{id}")
@@ -66,6 +121,79 @@ public class AccountController {
         return ResponseEntity.ok(account);
     }
     
+    @GetMapping("/{accountNumber}/balance")
+    @PreAuthorize("hasRole('USER') or hasRole('ADMIN')")
+    public ResponseEntity<?> getAccountBalance(
+            @PathVariable String accountNumber,
+            @RequestParam(defaultValue = "false") boolean consistent,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime asOf,
+            WebRequest request) {
+        UserDetailsImpl userDetails = getCurrentUser();
+        
+        // A past balance is rebuilt from the nearest daily checkpoint and the postings after it
+        if (asOf != null) {
+            Account account = accountService.getAccountByAccountNumber(accountNumber);
+            if (!account.getUser().getId().equals(userDetails.getId()) && !hasAdminRole()) {
+                return ResponseEntity.status(403).build();
+            }
+            if (asOf.isAfter(LocalDateTime.now())) {
+                return ResponseEntity.badRequest().body(new MessageResponse("Error: asOf must not be in the future!"));
+            }
+            if (!balanceHistoryService.isReady()) {
+                return ResponseEntity.status(503).header(HttpHeaders.RETRY_AFTER, "30")
+                        .body(new MessageResponse("Error: Balance checkpoints are still being written!"));
+            }
+            return ResponseEntity.ok(new BalanceResponse(
+                    account.getAccountNumber(), balanceHistoryService.getBalanceAsOf(account.getId(), asOf), asOf));
+        }
+        
+        // Served from the balance read model unless the caller asks for the account row itself
+        if (!consistent && accountBalanceView.isEnabled()) {
+            AccountBalanceView.Snapshot snapshot = accountBalanceView.getByAccountNumber(accountNumber);
+            if (snapshot.getOwnerId() != userDetails.getId() && !hasAdminRole()) {
+                return ResponseEntity.status(403).build();
+            }
+            
+            BalanceResponse balance = new BalanceResponse(accountNumber, snapshot.getBalance(), LocalDateTime.now());
+            String etag = accountBalanceView.etag(snapshot);
+            if (etag == null) {
+                return ResponseEntity.ok(balance);
+            }
+            if (request.checkNotModified(etag)) {
+                return null;
+            }
+            return ResponseEntity.ok().eTag(etag).body(balance);
+        }
+        
+        Account account = accountService.getAccountByAccountNumber(accountNumber);
+        
+        // Check if the account belongs to the authenticated user
+        if (!account.getUser().getId().equals(userDetails.getId()) && !hasAdminRole()) {
+            return ResponseEntity.status(403).build();
+        }
+        
+        return ResponseEntity.ok(new BalanceResponse(
+                account.getAccountNumber(), accountService.getCurrentBalance(account), LocalDateTime.now()));
+    }
+    
+    @GetMapping("/{accountNumber}/summary")
+    @PreAuthorize("hasRole('USER') or hasRole('ADMIN')")
+    public ResponseEntity<List<AccountSummaryResponse>> getAccountSummary(
+            @PathVariable String accountNumber,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(defaultValue = "DAY") SummaryGranularity granularity) {
+        UserDetailsImpl userDetails = getCurrentUser();
+        Account account = accountService.getAccountByAccountNumber(accountNumber);
+        
+        // Check if the account belongs to the authenticated user
+        if (!account.getUser().getId().equals(userDetails.getId()) && !hasAdminRole()) {
+            return ResponseEntity.status(403).build();
+        }
+        
+        return ResponseEntity.ok(accountSummaryService.getSummary(account.getId(), from, to, granularity));
+    }
+    
     @PostMapping
     @PreAuthorize("hasRole('USER') or hasRole('ADMIN')")
     public ResponseEntity<?> createAccount(@Valid @RequestBody AccountRequest accountRequest) {
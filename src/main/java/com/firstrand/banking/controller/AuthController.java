@@ -1,24 +1,31 @@
 package com.firstrand.banking.controller;
 
+import com.firstrand.banking.exception.PasswordHashingUnavailableException;
 import com.firstrand.banking.model.User;
 import com.firstrand.banking.model.dto.JwtResponse;
 import com.firstrand.banking.model.dto.LoginRequest;
 import com.firstrand.banking.model.dto.MessageResponse;
 import com.firstrand.banking.model.dto.SignupRequest;
+import com.firstrand.banking.model.dto.TokenRefreshRequest;
 import com.firstrand.banking.security.JwtUtils;
 import com.firstrand.banking.security.UserDetailsImpl;
+import com.firstrand.banking.service.RefreshTokenService;
 import com.firstrand.banking.service.UserService;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.InternalAuthenticationServiceException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.util.List;
@@ -38,25 +45,62 @@ public class AuthController {
     @Autowired
     private JwtUtils jwtUtils;
     
+    @Autowired
+    private RefreshTokenService refreshTokenService;
+    
     @PostMapping("/signin")
     public ResponseEntity<?> authenticateUser(@Valid @RequestBody LoginRequest loginRequest) {
-        Authentication authentication = authenticationManager.authenticate(
-                new UsernamePasswordAuthenticationToken(loginRequest.getUsername(), loginRequest.getPassword()));
+        Authentication authentication;
+        try {
+            authentication = authenticationManager.authenticate(
+                    new UsernamePasswordAuthenticationToken(loginRequest.getUsername(), loginRequest.getPassword()));
+        } catch (InternalAuthenticationServiceException e) {
+            // An unknown username is still hashed against, inside the user lookup, which wraps what it throws
+            if (e.getCause() instanceof PasswordHashingUnavailableException unavailable) {
+                throw unavailable;
+            }
+            refreshTokenService.recordSignin(false);
+            throw e;
+        } catch (AuthenticationException e) {
+            refreshTokenService.recordSignin(false);
+            throw e;
+        }
+        refreshTokenService.recordSignin(true);
         
         SecurityContextHolder.getContext().setAuthentication(authentication);
         String jwt = jwtUtils.generateJwtToken(authentication);
         
         UserDetailsImpl userDetails = (UserDetailsImpl) authentication.getPrincipal();
-        List<String> roles = userDetails.getAuthorities().stream()
-                .map(item -> item.getAuthority())
-                .collect(Collectors.toList());
+        String refreshToken = refreshTokenService.createRefreshToken(userDetails.getId());
         
-        return ResponseEntity.ok(new JwtResponse(
-                jwt,
-                userDetails.getId(),
-                userDetails.getUsername(),
-                userDetails.getEmail(),
-                roles));
+        return ResponseEntity.ok(toJwtResponse(jwt, userDetails, refreshToken));
+    }
+    
+    // Renews the access token from a refresh token alone; the password hash is never touched here
+    @PostMapping("/refresh")
+    public ResponseEntity<?> refreshToken(@Valid @RequestBody TokenRefreshRequest request) {
+        RefreshTokenService.Rotation rotation = refreshTokenService.rotate(request.getRefreshToken());
+        UserDetailsImpl userDetails = rotation.getUser();
+        String jwt = jwtUtils.generateTokenFromUsername(userDetails.getUsername());
+        
+        return ResponseEntity.ok(toJwtResponse(jwt, userDetails, rotation.getRefreshToken()));
+    }
+    
+    @PostMapping("/signout")
+    public ResponseEntity<?> logoutUser(@Valid @RequestBody TokenRefreshRequest request) {
+        refreshTokenService.revokeFamilyOf(request.getRefreshToken());
+        return ResponseEntity.ok(new MessageResponse("Signed out successfully!"));
+    }
+    
+    // Bulk revocation: every session of one user, or of everyone when no user is given
+    @PostMapping("/revoke")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> revokeRefreshTokens(@RequestParam(required = false) Long userId) {
+        int revoked = userId == null
+                ? refreshTokenService.revokeAll()
+                : refreshTokenService.revokeAllForUser(userId);
+        
+        return ResponseEntity.ok(new MessageResponse("Revoked " + revoked + " refresh tokens"));
     }
     
     @PostMapping("/signup")
@@ -75,4 +119,18 @@ public class AuthController {
         
         return ResponseEntity.ok(new MessageResponse("User registered successfully!"));
     }
+    
+    private JwtResponse toJwtResponse(String jwt, UserDetailsImpl userDetails, String refreshToken) {
+        List<String> roles = userDetails.getAuthorities().stream()
+                .map(item -> item.getAuthority())
+                .collect(Collectors.toList());
+        
+        return new JwtResponse(
+                jwt,
+                userDetails.getId(),
+                userDetails.getUsername(),
+                userDetails.getEmail(),
+                roles,
+                refreshToken);
+    }
 }
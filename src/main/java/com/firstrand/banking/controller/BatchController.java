@@ -0,0 +1,76 @@
+package com.firstrand.banking.controller;
+
+import com.firstrand.banking.model.dto.ArchiveStatus;
+import com.firstrand.banking.model.dto.BatchJobStatus;
+import com.firstrand.banking.model.dto.MessageResponse;
+import com.firstrand.banking.service.EndOfDayBatchService;
+import com.firstrand.banking.service.TransactionArchiveService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDate;
+
+@CrossOrigin(origins = "*", maxAge = 3600)
+@RestController
+@RequestMapping("/api/batch")
+public class BatchController {
+    
+    @Autowired
+    private EndOfDayBatchService endOfDayBatchService;
+    
+    @Autowired
+    private TransactionArchiveService transactionArchiveService;
+    
+    @PostMapping("/end-of-day")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> startEndOfDay(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date) {
+        if (endOfDayBatchService.isRunning()) {
+            return ResponseEntity.status(409)
+                    .body(new MessageResponse("Error: A batch run is already in progress!"));
+        }
+        
+        LocalDate businessDate = date != null ? date : LocalDate.now().minusDays(1);
+        try {
+            return ResponseEntity.accepted().body(endOfDayBatchService.startEndOfDay(businessDate));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(new MessageResponse("Error: " + e.getMessage() + "!"));
+        }
+    }
+    
+    @GetMapping("/end-of-day")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<BatchJobStatus> getStatus() {
+        BatchJobStatus status = endOfDayBatchService.getStatus();
+        if (status == null) {
+            return ResponseEntity.notFound().build();
+        }
+        
+        return ResponseEntity.ok(status);
+    }
+    
+    @PostMapping("/archive")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> startArchive() {
+        if (transactionArchiveService.isRunning()) {
+            return ResponseEntity.status(409)
+                    .body(new MessageResponse("Error: An archive run is already in progress!"));
+        }
+        
+        return ResponseEntity.accepted().body(transactionArchiveService.startArchive());
+    }
+    
+    @GetMapping("/archive")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<ArchiveStatus> getArchiveStatus() {
+        ArchiveStatus status = transactionArchiveService.getStatus();
+        if (status == null) {
+            return ResponseEntity.notFound().build();
+        }
+        
+        return ResponseEntity.ok(status);
+    }
+}
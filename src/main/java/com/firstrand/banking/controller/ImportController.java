@@ -0,0 +1,98 @@
+package com.firstrand.banking.controller;
+
+import com.firstrand.banking.model.ImportFormat;
+import com.firstrand.banking.model.dto.ImportStatus;
+import com.firstrand.banking.model.dto.MessageResponse;
+import com.firstrand.banking.model.dto.SyntheticDataStatus;
+import com.firstrand.banking.service.BulkImportService;
+import com.firstrand.banking.service.SyntheticDataService;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+
+@CrossOrigin(origins = "*", maxAge = 3600)
+@RestController
+@RequestMapping("/api/import")
+public class ImportController {
+    
+    private static final MediaType TEXT_CSV = new MediaType("text", "csv");
+    
+    @Autowired
+    private BulkImportService bulkImportService;
+    
+    @Autowired
+    private SyntheticDataService syntheticDataService;
+    
+    // The body is streamed straight from the request, so uploads are never buffered in memory
+    @PostMapping(value = "/users", consumes = {MediaType.APPLICATION_NDJSON_VALUE, "text/csv"})
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> importUsers(HttpServletRequest request) throws IOException {
+        if (bulkImportService.isRunning()) {
+            return ResponseEntity.status(409)
+                    .body(new MessageResponse("Error: An import is already in progress!"));
+        }
+        
+        ImportFormat format = TEXT_CSV.isCompatibleWith(MediaType.parseMediaType(request.getContentType()))
+                ? ImportFormat.CSV
+                : ImportFormat.NDJSON;
+        
+        return ResponseEntity.ok(bulkImportService.importUsers(request.getInputStream(), format));
+    }
+    
+    @GetMapping("/users")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<ImportStatus> getStatus() {
+        ImportStatus status = bulkImportService.getStatus();
+        if (status == null) {
+            return ResponseEntity.notFound().build();
+        }
+        
+        return ResponseEntity.ok(status);
+    }
+    
+    /**
+     * Generates a seeded dataset of users, accounts and transaction history in the background;
+     * parameters left out take the {@code synthetic-data.*} defaults.
+     */
+    @PostMapping("/synthetic")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> generateSyntheticData(
+            @RequestParam(required = false) Long seed,
+            @RequestParam(required = false) Integer users,
+            @RequestParam(required = false) Long transactions) {
+        if (!syntheticDataService.isEnabled()) {
+            return ResponseEntity.status(503)
+                    .body(new MessageResponse("Error: Synthetic data generation is disabled!"));
+        }
+        if ((users != null && users < 2) || (transactions != null && transactions < 0)) {
+            return ResponseEntity.badRequest()
+                    .body(new MessageResponse("Error: A dataset needs at least two users and no negative transaction count!"));
+        }
+        if (syntheticDataService.isRunning()) {
+            return ResponseEntity.status(409)
+                    .body(new MessageResponse("Error: A synthetic data load is already in progress!"));
+        }
+        if (syntheticDataService.hasHistory()) {
+            return ResponseEntity.status(409)
+                    .body(new MessageResponse("Error: Synthetic history can only be loaded into a database without transactions!"));
+        }
+        
+        return ResponseEntity.accepted().body(syntheticDataService.start(seed, users, transactions));
+    }
+    
+    @GetMapping("/synthetic")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<SyntheticDataStatus> getSyntheticDataStatus() {
+        SyntheticDataStatus status = syntheticDataService.getStatus();
+        if (status == null) {
+            return ResponseEntity.notFound().build();
+        }
+        
+        return ResponseEntity.ok(status);
+    }
+}
@@ -0,0 +1,83 @@
+package com.firstrand.banking.controller;
+
+import com.firstrand.banking.model.dto.MessageResponse;
+import com.firstrand.banking.model.dto.ProfilingStatus;
+import com.firstrand.banking.service.FlightRecorderService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+@CrossOrigin(origins = "*", maxAge = 3600)
+@RestController
+@RequestMapping("/api/profiling")
+public class ProfilingController {
+    
+    @Autowired
+    private FlightRecorderService flightRecorderService;
+    
+    @PostMapping
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> startRecording(
+            @RequestParam(defaultValue = "profile") String settings,
+            @RequestParam(defaultValue = "60") long durationSeconds,
+            @RequestParam(required = false) Long thresholdMs) {
+        if (!flightRecorderService.isEnabled()) {
+            return ResponseEntity.status(503)
+                    .body(new MessageResponse("Error: Flight recordings are not available!"));
+        }
+        if (!FlightRecorderService.SETTINGS.contains(settings)) {
+            return ResponseEntity.badRequest()
+                    .body(new MessageResponse("Error: Settings must be one of " + FlightRecorderService.SETTINGS + "!"));
+        }
+        if (durationSeconds <= 0 || (thresholdMs != null && thresholdMs < 0)) {
+            return ResponseEntity.badRequest()
+                    .body(new MessageResponse("Error: Duration must be positive and threshold not negative!"));
+        }
+        
+        ProfilingStatus status = flightRecorderService.start(settings, durationSeconds * 1000, thresholdMs);
+        if (status == null) {
+            return ResponseEntity.status(409)
+                    .body(new MessageResponse("Error: A recording is already in progress!"));
+        }
+        
+        return ResponseEntity.accepted().body(status);
+    }
+    
+    @GetMapping
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<ProfilingStatus> getStatus() {
+        ProfilingStatus status = flightRecorderService.getStatus();
+        if (status == null) {
+            return ResponseEntity.notFound().build();
+        }
+        
+        return ResponseEntity.ok(status);
+    }
+    
+    /**
+     * Stops the running recording, if any, and downloads the latest one; open it in JDK Mission
+     * Control or with {@code jfr print}.
+     */
+    @PostMapping("/stop")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> stopRecording() {
+        Path file = flightRecorderService.stop();
+        if (file == null || !Files.exists(file)) {
+            return ResponseEntity.notFound().build();
+        }
+        
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        ContentDisposition.attachment().filename(file.getFileName().toString()).build().toString())
+                .body(new FileSystemResource(file));
+    }
+}
@@ -0,0 +1,55 @@
+package com.firstrand.banking.controller;
+
+import com.firstrand.banking.model.BalanceDiscrepancy;
+import com.firstrand.banking.model.dto.MessageResponse;
+import com.firstrand.banking.model.dto.ReconciliationStatus;
+import com.firstrand.banking.service.ReconciliationService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+@CrossOrigin(origins = "*", maxAge = 3600)
+@RestController
+@RequestMapping("/api/reconciliation")
+public class ReconciliationController {
+    
+    @Autowired
+    private ReconciliationService reconciliationService;
+    
+    @PostMapping
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> startReconciliation() {
+        if (reconciliationService.isRunning()) {
+            return ResponseEntity.status(409)
+                    .body(new MessageResponse("Error: A reconciliation run is already in progress!"));
+        }
+        
+        return ResponseEntity.accepted().body(reconciliationService.startReconciliation());
+    }
+    
+    @GetMapping
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<ReconciliationStatus> getStatus() {
+        ReconciliationStatus status = reconciliationService.getStatus();
+        if (status == null) {
+            return ResponseEntity.notFound().build();
+        }
+        
+        return ResponseEntity.ok(status);
+    }
+    
+    @GetMapping("/{runId}/discrepancies")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Page<BalanceDiscrepancy>> getDiscrepancies(
+            @PathVariable String runId,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "50") int size) {
+        
+        return ResponseEntity.ok(reconciliationService.getDiscrepancies(
+                runId, PageRequest.of(page, size, Sort.by("accountId"))));
+    }
+}
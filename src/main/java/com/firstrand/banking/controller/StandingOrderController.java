@@ -0,0 +1,92 @@
+package com.firstrand.banking.controller;
+
+import com.firstrand.banking.model.Account;
+import com.firstrand.banking.model.StandingOrder;
+import com.firstrand.banking.model.dto.MessageResponse;
+import com.firstrand.banking.model.dto.StandingOrderRequest;
+import com.firstrand.banking.security.UserDetailsImpl;
+import com.firstrand.banking.service.AccountService;
+import com.firstrand.banking.service.StandingOrderService;
+import jakarta.validation.Valid;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@CrossOrigin(origins = "*", maxAge = 3600)
+@RestController
+@RequestMapping("/api/standing-orders")
+public class StandingOrderController {
+    
+    @Autowired
+    private StandingOrderService standingOrderService;
+    
+    @Autowired
+    private AccountService accountService;
+    
+    @PostMapping
+    @PreAuthorize("hasRole('USER') or hasRole('ADMIN')")
+    public ResponseEntity<?> createStandingOrder(@Valid @RequestBody StandingOrderRequest request) {
+        UserDetailsImpl userDetails = getCurrentUser();
+        
+        // Check if source account belongs to the authenticated user
+        Account sourceAccount = accountService.getAccountByAccountNumber(request.getSourceAccountNumber());
+        if (!sourceAccount.getUser().getId().equals(userDetails.getId()) && !hasAdminRole()) {
+            return ResponseEntity.status(403)
+                    .body(new MessageResponse("You don't have permission to pay from this account"));
+        }
+        
+        if (request.getEndAt() != null && request.getEndAt().isBefore(request.getFirstPaymentAt())) {
+            return ResponseEntity.badRequest()
+                    .body(new MessageResponse("Error: The end date is before the first payment!"));
+        }
+        
+        StandingOrder order = standingOrderService.createStandingOrder(userDetails.getId(), request);
+        return ResponseEntity.ok(order);
+    }
+    
+    @GetMapping
+    @PreAuthorize("hasRole('USER') or hasRole('ADMIN')")
+    public ResponseEntity<List<StandingOrder>> getStandingOrders() {
+        return ResponseEntity.ok(standingOrderService.getStandingOrdersForUser(getCurrentUser().getId()));
+    }
+    
+    @GetMapping("/{id}")
+    @PreAuthorize("hasRole('USER') or hasRole('ADMIN')")
+    public ResponseEntity<?> getStandingOrder(@PathVariable Long id) {
+        StandingOrder order = standingOrderService.getStandingOrder(id);
+        if (!order.getUserId().equals(getCurrentUser().getId()) && !hasAdminRole()) {
+            return ResponseEntity.status(403)
+                    .body(new MessageResponse("You don't have permission to view this standing order"));
+        }
+        
+        return ResponseEntity.ok(order);
+    }
+    
+    @DeleteMapping("/{id}")
+    @PreAuthorize("hasRole('USER') or hasRole('ADMIN')")
+    public ResponseEntity<?> cancelStandingOrder(@PathVariable Long id) {
+        StandingOrder order = standingOrderService.getStandingOrder(id);
+        if (!order.getUserId().equals(getCurrentUser().getId()) && !hasAdminRole()) {
+            return ResponseEntity.status(403)
+                    .body(new MessageResponse("You don't have permission to cancel this standing order"));
+        }
+        
+        return ResponseEntity.ok(standingOrderService.cancelStandingOrder(id));
+    }
+    
+    private UserDetailsImpl getCurrentUser() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return (UserDetailsImpl) authentication.getPrincipal();
+    }
+    
+    private boolean hasAdminRole() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication.getAuthorities().stream()
+                .anyMatch(grantedAuthority -> grantedAuthority.getAuthority().equals("ROLE_ADMIN"));
+    }
+}
@@ -1,41 +1,78 @@
 package com.firstrand.banking.controller;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.firstrand.banking.exception.ErrorDetails;
 import com.firstrand.banking.model.Account;
+import com.firstrand.banking.model.DeclineReason;
+import com.firstrand.banking.model.Money;
 import com.firstrand.banking.model.Transaction;
+import com.firstrand.banking.model.TransactionStatus;
+import com.firstrand.banking.model.TransactionType;
 import com.firstrand.banking.model.dto.MessageResponse;
+import com.firstrand.banking.model.dto.TransactionSearchCriteria;
 import com.firstrand.banking.model.dto.TransferRequest;
 import com.firstrand.banking.security.UserDetailsImpl;
 import com.firstrand.banking.service.AccountService;
+import com.firstrand.banking.service.CompletedTransactionCache;
+import com.firstrand.banking.service.TransactionSearchIndex;
 import com.firstrand.banking.service.TransactionService;
+import com.firstrand.banking.service.TransferBatchCodec;
+import com.firstrand.banking.service.TransferBatchService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
-import java.math.BigDecimal;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.Date;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 @CrossOrigin(origins = "*", maxAge = 3600)
 @RestController
 @RequestMapping("/api/transactions")
 public class TransactionController {
     
+    private static final int MAX_DECLINE_BODIES = 4096;
+    
     @Autowired
     private TransactionService transactionService;
     
     @Autowired
     private AccountService accountService;
     
+    @Autowired
+    private CompletedTransactionCache completedTransactionCache;
+    
+    @Autowired
+    private TransactionSearchIndex transactionSearchIndex;
+    
+    @Autowired
+    private TransferBatchService transferBatchService;
+    
+    @Autowired
+    private ObjectMapper objectMapper;
+    
+    // Declined reason, account and path combinations; bodies are rebuilt every second anyway
+    private final ConcurrentHashMap<DeclineKey, DeclineBody> declineBodies = new ConcurrentHashMap<>();
+    
     @GetMapping
     @PreAuthorize("hasRole('USER') or hasRole('ADMIN')")
-    public ResponseEntity<Page<Transaction>> getAllTransactions(
+    public ResponseEntity<?> getAllTransactions(
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "10") int size,
             @RequestParam(required = false) String accountNumber) {
@@ -55,19 +92,59 @@ public class TransactionController {
             Page<Transaction> transactions = transactionService.getTransactionsByAccount(account, pageable);
             return ResponseEntity.ok(transactions);
         } else {
-            // For admin, return all transactions, for regular users return an empty page
-            if (hasAdminRole()) {
-                return ResponseEntity.ok(Page.empty());
-            } else {
+            // For admin, return all transactions, newest first, for regular users return an empty page
+            if (!hasAdminRole()) {
                 return ResponseEntity.status(403).build();
             }
+            
+            // The listing spans the archive, which only the index covers, so it waits for the index like search does
+            if (!transactionSearchIndex.isReady()) {
+                return ResponseEntity.status(503)
+                        .body(new MessageResponse("Error: The search index is still loading!"));
+            }
+            return ResponseEntity.ok(transactionService.searchTransactions(new TransactionSearchCriteria(), pageable));
         }
     }
     
+    @GetMapping("/search")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> searchTransactions(
+            @RequestParam(required = false) String q,
+            @RequestParam(required = false) TransactionType type,
+            @RequestParam(required = false) TransactionStatus status,
+            @RequestParam(required = false) Money minAmount,
+            @RequestParam(required = false) Money maxAmount,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size) {
+        
+        if (!transactionSearchIndex.isReady()) {
+            return ResponseEntity.status(503)
+                    .body(new MessageResponse("Error: The search index is still loading!"));
+        }
+        
+        TransactionSearchCriteria criteria = new TransactionSearchCriteria(q, type, status, minAmount, maxAmount, from, to);
+        return ResponseEntity.ok(transactionService.searchTransactions(criteria, PageRequest.of(page, size)));
+    }
+    
     @GetMapping("/{id}")
     @PreAuthorize("hasRole('USER') or hasRole('ADMIN')")
-    public ResponseEntity<Transaction> getTransactionById(@PathVariable Long id) {
+    public ResponseEntity<?> getTransactionById(@PathVariable Long id, WebRequest request) throws JsonProcessingException {
         UserDetailsImpl userDetails = getCurrentUser();
+        
+        // Completed transactions never change, so a cached copy answers without the database
+        CompletedTransactionCache.Entry cached = completedTransactionCache.get(id);
+        if (cached != null) {
+            if (!cached.involvesUser(userDetails.getId()) && !hasAdminRole()) {
+                return ResponseEntity.status(403).build();
+            }
+            if (request.checkNotModified(cached.getEtag())) {
+                return null;
+            }
+            return jsonResponse(cached);
+        }
+        
         Transaction transaction = transactionService.getTransactionById(id);
         
         // Check if the transaction involves an account that belongs to the authenticated user
@@ -87,12 +164,17 @@ public class TransactionController {
             return ResponseEntity.status(403).build();
         }
         
-        return ResponseEntity.ok(transaction);
+        if (request.checkNotModified(CompletedTransactionCache.etag(transaction))) {
+            return null;
+        }
+        
+        return jsonResponse(completedTransactionCache.put(transaction));
     }
     
     @PostMapping("/transfer")
     @PreAuthorize("hasRole('USER') or hasRole('ADMIN')")
-    public ResponseEntity<?> transferFunds(@Valid @RequestBody TransferRequest transferRequest) {
+    public ResponseEntity<?> transferFunds(@Valid @RequestBody TransferRequest transferRequest,
+                                           HttpServletRequest request) throws JsonProcessingException {
         UserDetailsImpl userDetails = getCurrentUser();
         
         // Check if source account belongs to the authenticated user
@@ -102,15 +184,33 @@ public class TransactionController {
                     .body(new MessageResponse("You don't have permission to transfer from this account"));
         }
         
+        // Declines are answered here, before a write transaction is opened for them
+        DeclineReason declined = transactionService.checkDebit(transferRequest.getSourceAccountNumber(), transferRequest.getAmount());
+        if (declined != null) {
+            return declined(declined, transferRequest.getSourceAccountNumber(), request);
+        }
+        
         Transaction transaction = transactionService.transferFunds(transferRequest);
         return ResponseEntity.ok(transaction);
     }
     
+    /**
+     * Binary counterpart of {@code /transfer} for bulk clients; see {@link TransferBatchCodec} for
+     * the frame layout. The response streams one result frame per command.
+     */
+    @PostMapping(value = "/batch", consumes = TransferBatchCodec.MEDIA_TYPE, produces = TransferBatchCodec.MEDIA_TYPE)
+    @PreAuthorize("hasRole('USER') or hasRole('ADMIN')")
+    public void transferBatch(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setContentType(TransferBatchCodec.MEDIA_TYPE);
+        transferBatchService.process(request.getInputStream(), response.getOutputStream(),
+                getCurrentUser(), hasAdminRole(), request.getRemoteAddr());
+    }
+    
     @PostMapping("/deposit/{accountNumber}")
     @PreAuthorize("hasRole('USER') or hasRole('ADMIN')")
     public ResponseEntity<?> deposit(
             @PathVariable String accountNumber,
-            @RequestParam BigDecimal amount,
+            @RequestParam Money amount,
             @RequestParam(required = false) String reference,
             @RequestParam(required = false) String description) {
         
@@ -131,9 +231,10 @@ public class TransactionController {
     @PreAuthorize("hasRole('USER') or hasRole('ADMIN')")
     public ResponseEntity<?> withdraw(
             @PathVariable String accountNumber,
-            @RequestParam BigDecimal amount,
+            @RequestParam Money amount,
             @RequestParam(required = false) String reference,
-            @RequestParam(required = false) String description) {
+            @RequestParam(required = false) String description,
+            HttpServletRequest request) throws JsonProcessingException {
         
         UserDetailsImpl userDetails = getCurrentUser();
         
@@ -144,10 +245,53 @@ public class TransactionController {
                     .body(new MessageResponse("You don't have permission to withdraw from this account"));
         }
         
+        DeclineReason declined = transactionService.checkDebit(accountNumber, amount);
+        if (declined != null) {
+            return declined(declined, accountNumber, request);
+        }
+        
         Transaction transaction = transactionService.withdraw(accountNumber, amount, reference, description);
         return ResponseEntity.ok(transaction);
     }
     
+    /**
+     * The body and status InsufficientFundsException gets from GlobalExceptionHandler, serialized
+     * once per second for each reason, account and path. A decline storm hits the same few accounts
+     * over and over, so it is answered with the cached response instead of building and serializing
+     * a new body each time; the timestamp is the start of the second the body was built in.
+     */
+    ResponseEntity<?> declined(DeclineReason reason, String accountNumber, HttpServletRequest request)
+            throws JsonProcessingException {
+        long second = System.currentTimeMillis() / 1000;
+        DeclineKey key = new DeclineKey(reason, accountNumber, request.getRequestURI());
+        DeclineBody body = declineBodies.get(key);
+        if (body == null || body.second() != second) {
+            if (declineBodies.size() >= MAX_DECLINE_BODIES) {
+                declineBodies.clear();
+            }
+            ErrorDetails details = new ErrorDetails(new Date(second * 1000), reason.message(accountNumber),
+                    "uri=" + request.getRequestURI());
+            body = new DeclineBody(second, ResponseEntity.badRequest()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(objectMapper.writeValueAsBytes(details)));
+            declineBodies.put(key, body);
+        }
+        return body.response();
+    }
+    
+    private record DeclineKey(DeclineReason reason, String accountNumber, String path) {
+    }
+    
+    private record DeclineBody(long second, ResponseEntity<byte[]> response) {
+    }
+    
+    private ResponseEntity<?> jsonResponse(CompletedTransactionCache.Entry entry) {
+        return ResponseEntity.ok()
+                .eTag(entry.getEtag())
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(entry.getBody());
+    }
+    
     private UserDetailsImpl getCurrentUser() {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
         return (UserDetailsImpl) authentication.getPrincipal();
@@ -4,7 +4,8 @@ public class InsufficientFundsException extends RuntimeException {
     
     private static final long serialVersionUID = 1L;
     
+    // A declined debit is an ordinary outcome, not a bug, so no stack trace is captured for it
     public InsufficientFundsException(String message) {
-        super(message);
+        super(message, null, false, false);
     }
 }
@@ -0,0 +1,10 @@
+package com.firstrand.banking.exception;
+
+public class PasswordHashingUnavailableException extends RuntimeException {
+    
+    private static final long serialVersionUID = 1L;
+    
+    public PasswordHashingUnavailableException(String message) {
+        super(message);
+    }
+}
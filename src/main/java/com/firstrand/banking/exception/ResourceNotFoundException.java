@@ -4,7 +4,8 @@ public class ResourceNotFoundException extends RuntimeException {
     
     private static final long serialVersionUID = 1L;
     
+    // An unknown id or account number is an ordinary outcome, not a bug, so no stack trace is captured for it
     public ResourceNotFoundException(String message) {
-        super(message);
+        super(message, null, false, false);
     }
 }
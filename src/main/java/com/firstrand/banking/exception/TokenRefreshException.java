@@ -0,0 +1,10 @@
+package com.firstrand.banking.exception;
+
+public class TokenRefreshException extends RuntimeException {
+    
+    private static final long serialVersionUID = 1L;
+    
+    public TokenRefreshException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,10 @@
+package com.firstrand.banking.exception;
+
+public class VelocityLimitExceededException extends RuntimeException {
+    
+    private static final long serialVersionUID = 1L;
+    
+    public VelocityLimitExceededException(String message) {
+        super(message);
+    }
+}
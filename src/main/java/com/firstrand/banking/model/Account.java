@@ -1,5 +1,7 @@
 package com.firstrand.banking.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
@@ -9,16 +11,19 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
-import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.HashSet;
 import java.util.Set;
 
 @Entity
-@Table(name = "accounts")
+@Table(name = "accounts",
+       indexes = {
+           @Index(name = "idx_accounts_user_type", columnList = "user_id, accountType")
+       })
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
+@JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
 public class Account {
     
     @Id
@@ -35,7 +40,7 @@ public class Account {
     private AccountType accountType;
     
     @NotNull
-    private BigDecimal balance = BigDecimal.ZERO;
+    private Money balance = Money.ZERO;
     
     @NotNull
     private LocalDateTime createdAt;
@@ -52,9 +57,11 @@ public class Account {
     @JoinColumn(name = "user_id", nullable = false)
     private User user;
     
+    @JsonIgnore
     @OneToMany(mappedBy = "sourceAccount", cascade = CascadeType.ALL, orphanRemoval = true)
     private Set<Transaction> outgoingTransactions = new HashSet<>();
     
+    @JsonIgnore
     @OneToMany(mappedBy = "destinationAccount", cascade = CascadeType.ALL, orphanRemoval = true)
     private Set<Transaction> incomingTransactions = new HashSet<>();
     
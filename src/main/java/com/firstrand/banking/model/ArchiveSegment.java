@@ -0,0 +1,49 @@
+package com.firstrand.banking.model;
+
+import jakarta.persistence.*;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Registry row of an archive segment file. It is inserted in the same transaction that deletes the
+ * archived rows from the transactions table, so a segment file counts only once that has committed.
+ */
+@Entity
+@Table(name = "archive_segments")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ArchiveSegment {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @NotNull
+    @Column(unique = true)
+    private String fileName;
+    
+    // Inclusive lower and exclusive upper bound of the transaction ids the file covers
+    private long fromTransactionId;
+    
+    private long toTransactionId;
+    
+    private int transactionCount;
+    
+    private long sizeBytes;
+    
+    private LocalDateTime createdAt;
+    
+    public ArchiveSegment(String fileName, long fromTransactionId, long toTransactionId, int transactionCount, long sizeBytes) {
+        this.fileName = fileName;
+        this.fromTransactionId = fromTransactionId;
+        this.toTransactionId = toTransactionId;
+        this.transactionCount = transactionCount;
+        this.sizeBytes = sizeBytes;
+        this.createdAt = LocalDateTime.now();
+    }
+}
@@ -0,0 +1,40 @@
+package com.firstrand.banking.model;
+
+import jakarta.persistence.*;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * An account's closing balance at the end of a day on which it had postings. Days without postings
+ * have no row; the balance carries over from the latest earlier one.
+ */
+@Entity
+@Table(name = "balance_checkpoints",
+       uniqueConstraints = {
+           @UniqueConstraint(name = "uk_balance_checkpoints_account_date",
+                             columnNames = {"accountId", "checkpointDate"})
+       })
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BalanceCheckpoint {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @NotNull
+    private Long accountId;
+    
+    @NotNull
+    private LocalDate checkpointDate;
+    
+    // Sum of the account's completed credits less its completed debits timestamped up to the end of the day
+    @NotNull
+    private BigDecimal balance;
+}
@@ -0,0 +1,57 @@
+package com.firstrand.banking.model;
+
+import jakarta.persistence.*;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "balance_discrepancies",
+       indexes = {
+           @Index(name = "idx_balance_discrepancies_run", columnList = "runId, accountId")
+       })
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BalanceDiscrepancy {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @NotNull
+    private String runId;
+    
+    @NotNull
+    private Long accountId;
+    
+    @NotNull
+    private String accountNumber;
+    
+    @NotNull
+    private BigDecimal storedBalance;
+    
+    @NotNull
+    private BigDecimal computedBalance;
+    
+    @NotNull
+    private BigDecimal difference;
+    
+    @NotNull
+    private LocalDateTime detectedAt;
+    
+    public BalanceDiscrepancy(String runId, Long accountId, String accountNumber,
+                              BigDecimal storedBalance, BigDecimal computedBalance) {
+        this.runId = runId;
+        this.accountId = accountId;
+        this.accountNumber = accountNumber;
+        this.storedBalance = storedBalance;
+        this.computedBalance = computedBalance;
+        this.difference = storedBalance.subtract(computedBalance);
+        this.detectedAt = LocalDateTime.now();
+    }
+}
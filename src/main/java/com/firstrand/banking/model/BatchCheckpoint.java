@@ -0,0 +1,50 @@
+package com.firstrand.banking.model;
+
+import jakarta.persistence.*;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "batch_checkpoints",
+       uniqueConstraints = {
+           @UniqueConstraint(columnNames = {"jobName", "partitionIndex"})
+       })
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchCheckpoint {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @NotNull
+    private String jobName;
+    
+    private int partitionIndex;
+    
+    // Exclusive lower and inclusive upper bound of the account ids this partition covers
+    private long fromAccountId;
+    
+    private long toAccountId;
+    
+    // Highest account id whose postings have been committed; the partition resumes after it
+    private long lastAccountId;
+    
+    private boolean completed;
+    
+    private LocalDateTime updatedAt;
+    
+    public BatchCheckpoint(String jobName, int partitionIndex, long fromAccountId, long toAccountId) {
+        this.jobName = jobName;
+        this.partitionIndex = partitionIndex;
+        this.fromAccountId = fromAccountId;
+        this.toAccountId = toAccountId;
+        this.lastAccountId = fromAccountId;
+        this.updatedAt = LocalDateTime.now();
+    }
+}
@@ -0,0 +1,46 @@
+package com.firstrand.banking.model;
+
+import jakarta.persistence.*;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+@Entity
+@Table(name = "daily_account_summaries",
+       uniqueConstraints = {
+           @UniqueConstraint(name = "uk_daily_account_summaries_account_date_type",
+                             columnNames = {"accountId", "summaryDate", "type"})
+       })
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DailyAccountSummary {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @NotNull
+    private Long accountId;
+    
+    @NotNull
+    private LocalDate summaryDate;
+    
+    @NotNull
+    @Enumerated(EnumType.STRING)
+    private TransactionType type;
+    
+    private long creditCount;
+    
+    @NotNull
+    private BigDecimal creditAmount = BigDecimal.ZERO;
+    
+    private long debitCount;
+    
+    @NotNull
+    private BigDecimal debitAmount = BigDecimal.ZERO;
+}
@@ -0,0 +1,19 @@
+package com.firstrand.banking.model;
+
+/**
+ * Why a debit is turned down before it is posted. The message names the account, the same as the
+ * exception the posting itself throws for it.
+ */
+public enum DeclineReason {
+    INSUFFICIENT_FUNDS("Insufficient funds in account: ");
+    
+    private final String messagePrefix;
+    
+    DeclineReason(String messagePrefix) {
+        this.messagePrefix = messagePrefix;
+    }
+    
+    public String message(String accountNumber) {
+        return messagePrefix + accountNumber;
+    }
+}
@@ -0,0 +1,29 @@
+package com.firstrand.banking.model;
+
+import jakarta.persistence.*;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "journal_checkpoints")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class JournalCheckpoint {
+    
+    @Id
+    private Long accountId;
+    
+    @NotNull
+    private BigDecimal balance;
+    
+    // Balance includes every journal entry of the account up to and including this id
+    private long lastEntryId;
+    
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,38 @@
+package com.firstrand.banking.model;
+
+import jakarta.persistence.*;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "journal_entries",
+       indexes = {
+           @Index(name = "idx_journal_entries_account_entry", columnList = "accountId, id"),
+           @Index(name = "idx_journal_entries_transaction", columnList = "transactionId")
+       })
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class JournalEntry {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    private Long transactionId;
+    
+    // Null for the bank's external clearing side of deposits, withdrawals, interest and fees
+    private Long accountId;
+    
+    // Credits are positive and debits negative, so every posting's pair sums to zero
+    @NotNull
+    private BigDecimal amount;
+    
+    @NotNull
+    private LocalDateTime createdAt;
+}
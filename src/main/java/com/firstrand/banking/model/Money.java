@@ -0,0 +1,165 @@
+package com.firstrand.banking.model;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * An amount of the ledger currency held as a {@code long} count of minor units (cents), so that
+ * posting arithmetic is plain integer math instead of arbitrary-precision BigDecimal operations.
+ * Amounts with more decimals than {@link #SCALE} and results that overflow a {@code long} are
+ * rejected with an {@link ArithmeticException} rather than rounded or wrapped.
+ */
+@JsonSerialize(using = Money.Serializer.class)
+@JsonDeserialize(using = Money.Deserializer.class)
+public final class Money implements Comparable<Money>, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final int SCALE = 2;
+
+    public static final Money ZERO = new Money(0);
+
+    private final long minorUnits;
+
+    private Money(long minorUnits) {
+        this.minorUnits = minorUnits;
+    }
+
+    public static Money ofMinorUnits(long minorUnits) {
+        return minorUnits == 0 ? ZERO : new Money(minorUnits);
+    }
+
+    public static Money of(BigDecimal value) {
+        // Fast path for values already at the column scale, which is everything read from the database
+        if (value.scale() == SCALE && value.precision() < 19) {
+            return ofMinorUnits(value.unscaledValue().longValue());
+        }
+        return ofMinorUnits(value.setScale(SCALE, RoundingMode.UNNECESSARY).unscaledValue().longValueExact());
+    }
+
+    public static Money of(long wholeUnits) {
+        return ofMinorUnits(Math.multiplyExact(wholeUnits, 100L));
+    }
+
+    // Picked up by Spring's conversion service for request parameters
+    public static Money valueOf(String value) {
+        return of(new BigDecimal(value.trim()));
+    }
+
+    public long getMinorUnits() {
+        return minorUnits;
+    }
+
+    public Money plus(Money other) {
+        return ofMinorUnits(Math.addExact(minorUnits, other.minorUnits));
+    }
+
+    public Money minus(Money other) {
+        return ofMinorUnits(Math.subtractExact(minorUnits, other.minorUnits));
+    }
+
+    public Money negate() {
+        return ofMinorUnits(Math.negateExact(minorUnits));
+    }
+
+    public boolean isPositive() {
+        return minorUnits > 0;
+    }
+
+    public boolean isNegative() {
+        return minorUnits < 0;
+    }
+
+    public boolean isLessThan(Money other) {
+        return minorUnits < other.minorUnits;
+    }
+
+    public BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(minorUnits, SCALE);
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(minorUnits, other.minorUnits);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof Money money && money.minorUnits == minorUnits;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(minorUnits);
+    }
+
+    @Override
+    public String toString() {
+        return toBigDecimal().toPlainString();
+    }
+
+    /**
+     * Maps to the existing {@code NUMERIC(38, 2)} amount and balance columns.
+     */
+    @Converter(autoApply = true)
+    public static class JpaConverter implements AttributeConverter<Money, BigDecimal> {
+
+        @Override
+        public BigDecimal convertToDatabaseColumn(Money money) {
+            return money == null ? null : money.toBigDecimal();
+        }
+
+        @Override
+        public Money convertToEntityAttribute(BigDecimal value) {
+            return value == null ? null : Money.of(value);
+        }
+    }
+
+    // Writes the same JSON number the BigDecimal fields produced
+    public static class Serializer extends JsonSerializer<Money> {
+
+        @Override
+        public void serialize(Money money, JsonGenerator generator, SerializerProvider provider) throws IOException {
+            generator.writeNumber(money.toBigDecimal());
+        }
+    }
+
+    public static class Deserializer extends JsonDeserializer<Money> {
+
+        @Override
+        public Money deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+            JsonToken token = parser.currentToken();
+            try {
+                if (token == JsonToken.VALUE_NUMBER_INT) {
+                    return Money.of(parser.getLongValue());
+                }
+                if (token == JsonToken.VALUE_NUMBER_FLOAT) {
+                    return Money.of(parser.getDecimalValue());
+                }
+                if (token == JsonToken.VALUE_STRING) {
+                    return Money.valueOf(parser.getText());
+                }
+            } catch (ArithmeticException | NumberFormatException e) {
+                String message = "not an amount with at most " + SCALE + " decimal places";
+                return token == JsonToken.VALUE_STRING
+                        ? (Money) context.handleWeirdStringValue(Money.class, parser.getText(), message)
+                        : (Money) context.handleWeirdNumberValue(Money.class, parser.getNumberValue(), message);
+            }
+            return (Money) context.handleUnexpectedToken(Money.class, parser);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.firstrand.banking.model;
+
+import jakarta.persistence.*;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "refresh_tokens",
+       uniqueConstraints = {
+           @UniqueConstraint(columnNames = "tokenHash")
+       },
+       indexes = {
+           @Index(name = "idx_refresh_tokens_user", columnList = "userId"),
+           @Index(name = "idx_refresh_tokens_family", columnList = "familyId")
+       })
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RefreshToken {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @NotNull
+    private Long userId;
+    
+    // SHA-256 of the token handed to the client; the token itself is never stored
+    @NotNull
+    @Column(length = 64)
+    private String tokenHash;
+    
+    // Every token rotated out of the same signin shares a family, so reuse of a stale one revokes them all
+    @NotNull
+    @Column(length = 36)
+    private String familyId;
+    
+    @NotNull
+    private LocalDateTime expiresAt;
+    
+    private boolean revoked;
+    
+    @NotNull
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,80 @@
+package com.firstrand.banking.model;
+
+import jakarta.persistence.*;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "standing_orders",
+       indexes = {
+           @Index(name = "idx_standing_orders_status_attempt", columnList = "status, nextAttemptAt"),
+           @Index(name = "idx_standing_orders_user", columnList = "userId")
+       })
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StandingOrder {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Version
+    private Long version;
+    
+    @NotNull
+    private Long userId;
+    
+    @NotBlank
+    private String sourceAccountNumber;
+    
+    @NotBlank
+    private String destinationAccountNumber;
+    
+    @NotNull
+    @PositiveMoney
+    private Money amount;
+    
+    @NotNull
+    @Enumerated(EnumType.STRING)
+    private StandingOrderFrequency frequency;
+    
+    @NotNull
+    private LocalDateTime firstPaymentAt;
+    
+    private LocalDateTime endAt;
+    
+    private String reference;
+    
+    private String description;
+    
+    @NotNull
+    @Enumerated(EnumType.STRING)
+    private StandingOrderStatus status;
+    
+    // Index of the occurrence that is due next; occurrences before it were paid or given up on
+    private int occurrence;
+    
+    // When the current occurrence fell due
+    private LocalDateTime nextDueAt;
+    
+    // When the scheduler fires next: the due time, or a later retry after failed attempts
+    private LocalDateTime nextAttemptAt;
+    
+    // Failed attempts at the current occurrence
+    private int failedAttempts;
+    
+    private String lastFailureReason;
+    
+    private Long lastTransactionId;
+    
+    @NotNull
+    private LocalDateTime createdAt;
+    
+    private LocalDateTime updatedAt;
+}
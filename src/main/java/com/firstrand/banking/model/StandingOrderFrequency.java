@@ -0,0 +1,25 @@
+package com.firstrand.banking.model;
+
+import java.time.LocalDateTime;
+
+public enum StandingOrderFrequency {
+    ONCE,
+    DAILY,
+    WEEKLY,
+    MONTHLY;
+    
+    // Occurrences are computed from the first one rather than chained, so a 31st keeps returning
+    // to the 31st after a shorter month
+    public LocalDateTime occurrence(LocalDateTime first, int index) {
+        switch (this) {
+            case DAILY:
+                return first.plusDays(index);
+            case WEEKLY:
+                return first.plusWeeks(index);
+            case MONTHLY:
+                return first.plusMonths(index);
+            default:
+                return index == 0 ? first : null;
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package com.firstrand.banking.model;
+
+public enum StandingOrderStatus {
+    ACTIVE,
+    COMPLETED,
+    CANCELLED,
+    FAILED
+}
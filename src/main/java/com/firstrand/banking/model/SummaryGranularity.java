@@ -0,0 +1,6 @@
+package com.firstrand.banking.model;
+
+public enum SummaryGranularity {
+    DAY,
+    MONTH
+}
@@ -1,17 +1,22 @@
 package com.firstrand.banking.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.NotNull;
-import jakarta.validation.constraints.Positive;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
-import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "transactions")
+@Table(name = "transactions",
+       indexes = {
+           @Index(name = "idx_transactions_source_timestamp", columnList = "source_account_id, timestamp"),
+           @Index(name = "idx_transactions_destination_timestamp", columnList = "destination_account_id, timestamp"),
+           @Index(name = "idx_transactions_timestamp", columnList = "timestamp"),
+           @Index(name = "idx_transactions_type_timestamp", columnList = "type, timestamp")
+       })
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -23,15 +28,18 @@ public class Transaction {
     
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "source_account_id")
+    // Leave out the account's mutable fields so the transaction's JSON never changes
+    @JsonIgnoreProperties({"balance", "updatedAt", "user", "hibernateLazyInitializer", "handler"})
     private Account sourceAccount;
     
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "destination_account_id")
+    @JsonIgnoreProperties({"balance", "updatedAt", "user", "hibernateLazyInitializer", "handler"})
     private Account destinationAccount;
     
     @NotNull
-    @Positive(message = "Amount must be positive")
-    private BigDecimal amount;
+    @PositiveMoney(message = "Amount must be positive")
+    private Money amount;
     
     @NotNull
     @Enumerated(EnumType.STRING)
@@ -0,0 +1,23 @@
+package com.firstrand.banking.model.dto;
+
+import com.firstrand.banking.model.TransactionType;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class AccountSummaryResponse {
+    
+    // First day of the day or month this row covers
+    private LocalDate period;
+    private TransactionType type;
+    private long creditCount;
+    private BigDecimal creditAmount;
+    private long debitCount;
+    private BigDecimal debitAmount;
+}
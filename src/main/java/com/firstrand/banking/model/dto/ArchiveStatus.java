@@ -0,0 +1,25 @@
+package com.firstrand.banking.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ArchiveStatus {
+    
+    private boolean running;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+    private LocalDateTime cutoff;
+    private int segmentsWritten;
+    private long transactionsArchived;
+    private long bytesWritten;
+    private int totalSegments;
+    private long totalArchivedTransactions;
+    private long archivedBelowId;
+    private String error;
+}
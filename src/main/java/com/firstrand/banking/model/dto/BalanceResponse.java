@@ -0,0 +1,18 @@
+package com.firstrand.banking.model.dto;
+
+import com.firstrand.banking.model.Money;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BalanceResponse {
+    
+    private String accountNumber;
+    private Money balance;
+    private LocalDateTime asOf;
+}
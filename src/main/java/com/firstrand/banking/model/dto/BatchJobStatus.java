@@ -0,0 +1,27 @@
+package com.firstrand.banking.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BatchJobStatus {
+    
+    private String jobName;
+    private LocalDate businessDate;
+    private boolean running;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+    private int partitions;
+    private int partitionsCompleted;
+    private long accountsProcessed;
+    private long interestPostings;
+    private long feePostings;
+    private double accountsPerSecond;
+    private String error;
+}
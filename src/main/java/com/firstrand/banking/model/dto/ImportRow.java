@@ -0,0 +1,26 @@
+package com.firstrand.banking.model.dto;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * One customer in a bulk import: the signup fields plus the accounts to open for them.
+ * {@code passwordHash} carries an existing BCrypt hash from the source system and, when present,
+ * is stored as-is instead of hashing {@code password}.
+ */
+@Data
+public class ImportRow {
+    
+    private String username;
+    private String email;
+    private String password;
+    private String passwordHash;
+    private String firstName;
+    private String lastName;
+    private String phoneNumber;
+    private Set<String> role;
+    private List<AccountRequest> accounts = new ArrayList<>();
+}
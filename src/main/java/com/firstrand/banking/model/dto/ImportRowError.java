@@ -0,0 +1,15 @@
+package com.firstrand.banking.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ImportRowError {
+    
+    private long line;
+    private String username;
+    private String message;
+}
@@ -0,0 +1,27 @@
+package com.firstrand.banking.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ImportStatus {
+    
+    private String importId;
+    private boolean running;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+    private long rowsRead;
+    private long usersCreated;
+    private long accountsCreated;
+    private long rowsRejected;
+    private double rowsPerSecond;
+    private List<ImportRowError> errors;
+    private boolean errorsTruncated;
+    private String error;
+}
@@ -15,6 +15,7 @@ public class JwtResponse {
     private String username;
     private String email;
     private List<String> roles;
+    private String refreshToken;
     
     public JwtResponse(String accessToken, Long id, String username, String email, List<String> roles) {
         this.token = accessToken;
@@ -23,4 +24,10 @@ public class JwtResponse {
         this.email = email;
         this.roles = roles;
     }
+    
+    public JwtResponse(String accessToken, Long id, String username, String email, List<String> roles,
+                       String refreshToken) {
+        this(accessToken, id, username, email, roles);
+        this.refreshToken = refreshToken;
+    }
 }
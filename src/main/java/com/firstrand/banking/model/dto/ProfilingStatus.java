@@ -0,0 +1,22 @@
+package com.firstrand.banking.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ProfilingStatus {
+    
+    private boolean running;
+    private String settings;
+    private Long thresholdMs;
+    private LocalDateTime startedAt;
+    private LocalDateTime stoppedAt;
+    private long maxDurationMs;
+    private long maxSizeBytes;
+    private String fileName;
+}
@@ -0,0 +1,26 @@
+package com.firstrand.banking.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ReconciliationStatus {
+    
+    private String runId;
+    private boolean running;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+    private long totalAccounts;
+    private long accountsProcessed;
+    private long chunksProcessed;
+    private long transactionLegsScanned;
+    private long discrepancies;
+    private double accountsPerSecond;
+    private double transactionLegsPerSecond;
+    private String error;
+}
@@ -0,0 +1,38 @@
+package com.firstrand.banking.model.dto;
+
+import com.firstrand.banking.model.Money;
+import com.firstrand.banking.model.PositiveMoney;
+import com.firstrand.banking.model.StandingOrderFrequency;
+import jakarta.validation.constraints.FutureOrPresent;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+@Data
+public class StandingOrderRequest {
+    
+    @NotBlank
+    private String sourceAccountNumber;
+    
+    @NotBlank
+    private String destinationAccountNumber;
+    
+    @NotNull
+    @PositiveMoney(message = "Amount must be positive")
+    private Money amount;
+    
+    @NotNull
+    private StandingOrderFrequency frequency;
+    
+    @NotNull
+    @FutureOrPresent
+    private LocalDateTime firstPaymentAt;
+    
+    private LocalDateTime endAt;
+    
+    private String reference;
+    
+    private String description;
+}
@@ -0,0 +1,25 @@
+package com.firstrand.banking.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class SyntheticDataStatus {
+    
+    private long seed;
+    private boolean running;
+    private String phase;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+    private long usersLoaded;
+    private long accountsLoaded;
+    private long transactionsLoaded;
+    private long transactionsRequested;
+    private double transactionsPerSecond;
+    private String error;
+}
@@ -0,0 +1,11 @@
+package com.firstrand.banking.model.dto;
+
+import jakarta.validation.constraints.NotBlank;
+import lombok.Data;
+
+@Data
+public class TokenRefreshRequest {
+    
+    @NotBlank
+    private String refreshToken;
+}
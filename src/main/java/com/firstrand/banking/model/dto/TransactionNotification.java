@@ -0,0 +1,40 @@
+package com.firstrand.banking.model.dto;
+
+import com.firstrand.banking.model.Money;
+import com.firstrand.banking.model.Transaction;
+import com.firstrand.banking.model.TransactionStatus;
+import com.firstrand.banking.model.TransactionType;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class TransactionNotification {
+
+    private Long id;
+    private TransactionType type;
+    private TransactionStatus status;
+    private Money amount;
+    private String sourceAccountNumber;
+    private String destinationAccountNumber;
+    private String reference;
+    private String description;
+    private LocalDateTime timestamp;
+
+    public static TransactionNotification of(Transaction transaction) {
+        return new TransactionNotification(
+                transaction.getId(),
+                transaction.getType(),
+                transaction.getStatus(),
+                transaction.getAmount(),
+                transaction.getSourceAccount() == null ? null : transaction.getSourceAccount().getAccountNumber(),
+                transaction.getDestinationAccount() == null ? null : transaction.getDestinationAccount().getAccountNumber(),
+                transaction.getReference(),
+                transaction.getDescription(),
+                transaction.getTimestamp());
+    }
+}
@@ -0,0 +1,27 @@
+package com.firstrand.banking.model.dto;
+
+import com.firstrand.banking.model.Money;
+import com.firstrand.banking.model.TransactionStatus;
+import com.firstrand.banking.model.TransactionType;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class TransactionSearchCriteria {
+
+    // Words that must all appear in the reference or description
+    private String query;
+    private TransactionType type;
+    private TransactionStatus status;
+    private Money minAmount;
+    private Money maxAmount;
+
+    // From inclusive, to exclusive
+    private LocalDateTime from;
+    private LocalDateTime to;
+}
@@ -1,12 +1,11 @@
 package com.firstrand.banking.model.dto;
 
+import com.firstrand.banking.model.Money;
+import com.firstrand.banking.model.PositiveMoney;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
-import jakarta.validation.constraints.Positive;
 import lombok.Data;
 
-import java.math.BigDecimal;
-
 @Data
 public class TransferRequest {
     
@@ -17,8 +16,8 @@ public class TransferRequest {
     private String destinationAccountNumber;
     
     @NotNull
-    @Positive(message = "Amount must be positive")
-    private BigDecimal amount;
+    @PositiveMoney(message = "Amount must be positive")
+    private Money amount;
     
     private String reference;
     
@@ -13,6 +13,8 @@ public interface AccountRepository extends JpaRepository<Account, Long> {
     
     List<Account> findByUser(User user);
     
+    List<Account> findByUserId(Long userId);
+    
     Optional<Account> findByAccountNumber(String accountNumber);
     
     boolean existsByAccountNumber(String accountNumber);
@@ -0,0 +1,13 @@
+package com.firstrand.banking.repository;
+
+import com.firstrand.banking.model.ArchiveSegment;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface ArchiveSegmentRepository extends JpaRepository<ArchiveSegment, Long> {
+    
+    List<ArchiveSegment> findAllByOrderByFromTransactionId();
+}
@@ -0,0 +1,13 @@
+package com.firstrand.banking.repository;
+
+import com.firstrand.banking.model.BalanceDiscrepancy;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface BalanceDiscrepancyRepository extends JpaRepository<BalanceDiscrepancy, Long> {
+    
+    Page<BalanceDiscrepancy> findByRunId(String runId, Pageable pageable);
+}
@@ -0,0 +1,15 @@
+package com.firstrand.banking.repository;
+
+import com.firstrand.banking.model.DailyAccountSummary;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Repository
+public interface DailyAccountSummaryRepository extends JpaRepository<DailyAccountSummary, Long> {
+    
+    List<DailyAccountSummary> findByAccountIdAndSummaryDateBetweenOrderBySummaryDate(
+            Long accountId, LocalDate from, LocalDate to);
+}
@@ -0,0 +1,37 @@
+package com.firstrand.banking.repository;
+
+import com.firstrand.banking.model.RefreshToken;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+@Repository
+public interface RefreshTokenRepository extends JpaRepository<RefreshToken, Long> {
+    
+    Optional<RefreshToken> findByTokenHash(String tokenHash);
+    
+    // Returns 0 when another request already rotated or revoked the token
+    @Modifying
+    @Query("update RefreshToken t set t.revoked = true where t.id = ?1 and t.revoked = false")
+    int revokeIfActive(Long id);
+    
+    @Modifying
+    @Query("update RefreshToken t set t.revoked = true where t.familyId = ?1 and t.revoked = false")
+    int revokeFamily(String familyId);
+    
+    @Modifying
+    @Query("update RefreshToken t set t.revoked = true where t.userId = ?1 and t.revoked = false")
+    int revokeByUserId(Long userId);
+    
+    @Modifying
+    @Query("update RefreshToken t set t.revoked = true where t.revoked = false")
+    int revokeAll();
+    
+    @Modifying
+    @Query("delete from RefreshToken t where t.expiresAt < ?1")
+    int deleteExpired(LocalDateTime now);
+}
@@ -0,0 +1,13 @@
+package com.firstrand.banking.repository;
+
+import com.firstrand.banking.model.StandingOrder;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface StandingOrderRepository extends JpaRepository<StandingOrder, Long> {
+    
+    List<StandingOrder> findByUserIdOrderByIdAsc(Long userId);
+}
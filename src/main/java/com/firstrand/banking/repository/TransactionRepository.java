@@ -6,6 +6,7 @@ import com.firstrand.banking.model.TransactionType;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
@@ -18,6 +19,13 @@ public interface TransactionRepository extends JpaRepository<Transaction, Long>
     
     List<Transaction> findByDestinationAccount(Account account);
     
+    // Each side of the OR is resolved through its own index; a plain OR across the two columns scans the table
+    @Query(value = "select t from Transaction t where t.id in ("
+            + "select s.id from Transaction s where s.sourceAccount = ?1 "
+            + "union all select d.id from Transaction d where d.destinationAccount = ?2)",
+           countQuery = "select count(t) from Transaction t where t.id in ("
+            + "select s.id from Transaction s where s.sourceAccount = ?1 "
+            + "union all select d.id from Transaction d where d.destinationAccount = ?2)")
     Page<Transaction> findBySourceAccountOrDestinationAccount(
             Account sourceAccount, Account destinationAccount, Pageable pageable);
     
@@ -2,6 +2,8 @@ package com.firstrand.banking.repository;
 
 import com.firstrand.banking.model.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.util.Optional;
@@ -16,4 +18,8 @@ public interface UserRepository extends JpaRepository<User, Long> {
     Boolean existsByUsername(String username);
     
     Boolean existsByEmail(String email);
+    
+    @Modifying
+    @Query("update User u set u.password = ?2 where u.username = ?1")
+    int updatePassword(String username, String encodedPassword);
 }
@@ -0,0 +1,106 @@
+package com.firstrand.banking.security;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Concurrency limit that adapts to latency in the manner of the gradient algorithm. The baseline
+ * is the no-queueing latency, estimated from the fastest request of each window of samples; per
+ * window the limit is scaled by how far the average latency has drifted above that baseline.
+ * Growing queues therefore shrink the limit before the backlog reaches the thread and connection
+ * pools, and the limit climbs back by about the square root of itself per window while latency
+ * stays near the baseline.
+ */
+final class AdaptiveConcurrencyLimit {
+    
+    private static final int WINDOW_SAMPLES = 50;
+    private static final double BASELINE_WINDOWS = 100;
+    private static final double SMOOTHING = 0.2;
+    
+    private final int minLimit;
+    private final int maxLimit;
+    private final double rttTolerance;
+    
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile double limit;
+    
+    private long windowRttSum;
+    private long windowMinRtt = Long.MAX_VALUE;
+    private int windowCount;
+    private int windowMaxInFlight;
+    private double baselineRtt;
+    
+    AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, double rttTolerance) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.rttTolerance = rttTolerance;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+    
+    boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= (int) limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+    
+    void release(long rttNanos) {
+        int wasInFlight = inFlight.getAndDecrement();
+        onSample(rttNanos, wasInFlight);
+    }
+    
+    // Frees the slot without feeding the limit a sample
+    void release() {
+        inFlight.decrementAndGet();
+    }
+    
+    int getLimit() {
+        return (int) limit;
+    }
+    
+    int getInFlight() {
+        return inFlight.get();
+    }
+    
+    private synchronized void onSample(long rttNanos, int wasInFlight) {
+        windowRttSum += rttNanos;
+        windowMinRtt = Math.min(windowMinRtt, rttNanos);
+        windowCount++;
+        windowMaxInFlight = Math.max(windowMaxInFlight, wasInFlight);
+        if (windowCount < WINDOW_SAMPLES) {
+            return;
+        }
+        
+        double shortRtt = (double) windowRttSum / windowCount;
+        long minRtt = windowMinRtt;
+        int peakInFlight = windowMaxInFlight;
+        windowRttSum = 0;
+        windowMinRtt = Long.MAX_VALUE;
+        windowCount = 0;
+        windowMaxInFlight = 0;
+        
+        // Drops to a faster observation at once but only drifts up slowly, so a saturated period
+        // cannot redefine "normal" while a genuine change in service time is still followed
+        if (baselineRtt == 0 || minRtt < baselineRtt) {
+            baselineRtt = minRtt;
+        } else {
+            baselineRtt += (minRtt - baselineRtt) / BASELINE_WINDOWS;
+        }
+        
+        double current = limit;
+        double gradient = Math.max(0.5, Math.min(1.0, rttTolerance * baselineRtt / shortRtt));
+        double next = current * gradient + Math.sqrt(current);
+        
+        // A window that never came close to the limit says nothing about whether more would fit
+        if (peakInFlight < current / 2) {
+            next = Math.min(next, current);
+        }
+        
+        next = current * (1 - SMOOTHING) + next * SMOOTHING;
+        limit = Math.max(minLimit, Math.min(maxLimit, next));
+    }
+}
@@ -1,5 +1,6 @@
 package com.firstrand.banking.security;
 
+import com.firstrand.banking.service.FlightRecorderEvents;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -29,10 +30,15 @@ public class AuthTokenFilter extends OncePerRequestFilter {
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
             throws ServletException, IOException {
+        FlightRecorderEvents.Authentication event = new FlightRecorderEvents.Authentication();
+        event.begin();
+        String outcome = null;
+        String username = null;
         try {
             String jwt = parseJwt(request);
+            outcome = jwt == null ? null : "INVALID_TOKEN";
             if (jwt != null && jwtUtils.validateJwtToken(jwt)) {
-                String username = jwtUtils.getUserNameFromJwtToken(jwt);
+                username = jwtUtils.getUserNameFromJwtToken(jwt);
                 
                 UserDetails userDetails = userDetailsService.loadUserByUsername(username);
                 UsernamePasswordAuthenticationToken authentication =
@@ -43,11 +49,21 @@ public class AuthTokenFilter extends OncePerRequestFilter {
                 authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
                 
                 SecurityContextHolder.getContext().setAuthentication(authentication);
+                outcome = "AUTHENTICATED";
             }
         } catch (Exception e) {
+            outcome = "ERROR";
             logger.error("Cannot set user authentication: {}", e);
         }
         
+        // Requests without a token are not recorded
+        event.end();
+        if (outcome != null && event.shouldCommit()) {
+            event.username = username;
+            event.outcome = outcome;
+            event.commit();
+        }
+        
         filterChain.doFilter(request, response);
     }
     
@@ -0,0 +1,125 @@
+package com.firstrand.banking.security;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.firstrand.banking.config.ConcurrencyLimitProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bulkheads the configured endpoint groups: each group admits requests only while it is under its
+ * own {@link AdaptiveConcurrencyLimit}, and anything beyond that is shed with {@code 503} at once
+ * rather than queueing on the shared Tomcat and connection pools. A surge in one group therefore
+ * cannot take the request threads another group needs.
+ */
+public class ConcurrencyLimitFilter extends OncePerRequestFilter {
+    
+    private final boolean enabled;
+    private final List<Bulkhead> bulkheads = new ArrayList<>();
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+    private final ObjectMapper mapper = new ObjectMapper();
+    
+    public ConcurrencyLimitFilter(ConcurrencyLimitProperties properties, MeterRegistry meterRegistry) {
+        this.enabled = properties.isEnabled();
+        for (ConcurrencyLimitProperties.Group group : properties.getGroups()) {
+            bulkheads.add(new Bulkhead(group, meterRegistry));
+        }
+    }
+    
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        Bulkhead bulkhead = enabled ? match(request) : null;
+        if (bulkhead == null) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        
+        if (!bulkhead.limit.tryAcquire()) {
+            bulkhead.rejected.increment();
+            reject(request, response, bulkhead.group.getName());
+            return;
+        }
+        
+        long started = System.nanoTime();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            long elapsed = System.nanoTime() - started;
+            if (request.isAsyncStarted()) {
+                // A streamed response carries on without the thread, and its set-up time is no
+                // latency sample for the group
+                bulkhead.limit.release();
+            } else {
+                bulkhead.limit.release(elapsed);
+                bulkhead.latency.record(elapsed, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+    
+    private Bulkhead match(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        for (Bulkhead bulkhead : bulkheads) {
+            ConcurrencyLimitProperties.Group group = bulkhead.group;
+            if (!group.getMethods().isEmpty() && !group.getMethods().contains(request.getMethod())) {
+                continue;
+            }
+            for (String pattern : group.getPaths()) {
+                if (pathMatcher.match(pattern, path)) {
+                    return bulkhead;
+                }
+            }
+        }
+        return null;
+    }
+    
+    private void reject(HttpServletRequest request, HttpServletResponse response, String group) throws IOException {
+        response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        
+        final Map<String, Object> body = new HashMap<>();
+        body.put("status", HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        body.put("error", "Service Unavailable");
+        body.put("message", "Too many concurrent " + group + " requests, retry shortly");
+        body.put("path", request.getServletPath());
+        
+        mapper.writeValue(response.getOutputStream(), body);
+    }
+    
+    private static final class Bulkhead {
+        
+        private final ConcurrencyLimitProperties.Group group;
+        private final AdaptiveConcurrencyLimit limit;
+        private final Counter rejected;
+        private final Timer latency;
+        
+        Bulkhead(ConcurrencyLimitProperties.Group group, MeterRegistry meterRegistry) {
+            this.group = group;
+            this.limit = new AdaptiveConcurrencyLimit(
+                    group.getInitialLimit(), group.getMinLimit(), group.getMaxLimit(), group.getRttTolerance());
+            this.rejected = meterRegistry.counter("concurrency.rejected", "group", group.getName());
+            this.latency = meterRegistry.timer("concurrency.latency", "group", group.getName());
+            Gauge.builder("concurrency.limit", limit, AdaptiveConcurrencyLimit::getLimit)
+                    .tag("group", group.getName()).register(meterRegistry);
+            Gauge.builder("concurrency.inflight", limit, AdaptiveConcurrencyLimit::getInFlight)
+                    .tag("group", group.getName()).register(meterRegistry);
+        }
+    }
+}
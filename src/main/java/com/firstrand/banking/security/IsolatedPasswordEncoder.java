@@ -0,0 +1,199 @@
+package com.firstrand.banking.security;
+
+import com.firstrand.banking.exception.PasswordHashingUnavailableException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * BCrypt encoder that runs every hash on its own small, bounded pool. A request thread hands the
+ * work over and waits for it, but once the pool and its queue are full further callers are turned
+ * away immediately, so a signin storm can tie up at most {@code threads + queueCapacity} request
+ * threads instead of all of them.
+ * <p>
+ * Bounding the threads does not bound their CPU: a hashing thread that is never idle takes as much
+ * of a core as any request thread, which on a small host slows every other endpoint. So hashes are
+ * started no closer together than the last one's CPU time divided by {@code cpuShare} and the
+ * thread count, which keeps hashing to at most {@code cpuShare} of the pool's threads. A caller
+ * waits for its start before handing the work over, so the pool threads only ever hash, and the
+ * waiting callers, not the CPU, absorb the rest of a storm.
+ */
+public class IsolatedPasswordEncoder implements PasswordEncoder {
+    
+    private static final Pattern BCRYPT_COST = Pattern.compile("\\A\\$2[abxy]?\\$(\\d\\d)\\$");
+    
+    private static final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    
+    private final BCryptPasswordEncoder delegate;
+    private final int strength;
+    private final long timeoutMs;
+    private final double cpuShare;
+    private final int threads;
+    private final ThreadPoolExecutor executor;
+    
+    // Callers waiting for their start or their hash; the executor queue alone cannot count the former
+    private final Semaphore admissions;
+    private final AtomicLong nextStartNanos = new AtomicLong(System.nanoTime());
+    private volatile long lastCostNanos;
+    
+    private final Timer encodeTimer;
+    private final Timer matchesTimer;
+    private final Timer queueWaitTimer;
+    private final Counter rejected;
+    
+    public IsolatedPasswordEncoder(int strength, int threads, int queueCapacity, long timeoutMs, double cpuShare,
+                                   MeterRegistry meterRegistry) {
+        if (cpuShare <= 0 || cpuShare > 1) {
+            throw new IllegalArgumentException("cpuShare must be in (0, 1]: " + cpuShare);
+        }
+        this.delegate = new BCryptPasswordEncoder(strength);
+        this.strength = strength;
+        this.timeoutMs = timeoutMs;
+        this.cpuShare = cpuShare;
+        this.threads = threads;
+        this.admissions = new Semaphore(threads + queueCapacity);
+        
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "password-hashing-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        
+        this.encodeTimer = meterRegistry.timer("password.hash", "operation", "encode");
+        this.matchesTimer = meterRegistry.timer("password.hash", "operation", "matches");
+        this.queueWaitTimer = meterRegistry.timer("password.hash.queue.wait");
+        this.rejected = meterRegistry.counter("password.hash.rejected");
+        Gauge.builder("password.hash.queue.depth", executor, pool -> pool.getQueue().size()).register(meterRegistry);
+        Gauge.builder("password.hash.active", executor, ThreadPoolExecutor::getActiveCount).register(meterRegistry);
+    }
+    
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return submit(() -> delegate.encode(rawPassword), encodeTimer);
+    }
+    
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return submit(() -> delegate.matches(rawPassword, encodedPassword), matchesTimer);
+    }
+    
+    // Any cost other than the configured one is upgraded, so lowering the cost takes effect too
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        if (encodedPassword == null) {
+            return false;
+        }
+        
+        Matcher matcher = BCRYPT_COST.matcher(encodedPassword);
+        return matcher.find() && Integer.parseInt(matcher.group(1)) != strength;
+    }
+    
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+    
+    // Until the first hash has been timed nothing is paced
+    private boolean awaitStart(long deadline) {
+        long interval = cpuShare < 1 ? (long) (lastCostNanos / (cpuShare * threads)) : 0;
+        long now = System.nanoTime();
+        long start;
+        long previous;
+        do {
+            previous = nextStartNanos.get();
+            start = Math.max(previous, now);
+            if (start - deadline > 0) {
+                return false;
+            }
+        } while (!nextStartNanos.compareAndSet(previous, start + interval));
+        
+        long wait = start - now;
+        while (wait > 0) {
+            LockSupport.parkNanos(wait);
+            if (Thread.interrupted()) {
+                Thread.currentThread().interrupt();
+                throw new PasswordHashingUnavailableException("Interrupted while waiting for password hashing");
+            }
+            wait = start - System.nanoTime();
+        }
+        return true;
+    }
+    
+    private <T> T timed(Callable<T> hashing) throws Exception {
+        boolean cpuTime = threadMXBean.isCurrentThreadCpuTimeSupported();
+        long started = cpuTime ? threadMXBean.getCurrentThreadCpuTime() : System.nanoTime();
+        try {
+            return hashing.call();
+        } finally {
+            lastCostNanos = (cpuTime ? threadMXBean.getCurrentThreadCpuTime() : System.nanoTime()) - started;
+        }
+    }
+    
+    private <T> T submit(Callable<T> hashing, Timer timer) {
+        long queuedAt = System.nanoTime();
+        long deadline = queuedAt + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        if (!admissions.tryAcquire()) {
+            rejected.increment();
+            throw new PasswordHashingUnavailableException("Password hashing capacity exhausted, retry shortly");
+        }
+        
+        try {
+            if (!awaitStart(deadline)) {
+                rejected.increment();
+                throw new PasswordHashingUnavailableException("Password hashing capacity exhausted, retry shortly");
+            }
+            
+            FutureTask<T> task = new FutureTask<>(() -> {
+                queueWaitTimer.record(System.nanoTime() - queuedAt, TimeUnit.NANOSECONDS);
+                return timer.recordCallable(() -> timed(hashing));
+            });
+            
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                rejected.increment();
+                throw new PasswordHashingUnavailableException("Password hashing capacity exhausted, retry shortly");
+            }
+            
+            try {
+                return task.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                task.cancel(true);
+                rejected.increment();
+                throw new PasswordHashingUnavailableException("Password hashing timed out, retry shortly");
+            } catch (InterruptedException e) {
+                task.cancel(true);
+                Thread.currentThread().interrupt();
+                throw new PasswordHashingUnavailableException("Interrupted while waiting for password hashing");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException runtimeException) {
+                    throw runtimeException;
+                }
+                throw new IllegalStateException("Password hashing failed", e.getCause());
+            }
+        } finally {
+            admissions.release();
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package com.firstrand.banking.security;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.firstrand.banking.config.RateLimitProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Applies the configured {@link RateLimitProperties} rules. Runs right after {@link AuthTokenFilter}
+ * so USER rules can key on the authenticated principal; rules whose key cannot be resolved for a
+ * request (an anonymous caller, a path without the account) do not apply to it. The exception is a
+ * rule keyed by the source account in the body: a request whose body is too large to inspect or
+ * names no source account is rejected here, since letting it through would let it skip the limit.
+ */
+public class RateLimitFilter extends OncePerRequestFilter {
+    
+    private static final String ACCOUNT_VARIABLE = "accountNumber";
+    
+    private static final int MAX_INSPECTED_BODY = 16 * 1024;
+    
+    private final TokenBucketRateLimiter rateLimiter;
+    private final RateLimitProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+    private final ObjectMapper mapper = new ObjectMapper();
+    
+    public RateLimitFilter(TokenBucketRateLimiter rateLimiter, RateLimitProperties properties, MeterRegistry meterRegistry) {
+        this.rateLimiter = rateLimiter;
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+    }
+    
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        if (!properties.isEnabled()) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        HttpServletRequest effectiveRequest = request;
+        
+        for (RateLimitProperties.Rule rule : properties.getRules()) {
+            if (!rule.getMethods().isEmpty() && !rule.getMethods().contains(request.getMethod())) {
+                continue;
+            }
+            if (!pathMatcher.match(rule.getPath(), path)) {
+                continue;
+            }
+            
+            String key;
+            if (rule.getKey() == RateLimitProperties.Key.ACCOUNT && !rule.getPath().contains("{" + ACCOUNT_VARIABLE + "}")) {
+                CachedBodyRequest cached = effectiveRequest instanceof CachedBodyRequest existing
+                        ? existing
+                        : CachedBodyRequest.wrap(request);
+                if (cached == null) {
+                    writeError(request, response, 413, "Payload Too Large",
+                            "Request body exceeds " + MAX_INSPECTED_BODY + " bytes");
+                    return;
+                }
+                effectiveRequest = cached;
+                key = sourceAccountFromBody(cached.body);
+                if (key == null) {
+                    writeError(request, response, 400, "Bad Request", "Request body must be JSON with a sourceAccountNumber");
+                    return;
+                }
+            } else {
+                key = resolveKey(rule, path, request);
+            }
+            
+            if (key == null) {
+                continue;
+            }
+            
+            long waitNanos = rateLimiter.tryAcquire(rule.getName() + ':' + key, rule.getCapacity(), rule.getRefillPerSecond());
+            if (waitNanos > 0) {
+                meterRegistry.counter("rate_limit.rejected", "rule", rule.getName()).increment();
+                reject(request, response, waitNanos);
+                return;
+            }
+        }
+        
+        filterChain.doFilter(effectiveRequest, response);
+    }
+    
+    private String resolveKey(RateLimitProperties.Rule rule, String path, HttpServletRequest request) {
+        switch (rule.getKey()) {
+            case USER:
+                Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+                if (authentication != null && authentication.getPrincipal() instanceof UserDetailsImpl userDetails) {
+                    return String.valueOf(userDetails.getId());
+                }
+                return null;
+            case IP:
+                return request.getRemoteAddr();
+            default:
+                return pathMatcher.extractUriTemplateVariables(rule.getPath(), path).get(ACCOUNT_VARIABLE);
+        }
+    }
+    
+    private String sourceAccountFromBody(byte[] body) {
+        try {
+            JsonNode account = mapper.readTree(body).path("sourceAccountNumber");
+            return account.isTextual() ? account.asText() : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+    
+    private void reject(HttpServletRequest request, HttpServletResponse response, long waitNanos) throws IOException {
+        long retryAfterSeconds = Math.max(1, (waitNanos + 999_999_999L) / 1_000_000_000L);
+        
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+        writeError(request, response, 429, "Too Many Requests",
+                "Rate limit exceeded, retry after " + retryAfterSeconds + " seconds");
+    }
+    
+    private void writeError(HttpServletRequest request, HttpServletResponse response, int status, String error,
+                            String message) throws IOException {
+        response.setStatus(status);
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        
+        final Map<String, Object> body = new HashMap<>();
+        body.put("status", status);
+        body.put("error", error);
+        body.put("message", message);
+        body.put("path", request.getServletPath());
+        
+        mapper.writeValue(response.getOutputStream(), body);
+    }
+    
+    /**
+     * Buffers a small body so the source account can be read here and again by the controller.
+     */
+    private static final class CachedBodyRequest extends HttpServletRequestWrapper {
+        
+        private final byte[] body;
+        
+        private CachedBodyRequest(HttpServletRequest request, byte[] body) {
+            super(request);
+            this.body = body;
+        }
+        
+        // Returns null for a body over the limit. It is read whatever its framing or content type
+        // says, as a chunked body has no length and the JSON converter takes more than one type
+        static CachedBodyRequest wrap(HttpServletRequest request) throws IOException {
+            if (request.getContentLengthLong() > MAX_INSPECTED_BODY) {
+                return null;
+            }
+            byte[] body = request.getInputStream().readNBytes(MAX_INSPECTED_BODY + 1);
+            return body.length > MAX_INSPECTED_BODY ? null : new CachedBodyRequest(request, body);
+        }
+        
+        @Override
+        public ServletInputStream getInputStream() {
+            ByteArrayInputStream input = new ByteArrayInputStream(body);
+            return new ServletInputStream() {
+                @Override
+                public boolean isFinished() {
+                    return input.available() == 0;
+                }
+                
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+                
+                private ReadListener readListener;
+                
+                // The whole body is already here, so the listener hears about all of it at once
+                @Override
+                public void setReadListener(ReadListener listener) {
+                    if (listener == null) {
+                        throw new NullPointerException("ReadListener is null");
+                    }
+                    if (readListener != null) {
+                        throw new IllegalStateException("ReadListener already set");
+                    }
+                    if (!isAsyncStarted()) {
+                        throw new IllegalStateException("Non-blocking reads need an asynchronous request");
+                    }
+                    readListener = listener;
+                    
+                    try {
+                        // Called again for as long as it keeps reading, since isReady() never turns false
+                        int remaining = input.available();
+                        while (remaining > 0) {
+                            listener.onDataAvailable();
+                            if (input.available() == remaining) {
+                                return;
+                            }
+                            remaining = input.available();
+                        }
+                        listener.onAllDataRead();
+                    } catch (IOException | RuntimeException e) {
+                        listener.onError(e);
+                    }
+                }
+                
+                @Override
+                public int read() {
+                    return input.read();
+                }
+                
+                @Override
+                public int read(byte[] buffer, int offset, int length) {
+                    return input.read(buffer, offset, length);
+                }
+            };
+        }
+        
+        @Override
+        public BufferedReader getReader() {
+            return new BufferedReader(new InputStreamReader(getInputStream(), StandardCharsets.UTF_8));
+        }
+    }
+}
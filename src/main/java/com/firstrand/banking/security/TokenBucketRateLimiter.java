@@ -0,0 +1,71 @@
+package com.firstrand.banking.security;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token buckets kept in the GCRA form: each bucket is a single {@link AtomicLong} holding
+ * the time at which it will be full again, so a decision is one read, a little arithmetic and one
+ * CAS. A bucket whose refill time has passed is indistinguishable from a new one and is evicted.
+ */
+@Component
+public class TokenBucketRateLimiter {
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    private final ConcurrentHashMap<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+    
+    @PostConstruct
+    void registerMeters() {
+        Gauge.builder("rate_limit.buckets", buckets, ConcurrentHashMap::size).register(meterRegistry);
+    }
+    
+    /**
+     * Takes one token from the bucket for {@code key}, returning 0 when it was available or
+     * otherwise the number of nanoseconds until it will be.
+     */
+    public long tryAcquire(String key, long capacity, double refillPerSecond) {
+        return tryAcquire(key, capacity, refillPerSecond, System.nanoTime());
+    }
+    
+    long tryAcquire(String key, long capacity, double refillPerSecond, long now) {
+        long interval = (long) (1_000_000_000L / refillPerSecond);
+        long tolerance = interval * (capacity - 1);
+        
+        AtomicLong bucket = buckets.get(key);
+        if (bucket == null) {
+            bucket = buckets.computeIfAbsent(key, k -> new AtomicLong(now));
+        }
+        
+        while (true) {
+            long fullAt = bucket.get();
+            long start = fullAt - now > 0 ? fullAt : now;
+            long wait = start - now - tolerance;
+            if (wait > 0) {
+                return wait;
+            }
+            if (bucket.compareAndSet(fullAt, start + interval)) {
+                return 0;
+            }
+        }
+    }
+    
+    // Removing a bucket while a request is using it at worst forgives that one token, since an
+    // evicted bucket was already full
+    @Scheduled(fixedDelayString = "${rate-limit.eviction-interval-ms:60000}")
+    public void evictIdleBuckets() {
+        evictIdleBuckets(System.nanoTime());
+    }
+    
+    void evictIdleBuckets(long now) {
+        buckets.values().removeIf(bucket -> bucket.get() - now <= 0);
+    }
+}
@@ -4,13 +4,14 @@ import com.firstrand.banking.model.User;
 import com.firstrand.banking.repository.UserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 @Service
-public class UserDetailsServiceImpl implements UserDetailsService {
+public class UserDetailsServiceImpl implements UserDetailsService, UserDetailsPasswordService {
     
     @Autowired
     UserRepository userRepository;
@@ -23,4 +24,20 @@ public class UserDetailsServiceImpl implements UserDetailsService {
         
         return UserDetailsImpl.build(user);
     }
+    
+    // Called by the authentication provider after a successful login whose stored hash was made
+    // with a different BCrypt cost than the one currently configured
+    @Override
+    @Transactional
+    public UserDetails updatePassword(UserDetails user, String newPassword) {
+        userRepository.updatePassword(user.getUsername(), newPassword);
+        
+        UserDetailsImpl details = (UserDetailsImpl) user;
+        return new UserDetailsImpl(
+                details.getId(),
+                details.getUsername(),
+                details.getEmail(),
+                newPassword,
+                details.getAuthorities());
+    }
 }
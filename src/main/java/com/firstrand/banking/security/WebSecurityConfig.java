@@ -1,6 +1,11 @@
 package com.firstrand.banking.security;
 
+import com.firstrand.banking.config.ConcurrencyLimitProperties;
+import com.firstrand.banking.config.RateLimitProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.DispatcherType;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -10,7 +15,6 @@ import org.springframework.security.config.annotation.method.configuration.Enabl
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.http.SessionCreationPolicy;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
@@ -26,6 +30,35 @@ public class WebSecurityConfig {
     @Autowired
     private AuthEntryPointJwt unauthorizedHandler;
     
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    @Autowired
+    private TokenBucketRateLimiter rateLimiter;
+    
+    @Autowired
+    private RateLimitProperties rateLimitProperties;
+    
+    @Autowired
+    private ConcurrencyLimitProperties concurrencyLimitProperties;
+    
+    @Value("${security.password-hashing.bcrypt-strength:10}")
+    private int bcryptStrength;
+    
+    // 0 means half the available processors, leaving the rest for request handling
+    @Value("${security.password-hashing.threads:0}")
+    private int hashingThreads;
+    
+    @Value("${security.password-hashing.queue-capacity:32}")
+    private int hashingQueueCapacity;
+    
+    @Value("${security.password-hashing.timeout-ms:5000}")
+    private long hashingTimeoutMs;
+    
+    // Share of their time the hashing threads may spend hashing; callers wait out the remainder before submitting
+    @Value("${security.password-hashing.cpu-share:0.5}")
+    private double hashingCpuShare;
+    
     @Bean
     public AuthTokenFilter authenticationJwtTokenFilter() {
         return new AuthTokenFilter();
@@ -37,6 +70,7 @@ public class WebSecurityConfig {
         
         authProvider.setUserDetailsService(userDetailsService);
         authProvider.setPasswordEncoder(passwordEncoder());
+        authProvider.setUserDetailsPasswordService(userDetailsService);
         
         return authProvider;
     }
@@ -48,7 +82,12 @@ public class WebSecurityConfig {
     
     @Bean
     public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+        int threads = hashingThreads > 0
+                ? hashingThreads
+                : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        
+        return new IsolatedPasswordEncoder(bcryptStrength, threads, hashingQueueCapacity, hashingTimeoutMs,
+                hashingCpuShare, meterRegistry);
     }
     
     @Bean
@@ -57,9 +96,13 @@ public class WebSecurityConfig {
             .exceptionHandling(exception -> exception.authenticationEntryPoint(unauthorizedHandler))
             .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
             .authorizeHttpRequests(auth -> 
-                auth.requestMatchers("/api/auth/**").permitAll()
+                // Async dispatches only finish a response whose request was already authorized
+                auth.dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
+                    .requestMatchers("/api/auth/**").permitAll()
                     .requestMatchers("/api/test/**").permitAll()
                     .requestMatchers("/h2-console/**").permitAll()
+                    .requestMatchers("/actuator/health").permitAll()
+                    .requestMatchers("/actuator/**").hasRole("ADMIN")
                     .anyRequest().authenticated()
             );
         
@@ -70,6 +113,11 @@ public class WebSecurityConfig {
         
         http.addFilterBefore(authenticationJwtTokenFilter(), UsernamePasswordAuthenticationFilter.class);
         
+        // Not beans, so the servlet container does not register them a second time outside the chain.
+        // Bulkheads shed load before any token is parsed; rate limits need the authenticated user
+        http.addFilterBefore(new ConcurrencyLimitFilter(concurrencyLimitProperties, meterRegistry), AuthTokenFilter.class);
+        http.addFilterAfter(new RateLimitFilter(rateLimiter, rateLimitProperties, meterRegistry), AuthTokenFilter.class);
+        
         return http.build();
     }
 }
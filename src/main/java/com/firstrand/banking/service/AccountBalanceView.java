@@ -0,0 +1,407 @@
+package com.firstrand.banking.service;
+
+import com.firstrand.banking.exception.ResourceNotFoundException;
+import com.firstrand.banking.model.Account;
+import com.firstrand.banking.model.Money;
+import com.firstrand.banking.repository.AccountRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Read model of account balances, kept apart from the {@code accounts} rows that postings update.
+ * Each account's balance and version sit in primitive arrays behind a {@link StampedLock}, so a
+ * read is a few array loads validated against the lock's stamp and never waits for a writer.
+ *
+ * <p>Accounts are loaded the first time they are read. Postings register their deltas inside the
+ * posting transaction and apply them once it commits; deltas commute, so commits racing each other
+ * still add up to the committed balance. A loaded balance is only kept if no posting touched its
+ * stripe of accounts while it was read, so a balance that already contains a posting can never have
+ * that posting's delta applied a second time.
+ */
+@Service
+public class AccountBalanceView {
+
+    private static final int STRIPES = 1 << 14;
+
+    private static final String BALANCE_SQL = "SELECT balance FROM accounts WHERE id = ?";
+
+    @Value("${balance-view.enabled:true}")
+    private boolean enabled;
+
+    @Value("${balance-view.max-accounts:1000000}")
+    private int maxAccounts;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private JournalLedgerService journalLedgerService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final String instanceId = Long.toString(ThreadLocalRandom.current().nextLong() >>> 1, 36);
+
+    // Postings registered and completed per stripe; equal counts mean none is in flight
+    private final AtomicLongArray begun = new AtomicLongArray(STRIPES);
+    private final AtomicLongArray ended = new AtomicLongArray(STRIPES);
+
+    private final StampedLock lock = new StampedLock();
+
+    // Replaced as a whole when it grows, so an optimistic reader always sees one table's arrays
+    private Table table = new Table(1024);
+    private int size;
+
+    private Counter hits;
+    private Counter misses;
+
+    @PostConstruct
+    void init() {
+        hits = meterRegistry.counter("balance_view.reads", "result", "hit");
+        misses = meterRegistry.counter("balance_view.reads", "result", "miss");
+        Gauge.builder("balance_view.accounts", this, AccountBalanceView::size).register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public static final class Snapshot {
+
+        private final long accountId;
+        private final long ownerId;
+        private final Money balance;
+
+        // -1 when the balance was read from the database and not kept
+        private final long version;
+
+        Snapshot(long accountId, long ownerId, Money balance, long version) {
+            this.accountId = accountId;
+            this.ownerId = ownerId;
+            this.balance = balance;
+            this.version = version;
+        }
+
+        public long getOwnerId() {
+            return ownerId;
+        }
+
+        public Money getBalance() {
+            return balance;
+        }
+    }
+
+    /**
+     * Returns the account's balance from memory, loading it on first use.
+     *
+     * @throws ResourceNotFoundException if there is no such account
+     */
+    public Snapshot getByAccountNumber(String accountNumber) {
+        long number = parseNumber(accountNumber);
+        Snapshot snapshot = number < 0 ? null : find(number);
+        if (snapshot != null) {
+            hits.increment();
+            return snapshot;
+        }
+
+        misses.increment();
+        Account account = accountRepository.findByAccountNumber(accountNumber)
+                .orElseThrow(() -> new ResourceNotFoundException("Account not found with account number: " + accountNumber));
+        return load(account, number);
+    }
+
+    /**
+     * Tag for the balance, or null for one that was read from the database and not kept. Versions
+     * start from zero on every boot, hence the per-process id.
+     */
+    public String etag(Snapshot snapshot) {
+        return snapshot.version < 0 ? null : instanceId + "-" + snapshot.accountId + "-" + snapshot.version;
+    }
+
+    /**
+     * Registers the posting's balance changes with the surrounding database transaction; they are
+     * applied if it commits. Must be called before the posting's own writes commit.
+     */
+    public void recordPosting(Long debitAccountId, Long creditAccountId, Money amount) {
+        long minorUnits = amount.getMinorUnits();
+        long[] accountIds = new long[2];
+        long[] deltas = new long[2];
+        int count = 0;
+        if (debitAccountId != null) {
+            accountIds[count] = debitAccountId;
+            deltas[count++] = -minorUnits;
+        }
+        if (creditAccountId != null) {
+            accountIds[count] = creditAccountId;
+            deltas[count++] = minorUnits;
+        }
+        register(accountIds, deltas, count);
+    }
+
+    public void recordPostings(List<AccountSummaryService.Posting> postings) {
+        long[] accountIds = new long[postings.size() * 2];
+        long[] deltas = new long[postings.size() * 2];
+        int count = 0;
+        for (AccountSummaryService.Posting posting : postings) {
+            long minorUnits = Money.of(posting.getAmount()).getMinorUnits();
+            if (posting.getSourceAccountId() != null) {
+                accountIds[count] = posting.getSourceAccountId();
+                deltas[count++] = -minorUnits;
+            }
+            if (posting.getDestinationAccountId() != null) {
+                accountIds[count] = posting.getDestinationAccountId();
+                deltas[count++] = minorUnits;
+            }
+        }
+        register(accountIds, deltas, count);
+    }
+
+    private void register(long[] accountIds, long[] deltas, int count) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            throw new IllegalStateException("Balance postings must be recorded inside a transaction");
+        }
+
+        for (int i = 0; i < count; i++) {
+            begun.incrementAndGet(stripe(accountIds[i]));
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                apply(accountIds, deltas, count);
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                for (int i = 0; i < count; i++) {
+                    ended.incrementAndGet(stripe(accountIds[i]));
+                }
+            }
+        });
+    }
+
+    private void apply(long[] accountIds, long[] deltas, int count) {
+        long stamp = lock.writeLock();
+        try {
+            Table t = table;
+            for (int i = 0; i < count; i++) {
+                int slot = t.slotOf(accountIds[i]);
+                if (t.ids[slot] != 0) {
+                    t.balances[slot] += deltas[i];
+                    t.versions[slot]++;
+                }
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private Snapshot load(Account account, long number) {
+        long accountId = account.getId();
+        long ownerId = account.getUser().getId();
+        int stripe = stripe(accountId);
+
+        long begunBefore = begun.get(stripe);
+        boolean quiet = ended.get(stripe) == begunBefore;
+
+        // Read past the persistence context, whose copy of the row may be older than this read
+        BigDecimal balance = journalLedgerService.isEnabled()
+                ? journalLedgerService.getBalance(accountId)
+                : jdbcTemplate.queryForObject(BALANCE_SQL, BigDecimal.class, accountId);
+        Money current = Money.of(balance);
+
+        if (!quiet || begun.get(stripe) != begunBefore || number < 0) {
+            return new Snapshot(accountId, ownerId, current, -1);
+        }
+
+        long stamp = lock.writeLock();
+        try {
+            Table t = table;
+            int slot = t.slotOf(accountId);
+            if (t.ids[slot] != 0) {
+                // Loaded by another reader meanwhile; that copy has every posting since
+                return new Snapshot(accountId, t.owners[slot], Money.ofMinorUnits(t.balances[slot]), t.versions[slot]);
+            }
+            if (size >= maxAccounts) {
+                return new Snapshot(accountId, ownerId, current, -1);
+            }
+
+            t.ids[slot] = accountId;
+            t.owners[slot] = ownerId;
+            t.balances[slot] = current.getMinorUnits();
+            int numberSlot = t.numberSlotOf(number);
+            t.numberKeys[numberSlot] = number;
+            t.numberIds[numberSlot] = accountId;
+            if (++size * 2 > t.ids.length) {
+                table = t.grow();
+            }
+            return new Snapshot(accountId, ownerId, current, 0);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private Snapshot find(long number) {
+        long stamp = lock.tryOptimisticRead();
+        Snapshot snapshot = read(number);
+        if (lock.validate(stamp)) {
+            return snapshot;
+        }
+
+        stamp = lock.readLock();
+        try {
+            return read(number);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private Snapshot read(long number) {
+        Table t = table;
+        long accountId = t.idOfNumber(number);
+        if (accountId == 0) {
+            return null;
+        }
+        int slot = t.find(accountId);
+        return slot < 0 ? null : new Snapshot(accountId, t.owners[slot], Money.ofMinorUnits(t.balances[slot]), t.versions[slot]);
+    }
+
+    private int size() {
+        long stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // Account numbers are 10 to 16 digits, so with their length they fit a long; anything else is never kept
+    private static long parseNumber(String accountNumber) {
+        if (accountNumber.length() < 10 || accountNumber.length() > 16) {
+            return -1;
+        }
+        long number = 0;
+        for (int i = 0; i < accountNumber.length(); i++) {
+            char c = accountNumber.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            number = number * 10 + (c - '0');
+        }
+        return number << 5 | accountNumber.length();
+    }
+
+    private static int stripe(long accountId) {
+        return hash(accountId) & (STRIPES - 1);
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 32);
+    }
+
+    /**
+     * Open-addressing tables on the account id and on the account number, with 0 marking a free
+     * slot. Lookups may run against a table that is being written under an optimistic stamp, so
+     * they stop after one pass over the slots instead of trusting the table to have a free one.
+     */
+    private static final class Table {
+
+        final long[] ids;
+        final long[] owners;
+        final long[] balances;
+        final long[] versions;
+        final long[] numberKeys;
+        final long[] numberIds;
+
+        Table(int capacity) {
+            ids = new long[capacity];
+            owners = new long[capacity];
+            balances = new long[capacity];
+            versions = new long[capacity];
+            numberKeys = new long[capacity];
+            numberIds = new long[capacity];
+        }
+
+        int find(long accountId) {
+            int mask = ids.length - 1;
+            for (int i = hash(accountId) & mask, probes = 0; probes <= mask; i = (i + 1) & mask, probes++) {
+                if (ids[i] == accountId) {
+                    return i;
+                }
+                if (ids[i] == 0) {
+                    return -1;
+                }
+            }
+            return -1;
+        }
+
+        long idOfNumber(long number) {
+            int mask = numberKeys.length - 1;
+            for (int i = hash(number) & mask, probes = 0; probes <= mask; i = (i + 1) & mask, probes++) {
+                if (numberKeys[i] == number) {
+                    return numberIds[i];
+                }
+                if (numberKeys[i] == 0) {
+                    return 0;
+                }
+            }
+            return 0;
+        }
+
+        // Only called under the write lock, where the table always has free slots
+        int slotOf(long accountId) {
+            int mask = ids.length - 1;
+            int i = hash(accountId) & mask;
+            while (ids[i] != 0 && ids[i] != accountId) {
+                i = (i + 1) & mask;
+            }
+            return i;
+        }
+
+        int numberSlotOf(long number) {
+            int mask = numberKeys.length - 1;
+            int i = hash(number) & mask;
+            while (numberKeys[i] != 0 && numberKeys[i] != number) {
+                i = (i + 1) & mask;
+            }
+            return i;
+        }
+
+        Table grow() {
+            Table grown = new Table(ids.length * 2);
+            for (int i = 0; i < ids.length; i++) {
+                if (ids[i] != 0) {
+                    int slot = grown.slotOf(ids[i]);
+                    grown.ids[slot] = ids[i];
+                    grown.owners[slot] = owners[i];
+                    grown.balances[slot] = balances[i];
+                    grown.versions[slot] = versions[i];
+                }
+                if (numberKeys[i] != 0) {
+                    int slot = grown.numberSlotOf(numberKeys[i]);
+                    grown.numberKeys[slot] = numberKeys[i];
+                    grown.numberIds[slot] = numberIds[i];
+                }
+            }
+            return grown;
+        }
+    }
+}
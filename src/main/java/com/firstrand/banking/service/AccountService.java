@@ -2,28 +2,60 @@ package com.firstrand.banking.service;
 
 import com.firstrand.banking.exception.ResourceNotFoundException;
 import com.firstrand.banking.model.Account;
+import com.firstrand.banking.model.Money;
 import com.firstrand.banking.model.User;
 import com.firstrand.banking.model.dto.AccountRequest;
 import com.firstrand.banking.repository.AccountRepository;
 import com.firstrand.banking.repository.UserRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.sql.Timestamp;
 import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Random;
 
 @Service
 public class AccountService {
     
+    private static final String LOCK_BALANCE_SQL = "SELECT balance FROM accounts WHERE id = ? FOR UPDATE";
+    
+    private static final String BALANCE_SQL = "SELECT balance FROM accounts WHERE id = ?";
+    
+    private static final String UPDATE_BALANCE_SQL =
+            "UPDATE accounts SET balance = balance + ?, updated_at = ? WHERE id = ?";
+    
     @Autowired
     private AccountRepository accountRepository;
     
     @Autowired
     private UserRepository userRepository;
     
+    @Autowired
+    private JournalLedgerService journalLedgerService;
+    
+    @Autowired
+    private AccountVersionIndex accountVersionIndex;
+    
+    @Autowired
+    private AccountStreamPublisher accountStreamPublisher;
+    
+    @Autowired
+    private AccountBalanceView accountBalanceView;
+    
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    
+    @PersistenceContext
+    private EntityManager entityManager;
+    
     public List<Account> getAllAccounts() {
         return accountRepository.findAll();
     }
@@ -42,6 +74,15 @@ public class AccountService {
                 .orElseThrow(() -> new ResourceNotFoundException("Account not found with account number: " + accountNumber));
     }
     
+    public Money getCurrentBalance(Account account) {
+        // In journal mode the stored balance only reflects the last checkpoint
+        if (journalLedgerService.isEnabled()) {
+            return Money.of(journalLedgerService.getBalance(account.getId()));
+        }
+        
+        return account.getBalance();
+    }
+    
     @Transactional
     public Account createAccount(String username, AccountRequest accountRequest) {
         User user = userRepository.findByUsername(username)
@@ -51,22 +92,62 @@ public class AccountService {
         account.setAccountNumber(generateAccountNumber());
         account.setAccountName(accountRequest.getAccountName());
         account.setAccountType(accountRequest.getAccountType());
-        account.setBalance(BigDecimal.ZERO);
+        account.setBalance(Money.ZERO);
         account.setCreatedAt(LocalDateTime.now());
         account.setUpdatedAt(LocalDateTime.now());
         account.setActive(true);
         account.setUser(user);
         
-        return accountRepository.save(account);
+        Account saved = accountRepository.save(account);
+        accountVersionIndex.accountsChanged(user.getId());
+        accountStreamPublisher.accountsChanged(user.getId());
+        return saved;
     }
     
     @Transactional
-    public Account updateAccountBalance(String accountNumber, BigDecimal amount) {
+    public Account updateAccountBalance(String accountNumber, Money amount) {
+        // In journal mode the account row is only a copy of the checkpoints, so a change made here
+        // would be overwritten by the next checkpoint
+        if (journalLedgerService.isEnabled()) {
+            throw new IllegalStateException("Balances cannot be set directly in journal mode");
+        }
+        
         Account account = getAccountByAccountNumber(accountNumber);
-        account.setBalance(account.getBalance().add(amount));
-        account.setUpdatedAt(LocalDateTime.now());
+        lockAccountRows(account);
+        adjustBalance(account, amount);
+        accountBalanceView.recordPosting(null, account.getId(), amount);
+        accountVersionIndex.accountsChanged(account.getUser().getId());
+        accountStreamPublisher.accountsChanged(account.getUser().getId());
         
-        return accountRepository.save(account);
+        // The entity may have been read before the lock, so it is detached before it gets the new
+        // balance and is never flushed over the row
+        entityManager.detach(account);
+        account.setBalance(Money.of(jdbcTemplate.queryForObject(BALANCE_SQL, BigDecimal.class, account.getId())));
+        return account;
+    }
+    
+    // In balance mode the account rows are the ledger. A posting locks its rows in id order, so two
+    // postings to one account run one after the other and two transfers in opposite directions
+    // cannot deadlock, and then changes the locked balances in place. It never writes them through
+    // the entity: the persistence context may hold a copy read before the lock, and flushing that
+    // copy overwrites a concurrent posting, or is skipped when the new balance equals the stale one
+    public void lockAccountRows(Account... accounts) {
+        if (journalLedgerService.isEnabled()) {
+            return;
+        }
+        
+        Account[] ordered = accounts.clone();
+        Arrays.sort(ordered, Comparator.comparing(Account::getId));
+        for (Account account : ordered) {
+            FlightRecorderEvents.LockWait wait = new FlightRecorderEvents.LockWait();
+            wait.begin();
+            jdbcTemplate.queryForObject(LOCK_BALANCE_SQL, BigDecimal.class, account.getId());
+            wait.finish("account-row", account.getId());
+        }
+    }
+    
+    public void adjustBalance(Account account, Money delta) {
+        jdbcTemplate.update(UPDATE_BALANCE_SQL, delta.toBigDecimal(), Timestamp.valueOf(LocalDateTime.now()), account.getId());
     }
     
     private String generateAccountNumber() {
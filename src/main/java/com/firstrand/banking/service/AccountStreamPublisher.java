@@ -0,0 +1,448 @@
+package com.firstrand.banking.service;
+
+import com.firstrand.banking.model.Account;
+import com.firstrand.banking.model.Money;
+import com.firstrand.banking.model.Transaction;
+import com.firstrand.banking.model.TransactionStatus;
+import com.firstrand.banking.model.dto.BalanceResponse;
+import com.firstrand.banking.model.dto.MessageResponse;
+import com.firstrand.banking.model.dto.TransactionNotification;
+import com.firstrand.banking.repository.AccountRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Pushes new transactions and balance changes to the {@code GET /api/accounts/stream} subscribers
+ * of the users involved once the transaction that made them commits. Streams are async servlet
+ * requests, so an idle subscriber holds a socket and a small buffer but no thread; a few dispatcher
+ * threads write to whichever subscribers have something pending, one at a time per subscriber.
+ *
+ * <p>Every subscriber's buffer is bounded. Balance changes coalesce into a set of changed accounts
+ * whose balances are read when they are delivered, so a slow subscriber skips intermediate
+ * balances but never sees an outdated one. Transactions queue up to
+ * {@code account-stream.buffer-size}; past that the queue is dropped and the subscriber gets a
+ * {@code resync} event telling it to reload its history over REST.
+ *
+ * <p>A write to a client that stops reading blocks the thread making it until the socket times out.
+ * A subscriber whose write has been blocked for {@code account-stream.send-timeout-ms} is dropped,
+ * so it buffers nothing more, and the dispatcher starts another thread in place of the one it holds
+ * (up to {@code account-stream.max-stalled-sends} of them) so everyone else keeps getting updates.
+ * The client is disconnected once the write returns and reconnects to a fresh stream.
+ */
+@Service
+public class AccountStreamPublisher {
+
+    private static final Logger logger = LoggerFactory.getLogger(AccountStreamPublisher.class);
+
+    @Value("${account-stream.max-subscribers:10000}")
+    private int maxSubscribers;
+
+    @Value("${account-stream.max-per-user:5}")
+    private int maxPerUser;
+
+    @Value("${account-stream.buffer-size:64}")
+    private int bufferSize;
+
+    @Value("${account-stream.timeout-ms:1800000}")
+    private long timeoutMs;
+
+    @Value("${account-stream.heartbeat-ms:15000}")
+    private long heartbeatMs;
+
+    @Value("${account-stream.dispatch-threads:2}")
+    private int dispatchThreads;
+
+    @Value("${account-stream.send-timeout-ms:5000}")
+    private long sendTimeoutMs;
+
+    @Value("${account-stream.max-stalled-sends:32}")
+    private int maxStalledSends;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private JournalLedgerService journalLedgerService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final Map<Long, Set<Subscriber>> subscribers = new ConcurrentHashMap<>();
+
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+
+    // Dropped subscribers whose write is still blocking a dispatcher thread
+    private final AtomicInteger stalledSends = new AtomicInteger();
+
+    private ThreadPoolExecutor dispatcher;
+
+    private ScheduledExecutorService heartbeats;
+
+    private Counter resyncs;
+
+    private Counter stalls;
+
+    @PostConstruct
+    void init() {
+        // Only the core threads ever run, since the queue is unbounded; stalls raise the core size
+        dispatcher = new ThreadPoolExecutor(dispatchThreads, dispatchThreads + maxStalledSends, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), daemonThreads("account-stream"));
+        heartbeats = Executors.newSingleThreadScheduledExecutor(daemonThreads("account-stream-heartbeat"));
+        heartbeats.scheduleWithFixedDelay(this::heartbeat, heartbeatMs, heartbeatMs, TimeUnit.MILLISECONDS);
+        long stallCheckMs = Math.max(sendTimeoutMs / 2, 1);
+        heartbeats.scheduleWithFixedDelay(this::checkStalls, stallCheckMs, stallCheckMs, TimeUnit.MILLISECONDS);
+
+        resyncs = meterRegistry.counter("account_stream.resyncs");
+        stalls = meterRegistry.counter("account_stream.stalls");
+        Gauge.builder("account_stream.subscribers", subscriberCount, AtomicInteger::get).register(meterRegistry);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        heartbeats.shutdownNow();
+        dispatcher.shutdownNow();
+        subscribers.values().forEach(set -> set.forEach(subscriber -> subscriber.emitter.complete()));
+    }
+
+    /**
+     * Opens a stream for the user that starts with the current balance of each of their accounts, or
+     * returns null if the user or the server already has as many streams as it allows.
+     */
+    public SseEmitter subscribe(Long userId) {
+        if (subscriberCount.incrementAndGet() > maxSubscribers) {
+            subscriberCount.decrementAndGet();
+            return null;
+        }
+
+        Subscriber subscriber = new Subscriber(userId, newEmitter());
+        Set<Subscriber> set = subscribers.compute(userId, (id, existing) -> {
+            Set<Subscriber> updated = existing != null ? existing : ConcurrentHashMap.newKeySet();
+            if (updated.size() < maxPerUser) {
+                updated.add(subscriber);
+            }
+            return updated;
+        });
+        if (!set.contains(subscriber)) {
+            subscriberCount.decrementAndGet();
+            return null;
+        }
+
+        SseEmitter emitter = subscriber.emitter;
+        emitter.onCompletion(subscriber::close);
+        emitter.onTimeout(emitter::complete);
+        emitter.onError(error -> subscriber.close());
+        subscriber.schedule();
+        return emitter;
+    }
+
+    SseEmitter newEmitter() {
+        return new SseEmitter(timeoutMs);
+    }
+
+    /**
+     * Publishes the transaction to both sides' owners once the current database transaction commits.
+     * The accounts and their owners are read here, so the transaction must still be attached.
+     */
+    public void transactionCommitted(Transaction transaction) {
+        TransactionNotification notification = TransactionNotification.of(transaction);
+        boolean moved = transaction.getStatus() == TransactionStatus.COMPLETED;
+
+        Map<Long, List<Long>> changedAccountsByUser = new HashMap<>(4);
+        for (Account account : new Account[]{transaction.getSourceAccount(), transaction.getDestinationAccount()}) {
+            if (account != null) {
+                List<Long> changed = changedAccountsByUser.computeIfAbsent(account.getUser().getId(), id -> new ArrayList<>(2));
+                if (moved) {
+                    changed.add(account.getId());
+                }
+            }
+        }
+
+        afterCommit(() -> changedAccountsByUser.forEach((userId, accountIds) ->
+                forEachSubscriber(userId, subscriber -> subscriber.offer(notification, accountIds))));
+    }
+
+    /**
+     * Tells the users' subscribers to reload everything, for changes that are not published one
+     * transaction at a time such as a new account or an end-of-day posting run.
+     */
+    public void accountsChanged(Long userId) {
+        afterCommit(() -> forEachSubscriber(userId, Subscriber::resync));
+    }
+
+    public void accountsChanged(Collection<Long> userIds) {
+        afterCommit(() -> userIds.forEach(userId -> forEachSubscriber(userId, Subscriber::resync)));
+    }
+
+    private void forEachSubscriber(Long userId, Consumer<Subscriber> action) {
+        Set<Subscriber> set = subscribers.get(userId);
+        if (set != null) {
+            set.forEach(action);
+        }
+    }
+
+    private void heartbeat() {
+        subscribers.values().forEach(set -> set.forEach(Subscriber::heartbeat));
+    }
+
+    void checkStalls() {
+        long now = System.nanoTime();
+        subscribers.values().forEach(set -> set.forEach(subscriber -> subscriber.checkStalled(now)));
+    }
+
+    private synchronized void resizeDispatcher() {
+        dispatcher.setCorePoolSize(dispatchThreads + Math.min(stalledSends.get(), maxStalledSends));
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    private static List<Long> accountIds(List<Account> accounts) {
+        List<Long> ids = new ArrayList<>(accounts.size());
+        accounts.forEach(account -> ids.add(account.getId()));
+        return ids;
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private final class Subscriber implements Runnable {
+
+        private final Long userId;
+        private final SseEmitter emitter;
+
+        // Set while the subscriber is queued on or running in the dispatcher
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private final AtomicBoolean stalled = new AtomicBoolean();
+
+        // System.nanoTime() when the write in progress started, or 0 between writes
+        private volatile long sendStartedAt;
+
+        // Pending events, guarded by this
+        private final ArrayDeque<TransactionNotification> transactions = new ArrayDeque<>();
+        private final Set<Long> changedAccounts = new HashSet<>();
+        private boolean allAccounts = true;
+        private boolean resyncPending;
+        private boolean heartbeatPending;
+
+        Subscriber(Long userId, SseEmitter emitter) {
+            this.userId = userId;
+            this.emitter = emitter;
+        }
+
+        void offer(TransactionNotification notification, List<Long> accountIds) {
+            synchronized (this) {
+                // Once a resync is pending the client reloads its history anyway
+                if (!resyncPending) {
+                    if (transactions.size() < bufferSize) {
+                        transactions.add(notification);
+                    } else {
+                        transactions.clear();
+                        resyncPending = true;
+                        resyncs.increment();
+                    }
+                }
+                if (!allAccounts) {
+                    changedAccounts.addAll(accountIds);
+                }
+            }
+            schedule();
+        }
+
+        void resync() {
+            synchronized (this) {
+                transactions.clear();
+                changedAccounts.clear();
+                allAccounts = true;
+                resyncPending = true;
+            }
+            schedule();
+        }
+
+        void heartbeat() {
+            synchronized (this) {
+                heartbeatPending = true;
+            }
+            schedule();
+        }
+
+        void schedule() {
+            if (closed.get() || !scheduled.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                dispatcher.execute(this);
+            } catch (RejectedExecutionException e) {
+                scheduled.set(false);
+            }
+        }
+
+        void checkStalled(long now) {
+            long started = sendStartedAt;
+            if (started == 0 || now - started < TimeUnit.MILLISECONDS.toNanos(sendTimeoutMs)
+                    || !stalled.compareAndSet(false, true)) {
+                return;
+            }
+            logger.info("Account stream for user {} stopped reading, dropping it", userId);
+            close();
+            stalledSends.incrementAndGet();
+            resizeDispatcher();
+            // Counted once the stream is gone and the spare thread is there
+            stalls.increment();
+        }
+
+        @Override
+        public void run() {
+            try {
+                deliver();
+                if (stalled.get()) {
+                    emitter.complete();
+                }
+            } catch (IOException e) {
+                logger.debug("Account stream for user {} closed by the client", userId);
+                close();
+            } catch (RuntimeException e) {
+                logger.warn("Account stream for user {} failed", userId, e);
+                close();
+                emitter.completeWithError(e);
+            } finally {
+                scheduled.set(false);
+                if (stalled.get()) {
+                    stalledSends.decrementAndGet();
+                    resizeDispatcher();
+                }
+            }
+
+            if (!closed.get() && hasPending()) {
+                schedule();
+            }
+        }
+
+        private void deliver() throws IOException {
+            List<TransactionNotification> pendingTransactions;
+            Set<Long> pendingAccounts;
+            boolean reloadAll;
+            boolean resync;
+            boolean heartbeat;
+            synchronized (this) {
+                pendingTransactions = new ArrayList<>(transactions);
+                pendingAccounts = new HashSet<>(changedAccounts);
+                reloadAll = allAccounts;
+                resync = resyncPending;
+                heartbeat = heartbeatPending;
+                transactions.clear();
+                changedAccounts.clear();
+                allAccounts = false;
+                resyncPending = false;
+                heartbeatPending = false;
+            }
+
+            if (resync) {
+                send(SseEmitter.event().name("resync")
+                        .data(new MessageResponse("Updates were dropped, reload accounts and transactions"),
+                                MediaType.APPLICATION_JSON));
+            }
+            for (TransactionNotification notification : pendingTransactions) {
+                send(SseEmitter.event().name("transaction").data(notification, MediaType.APPLICATION_JSON));
+            }
+
+            if (reloadAll || !pendingAccounts.isEmpty()) {
+                List<Account> accounts = reloadAll
+                        ? accountRepository.findByUserId(userId)
+                        : accountRepository.findAllById(pendingAccounts);
+                Map<Long, BigDecimal> derived = journalLedgerService.isEnabled()
+                        ? journalLedgerService.getBalances(accountIds(accounts))
+                        : null;
+                LocalDateTime asOf = LocalDateTime.now();
+                for (Account account : accounts) {
+                    // In journal mode the stored balance only reflects the last checkpoint
+                    Money balance = derived == null
+                            ? account.getBalance()
+                            : Money.of(derived.getOrDefault(account.getId(), BigDecimal.ZERO));
+                    send(SseEmitter.event().name("balance").data(
+                            new BalanceResponse(account.getAccountNumber(), balance, asOf), MediaType.APPLICATION_JSON));
+                }
+            } else if (heartbeat && !resync && pendingTransactions.isEmpty()) {
+                send(SseEmitter.event().comment("heartbeat"));
+            }
+        }
+
+        private void send(SseEmitter.SseEventBuilder event) throws IOException {
+            // Whatever is left is not worth writing to a client that has been dropped
+            if (stalled.get()) {
+                return;
+            }
+            sendStartedAt = System.nanoTime();
+            try {
+                emitter.send(event);
+            } finally {
+                sendStartedAt = 0;
+            }
+        }
+
+        private synchronized boolean hasPending() {
+            return !transactions.isEmpty() || !changedAccounts.isEmpty() || allAccounts || resyncPending || heartbeatPending;
+        }
+
+        void close() {
+            if (closed.compareAndSet(false, true)) {
+                subscribers.computeIfPresent(userId, (id, set) -> {
+                    set.remove(this);
+                    return set.isEmpty() ? null : set;
+                });
+                subscriberCount.decrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.firstrand.banking.service;
+
+import com.firstrand.banking.model.DailyAccountSummary;
+import com.firstrand.banking.model.Money;
+import com.firstrand.banking.model.SummaryGranularity;
+import com.firstrand.banking.model.TransactionType;
+import com.firstrand.banking.model.dto.AccountSummaryResponse;
+import com.firstrand.banking.repository.DailyAccountSummaryRepository;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.sql.Savepoint;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maintains per-account, per-day, per-type totals alongside every posting so that summaries are
+ * answered from one index range scan over the rollups instead of aggregating transaction history.
+ */
+@Service
+public class AccountSummaryService {
+    
+    private static final String MERGE_SQL =
+            "MERGE INTO daily_account_summaries s "
+            + "USING (VALUES (CAST(? AS BIGINT), CAST(? AS DATE), CAST(? AS VARCHAR(255)), "
+            + "CAST(? AS BIGINT), CAST(? AS NUMERIC(38, 2)), CAST(? AS BIGINT), CAST(? AS NUMERIC(38, 2)))) "
+            + "AS v(account_id, summary_date, type, credit_count, credit_amount, debit_count, debit_amount) "
+            + "ON s.account_id = v.account_id AND s.summary_date = v.summary_date AND s.type = v.type "
+            + "WHEN MATCHED THEN UPDATE SET credit_count = s.credit_count + v.credit_count, "
+            + "credit_amount = s.credit_amount + v.credit_amount, debit_count = s.debit_count + v.debit_count, "
+            + "debit_amount = s.debit_amount + v.debit_amount "
+            + "WHEN NOT MATCHED THEN INSERT (account_id, summary_date, type, credit_count, credit_amount, "
+            + "debit_count, debit_amount) VALUES (v.account_id, v.summary_date, v.type, v.credit_count, "
+            + "v.credit_amount, v.debit_count, v.debit_amount)";
+    
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    
+    @Autowired
+    private DailyAccountSummaryRepository summaryRepository;
+    
+    public void recordPosting(Long sourceAccountId, Long destinationAccountId, TransactionType type,
+                              Money amount, LocalDateTime timestamp) {
+        Posting posting = new Posting(sourceAccountId, destinationAccountId, type, amount.toBigDecimal(), timestamp);
+        for (Object[] row : toRows(posting)) {
+            merge(row);
+        }
+    }
+    
+    // Used by batch jobs, which own the accounts they post to and so never race on a rollup row
+    public void recordPostings(List<Posting> postings) {
+        List<Object[]> rows = new ArrayList<>(postings.size());
+        for (Posting posting : postings) {
+            rows.addAll(toRows(posting));
+        }
+        jdbcTemplate.batchUpdate(MERGE_SQL, rows);
+    }
+    
+    public List<AccountSummaryResponse> getSummary(Long accountId, LocalDate from, LocalDate to,
+                                                   SummaryGranularity granularity) {
+        List<DailyAccountSummary> days =
+                summaryRepository.findByAccountIdAndSummaryDateBetweenOrderBySummaryDate(accountId, from, to);
+        
+        Map<String, AccountSummaryResponse> periods = new LinkedHashMap<>();
+        for (DailyAccountSummary day : days) {
+            LocalDate period = granularity == SummaryGranularity.MONTH
+                    ? day.getSummaryDate().withDayOfMonth(1)
+                    : day.getSummaryDate();
+            
+            AccountSummaryResponse response = periods.computeIfAbsent(period + ":" + day.getType(),
+                    key -> new AccountSummaryResponse(period, day.getType(), 0, BigDecimal.ZERO, 0, BigDecimal.ZERO));
+            response.setCreditCount(response.getCreditCount() + day.getCreditCount());
+            response.setCreditAmount(response.getCreditAmount().add(day.getCreditAmount()));
+            response.setDebitCount(response.getDebitCount() + day.getDebitCount());
+            response.setDebitAmount(response.getDebitAmount().add(day.getDebitAmount()));
+        }
+        
+        return new ArrayList<>(periods.values());
+    }
+    
+    // The first attempt runs in a savepoint of the posting's transaction: on PostgreSQL a failed
+    // statement aborts the whole transaction unless it is rolled back to a savepoint first
+    private void merge(Object[] row) {
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            Savepoint savepoint = connection.getAutoCommit() ? null : connection.setSavepoint();
+            try {
+                jdbcTemplate.update(MERGE_SQL, row);
+            } catch (DuplicateKeyException e) {
+                // Another posting created the same day's row first; merging again now updates it
+                if (savepoint != null) {
+                    connection.rollback(savepoint);
+                    savepoint = null;
+                }
+                jdbcTemplate.update(MERGE_SQL, row);
+            }
+            if (savepoint != null) {
+                connection.releaseSavepoint(savepoint);
+            }
+            return null;
+        });
+    }
+    
+    private List<Object[]> toRows(Posting posting) {
+        List<Object[]> rows = new ArrayList<>(2);
+        LocalDate day = posting.getTimestamp().toLocalDate();
+        String type = posting.getType().name();
+        
+        if (posting.getDestinationAccountId() != null) {
+            rows.add(new Object[]{posting.getDestinationAccountId(), day, type,
+                    1L, posting.getAmount(), 0L, BigDecimal.ZERO});
+        }
+        if (posting.getSourceAccountId() != null) {
+            rows.add(new Object[]{posting.getSourceAccountId(), day, type,
+                    0L, BigDecimal.ZERO, 1L, posting.getAmount()});
+        }
+        
+        // Rollup rows are merged in account order, so two transfers in opposite directions take
+        // their row locks in the same order instead of deadlocking
+        rows.sort(Comparator.comparing(row -> (Long) row[0]));
+        return rows;
+    }
+    
+    @Data
+    @AllArgsConstructor
+    public static class Posting {
+        private Long sourceAccountId;
+        private Long destinationAccountId;
+        private TransactionType type;
+        private BigDecimal amount;
+        private LocalDateTime timestamp;
+    }
+}
@@ -0,0 +1,75 @@
+package com.firstrand.banking.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Versions of each user's account list, for the ETag on {@code GET /api/accounts}. Users are hashed
+ * onto a fixed array of counters, so the index stays the same size however many users there are; a
+ * change to one user also changes the tag of any user sharing the slot, which only costs those
+ * users a full response.
+ *
+ * <p>Writers bump the version after their transaction commits and readers take the tag before
+ * loading, so a tag can be older than the body it is sent with but never newer. Tags carry a
+ * per-process id because the counters start from zero on every boot.
+ */
+@Service
+public class AccountVersionIndex {
+
+    private final String instanceId = Long.toString(ThreadLocalRandom.current().nextLong() >>> 1, 36);
+
+    // Bumped when every tag has to change, e.g. after a bulk balance update
+    private final AtomicLong epoch = new AtomicLong();
+
+    private final AtomicLongArray versions;
+
+    public AccountVersionIndex(@Value("${http-cache.account-version-slots:65536}") int slots) {
+        this.versions = new AtomicLongArray(Integer.highestOneBit(Math.max(1, slots - 1)) << 1);
+    }
+
+    public String accountsTag(Long userId) {
+        return instanceId + "-" + epoch.get() + "-" + userId + "-" + versions.get(slot(userId));
+    }
+
+    /**
+     * Marks the user's account list as changed once the current transaction commits, or straight
+     * away outside one.
+     */
+    public void accountsChanged(Long userId) {
+        afterCommit(() -> versions.incrementAndGet(slot(userId)));
+    }
+
+    public void accountsChanged(Collection<Long> userIds) {
+        afterCommit(() -> userIds.forEach(userId -> versions.incrementAndGet(slot(userId))));
+    }
+
+    public void invalidateAll() {
+        afterCommit(epoch::incrementAndGet);
+    }
+
+    private int slot(Long userId) {
+        long hash = userId * 0x9E3779B97F4A7C15L;
+        return (int) (hash >>> 32) & (versions.length() - 1);
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
@@ -0,0 +1,693 @@
+package com.firstrand.banking.service;
+
+import com.firstrand.banking.model.TransactionStatus;
+import com.firstrand.banking.model.TransactionType;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * One immutable archive segment: the archived transactions with ids in {@code [fromId, toId)},
+ * stored as one row per account side and sorted by account, newest first, so an account's history
+ * is a contiguous run of rows. Rows are deflated in blocks of {@value #BLOCK_ROWS}, each block
+ * column by column. The account directory at the end of the file is the sparse index: it maps an
+ * account to its first row and row count, from which the blocks to inflate follow, and also holds
+ * the account's completed credit and debit totals so reconciliation never inflates a block.
+ *
+ * <pre>
+ * header:   int64 magic
+ * blocks:   deflated; per column, every row of the block in turn:
+ *             id (zigzag varint delta), epoch second (zigzag varint delta), nanos (varint),
+ *             source and destination account (varint, 0 for none), amount in cents (zigzag varint),
+ *             type and status (byte), reference and description (varint length + 1, 0 for none, UTF-8)
+ * accounts: per account in id order: int64 accountId, int32 firstRow, int32 rowCount,
+ *           int64 creditCents, int64 debitCents, int32 completedLegs, int32 unused
+ * blocks:   per block: int64 offset, int32 compressedLength, int32 rawLength
+ * ids:      per id in [fromId, toId): int32 row holding the transaction, -1 for none
+ * footer:   int64 fromId, int64 toId, int32 rowCount, int32 transactionCount, int32 accountCount,
+ *           int32 blockCount, int64 accountsOffset, int64 blocksOffset, int64 idsOffset, int64 magic
+ * </pre>
+ *
+ * Instances are safe for concurrent readers: the file is mapped read-only and only read with
+ * absolute gets.
+ */
+public final class ArchiveSegmentFile {
+
+    static final int BLOCK_ROWS = 512;
+
+    private static final long MAGIC = 0x4652545853454731L; // "FRTXSEG1"
+
+    private static final int ACCOUNT_ENTRY_BYTES = 40;
+    private static final int BLOCK_ENTRY_BYTES = 16;
+    private static final int FOOTER_BYTES = 64;
+
+    private static final TransactionType[] TYPES = TransactionType.values();
+    private static final TransactionStatus[] STATUSES = TransactionStatus.values();
+
+    private final Path path;
+    private final MappedByteBuffer buffer;
+    private final long fromId;
+    private final long toId;
+    private final int rowCount;
+    private final int transactionCount;
+    private final int accountCount;
+    private final int blockCount;
+    private final int accountsOffset;
+    private final int blocksOffset;
+    private final int idsOffset;
+
+    private ArchiveSegmentFile(Path path, MappedByteBuffer buffer) throws IOException {
+        this.path = path;
+        this.buffer = buffer;
+
+        int footer = buffer.capacity() - FOOTER_BYTES;
+        if (footer < 8 || buffer.getLong(0) != MAGIC || buffer.getLong(footer + 56) != MAGIC) {
+            throw new IOException("Not an archive segment: " + path);
+        }
+        fromId = buffer.getLong(footer);
+        toId = buffer.getLong(footer + 8);
+        rowCount = buffer.getInt(footer + 16);
+        transactionCount = buffer.getInt(footer + 20);
+        accountCount = buffer.getInt(footer + 24);
+        blockCount = buffer.getInt(footer + 28);
+        accountsOffset = (int) buffer.getLong(footer + 32);
+        blocksOffset = (int) buffer.getLong(footer + 40);
+        idsOffset = (int) buffer.getLong(footer + 48);
+    }
+
+    /**
+     * An archived transaction with its accounts as ids.
+     */
+    public static final class Entry {
+
+        private final long id;
+        private final Long sourceAccountId;
+        private final Long destinationAccountId;
+        private final long amount;
+        private final TransactionType type;
+        private final TransactionStatus status;
+        private final LocalDateTime timestamp;
+        private final String reference;
+        private final String description;
+
+        public Entry(long id, Long sourceAccountId, Long destinationAccountId, long amount, TransactionType type,
+                     TransactionStatus status, LocalDateTime timestamp, String reference, String description) {
+            this.id = id;
+            this.sourceAccountId = sourceAccountId;
+            this.destinationAccountId = destinationAccountId;
+            this.amount = amount;
+            this.type = type;
+            this.status = status;
+            this.timestamp = timestamp;
+            this.reference = reference;
+            this.description = description;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public Long getSourceAccountId() {
+            return sourceAccountId;
+        }
+
+        public Long getDestinationAccountId() {
+            return destinationAccountId;
+        }
+
+        public long getAmount() {
+            return amount;
+        }
+
+        public TransactionType getType() {
+            return type;
+        }
+
+        public TransactionStatus getStatus() {
+            return status;
+        }
+
+        public LocalDateTime getTimestamp() {
+            return timestamp;
+        }
+
+        public String getReference() {
+            return reference;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+    }
+
+    @FunctionalInterface
+    public interface TotalsSink {
+        void accept(long accountId, long creditCents, long debitCents, int completedLegs);
+    }
+
+    /**
+     * Writes the entries, which must be in ascending id order and within {@code [fromId, toId)},
+     * to the file and forces it to disk. Returns the file's size.
+     */
+    public static long write(Path file, long fromId, long toId, List<Entry> entries) throws IOException {
+        if (toId - fromId > Integer.MAX_VALUE / 4) {
+            throw new IllegalArgumentException("Id range too wide for one segment: " + fromId + ".." + toId);
+        }
+
+        // One row per account side; a transfer to the same account is a single row
+        long[] accounts = new long[entries.size() * 2];
+        int[] owners = new int[entries.size() * 2];
+        int rowCount = 0;
+        for (int i = 0; i < entries.size(); i++) {
+            Entry entry = entries.get(i);
+            if (entry.sourceAccountId != null) {
+                accounts[rowCount] = entry.sourceAccountId;
+                owners[rowCount++] = i;
+            }
+            if (entry.destinationAccountId != null && !entry.destinationAccountId.equals(entry.sourceAccountId)) {
+                accounts[rowCount] = entry.destinationAccountId;
+                owners[rowCount++] = i;
+            }
+        }
+
+        // Account ascending, then newest first; entries are in id order, so the later one wins a tie
+        Integer[] order = new Integer[rowCount];
+        for (int i = 0; i < rowCount; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.<Integer>comparingLong(r -> accounts[r])
+                .thenComparing(r -> entries.get(owners[r]).timestamp, Comparator.reverseOrder())
+                .thenComparing(r -> owners[r], Comparator.reverseOrder()));
+
+        long[] rowAccounts = new long[rowCount];
+        int[] rowEntries = new int[rowCount];
+        for (int i = 0; i < rowCount; i++) {
+            rowAccounts[i] = accounts[order[i]];
+            rowEntries[i] = owners[order[i]];
+        }
+
+        int blockCount = (rowCount + BLOCK_ROWS - 1) / BLOCK_ROWS;
+        long[] blockOffsets = new long[blockCount];
+        int[] blockLengths = new int[blockCount];
+        int[] blockRawLengths = new int[blockCount];
+        int[] rowOfId = new int[(int) (toId - fromId)];
+        Arrays.fill(rowOfId, -1);
+
+        try (FileOutputStream stream = new FileOutputStream(file.toFile())) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 64 * 1024));
+            out.writeLong(MAGIC);
+
+            Encoder raw = new Encoder();
+            byte[] compressed = new byte[64 * 1024];
+            Deflater deflater = new Deflater();
+            try {
+                for (int block = 0; block < blockCount; block++) {
+                    int first = block * BLOCK_ROWS;
+                    int last = Math.min(rowCount, first + BLOCK_ROWS);
+                    encodeBlock(raw, entries, rowEntries, first, last);
+
+                    deflater.reset();
+                    deflater.setInput(raw.bytes, 0, raw.length);
+                    deflater.finish();
+                    blockOffsets[block] = out.size();
+                    while (!deflater.finished()) {
+                        int n = deflater.deflate(compressed);
+                        out.write(compressed, 0, n);
+                    }
+                    blockLengths[block] = (int) (out.size() - blockOffsets[block]);
+                    blockRawLengths[block] = raw.length;
+                }
+            } finally {
+                deflater.end();
+            }
+
+            long accountsOffset = out.size();
+            int accountCount = 0;
+            for (int first = 0; first < rowCount; ) {
+                long account = rowAccounts[first];
+                int last = first;
+                long credits = 0;
+                long debits = 0;
+                int legs = 0;
+                while (last < rowCount && rowAccounts[last] == account) {
+                    Entry entry = entries.get(rowEntries[last]);
+                    if (rowOfId[(int) (entry.id - fromId)] < 0) {
+                        rowOfId[(int) (entry.id - fromId)] = last;
+                    }
+                    if (entry.status == TransactionStatus.COMPLETED) {
+                        // A transfer to the same account counts on both sides, as it does in the table
+                        if (Long.valueOf(account).equals(entry.destinationAccountId)) {
+                            credits += entry.amount;
+                            legs++;
+                        }
+                        if (Long.valueOf(account).equals(entry.sourceAccountId)) {
+                            debits += entry.amount;
+                            legs++;
+                        }
+                    }
+                    last++;
+                }
+
+                out.writeLong(account);
+                out.writeInt(first);
+                out.writeInt(last - first);
+                out.writeLong(credits);
+                out.writeLong(debits);
+                out.writeInt(legs);
+                out.writeInt(0);
+                accountCount++;
+                first = last;
+            }
+
+            long blocksOffset = out.size();
+            for (int block = 0; block < blockCount; block++) {
+                out.writeLong(blockOffsets[block]);
+                out.writeInt(blockLengths[block]);
+                out.writeInt(blockRawLengths[block]);
+            }
+
+            long idsOffset = out.size();
+            for (int row : rowOfId) {
+                out.writeInt(row);
+            }
+
+            out.writeLong(fromId);
+            out.writeLong(toId);
+            out.writeInt(rowCount);
+            out.writeInt(entries.size());
+            out.writeInt(accountCount);
+            out.writeInt(blockCount);
+            out.writeLong(accountsOffset);
+            out.writeLong(blocksOffset);
+            out.writeLong(idsOffset);
+            out.writeLong(MAGIC);
+
+            out.flush();
+            stream.getFD().sync();
+            // DataOutputStream's count stops at Integer.MAX_VALUE, and the file is mapped as one buffer
+            if (out.size() == Integer.MAX_VALUE) {
+                throw new IOException("Archive segment larger than 2 GB: " + file);
+            }
+            return out.size();
+        }
+    }
+
+    public static ArchiveSegmentFile open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new ArchiveSegmentFile(file, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public long getFromId() {
+        return fromId;
+    }
+
+    public long getToId() {
+        return toId;
+    }
+
+    public int getTransactionCount() {
+        return transactionCount;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public int countByAccount(long accountId) {
+        int slot = findAccount(accountId);
+        return slot < 0 ? 0 : buffer.getInt(accountEntry(slot) + 12);
+    }
+
+    /**
+     * Adds up to {@code limit} of the account's transactions, newest first, skipping the first
+     * {@code offset}.
+     */
+    public void readAccount(long accountId, int offset, int limit, List<Entry> into) {
+        int slot = findAccount(accountId);
+        if (slot < 0 || limit <= 0) {
+            return;
+        }
+
+        int entry = accountEntry(slot);
+        int count = buffer.getInt(entry + 12);
+        int first = buffer.getInt(entry + 8) + offset;
+        int last = buffer.getInt(entry + 8) + Math.min(count, offset + limit);
+
+        RowReader rows = new RowReader();
+        for (int row = first; row < last; row++) {
+            into.add(rows.get(row));
+        }
+    }
+
+    public Entry findById(long id) {
+        if (id < fromId || id >= toId) {
+            return null;
+        }
+        int row = buffer.getInt(idsOffset + (int) (id - fromId) * 4);
+        return row < 0 ? null : decodeBlock(row / BLOCK_ROWS)[row % BLOCK_ROWS];
+    }
+
+    /**
+     * Reports the completed totals of every account in {@code [fromAccountId, toAccountId)} that has
+     * rows in this segment.
+     */
+    public void forEachAccountTotals(long fromAccountId, long toAccountId, TotalsSink sink) {
+        int low = 0;
+        int high = accountCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (buffer.getLong(accountEntry(middle)) < fromAccountId) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        for (int slot = low; slot < accountCount; slot++) {
+            int entry = accountEntry(slot);
+            long accountId = buffer.getLong(entry);
+            if (accountId >= toAccountId) {
+                break;
+            }
+            sink.accept(accountId, buffer.getLong(entry + 16), buffer.getLong(entry + 24), buffer.getInt(entry + 32));
+        }
+    }
+
+    /**
+     * Adds the account's completed credits to {@code totals[0]} and debits to {@code totals[1]}, for
+     * its transactions timestamped in {@code [from, to)}. The account's rows are newest first, so
+     * this is a binary search for the first row before {@code to} and a scan from there.
+     */
+    public void sumAccountBetween(long accountId, LocalDateTime from, LocalDateTime to, long[] totals) {
+        int slot = findAccount(accountId);
+        if (slot < 0) {
+            return;
+        }
+
+        int first = buffer.getInt(accountEntry(slot) + 8);
+        int end = first + buffer.getInt(accountEntry(slot) + 12);
+        RowReader rows = new RowReader();
+
+        int low = first;
+        int high = end;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (rows.get(middle).timestamp.isBefore(to)) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+
+        for (int row = low; row < end; row++) {
+            Entry entry = rows.get(row);
+            if (entry.timestamp.isBefore(from)) {
+                break;
+            }
+            if (entry.status == TransactionStatus.COMPLETED) {
+                if (Long.valueOf(accountId).equals(entry.destinationAccountId)) {
+                    totals[0] += entry.amount;
+                }
+                if (Long.valueOf(accountId).equals(entry.sourceAccountId)) {
+                    totals[1] += entry.amount;
+                }
+            }
+        }
+    }
+
+    /**
+     * Passes every transaction to the consumer in ascending id order. Inflates the whole segment,
+     * so it is meant for rebuilds rather than queries.
+     */
+    public void forEachById(Consumer<Entry> consumer) {
+        Entry[] all = new Entry[rowCount];
+        for (int block = 0; block < blockCount; block++) {
+            Entry[] decoded = decodeBlock(block);
+            System.arraycopy(decoded, 0, all, block * BLOCK_ROWS, decoded.length);
+        }
+
+        for (int i = 0; i < toId - fromId; i++) {
+            int row = buffer.getInt(idsOffset + i * 4);
+            if (row >= 0) {
+                consumer.accept(all[row]);
+            }
+        }
+    }
+
+    private int findAccount(long accountId) {
+        int low = 0;
+        int high = accountCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long value = buffer.getLong(accountEntry(middle));
+            if (value < accountId) {
+                low = middle + 1;
+            } else if (value > accountId) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    private int accountEntry(int slot) {
+        return accountsOffset + slot * ACCOUNT_ENTRY_BYTES;
+    }
+
+    private Entry[] decodeBlock(int block) {
+        int entry = blocksOffset + block * BLOCK_ENTRY_BYTES;
+        int offset = (int) buffer.getLong(entry);
+        int length = buffer.getInt(entry + 8);
+        byte[] raw = new byte[buffer.getInt(entry + 12)];
+
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(buffer.slice(offset, length));
+            int inflated = 0;
+            while (inflated < raw.length && !inflater.finished()) {
+                inflated += inflater.inflate(raw, inflated, raw.length - inflated);
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt block " + block + " in archive segment " + path, e);
+        } finally {
+            inflater.end();
+        }
+
+        int rows = Math.min(BLOCK_ROWS, rowCount - block * BLOCK_ROWS);
+        return decodeRows(new Decoder(raw), rows);
+    }
+
+    private Entry[] decodeRows(Decoder in, int rows) {
+        long[] ids = new long[rows];
+        long previous = 0;
+        for (int i = 0; i < rows; i++) {
+            previous += unzigzag(in.readVarLong());
+            ids[i] = previous;
+        }
+        long[] seconds = new long[rows];
+        previous = 0;
+        for (int i = 0; i < rows; i++) {
+            previous += unzigzag(in.readVarLong());
+            seconds[i] = previous;
+        }
+        int[] nanos = new int[rows];
+        for (int i = 0; i < rows; i++) {
+            nanos[i] = (int) in.readVarLong();
+        }
+        long[] sources = new long[rows];
+        for (int i = 0; i < rows; i++) {
+            sources[i] = in.readVarLong();
+        }
+        long[] destinations = new long[rows];
+        for (int i = 0; i < rows; i++) {
+            destinations[i] = in.readVarLong();
+        }
+        long[] amounts = new long[rows];
+        for (int i = 0; i < rows; i++) {
+            amounts[i] = unzigzag(in.readVarLong());
+        }
+        byte[] types = in.readBytes(rows);
+        byte[] statuses = in.readBytes(rows);
+        String[] references = new String[rows];
+        for (int i = 0; i < rows; i++) {
+            references[i] = in.readString();
+        }
+        String[] descriptions = new String[rows];
+        for (int i = 0; i < rows; i++) {
+            descriptions[i] = in.readString();
+        }
+
+        Entry[] entries = new Entry[rows];
+        for (int i = 0; i < rows; i++) {
+            entries[i] = new Entry(ids[i],
+                    sources[i] == 0 ? null : sources[i],
+                    destinations[i] == 0 ? null : destinations[i],
+                    amounts[i], TYPES[types[i]], STATUSES[statuses[i]],
+                    LocalDateTime.ofEpochSecond(seconds[i], nanos[i], ZoneOffset.UTC),
+                    references[i], descriptions[i]);
+        }
+        return entries;
+    }
+
+    // Rows by number, keeping the last inflated block
+    private final class RowReader {
+
+        private int block = -1;
+        private Entry[] rows;
+
+        Entry get(int row) {
+            if (row / BLOCK_ROWS != block) {
+                block = row / BLOCK_ROWS;
+                rows = decodeBlock(block);
+            }
+            return rows[row - block * BLOCK_ROWS];
+        }
+    }
+
+    private static void encodeBlock(Encoder out, List<Entry> entries, int[] rowEntries, int first, int last) {
+        out.length = 0;
+        long previous = 0;
+        for (int row = first; row < last; row++) {
+            long id = entries.get(rowEntries[row]).id;
+            out.writeVarLong(zigzag(id - previous));
+            previous = id;
+        }
+        previous = 0;
+        for (int row = first; row < last; row++) {
+            long second = entries.get(rowEntries[row]).timestamp.toEpochSecond(ZoneOffset.UTC);
+            out.writeVarLong(zigzag(second - previous));
+            previous = second;
+        }
+        for (int row = first; row < last; row++) {
+            out.writeVarLong(entries.get(rowEntries[row]).timestamp.getNano());
+        }
+        for (int row = first; row < last; row++) {
+            Long source = entries.get(rowEntries[row]).sourceAccountId;
+            out.writeVarLong(source == null ? 0 : source);
+        }
+        for (int row = first; row < last; row++) {
+            Long destination = entries.get(rowEntries[row]).destinationAccountId;
+            out.writeVarLong(destination == null ? 0 : destination);
+        }
+        for (int row = first; row < last; row++) {
+            out.writeVarLong(zigzag(entries.get(rowEntries[row]).amount));
+        }
+        for (int row = first; row < last; row++) {
+            out.writeByte(entries.get(rowEntries[row]).type.ordinal());
+        }
+        for (int row = first; row < last; row++) {
+            out.writeByte(entries.get(rowEntries[row]).status.ordinal());
+        }
+        for (int row = first; row < last; row++) {
+            out.writeString(entries.get(rowEntries[row]).reference);
+        }
+        for (int row = first; row < last; row++) {
+            out.writeString(entries.get(rowEntries[row]).description);
+        }
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static final class Encoder {
+
+        private byte[] bytes = new byte[64 * 1024];
+        private int length;
+
+        void writeVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                bytes[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[length++] = (byte) value;
+        }
+
+        void writeByte(int value) {
+            ensure(1);
+            bytes[length++] = (byte) value;
+        }
+
+        void writeString(String value) {
+            if (value == null) {
+                writeVarLong(0);
+                return;
+            }
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(utf8.length + 1L);
+            ensure(utf8.length);
+            System.arraycopy(utf8, 0, bytes, length, utf8.length);
+            length += utf8.length;
+        }
+
+        private void ensure(int extra) {
+            if (length + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + extra));
+            }
+        }
+    }
+
+    private static final class Decoder {
+
+        private final byte[] bytes;
+        private int position;
+
+        Decoder(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        long readVarLong() {
+            long value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = bytes[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        }
+
+        byte[] readBytes(int count) {
+            byte[] value = Arrays.copyOfRange(bytes, position, position + count);
+            position += count;
+            return value;
+        }
+
+        String readString() {
+            int length = (int) readVarLong() - 1;
+            if (length < 0) {
+                return null;
+            }
+            String value = new String(bytes, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.firstrand.banking.service;
+
+import com.firstrand.banking.model.Money;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Answers "balance of an account as of a point in time" from closing-balance checkpoints. A
+ * background job writes, for each day once it has closed, a checkpoint for every account with
+ * postings that day: the previous checkpoint plus the day's rollups from
+ * {@code daily_account_summaries}. A query takes the latest checkpoint before the day of the
+ * requested time and adds the postings from the start of that day up to the time, so it never
+ * reads more than a day of the account's transactions (plus {@code balance-checkpoints.lag-ms}
+ * for a time on the last day or two), however old the account is.
+ *
+ * <p>Until the first roll-forward after startup has caught up there is no checkpoint to start from,
+ * and a query would have to add up the account's whole history, so queries are refused until then.
+ *
+ * <p>Balances are those the transaction log implies, the same ones reconciliation computes, so a
+ * balance set outside a transaction is not part of them.
+ */
+@Service
+public class BalanceHistoryService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BalanceHistoryService.class);
+
+    private static final String CHECKPOINT_DAY_SQL =
+            "INSERT INTO balance_checkpoints (account_id, checkpoint_date, balance) "
+            + "SELECT s.account_id, CAST(? AS DATE), COALESCE((SELECT c.balance FROM balance_checkpoints c "
+            + "WHERE c.account_id = s.account_id ORDER BY c.checkpoint_date DESC LIMIT 1), 0) "
+            + "+ SUM(s.credit_amount) - SUM(s.debit_amount) "
+            + "FROM daily_account_summaries s WHERE s.summary_date = ? GROUP BY s.account_id";
+
+    // Running total of each account's daily rollups, for accounts with no checkpoints yet
+    private static final String CHECKPOINT_ACCOUNTS_SQL =
+            "INSERT INTO balance_checkpoints (account_id, checkpoint_date, balance) "
+            + "SELECT account_id, summary_date, SUM(SUM(credit_amount) - SUM(debit_amount)) "
+            + "OVER (PARTITION BY account_id ORDER BY summary_date) "
+            + "FROM daily_account_summaries WHERE account_id BETWEEN ? AND ? AND summary_date <= ? "
+            + "GROUP BY account_id, summary_date";
+
+    private static final String LATEST_CHECKPOINT_SQL =
+            "SELECT balance FROM balance_checkpoints WHERE account_id = ? AND checkpoint_date <= ? "
+            + "ORDER BY checkpoint_date DESC LIMIT 1";
+
+    // Each side is its own range scan over the account's (account, timestamp) index
+    private static final String POSTINGS_BETWEEN_SQL =
+            "SELECT (SELECT COALESCE(SUM(amount), 0) FROM transactions WHERE destination_account_id = ? "
+            + "AND timestamp >= ? AND timestamp < ? AND status = 'COMPLETED'), "
+            + "(SELECT COALESCE(SUM(amount), 0) FROM transactions WHERE source_account_id = ? "
+            + "AND timestamp >= ? AND timestamp < ? AND status = 'COMPLETED')";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionArchiveService transactionArchiveService;
+
+    @Value("${balance-checkpoints.enabled:true}")
+    private boolean enabled;
+
+    // A day is checkpointed only this long after it ends, so postings still committing are not missed
+    @Value("${balance-checkpoints.lag-ms:3600000}")
+    private long lagMs;
+
+    // Last day whose closing balances are all written; null until known
+    private volatile LocalDate checkpointedThrough;
+
+    // Set once a roll-forward has written every closed day, so no query scans more than the lag
+    private volatile boolean ready;
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * The balance the account's completed transactions add up to just before {@code asOf}.
+     *
+     * @throws IllegalStateException if the checkpoints have not caught up since startup
+     */
+    public Money getBalanceAsOf(long accountId, LocalDateTime asOf) {
+        LocalDate through = checkpointedThrough;
+        if (!ready || through == null) {
+            throw new IllegalStateException("Balance checkpoints are still being written");
+        }
+
+        BigDecimal balance = BigDecimal.ZERO;
+        LocalDate base = asOf.toLocalDate().minusDays(1);
+        if (base.isAfter(through)) {
+            base = through;
+        }
+        List<BigDecimal> checkpoint = jdbcTemplate.queryForList(
+                LATEST_CHECKPOINT_SQL, BigDecimal.class, accountId, Date.valueOf(base));
+        if (!checkpoint.isEmpty()) {
+            balance = checkpoint.get(0);
+        }
+        LocalDateTime scanFrom = base.plusDays(1).atStartOfDay();
+
+        Timestamp from = Timestamp.valueOf(scanFrom);
+        Timestamp to = Timestamp.valueOf(asOf);
+        Lock archiveLock = transactionArchiveService.readLock();
+        archiveLock.lock();
+        try {
+            BigDecimal[] postings = jdbcTemplate.queryForObject(POSTINGS_BETWEEN_SQL,
+                    (rs, rowNum) -> new BigDecimal[]{rs.getBigDecimal(1), rs.getBigDecimal(2)},
+                    accountId, from, to, accountId, from, to);
+            long[] archived = transactionArchiveService.sumAccountBetween(accountId, scanFrom, asOf);
+
+            return Money.of(balance.add(postings[0]).subtract(postings[1]))
+                    .plus(Money.ofMinorUnits(archived[0]))
+                    .minus(Money.ofMinorUnits(archived[1]));
+        } finally {
+            archiveLock.unlock();
+        }
+    }
+
+    /**
+     * Writes the checkpoints of every closed day after the last checkpointed one. The first run,
+     * which the scheduler starts as soon as the application is up, starts from the earliest day with
+     * postings, so it backfills the whole history.
+     */
+    @Scheduled(fixedDelayString = "${balance-checkpoints.interval-ms:600000}")
+    public synchronized void rollForward() {
+        if (!enabled) {
+            return;
+        }
+
+        LocalDate lastClosed = LocalDateTime.now().minusNanos(lagMs * 1_000_000).toLocalDate().minusDays(1);
+        if (checkpointedThrough == null) {
+            checkpointedThrough = findCheckpointedThrough();
+            if (checkpointedThrough == null) {
+                // Nothing has been posted, so every closed day is trivially checkpointed
+                checkpointedThrough = lastClosed;
+            }
+        }
+
+        int days = 0;
+        for (LocalDate day = checkpointedThrough.plusDays(1); !day.isAfter(lastClosed); day = day.plusDays(1)) {
+            // One INSERT ... SELECT per day, so a day's checkpoints are written all together or not at all
+            int accounts = jdbcTemplate.update(CHECKPOINT_DAY_SQL, Date.valueOf(day), Date.valueOf(day));
+            checkpointedThrough = day;
+            days++;
+            logger.debug("Checkpointed closing balances of {} accounts for {}", accounts, day);
+        }
+
+        if (days > 0) {
+            logger.info("Balance checkpoints written through {} ({} days)", checkpointedThrough, days);
+        }
+        ready = true;
+    }
+
+    /**
+     * Writes the checkpoints of accounts whose whole history was loaded at once, behind days that
+     * may already be checkpointed: every day of theirs up to the checkpointed one, in a single pass
+     * over their rollups. Later days are left to {@link #rollForward()} as usual.
+     */
+    public synchronized void checkpointLoadedAccounts(long fromAccountId, long toAccountId) {
+        if (!enabled) {
+            return;
+        }
+
+        if (checkpointedThrough == null) {
+            checkpointedThrough = findCheckpointedThrough();
+            if (checkpointedThrough == null) {
+                return;
+            }
+        }
+
+        // A roll-forward that ran after their rollups were written added days without the ones before
+        jdbcTemplate.update("DELETE FROM balance_checkpoints WHERE account_id BETWEEN ? AND ?", fromAccountId, toAccountId);
+        int written = jdbcTemplate.update(CHECKPOINT_ACCOUNTS_SQL, fromAccountId, toAccountId, Date.valueOf(checkpointedThrough));
+        logger.info("Wrote {} balance checkpoints for loaded accounts {} to {}", written, fromAccountId, toAccountId);
+    }
+
+    // Days after the latest checkpoint that had no postings are simply redone, writing nothing
+    private LocalDate findCheckpointedThrough() {
+        Date latest = jdbcTemplate.queryForObject("SELECT MAX(checkpoint_date) FROM balance_checkpoints", Date.class);
+        if (latest == null) {
+            latest = jdbcTemplate.queryForObject("SELECT MIN(summary_date) - 1 FROM daily_account_summaries", Date.class);
+        }
+        return latest == null ? null : latest.toLocalDate();
+    }
+}
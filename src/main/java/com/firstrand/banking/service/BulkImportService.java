@@ -0,0 +1,629 @@
+package com.firstrand.banking.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.firstrand.banking.model.AccountType;
+import com.firstrand.banking.model.ERole;
+import com.firstrand.banking.model.ImportFormat;
+import com.firstrand.banking.model.Role;
+import com.firstrand.banking.model.dto.AccountRequest;
+import com.firstrand.banking.model.dto.ImportRow;
+import com.firstrand.banking.model.dto.ImportRowError;
+import com.firstrand.banking.model.dto.ImportStatus;
+import com.firstrand.banking.model.dto.SignupRequest;
+import com.firstrand.banking.repository.RoleRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Onboards customers in bulk from an NDJSON or CSV stream. Rows are validated one by one, then
+ * handled in chunks: duplicates are found with one set-based query per chunk, passwords are
+ * hashed in parallel, and users, their roles and their accounts go in as JDBC batches inside a
+ * single transaction per chunk.
+ */
+@Service
+public class BulkImportService {
+    
+    private static final Logger logger = LoggerFactory.getLogger(BulkImportService.class);
+    
+    private static final String INSERT_USER_SQL =
+            "INSERT INTO users (username, email, password, first_name, last_name, phone_number) VALUES (?, ?, ?, ?, ?, ?)";
+    
+    private static final String INSERT_USER_ROLE_SQL =
+            "INSERT INTO user_roles (user_id, role_id) VALUES (?, ?)";
+    
+    private static final String INSERT_ACCOUNT_SQL =
+            "INSERT INTO accounts (account_number, account_type, balance, created_at, updated_at, account_name, "
+            + "active, user_id) VALUES (?, ?, 0, ?, ?, ?, TRUE, ?)";
+    
+    private static final Pattern BCRYPT_HASH = Pattern.compile("\\A\\$2[abxy]?\\$\\d\\d\\$[./A-Za-z0-9]{53}\\z");
+    
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    
+    @Autowired
+    private NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+    
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    
+    @Autowired
+    private RoleRepository roleRepository;
+    
+    @Autowired
+    private ObjectMapper objectMapper;
+    
+    @Autowired
+    private Validator validator;
+    
+    @Autowired
+    private UserExistenceFilter userExistenceFilter;
+    
+    @Value("${import.chunk-size:2000}")
+    private int chunkSize;
+    
+    // 0 means one hashing thread per available processor
+    @Value("${import.hashing-threads:0}")
+    private int hashingThreads;
+    
+    @Value("${import.max-reported-errors:1000}")
+    private int maxReportedErrors;
+    
+    @Value("${security.password-hashing.bcrypt-strength:10}")
+    private int bcryptStrength;
+    
+    private BCryptPasswordEncoder encoder;
+    
+    private ExecutorService hashingPool;
+    
+    private TransactionTemplate transactionTemplate;
+    
+    private final AtomicReference<Run> currentRun = new AtomicReference<>();
+    
+    @PostConstruct
+    void init() {
+        encoder = new BCryptPasswordEncoder(bcryptStrength);
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        
+        // Kept apart from the signin hashing pool so an import never pushes logins into 503s
+        int threads = hashingThreads > 0 ? hashingThreads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadNumber = new AtomicInteger();
+        hashingPool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "import-hashing-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    @PreDestroy
+    void shutdown() {
+        hashingPool.shutdownNow();
+    }
+    
+    public boolean isRunning() {
+        Run run = currentRun.get();
+        return run != null && run.isRunning();
+    }
+    
+    public ImportStatus getStatus() {
+        Run run = currentRun.get();
+        return run == null ? null : run.toStatus();
+    }
+    
+    /**
+     * Reads the whole stream on the calling thread and returns the final report; progress of a
+     * running import is available from {@link #getStatus()}.
+     */
+    public ImportStatus importUsers(InputStream input, ImportFormat format) {
+        Run run = new Run(UUID.randomUUID().toString(), maxReportedErrors);
+        synchronized (this) {
+            Run previous = currentRun.get();
+            if (previous != null && previous.isRunning()) {
+                throw new IllegalStateException("An import is already in progress: " + previous.importId);
+            }
+            currentRun.set(run);
+        }
+        
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+            Map<String, Integer> header = format == ImportFormat.CSV ? readCsvHeader(reader.readLine()) : null;
+            Map<ERole, Long> roleIds = loadRoleIds();
+            long lineNumber = format == ImportFormat.CSV ? 1 : 0;
+            List<PendingRow> chunk = new ArrayList<>(chunkSize);
+            
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                run.rowsRead.increment();
+                
+                ImportRow row;
+                try {
+                    row = format == ImportFormat.CSV ? parseCsvRow(header, line) : objectMapper.readValue(line, ImportRow.class);
+                } catch (JsonProcessingException | IllegalArgumentException e) {
+                    run.reject(lineNumber, null, "Malformed row: " + e.getMessage());
+                    continue;
+                }
+                
+                String violations = validate(row);
+                if (violations != null) {
+                    run.reject(lineNumber, row.getUsername(), violations);
+                    continue;
+                }
+                
+                chunk.add(new PendingRow(lineNumber, row));
+                if (chunk.size() >= chunkSize) {
+                    importChunk(run, chunk, roleIds);
+                    chunk = new ArrayList<>(chunkSize);
+                }
+            }
+            
+            if (!chunk.isEmpty()) {
+                importChunk(run, chunk, roleIds);
+            }
+            
+            logger.info("Import {} finished: {} rows read, {} users and {} accounts created, {} rows rejected",
+                    run.importId, run.rowsRead.sum(), run.usersCreated.sum(), run.accountsCreated.sum(),
+                    run.rowsRejected.sum());
+        } catch (IOException | RuntimeException e) {
+            logger.error("Import {} failed", run.importId, e);
+            run.error = e.getMessage();
+        } finally {
+            run.finishedAt = LocalDateTime.now();
+        }
+        
+        return run.toStatus();
+    }
+    
+    private void importChunk(Run run, List<PendingRow> rows, Map<ERole, Long> roleIds) {
+        List<PendingRow> pending = rows;
+        
+        // A signup that commits between the uniqueness check and the insert fails the whole batch;
+        // the second pass re-checks against the database and drops the row that lost the race
+        for (int attempt = 1; ; attempt++) {
+            pending = rejectDuplicates(run, pending);
+            if (pending.isEmpty()) {
+                return;
+            }
+            
+            hashPasswords(pending);
+            
+            try {
+                int accounts = insertChunk(pending, roleIds);
+                run.usersCreated.add(pending.size());
+                run.accountsCreated.add(accounts);
+                return;
+            } catch (DuplicateKeyException e) {
+                if (attempt >= 2) {
+                    pending.forEach(row -> run.reject(row.line, row.row.getUsername(),
+                            "Conflicted with a concurrent registration, retry the row"));
+                    return;
+                }
+            }
+        }
+    }
+    
+    private List<PendingRow> rejectDuplicates(Run run, List<PendingRow> rows) {
+        Set<String> usernames = new HashSet<>();
+        Set<String> emails = new HashSet<>();
+        List<PendingRow> distinct = new ArrayList<>(rows.size());
+        
+        for (PendingRow row : rows) {
+            if (!usernames.add(row.row.getUsername())) {
+                run.reject(row.line, row.row.getUsername(), "Username appears more than once in the import");
+            } else if (!emails.add(row.row.getEmail())) {
+                run.reject(row.line, row.row.getUsername(), "Email appears more than once in the import");
+            } else {
+                distinct.add(row);
+            }
+        }
+        
+        Set<String> takenUsernames = existing("SELECT username FROM users WHERE username IN (:values)", usernames);
+        Set<String> takenEmails = existing("SELECT email FROM users WHERE email IN (:values)", emails);
+        List<PendingRow> accepted = new ArrayList<>(distinct.size());
+        
+        for (PendingRow row : distinct) {
+            if (takenUsernames.contains(row.row.getUsername())) {
+                run.reject(row.line, row.row.getUsername(), "Username is already taken");
+            } else if (takenEmails.contains(row.row.getEmail())) {
+                run.reject(row.line, row.row.getUsername(), "Email is already in use");
+            } else {
+                accepted.add(row);
+            }
+        }
+        
+        return accepted;
+    }
+    
+    private void hashPasswords(List<PendingRow> rows) {
+        List<Callable<Object>> tasks = new ArrayList<>();
+        for (PendingRow row : rows) {
+            if (row.encodedPassword != null) {
+                continue;
+            }
+            if (row.row.getPasswordHash() != null) {
+                row.encodedPassword = row.row.getPasswordHash();
+            } else {
+                tasks.add(() -> {
+                    row.encodedPassword = encoder.encode(row.row.getPassword());
+                    return null;
+                });
+            }
+        }
+        
+        if (tasks.isEmpty()) {
+            return;
+        }
+        
+        try {
+            for (Future<Object> future : hashingPool.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while hashing imported passwords", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Password hashing failed during import", e.getCause());
+        }
+    }
+    
+    private int insertChunk(List<PendingRow> rows, Map<ERole, Long> roleIds) {
+        return transactionTemplate.execute(status -> {
+            List<Object[]> users = new ArrayList<>(rows.size());
+            for (PendingRow pending : rows) {
+                ImportRow row = pending.row;
+                users.add(new Object[]{row.getUsername(), row.getEmail(), pending.encodedPassword,
+                        row.getFirstName(), row.getLastName(), row.getPhoneNumber()});
+            }
+            
+            // Identity values only grow, so everything inserted below has an id above this one;
+            // rows from concurrent signups in that range are simply not in the map
+            long maxIdBefore = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM users", Long.class);
+            jdbcTemplate.batchUpdate(INSERT_USER_SQL, users);
+            for (PendingRow pending : rows) {
+                userExistenceFilter.add(pending.row.getUsername(), pending.row.getEmail());
+            }
+            
+            Map<String, Long> userIds = new HashMap<>(rows.size() * 2);
+            for (PendingRow pending : rows) {
+                userIds.put(pending.row.getUsername(), null);
+            }
+            jdbcTemplate.query("SELECT id, username FROM users WHERE id > ?", rs -> {
+                String username = rs.getString(2);
+                if (userIds.containsKey(username)) {
+                    userIds.put(username, rs.getLong(1));
+                }
+            }, maxIdBefore);
+            
+            List<Object[]> userRoles = new ArrayList<>(rows.size());
+            int accountCount = 0;
+            for (PendingRow pending : rows) {
+                Long userId = userIds.get(pending.row.getUsername());
+                for (ERole role : resolveRoles(pending.row.getRole())) {
+                    userRoles.add(new Object[]{userId, roleIds.get(role)});
+                }
+                accountCount += pending.row.getAccounts().size();
+            }
+            jdbcTemplate.batchUpdate(INSERT_USER_ROLE_SQL, userRoles);
+            
+            if (accountCount == 0) {
+                return 0;
+            }
+            
+            Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+            Iterator<String> accountNumbers = allocateAccountNumbers(accountCount).iterator();
+            List<Object[]> accounts = new ArrayList<>(accountCount);
+            for (PendingRow pending : rows) {
+                Long userId = userIds.get(pending.row.getUsername());
+                for (AccountRequest account : pending.row.getAccounts()) {
+                    accounts.add(new Object[]{accountNumbers.next(), account.getAccountType().name(), now, now,
+                            account.getAccountName(), userId});
+                }
+            }
+            jdbcTemplate.batchUpdate(INSERT_ACCOUNT_SQL, accounts);
+            
+            return accountCount;
+        });
+    }
+    
+    // Draws random 10-digit numbers like AccountService does, but probes for collisions a whole
+    // chunk at a time instead of one existence query per account
+    private Collection<String> allocateAccountNumbers(int count) {
+        Set<String> allocated = new LinkedHashSet<>(count * 2);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        
+        while (allocated.size() < count) {
+            Set<String> candidates = new HashSet<>();
+            while (candidates.size() < count - allocated.size()) {
+                String candidate = String.format("%010d", random.nextLong(10_000_000_000L));
+                if (!allocated.contains(candidate)) {
+                    candidates.add(candidate);
+                }
+            }
+            
+            candidates.removeAll(existing("SELECT account_number FROM accounts WHERE account_number IN (:values)", candidates));
+            allocated.addAll(candidates);
+        }
+        
+        return allocated;
+    }
+    
+    private Set<String> existing(String sql, Collection<String> values) {
+        Set<String> found = new HashSet<>();
+        if (values.isEmpty()) {
+            return found;
+        }
+        
+        namedParameterJdbcTemplate.query(sql, new MapSqlParameterSource("values", values),
+                rs -> { found.add(rs.getString(1)); });
+        return found;
+    }
+    
+    private Map<ERole, Long> loadRoleIds() {
+        Map<ERole, Long> roleIds = new EnumMap<>(ERole.class);
+        for (Role role : roleRepository.findAll()) {
+            roleIds.put(role.getName(), role.getId());
+        }
+        
+        for (ERole role : ERole.values()) {
+            if (!roleIds.containsKey(role)) {
+                throw new IllegalStateException("Error: Role is not found: " + role);
+            }
+        }
+        return roleIds;
+    }
+    
+    // Same mapping as UserService.registerUser: "admin" grants ROLE_ADMIN, anything else ROLE_USER
+    private static Set<ERole> resolveRoles(Set<String> roles) {
+        Set<ERole> resolved = EnumSet.noneOf(ERole.class);
+        if (roles == null || roles.isEmpty()) {
+            resolved.add(ERole.ROLE_USER);
+            return resolved;
+        }
+        
+        for (String role : roles) {
+            resolved.add("admin".equals(role) ? ERole.ROLE_ADMIN : ERole.ROLE_USER);
+        }
+        return resolved;
+    }
+    
+    private String validate(ImportRow row) {
+        SignupRequest request = new SignupRequest();
+        request.setUsername(row.getUsername());
+        request.setEmail(row.getEmail());
+        request.setPassword(row.getPassword());
+        request.setFirstName(row.getFirstName());
+        request.setLastName(row.getLastName());
+        request.setPhoneNumber(row.getPhoneNumber());
+        
+        // Rows carrying an existing hash have no plain password to check
+        boolean preHashed = row.getPasswordHash() != null;
+        if (preHashed) {
+            request.setPassword("placeholder");
+        }
+        
+        List<String> violations = new ArrayList<>();
+        for (ConstraintViolation<SignupRequest> violation : validator.validate(request)) {
+            violations.add(violation.getPropertyPath() + " " + violation.getMessage());
+        }
+        
+        if (preHashed && !BCRYPT_HASH.matcher(row.getPasswordHash()).matches()) {
+            violations.add("passwordHash is not a BCrypt hash");
+        }
+        
+        if (row.getAccounts() == null) {
+            row.setAccounts(new ArrayList<>());
+        }
+        for (AccountRequest account : row.getAccounts()) {
+            for (ConstraintViolation<AccountRequest> violation : validator.validate(account)) {
+                violations.add("account " + violation.getPropertyPath() + " " + violation.getMessage());
+            }
+        }
+        
+        return violations.isEmpty() ? null : String.join("; ", violations);
+    }
+    
+    private static Map<String, Integer> readCsvHeader(String line) {
+        if (line == null) {
+            throw new IllegalArgumentException("CSV import is missing its header row");
+        }
+        
+        Map<String, Integer> header = new HashMap<>();
+        List<String> columns = splitCsvLine(line);
+        for (int i = 0; i < columns.size(); i++) {
+            header.put(columns.get(i).trim(), i);
+        }
+        return header;
+    }
+    
+    // Columns: username, email, password or passwordHash, firstName, lastName, phoneNumber,
+    // roles ('|' separated), accountType and accountName for an optional account
+    private static ImportRow parseCsvRow(Map<String, Integer> header, String line) {
+        List<String> values = splitCsvLine(line);
+        ImportRow row = new ImportRow();
+        row.setUsername(csvValue(header, values, "username"));
+        row.setEmail(csvValue(header, values, "email"));
+        row.setPassword(csvValue(header, values, "password"));
+        row.setPasswordHash(csvValue(header, values, "passwordHash"));
+        row.setFirstName(csvValue(header, values, "firstName"));
+        row.setLastName(csvValue(header, values, "lastName"));
+        row.setPhoneNumber(csvValue(header, values, "phoneNumber"));
+        
+        String roles = csvValue(header, values, "roles");
+        if (roles != null) {
+            row.setRole(new HashSet<>(Arrays.asList(roles.split("\\|"))));
+        }
+        
+        String accountType = csvValue(header, values, "accountType");
+        if (accountType != null) {
+            AccountRequest account = new AccountRequest();
+            account.setAccountType(AccountType.valueOf(accountType));
+            account.setAccountName(csvValue(header, values, "accountName"));
+            row.getAccounts().add(account);
+        }
+        return row;
+    }
+    
+    private static String csvValue(Map<String, Integer> header, List<String> values, String column) {
+        Integer index = header.get(column);
+        if (index == null || index >= values.size()) {
+            return null;
+        }
+        
+        String value = values.get(index);
+        return value.isEmpty() ? null : value;
+    }
+    
+    private static List<String> splitCsvLine(String line) {
+        List<String> values = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    current.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    current.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                values.add(current.toString());
+                current.setLength(0);
+            } else {
+                current.append(c);
+            }
+        }
+        
+        if (quoted) {
+            throw new IllegalArgumentException("unterminated quoted value");
+        }
+        values.add(current.toString());
+        return values;
+    }
+    
+    private static final class PendingRow {
+        
+        private final long line;
+        private final ImportRow row;
+        private volatile String encodedPassword;
+        
+        PendingRow(long line, ImportRow row) {
+            this.line = line;
+            this.row = row;
+        }
+    }
+    
+    private static final class Run {
+        
+        private final String importId;
+        private final int maxReportedErrors;
+        private final LocalDateTime startedAt = LocalDateTime.now();
+        private final long startedNanos = System.nanoTime();
+        private final LongAdder rowsRead = new LongAdder();
+        private final LongAdder usersCreated = new LongAdder();
+        private final LongAdder accountsCreated = new LongAdder();
+        private final LongAdder rowsRejected = new LongAdder();
+        private final List<ImportRowError> errors = new ArrayList<>();
+        private volatile LocalDateTime finishedAt;
+        private volatile String error;
+        
+        Run(String importId, int maxReportedErrors) {
+            this.importId = importId;
+            this.maxReportedErrors = maxReportedErrors;
+        }
+        
+        boolean isRunning() {
+            return finishedAt == null;
+        }
+        
+        void reject(long line, String username, String message) {
+            rowsRejected.increment();
+            synchronized (errors) {
+                if (errors.size() < maxReportedErrors) {
+                    errors.add(new ImportRowError(line, username, message));
+                }
+            }
+        }
+        
+        ImportStatus toStatus() {
+            LocalDateTime end = finishedAt;
+            double seconds = end == null
+                    ? (System.nanoTime() - startedNanos) / 1_000_000_000.0
+                    : Duration.between(startedAt, end).toNanos() / 1_000_000_000.0;
+            long rows = rowsRead.sum();
+            long rejected = rowsRejected.sum();
+            
+            List<ImportRowError> reported;
+            synchronized (errors) {
+                reported = new ArrayList<>(errors);
+            }
+            
+            return new ImportStatus(
+                    importId,
+                    end == null,
+                    startedAt,
+                    end,
+                    rows,
+                    usersCreated.sum(),
+                    accountsCreated.sum(),
+                    rejected,
+                    seconds > 0 ? rows / seconds : 0,
+                    reported,
+                    rejected > reported.size(),
+                    error);
+        }
+    }
+}
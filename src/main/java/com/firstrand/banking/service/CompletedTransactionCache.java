@@ -0,0 +1,136 @@
+package com.firstrand.banking.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.firstrand.banking.model.Account;
+import com.firstrand.banking.model.Transaction;
+import com.firstrand.banking.model.TransactionStatus;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Serialized JSON of transactions that can no longer change, keyed by id and evicted least recently
+ * used once the bodies exceed {@code http-cache.transaction-cache-max-bytes}. Each entry keeps the
+ * ids of the users owning either side, so a hit is access-checked and answered, including with a
+ * {@code 304}, without touching the database.
+ */
+@Service
+public class CompletedTransactionCache {
+
+    // Overhead of an entry besides its body: map node, entry object, key and tag
+    private static final int ENTRY_OVERHEAD_BYTES = 160;
+
+    @Value("${http-cache.transaction-cache-max-bytes:16777216}")
+    private long maxBytes;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>(1024, 0.75f, true);
+
+    private long bytes;
+
+    private Counter hits;
+    private Counter misses;
+
+    @PostConstruct
+    void init() {
+        hits = meterRegistry.counter("transactions.cache", "result", "hit");
+        misses = meterRegistry.counter("transactions.cache", "result", "miss");
+        Gauge.builder("transactions.cache.bytes", this, CompletedTransactionCache::sizeInBytes).register(meterRegistry);
+    }
+
+    public static String etag(Transaction transaction) {
+        return "t" + transaction.getId() + "-" + transaction.getStatus();
+    }
+
+    private static boolean isFinal(TransactionStatus status) {
+        return status == TransactionStatus.COMPLETED || status == TransactionStatus.FAILED
+                || status == TransactionStatus.REVERSED;
+    }
+
+    public Entry get(Long id) {
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(id);
+        }
+        (entry != null ? hits : misses).increment();
+        return entry;
+    }
+
+    /**
+     * Serializes the transaction and, if its status is final, keeps the result. The account owners
+     * are read here, so the transaction must still be attached to its session.
+     */
+    public Entry put(Transaction transaction) throws JsonProcessingException {
+        Entry entry = new Entry(etag(transaction), ownerId(transaction.getSourceAccount()),
+                ownerId(transaction.getDestinationAccount()), objectMapper.writeValueAsBytes(transaction));
+        if (!isFinal(transaction.getStatus()) || entry.weight() > maxBytes) {
+            return entry;
+        }
+
+        synchronized (entries) {
+            Entry previous = entries.put(transaction.getId(), entry);
+            bytes += entry.weight() - (previous != null ? previous.weight() : 0);
+
+            Iterator<Entry> eldest = entries.values().iterator();
+            while (bytes > maxBytes && eldest.hasNext()) {
+                bytes -= eldest.next().weight();
+                eldest.remove();
+            }
+        }
+        return entry;
+    }
+
+    public long sizeInBytes() {
+        synchronized (entries) {
+            return bytes;
+        }
+    }
+
+    private static long ownerId(Account account) {
+        return account != null ? account.getUser().getId() : 0;
+    }
+
+    public static final class Entry {
+
+        private final String etag;
+        private final long sourceOwnerId;
+        private final long destinationOwnerId;
+        private final byte[] body;
+
+        Entry(String etag, long sourceOwnerId, long destinationOwnerId, byte[] body) {
+            this.etag = etag;
+            this.sourceOwnerId = sourceOwnerId;
+            this.destinationOwnerId = destinationOwnerId;
+            this.body = body;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+
+        public boolean involvesUser(Long userId) {
+            return userId == sourceOwnerId || userId == destinationOwnerId;
+        }
+
+        long weight() {
+            return body.length + ENTRY_OVERHEAD_BYTES;
+        }
+    }
+}
@@ -0,0 +1,501 @@
+package com.firstrand.banking.service;
+
+import com.firstrand.banking.model.AccountType;
+import com.firstrand.banking.model.BatchCheckpoint;
+import com.firstrand.banking.model.Money;
+import com.firstrand.banking.model.Transaction;
+import com.firstrand.banking.model.TransactionStatus;
+import com.firstrand.banking.model.TransactionType;
+import com.firstrand.banking.model.dto.BatchJobStatus;
+import com.firstrand.banking.repository.BatchCheckpointRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.SqlTypeValue;
+import org.springframework.jdbc.core.StatementCreatorUtils;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Posts end-of-day interest and month-end maintenance fees. Accounts are split into id-range
+ * partitions that worker threads walk in keyset-ordered chunks; every chunk inserts its
+ * transactions and applies its balance deltas with JDBC batches, and advances the partition
+ * checkpoint in the same database transaction. A crashed run restarted for the same business date
+ * therefore resumes after the last committed chunk and never posts an account twice.
+ *
+ * <p>Interest and fees are worked out from each account's balance at the close of the business
+ * date, which is its current balance less the postings made since, and are posted as of that
+ * close. A run for an earlier date, or one resumed the next morning, posts the same amounts on
+ * the same day as a run on time would have.
+ */
+@Service
+public class EndOfDayBatchService {
+
+    private static final Logger logger = LoggerFactory.getLogger(EndOfDayBatchService.class);
+
+    private static final BigDecimal DAYS_PER_YEAR = BigDecimal.valueOf(365);
+
+    private static final String SELECT_CHUNK_SQL =
+            "SELECT id, account_type, user_id FROM accounts "
+            + "WHERE id > ? AND id <= ? AND active = TRUE AND account_type IN (%s) "
+            + "ORDER BY id FETCH FIRST ? ROWS ONLY FOR UPDATE";
+
+    // Completed postings to and from the account at or after :since, one index range scan per side
+    private static final String POSTINGS_SINCE =
+            "COALESCE((SELECT SUM(t.amount) FROM transactions t WHERE t.destination_account_id = a.id "
+            + "AND t.timestamp >= :since AND t.status = 'COMPLETED'), 0) "
+            + "- COALESCE((SELECT SUM(t.amount) FROM transactions t WHERE t.source_account_id = a.id "
+            + "AND t.timestamp >= :since AND t.status = 'COMPLETED'), 0)";
+
+    private static final String BALANCES_AS_OF_SQL =
+            "SELECT a.id, a.balance - (" + POSTINGS_SINCE + ") FROM accounts a WHERE a.id IN (:ids)";
+
+    // One statement, so a credit committing meanwhile is in both the derived balance and the postings or in neither
+    private static final String JOURNAL_BALANCES_AS_OF_SQL =
+            "SELECT a.id, " + JournalLedgerService.DERIVED_BALANCE + " - (" + POSTINGS_SINCE + ") FROM accounts a "
+            + "LEFT JOIN journal_checkpoints c ON c.account_id = a.id WHERE a.id IN (:ids)";
+
+    private static final String INSERT_TRANSACTION_SQL =
+            "INSERT INTO transactions (source_account_id, destination_account_id, amount, type, reference, "
+            + "description, timestamp, status) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String UPDATE_BALANCE_SQL =
+            "UPDATE accounts SET balance = balance + ?, updated_at = ? WHERE id = ?";
+
+    private static final String UPDATE_CHECKPOINT_SQL =
+            "UPDATE batch_checkpoints SET last_account_id = ?, completed = ?, updated_at = ? WHERE id = ?";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private BatchCheckpointRepository checkpointRepository;
+
+    @Autowired
+    private AccountSummaryService accountSummaryService;
+
+    @Autowired
+    private JournalLedgerService journalLedgerService;
+
+    @Autowired
+    private AccountVersionIndex accountVersionIndex;
+
+    @Autowired
+    private TransactionSearchIndex transactionSearchIndex;
+
+    @Autowired
+    private AccountStreamPublisher accountStreamPublisher;
+
+    @Autowired
+    private AccountBalanceView accountBalanceView;
+
+    @Value("${batch.parallelism:4}")
+    private int parallelism;
+
+    @Value("${batch.partitions:16}")
+    private int partitions;
+
+    @Value("${batch.chunk-size:500}")
+    private int chunkSize;
+
+    @Value("${batch.interest.savings-rate:0.0250}")
+    private BigDecimal savingsRate;
+
+    @Value("${batch.interest.fixed-deposit-rate:0.0450}")
+    private BigDecimal fixedDepositRate;
+
+    @Value("${batch.interest.money-market-rate:0.0350}")
+    private BigDecimal moneyMarketRate;
+
+    // Credit accounts accrue on a positive balance like any other; zero leaves them out of the run
+    @Value("${batch.interest.credit-rate:0.0000}")
+    private BigDecimal creditRate;
+
+    @Value("${batch.fee.checking-monthly:5.00}")
+    private BigDecimal checkingMonthlyFee;
+
+    // Postings older than this may be archived, which would leave them out of a balance as of then
+    @Value("${archive.min-age-days:365}")
+    private int archiveMinAgeDays;
+
+    private TransactionTemplate transactionTemplate;
+
+    private final ExecutorService coordinator = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "end-of-day-batch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AtomicReference<JobRun> currentRun = new AtomicReference<>();
+
+    @PostConstruct
+    void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        coordinator.shutdownNow();
+    }
+
+    @Scheduled(cron = "${batch.end-of-day.cron:-}")
+    public void scheduledEndOfDay() {
+        if (!isRunning()) {
+            startEndOfDay(LocalDate.now().minusDays(1));
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if the business date has not closed yet, or is so old that
+     *         postings made since may have been archived
+     */
+    public synchronized BatchJobStatus startEndOfDay(LocalDate businessDate) {
+        if (!businessDate.isBefore(LocalDate.now())) {
+            throw new IllegalArgumentException("Business date " + businessDate + " has not closed yet");
+        }
+        if (businessDate.isBefore(LocalDate.now().minusDays(archiveMinAgeDays))) {
+            throw new IllegalArgumentException("Business date " + businessDate + " is older than the live transaction history");
+        }
+
+        JobRun previous = currentRun.get();
+        if (previous != null && previous.isRunning()) {
+            throw new IllegalStateException("A batch run is already in progress: " + previous.jobName);
+        }
+
+        JobRun run = new JobRun(jobName(businessDate), businessDate);
+        currentRun.set(run);
+        coordinator.execute(() -> execute(run));
+        return run.toStatus();
+    }
+
+    public boolean isRunning() {
+        JobRun run = currentRun.get();
+        return run != null && run.isRunning();
+    }
+
+    public BatchJobStatus getStatus() {
+        JobRun run = currentRun.get();
+        return run == null ? null : run.toStatus();
+    }
+
+    private void execute(JobRun run) {
+        ExecutorService workers = Executors.newFixedThreadPool(parallelism);
+        try {
+            List<BatchCheckpoint> checkpoints = loadOrCreatePartitions(run.jobName);
+            run.partitions = checkpoints.size();
+            if (creditRate.signum() == 0) {
+                logger.info("Batch {}: batch.interest.credit-rate is 0, credit accounts accrue no interest", run.jobName);
+            }
+
+            List<Future<?>> futures = new ArrayList<>();
+            for (BatchCheckpoint checkpoint : checkpoints) {
+                if (checkpoint.isCompleted()) {
+                    run.partitionsCompleted.incrementAndGet();
+                } else {
+                    futures.add(workers.submit(() -> processPartition(run, checkpoint)));
+                }
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+
+            logger.info("Batch {} finished: {} accounts, {} interest postings, {} fee postings",
+                    run.jobName, run.accountsProcessed.sum(), run.interestPostings.sum(), run.feePostings.sum());
+        } catch (Exception e) {
+            logger.error("Batch {} failed, restart it for the same date to resume", run.jobName, e);
+            run.error = e.getMessage();
+        } finally {
+            workers.shutdownNow();
+            run.finishedAt = LocalDateTime.now();
+        }
+    }
+
+    private List<BatchCheckpoint> loadOrCreatePartitions(String jobName) {
+        List<BatchCheckpoint> existing = checkpointRepository.findByJobNameOrderByPartitionIndex(jobName);
+        if (!existing.isEmpty()) {
+            return existing;
+        }
+
+        Map<String, Object> bounds = jdbcTemplate.queryForMap("SELECT MIN(id) AS min_id, MAX(id) AS max_id FROM accounts");
+        if (bounds.get("min_id") == null) {
+            return existing;
+        }
+
+        long fromId = ((Number) bounds.get("min_id")).longValue() - 1;
+        long maxId = ((Number) bounds.get("max_id")).longValue();
+        long span = Math.max(1, (maxId - fromId + partitions - 1) / partitions);
+
+        List<BatchCheckpoint> created = new ArrayList<>();
+        for (int index = 0; fromId < maxId; index++) {
+            long toId = Math.min(maxId, fromId + span);
+            created.add(new BatchCheckpoint(jobName, index, fromId, toId));
+            fromId = toId;
+        }
+
+        return checkpointRepository.saveAll(created);
+    }
+
+    private void processPartition(JobRun run, BatchCheckpoint checkpoint) {
+        long lastAccountId = checkpoint.getLastAccountId();
+        boolean completed = false;
+
+        while (!completed) {
+            long resumeAfter = lastAccountId;
+            long[] chunk = transactionTemplate.execute(status -> postChunk(run, checkpoint, resumeAfter));
+            lastAccountId = chunk[0];
+            completed = chunk[1] == 1;
+        }
+
+        run.partitionsCompleted.incrementAndGet();
+    }
+
+    // Returns the new checkpoint position and whether the partition is exhausted
+    private long[] postChunk(JobRun run, BatchCheckpoint checkpoint, long resumeAfter) {
+        List<Object[]> accounts = jdbcTemplate.query(
+                String.format(SELECT_CHUNK_SQL, eligibleTypes(run.businessDate)),
+                (rs, rowNum) -> new Object[]{rs.getLong(1), AccountType.valueOf(rs.getString(2)), rs.getLong(3)},
+                resumeAfter, checkpoint.getToAccountId(), chunkSize);
+
+        // Balance mode holds the rows from the query above; journal mode holds the accounts' debits here
+        List<Long> accountIds = accounts.stream().map(account -> (Long) account[0]).collect(Collectors.toList());
+        if (journalLedgerService.isEnabled()) {
+            journalLedgerService.lockAccounts(accountIds);
+        }
+        Map<Long, BigDecimal> balances = balancesAtClose(accountIds, run.businessDate);
+
+        Timestamp postedAt = Timestamp.valueOf(run.businessDate.atTime(LocalTime.of(23, 59, 59)));
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        String reference = run.jobName;
+        List<Object[]> transactions = new ArrayList<>(accounts.size());
+        List<Object[]> balanceUpdates = new ArrayList<>(accounts.size());
+        List<AccountSummaryService.Posting> postings = new ArrayList<>(accounts.size());
+        Set<Long> changedUserIds = new HashSet<>();
+        int interestPostings = 0;
+        int feePostings = 0;
+
+        for (Object[] account : accounts) {
+            Long accountId = (Long) account[0];
+            AccountType type = (AccountType) account[1];
+            BigDecimal balance = balances.get(accountId);
+
+            if (type == AccountType.CHECKING) {
+                if (checkingMonthlyFee.signum() > 0 && balance.compareTo(checkingMonthlyFee) >= 0) {
+                    transactions.add(new Object[]{accountId, null, checkingMonthlyFee, TransactionType.FEE.name(),
+                            reference, "Monthly maintenance fee", postedAt, TransactionStatus.COMPLETED.name()});
+                    balanceUpdates.add(new Object[]{checkingMonthlyFee.negate(), now, accountId});
+                    changedUserIds.add((Long) account[2]);
+                    postings.add(new AccountSummaryService.Posting(accountId, null, TransactionType.FEE,
+                            checkingMonthlyFee, postedAt.toLocalDateTime()));
+                    feePostings++;
+                }
+            } else {
+                BigDecimal interest = balance.multiply(annualRate(type)).divide(DAYS_PER_YEAR, 2, RoundingMode.HALF_EVEN);
+                if (interest.signum() > 0) {
+                    transactions.add(new Object[]{null, accountId, interest, TransactionType.INTEREST.name(),
+                            reference, "Daily interest accrual", postedAt, TransactionStatus.COMPLETED.name()});
+                    balanceUpdates.add(new Object[]{interest, now, accountId});
+                    changedUserIds.add((Long) account[2]);
+                    postings.add(new AccountSummaryService.Posting(null, accountId, TransactionType.INTEREST,
+                            interest, postedAt.toLocalDateTime()));
+                    interestPostings++;
+                }
+            }
+        }
+
+        if (!transactions.isEmpty()) {
+            accountBalanceView.recordPostings(postings);
+            long[] transactionIds = insertTransactionsReturningIds(transactions);
+            if (journalLedgerService.isEnabled()) {
+                List<Object[]> journalPostings = new ArrayList<>(postings.size());
+                for (int i = 0; i < postings.size(); i++) {
+                    AccountSummaryService.Posting posting = postings.get(i);
+                    journalPostings.add(new Object[]{transactionIds[i], posting.getSourceAccountId(),
+                            posting.getDestinationAccountId(), posting.getAmount()});
+                }
+                journalLedgerService.postAll(journalPostings);
+            } else {
+                jdbcTemplate.batchUpdate(UPDATE_BALANCE_SQL, balanceUpdates);
+                accountVersionIndex.accountsChanged(changedUserIds);
+                accountSummaryService.recordPostings(postings);
+            }
+            transactionSearchIndex.index(toTransactions(transactionIds, transactions));
+            accountStreamPublisher.accountsChanged(changedUserIds);
+        }
+
+        boolean completed = accounts.size() < chunkSize;
+        long lastAccountId = accounts.isEmpty() ? checkpoint.getToAccountId() : (Long) accounts.get(accounts.size() - 1)[0];
+        jdbcTemplate.update(UPDATE_CHECKPOINT_SQL, lastAccountId, completed, now, checkpoint.getId());
+
+        run.accountsProcessed.add(accounts.size());
+        run.interestPostings.add(interestPostings);
+        run.feePostings.add(feePostings);
+        return new long[]{lastAccountId, completed ? 1 : 0};
+    }
+
+    private Map<Long, BigDecimal> balancesAtClose(List<Long> accountIds, LocalDate businessDate) {
+        Map<Long, BigDecimal> balances = new HashMap<>();
+        if (accountIds.isEmpty()) {
+            return balances;
+        }
+
+        MapSqlParameterSource parameters = new MapSqlParameterSource("ids", accountIds)
+                .addValue("since", Timestamp.valueOf(businessDate.plusDays(1).atStartOfDay()));
+        namedParameterJdbcTemplate.query(journalLedgerService.isEnabled() ? JOURNAL_BALANCES_AS_OF_SQL : BALANCES_AS_OF_SQL,
+                parameters, rs -> { balances.put(rs.getLong(1), rs.getBigDecimal(2)); });
+        return balances;
+    }
+
+    private long[] insertTransactionsReturningIds(List<Object[]> transactions) {
+        return jdbcTemplate.execute((ConnectionCallback<long[]>) connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(INSERT_TRANSACTION_SQL, new String[]{"id"})) {
+                for (Object[] transaction : transactions) {
+                    for (int i = 0; i < transaction.length; i++) {
+                        StatementCreatorUtils.setParameterValue(statement, i + 1, SqlTypeValue.TYPE_UNKNOWN, transaction[i]);
+                    }
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+
+                long[] ids = new long[transactions.size()];
+                try (ResultSet keys = statement.getGeneratedKeys()) {
+                    for (int i = 0; keys.next(); i++) {
+                        ids[i] = keys.getLong(1);
+                    }
+                }
+                return ids;
+            }
+        });
+    }
+
+    // Just the columns the search index reads, from rows laid out for INSERT_TRANSACTION_SQL
+    private static List<Transaction> toTransactions(long[] ids, List<Object[]> rows) {
+        List<Transaction> transactions = new ArrayList<>(rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            Object[] row = rows.get(i);
+            Transaction transaction = new Transaction();
+            transaction.setId(ids[i]);
+            transaction.setAmount(Money.of((BigDecimal) row[2]));
+            transaction.setType(TransactionType.valueOf((String) row[3]));
+            transaction.setReference((String) row[4]);
+            transaction.setDescription((String) row[5]);
+            transaction.setTimestamp(((Timestamp) row[6]).toLocalDateTime());
+            transaction.setStatus(TransactionStatus.valueOf((String) row[7]));
+            transactions.add(transaction);
+        }
+        return transactions;
+    }
+
+    private String eligibleTypes(LocalDate businessDate) {
+        String types = "'SAVINGS','FIXED_DEPOSIT','MONEY_MARKET'";
+        if (creditRate.signum() > 0) {
+            types += ",'CREDIT'";
+        }
+        if (businessDate.getDayOfMonth() == businessDate.lengthOfMonth()) {
+            types += ",'CHECKING'";
+        }
+        return types;
+    }
+
+    private BigDecimal annualRate(AccountType type) {
+        switch (type) {
+            case SAVINGS:
+                return savingsRate;
+            case FIXED_DEPOSIT:
+                return fixedDepositRate;
+            case MONEY_MARKET:
+                return moneyMarketRate;
+            case CREDIT:
+                return creditRate;
+            default:
+                return BigDecimal.ZERO;
+        }
+    }
+
+    private static String jobName(LocalDate businessDate) {
+        return "EOD-" + businessDate;
+    }
+
+    private static final class JobRun {
+
+        private final String jobName;
+        private final LocalDate businessDate;
+        private final LocalDateTime startedAt = LocalDateTime.now();
+        private final long startedNanos = System.nanoTime();
+        private final AtomicInteger partitionsCompleted = new AtomicInteger();
+        private final LongAdder accountsProcessed = new LongAdder();
+        private final LongAdder interestPostings = new LongAdder();
+        private final LongAdder feePostings = new LongAdder();
+        private volatile int partitions;
+        private volatile LocalDateTime finishedAt;
+        private volatile String error;
+
+        JobRun(String jobName, LocalDate businessDate) {
+            this.jobName = jobName;
+            this.businessDate = businessDate;
+        }
+
+        boolean isRunning() {
+            return finishedAt == null;
+        }
+
+        BatchJobStatus toStatus() {
+            LocalDateTime end = finishedAt;
+            double seconds = end == null
+                    ? (System.nanoTime() - startedNanos) / 1_000_000_000.0
+                    : Duration.between(startedAt, end).toNanos() / 1_000_000_000.0;
+            long accounts = accountsProcessed.sum();
+
+            return new BatchJobStatus(
+                    jobName,
+                    businessDate,
+                    end == null,
+                    startedAt,
+                    end,
+                    partitions,
+                    partitionsCompleted.get(),
+                    accounts,
+                    interestPostings.sum(),
+                    feePostings.sum(),
+                    seconds > 0 ? accounts / seconds : 0,
+                    error);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.firstrand.banking.service;
+
+import com.firstrand.banking.model.Money;
+import com.firstrand.banking.model.TransactionType;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Java Flight Recorder events for the application's hot paths, recorded next to the JVM's own GC,
+ * lock and I/O events by {@link FlightRecorderService}. Outside a recording that enables them an
+ * event is a short-lived object the JIT removes and one check of a static flag, so they stay in
+ * the code paths permanently.
+ *
+ * <p>Each event is timed by {@code begin()} and {@code commit()}; an event shorter than its
+ * threshold is dropped when it commits.
+ */
+public final class FlightRecorderEvents {
+
+    public static final String CATEGORY = "Banking";
+
+    private FlightRecorderEvents() {
+    }
+
+    @Name("com.firstrand.banking.Posting")
+    @Label("Posting")
+    @Description("A transfer, deposit or withdrawal, from loading its accounts to its last write before commit")
+    @Category({CATEGORY, "Ledger"})
+    @StackTrace(false)
+    public static class Posting extends Event {
+
+        @Label("Operation")
+        public String operation;
+
+        @Label("Source Account Id")
+        public long sourceAccountId;
+
+        @Label("Destination Account Id")
+        public long destinationAccountId;
+
+        @Label("Amount (minor units)")
+        public long amount;
+
+        @Label("Outcome")
+        public String outcome;
+
+        // Fields are only filled in for an event that is going to be recorded
+        public void finish(TransactionType operation, String outcome, Long sourceAccountId, Long destinationAccountId,
+                           Money amount) {
+            if (shouldCommit()) {
+                this.operation = operation.name();
+                this.outcome = outcome;
+                this.sourceAccountId = sourceAccountId == null ? 0 : sourceAccountId;
+                this.destinationAccountId = destinationAccountId == null ? 0 : destinationAccountId;
+                this.amount = amount.getMinorUnits();
+                commit();
+            }
+        }
+    }
+
+    @Name("com.firstrand.banking.Authentication")
+    @Label("Token Authentication")
+    @Description("Validation of a request's bearer token and loading of its user")
+    @Category({CATEGORY, "Security"})
+    @StackTrace(false)
+    public static class Authentication extends Event {
+
+        @Label("Username")
+        public String username;
+
+        @Label("Outcome")
+        public String outcome;
+    }
+
+    @Name("com.firstrand.banking.RepositoryCall")
+    @Label("Repository Call")
+    @Description("A call to a Spring Data repository method, including the SQL it runs")
+    @Category({CATEGORY, "Persistence"})
+    @Threshold("1 ms")
+    public static class RepositoryCall extends Event {
+
+        @Label("Repository")
+        public String repository;
+
+        @Label("Method")
+        public String method;
+    }
+
+    @Name("com.firstrand.banking.LockWait")
+    @Label("Account Lock Wait")
+    @Description("Time a posting waited for the locks on its accounts")
+    @Category({CATEGORY, "Ledger"})
+    @Threshold("1 ms")
+    public static class LockWait extends Event {
+
+        @Label("Lock")
+        public String lock;
+
+        @Label("Account Id")
+        @Description("The account waited for, or 0 when the wait covered several")
+        public long accountId;
+
+        public void finish(String lock, long accountId) {
+            end();
+            if (shouldCommit()) {
+                this.lock = lock;
+                this.accountId = accountId;
+                commit();
+            }
+        }
+    }
+}
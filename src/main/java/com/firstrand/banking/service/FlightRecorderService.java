@@ -0,0 +1,172 @@
+package com.firstrand.banking.service;
+
+import com.firstrand.banking.model.dto.ProfilingStatus;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.Configuration;
+import jdk.jfr.Event;
+import jdk.jfr.EventSettings;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Starts and stops on-demand Java Flight Recorder recordings of the running instance, with the
+ * JVM's own events and {@link FlightRecorderEvents the application's}. One recording runs at a
+ * time, and it is bounded: it stops by itself after {@code profiling.max-duration-ms} at most, and
+ * keeps no more than {@code profiling.max-size-bytes}, dropping its oldest data first. When it
+ * stops it is written to {@code profiling.directory}, replacing the previous recording's file.
+ */
+@Service
+public class FlightRecorderService {
+
+    private static final Logger logger = LoggerFactory.getLogger(FlightRecorderService.class);
+
+    // The configurations every JDK ships: low overhead, and more detail for a short profile
+    public static final Set<String> SETTINGS = Set.of("default", "profile");
+
+    private static final List<Class<? extends Event>> APPLICATION_EVENTS = List.of(
+            FlightRecorderEvents.Posting.class,
+            FlightRecorderEvents.Authentication.class,
+            FlightRecorderEvents.RepositoryCall.class,
+            FlightRecorderEvents.LockWait.class);
+
+    private static final DateTimeFormatter FILE_TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    @Value("${profiling.enabled:true}")
+    private boolean enabled;
+
+    @Value("${profiling.directory:data/recordings}")
+    private String directory;
+
+    @Value("${profiling.max-duration-ms:600000}")
+    private long maxDurationMs;
+
+    @Value("${profiling.max-size-bytes:104857600}")
+    private long maxSizeBytes;
+
+    private Recording recording;
+    private ProfilingStatus status;
+    private Path file;
+
+    public boolean isEnabled() {
+        return enabled && FlightRecorder.isAvailable();
+    }
+
+    /**
+     * Starts a recording with the named JDK configuration for {@code durationMs}, capped at
+     * {@code profiling.max-duration-ms}. A threshold, if given, replaces the application events'
+     * own. Returns null while another recording is running.
+     */
+    public synchronized ProfilingStatus start(String settings, long durationMs, Long thresholdMs) {
+        if (isRunning()) {
+            return null;
+        }
+        closeRecording();
+
+        LocalDateTime now = LocalDateTime.now();
+        Path destination = Paths.get(directory).resolve("recording-" + FILE_TIMESTAMP.format(now) + ".jfr");
+        long duration = Math.min(durationMs, maxDurationMs);
+
+        Recording started;
+        try {
+            Files.createDirectories(destination.getParent());
+            if (file != null) {
+                Files.deleteIfExists(file);
+            }
+
+            started = new Recording(Configuration.getConfiguration(settings));
+            started.setName("banking-" + settings);
+            started.setToDisk(true);
+            started.setMaxSize(maxSizeBytes);
+            started.setDuration(Duration.ofMillis(duration));
+            started.setDestination(destination);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (ParseException e) {
+            throw new IllegalStateException("Unreadable JFR configuration " + settings, e);
+        }
+
+        for (Class<? extends Event> event : APPLICATION_EVENTS) {
+            EventSettings eventSettings = started.enable(event);
+            if (thresholdMs != null) {
+                eventSettings.withThreshold(Duration.ofMillis(thresholdMs));
+            }
+        }
+        started.start();
+
+        recording = started;
+        file = destination;
+        status = new ProfilingStatus(true, settings, thresholdMs, now, null, duration, maxSizeBytes,
+                destination.getFileName().toString());
+        logger.info("Flight recording started with {} settings for {} ms", settings, duration);
+        return status;
+    }
+
+    /**
+     * Stops the running recording, if any, and returns the file of the latest recording, or null if
+     * none was ever started.
+     */
+    public synchronized Path stop() {
+        if (recording == null) {
+            return file;
+        }
+
+        // A recording that reached its duration has already stopped and written its file
+        if (recording.getState() == RecordingState.RUNNING) {
+            recording.stop();
+            logger.info("Flight recording stopped, written to {}", file);
+        }
+        closeRecording();
+        return file;
+    }
+
+    public synchronized ProfilingStatus getStatus() {
+        if (recording != null && !isRunning()) {
+            markStopped();
+        }
+        return status;
+    }
+
+    private boolean isRunning() {
+        return recording != null && recording.getState() == RecordingState.RUNNING;
+    }
+
+    private void closeRecording() {
+        if (recording != null) {
+            markStopped();
+            recording.close();
+            recording = null;
+        }
+    }
+
+    private void markStopped() {
+        Instant stopTime = recording.getStopTime();
+        status.setRunning(false);
+        status.setStoppedAt(LocalDateTime.ofInstant(stopTime == null ? Instant.now() : stopTime, ZoneId.systemDefault()));
+    }
+
+    @PreDestroy
+    synchronized void shutdown() {
+        if (recording != null) {
+            recording.close();
+        }
+    }
+}
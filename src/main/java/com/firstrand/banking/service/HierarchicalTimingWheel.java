@@ -0,0 +1,162 @@
+package com.firstrand.banking.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Hierarchical timing wheel of {@code long} ids. Level 0 has {@code wheelSize} buckets of one tick
+ * each; every further level has buckets as wide as the whole level below it and is created the first
+ * time a deadline falls beyond the levels that exist. Adding an id is O(1), and each id is moved at
+ * most once per level on its way down, so firing is O(1) amortised per id.
+ *
+ * <p>Entries cannot be removed; callers treat a fired id as a hint and re-check it. Not thread-safe.
+ */
+final class HierarchicalTimingWheel {
+
+    private final long tickMillis;
+    private final int wheelSize;
+    private final List<Level> levels = new ArrayList<>();
+
+    // Start of the level-0 bucket that fires next; always a multiple of tickMillis
+    private long currentTime;
+    private int size;
+
+    HierarchicalTimingWheel(long tickMillis, int wheelSize, long startMillis) {
+        this.tickMillis = tickMillis;
+        this.wheelSize = wheelSize;
+        this.currentTime = startMillis - Math.floorMod(startMillis, tickMillis);
+        levels.add(new Level(tickMillis));
+    }
+
+    /**
+     * Returns false without storing the id when its deadline has already passed, in which case the
+     * caller should fire it straight away.
+     */
+    boolean add(long id, long deadlineMillis) {
+        if (deadlineMillis < currentTime) {
+            return false;
+        }
+
+        place(id, deadlineMillis);
+        size++;
+        return true;
+    }
+
+    /**
+     * Moves the wheel forward to {@code nowMillis} and hands every id whose deadline is at or before
+     * it to {@code expired}.
+     */
+    void advance(long nowMillis, Expired expired) {
+        while (currentTime + tickMillis <= nowMillis) {
+            Bucket due = levels.get(0).bucketFor(currentTime);
+            for (int i = 0; i < due.size; i++) {
+                expired.accept(due.ids[i]);
+            }
+            size -= due.size;
+            due.clear();
+
+            currentTime += tickMillis;
+
+            // Cascade from the top so entries moved out of a high level can land in the bucket of a
+            // lower level that is itself about to be cascaded
+            for (int level = levels.size() - 1; level > 0; level--) {
+                Level wheel = levels.get(level);
+                if (currentTime % wheel.tickMillis != 0) {
+                    continue;
+                }
+
+                Bucket bucket = wheel.bucketFor(currentTime);
+                if (bucket.size == 0) {
+                    continue;
+                }
+
+                long[] ids = Arrays.copyOf(bucket.ids, bucket.size);
+                long[] deadlines = Arrays.copyOf(bucket.deadlines, bucket.size);
+                bucket.clear();
+                for (int i = 0; i < ids.length; i++) {
+                    place(ids[i], deadlines[i]);
+                }
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    long currentTime() {
+        return currentTime;
+    }
+
+    private void place(long id, long deadlineMillis) {
+        for (int index = 0; ; index++) {
+            if (index == levels.size()) {
+                Level below = levels.get(index - 1);
+                levels.add(new Level(Math.multiplyExact(below.tickMillis, wheelSize)));
+            }
+
+            Level level = levels.get(index);
+            long levelStart = currentTime - Math.floorMod(currentTime, level.tickMillis);
+            if (deadlineMillis < levelStart + level.tickMillis * wheelSize) {
+                level.bucketFor(deadlineMillis).add(id, deadlineMillis);
+                return;
+            }
+        }
+    }
+
+    @FunctionalInterface
+    interface Expired {
+        void accept(long id);
+    }
+
+    private final class Level {
+
+        private final long tickMillis;
+        private final Bucket[] buckets = new Bucket[wheelSize];
+
+        Level(long tickMillis) {
+            this.tickMillis = tickMillis;
+        }
+
+        Bucket bucketFor(long time) {
+            int index = (int) Math.floorMod(Math.floorDiv(time, tickMillis), (long) wheelSize);
+            Bucket bucket = buckets[index];
+            if (bucket == null) {
+                bucket = new Bucket();
+                buckets[index] = bucket;
+            }
+            return bucket;
+        }
+    }
+
+    // Parallel primitive arrays keep a pending entry at 16 bytes instead of a boxed object per id
+    private static final class Bucket {
+
+        private static final long[] EMPTY = new long[0];
+
+        private long[] ids = EMPTY;
+        private long[] deadlines = EMPTY;
+        private int size;
+
+        void add(long id, long deadline) {
+            if (size == ids.length) {
+                int capacity = Math.max(8, size * 2);
+                ids = Arrays.copyOf(ids, capacity);
+                deadlines = Arrays.copyOf(deadlines, capacity);
+            }
+            ids[size] = id;
+            deadlines[size] = deadline;
+            size++;
+        }
+
+        void clear() {
+            // Drop large arrays so a burst does not pin memory for the rest of the wheel's life
+            if (ids.length > 1024) {
+                ids = EMPTY;
+                deadlines = EMPTY;
+            }
+            size = 0;
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package com.firstrand.banking.service;
+
+import com.firstrand.banking.model.LedgerMode;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Append-only double-entry ledger used when {@code ledger.mode=JOURNAL}. Every posting inserts one
+ * debit and one credit entry instead of updating account rows; a balance is the account's latest
+ * checkpoint plus the entries appended after it, and a background checkpointer rolls checkpoints
+ * forward so that tail stays short. The checkpointer also keeps the daily account summaries, which
+ * in this mode trail the postings by up to one round.
+ */
+@Service
+public class JournalLedgerService {
+
+    private static final Logger logger = LoggerFactory.getLogger(JournalLedgerService.class);
+
+    private static final int LOCK_STRIPES = 1024;
+
+    // Expects the account as a and its checkpoint as c
+    static final String DERIVED_BALANCE =
+            "COALESCE(c.balance, 0) + COALESCE((SELECT SUM(e.amount) FROM journal_entries e "
+            + "WHERE e.account_id = a.id AND e.id > COALESCE(c.last_entry_id, 0)), 0)";
+
+    private static final String DERIVED_BALANCES_BY_IDS_SQL =
+            "SELECT a.id, " + DERIVED_BALANCE + " FROM accounts a "
+            + "LEFT JOIN journal_checkpoints c ON c.account_id = a.id WHERE a.id IN (:ids)";
+
+    private static final String INSERT_ENTRY_SQL =
+            "INSERT INTO journal_entries (transaction_id, account_id, amount, created_at) VALUES (?, ?, ?, ?)";
+
+    private static final String ROLL_FORWARD_SQL =
+            "MERGE INTO journal_checkpoints c "
+            + "USING (SELECT e.account_id, SUM(e.amount) AS delta, MAX(e.id) AS last_entry_id "
+            + "FROM journal_entries e LEFT JOIN journal_checkpoints p ON p.account_id = e.account_id "
+            + "WHERE e.id > ? AND e.id <= ? AND e.account_id IS NOT NULL AND e.id > COALESCE(p.last_entry_id, 0) "
+            + "GROUP BY e.account_id) d "
+            + "ON c.account_id = d.account_id "
+            + "WHEN MATCHED THEN UPDATE SET balance = c.balance + d.delta, last_entry_id = d.last_entry_id, updated_at = ? "
+            + "WHEN NOT MATCHED THEN INSERT (account_id, balance, last_entry_id, updated_at) "
+            + "VALUES (d.account_id, d.delta, d.last_entry_id, ?)";
+
+    // Daily summaries in journal mode are built from the same range rather than by every posting,
+    // which would put a shared row back under each account; entries an account's checkpoint
+    // already covers were summarised along with it
+    private static final String ROLL_UP_SUMMARIES_SQL =
+            "MERGE INTO daily_account_summaries s "
+            + "USING (SELECT e.account_id, CAST(t.timestamp AS DATE) AS summary_date, t.type, "
+            + "SUM(CASE WHEN e.amount > 0 THEN 1 ELSE 0 END) AS credit_count, "
+            + "SUM(CASE WHEN e.amount > 0 THEN e.amount ELSE 0 END) AS credit_amount, "
+            + "SUM(CASE WHEN e.amount < 0 THEN 1 ELSE 0 END) AS debit_count, "
+            + "SUM(CASE WHEN e.amount < 0 THEN -e.amount ELSE 0 END) AS debit_amount "
+            + "FROM journal_entries e JOIN transactions t ON t.id = e.transaction_id "
+            + "LEFT JOIN journal_checkpoints p ON p.account_id = e.account_id "
+            + "WHERE e.id > ? AND e.id <= ? AND e.account_id IS NOT NULL AND e.id > COALESCE(p.last_entry_id, 0) "
+            + "GROUP BY e.account_id, CAST(t.timestamp AS DATE), t.type) v "
+            + "ON s.account_id = v.account_id AND s.summary_date = v.summary_date AND s.type = v.type "
+            + "WHEN MATCHED THEN UPDATE SET credit_count = s.credit_count + v.credit_count, "
+            + "credit_amount = s.credit_amount + v.credit_amount, debit_count = s.debit_count + v.debit_count, "
+            + "debit_amount = s.debit_amount + v.debit_amount "
+            + "WHEN NOT MATCHED THEN INSERT (account_id, summary_date, type, credit_count, credit_amount, "
+            + "debit_count, debit_amount) VALUES (v.account_id, v.summary_date, v.type, v.credit_count, "
+            + "v.credit_amount, v.debit_count, v.debit_amount)";
+
+    // Keeps Account.balance readable as "balance at the last checkpoint" for the entity-based endpoints
+    private static final String SYNC_ACCOUNTS_SQL =
+            "UPDATE accounts a SET balance = (SELECT c.balance FROM journal_checkpoints c WHERE c.account_id = a.id), "
+            + "updated_at = ? WHERE EXISTS (SELECT 1 FROM journal_checkpoints c WHERE c.account_id = a.id AND c.last_entry_id > ?)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    @Autowired
+    private AccountVersionIndex accountVersionIndex;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${ledger.mode:BALANCE}")
+    private LedgerMode mode;
+
+    // How long a round waits for postings still in flight below its horizon before leaving the
+    // range to the next round
+    @Value("${ledger.checkpoint-wait-ms:5000}")
+    private long checkpointWaitMs;
+
+    private final ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES];
+
+    // Every posting takes a ticket before inserting its entries and gives it back once its
+    // transaction completes; see rollForwardCheckpoints
+    private final AtomicLong postingTickets = new AtomicLong();
+
+    private final ConcurrentSkipListSet<Long> postingsInFlight = new ConcurrentSkipListSet<>();
+
+    private volatile long checkpointHorizon = -1;
+
+    private TransactionTemplate transactionTemplate;
+
+    public JournalLedgerService() {
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    @PostConstruct
+    void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    public boolean isEnabled() {
+        return mode == LedgerMode.JOURNAL;
+    }
+
+    /**
+     * Serialises postings that debit the given accounts until the surrounding database transaction
+     * completes, which is what keeps a balance check and the entries it guards atomic without
+     * locking any row. The locks live in this JVM, so journal mode assumes a single application
+     * instance per database.
+     */
+    public void lockAccounts(Collection<Long> accountIds) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            throw new IllegalStateException("Journal account locks require an active transaction");
+        }
+
+        int[] stripes = accountIds.stream()
+                .filter(Objects::nonNull)
+                .mapToInt(id -> Math.floorMod(Long.hashCode(id), LOCK_STRIPES))
+                .distinct()
+                .sorted()
+                .toArray();
+
+        FlightRecorderEvents.LockWait wait = new FlightRecorderEvents.LockWait();
+        wait.begin();
+        for (int stripe : stripes) {
+            locks[stripe].lock();
+        }
+        wait.finish("journal-stripe", accountIds.size() == 1 ? accountIds.iterator().next() : 0);
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                for (int i = stripes.length - 1; i >= 0; i--) {
+                    locks[stripes[i]].unlock();
+                }
+            }
+        });
+    }
+
+    public BigDecimal getBalance(Long accountId) {
+        return getBalances(List.of(accountId)).getOrDefault(accountId, BigDecimal.ZERO);
+    }
+
+    public Map<Long, BigDecimal> getBalances(Collection<Long> accountIds) {
+        Map<Long, BigDecimal> balances = new HashMap<>();
+        if (accountIds.isEmpty()) {
+            return balances;
+        }
+
+        namedParameterJdbcTemplate.query(DERIVED_BALANCES_BY_IDS_SQL, new MapSqlParameterSource("ids", accountIds),
+                rs -> { balances.put(rs.getLong(1), rs.getBigDecimal(2)); });
+        return balances;
+    }
+
+    public void post(Long transactionId, Long debitAccountId, Long creditAccountId, BigDecimal amount) {
+        List<Object[]> postings = new ArrayList<>(1);
+        postings.add(new Object[]{transactionId, debitAccountId, creditAccountId, amount});
+        postAll(postings);
+    }
+
+    // Each posting is {transactionId, debitAccountId, creditAccountId, amount}; a null account is the clearing side
+    public void postAll(List<Object[]> postings) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> entries = new ArrayList<>(postings.size() * 2);
+
+        for (Object[] posting : postings) {
+            BigDecimal amount = (BigDecimal) posting[3];
+            entries.add(new Object[]{posting[0], posting[1], amount.negate(), now});
+            entries.add(new Object[]{posting[0], posting[2], amount, now});
+        }
+
+        long ticket = postingTickets.incrementAndGet();
+        postingsInFlight.add(ticket);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            try {
+                jdbcTemplate.batchUpdate(INSERT_ENTRY_SQL, entries);
+            } finally {
+                postingsInFlight.remove(ticket);
+            }
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                postingsInFlight.remove(ticket);
+            }
+        });
+        jdbcTemplate.batchUpdate(INSERT_ENTRY_SQL, entries);
+    }
+
+    /**
+     * Gives accounts that predate journal mode an opening checkpoint equal to their stored balance.
+     */
+    public void openCheckpoints() {
+        int opened = jdbcTemplate.update(
+                "INSERT INTO journal_checkpoints (account_id, balance, last_entry_id, updated_at) "
+                + "SELECT a.id, a.balance, 0, ? FROM accounts a WHERE NOT EXISTS "
+                + "(SELECT 1 FROM journal_checkpoints c WHERE c.account_id = a.id) "
+                + "AND NOT EXISTS (SELECT 1 FROM journal_entries e WHERE e.account_id = a.id)",
+                Timestamp.valueOf(LocalDateTime.now()));
+
+        if (opened > 0) {
+            logger.info("Opened journal checkpoints for {} accounts", opened);
+        }
+    }
+
+    /**
+     * Folds the entries up to the highest committed one into the checkpoints. An entry below that
+     * id which is not committed yet was inserted before it, so its posting already holds a ticket
+     * when the horizon is read; the round waits for every such ticket to come back, which leaves
+     * the range complete however long a posting takes to commit.
+     */
+    @Scheduled(fixedDelayString = "${ledger.checkpoint-interval-ms:60000}")
+    public synchronized void rollForwardCheckpoints() {
+        if (!isEnabled()) {
+            return;
+        }
+
+        if (checkpointHorizon < 0) {
+            // Every entry at or below the highest checkpointed id was covered by an earlier round
+            checkpointHorizon = jdbcTemplate.queryForObject(
+                    "SELECT COALESCE(MAX(last_entry_id), 0) FROM journal_checkpoints", Long.class);
+        }
+
+        Long horizon = jdbcTemplate.queryForObject("SELECT MAX(id) FROM journal_entries", Long.class);
+        if (horizon == null || horizon <= checkpointHorizon) {
+            return;
+        }
+
+        if (!awaitPostingsUpTo(postingTickets.get())) {
+            logger.debug("Postings still in flight below entry {}, leaving it to the next round", horizon);
+            return;
+        }
+
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        long from = checkpointHorizon;
+        int accounts = transactionTemplate.execute(status -> {
+            jdbcTemplate.update(ROLL_UP_SUMMARIES_SQL, from, horizon);
+            int rolled = jdbcTemplate.update(ROLL_FORWARD_SQL, from, horizon, now, now);
+            if (jdbcTemplate.update(SYNC_ACCOUNTS_SQL, now, from) > 0) {
+                accountVersionIndex.invalidateAll();
+            }
+            return rolled;
+        });
+        checkpointHorizon = horizon;
+
+        logger.debug("Rolled journal checkpoints forward to entry {} for {} accounts", horizon, accounts);
+    }
+
+    private boolean awaitPostingsUpTo(long ticket) {
+        long deadline = System.nanoTime() + checkpointWaitMs * 1_000_000;
+        while (true) {
+            Iterator<Long> oldest = postingsInFlight.iterator();
+            if (!oldest.hasNext() || oldest.next() > ticket) {
+                return true;
+            }
+            if (System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+}
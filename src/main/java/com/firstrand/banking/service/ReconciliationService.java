@@ -0,0 +1,302 @@
+package com.firstrand.banking.service;
+
+import com.firstrand.banking.model.BalanceDiscrepancy;
+import com.firstrand.banking.model.Money;
+import com.firstrand.banking.model.dto.ReconciliationStatus;
+import com.firstrand.banking.repository.BalanceDiscrepancyRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Recomputes every account balance from the transaction log and records accounts whose stored
+ * balance has drifted. The account id space is split into chunks that fork-join workers reconcile
+ * with grouped aggregate queries, so no entities are loaded and each chunk is a handful of index
+ * range scans.
+ */
+@Service
+public class ReconciliationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReconciliationService.class);
+
+    // Credits and debits are summed in the same statement that reads the balances, so a posting
+    // committing meanwhile is on both sides or on neither and cannot show up as a discrepancy
+    private static final String TOTALS =
+            "cr.total, cr.legs, db.total, db.legs FROM accounts a "
+            + "%s"
+            + "LEFT JOIN (SELECT destination_account_id AS account_id, SUM(amount) AS total, COUNT(*) AS legs "
+            + "FROM transactions WHERE destination_account_id >= ? AND destination_account_id < ? AND status = 'COMPLETED' "
+            + "GROUP BY destination_account_id) cr ON cr.account_id = a.id "
+            + "LEFT JOIN (SELECT source_account_id AS account_id, SUM(amount) AS total, COUNT(*) AS legs "
+            + "FROM transactions WHERE source_account_id >= ? AND source_account_id < ? AND status = 'COMPLETED' "
+            + "GROUP BY source_account_id) db ON db.account_id = a.id "
+            + "WHERE a.id >= ? AND a.id < ?";
+
+    private static final String ACCOUNTS_SQL =
+            "SELECT a.id, a.account_number, a.balance, " + String.format(TOTALS, "");
+
+    // In journal mode the balance to verify is the one derived from the journal
+    private static final String JOURNAL_ACCOUNTS_SQL =
+            "SELECT a.id, a.account_number, " + JournalLedgerService.DERIVED_BALANCE + ", "
+            + String.format(TOTALS, "LEFT JOIN journal_checkpoints c ON c.account_id = a.id ");
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private BalanceDiscrepancyRepository discrepancyRepository;
+
+    @Autowired
+    private JournalLedgerService journalLedgerService;
+
+    @Autowired
+    private TransactionArchiveService transactionArchiveService;
+
+    @Value("${reconciliation.parallelism:2}")
+    private int parallelism;
+
+    @Value("${reconciliation.chunk-size:1000}")
+    private int chunkSize;
+
+    @Value("${reconciliation.max-chunks-per-second:50}")
+    private int maxChunksPerSecond;
+
+    private JdbcTemplate jdbcTemplate;
+
+    private final ExecutorService coordinator = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "reconciliation");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AtomicReference<Run> currentRun = new AtomicReference<>();
+
+    private final AtomicLong nextChunkSlot = new AtomicLong();
+
+    @PostConstruct
+    void init() {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.setFetchSize(chunkSize);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        coordinator.shutdownNow();
+    }
+
+    public synchronized ReconciliationStatus startReconciliation() {
+        Run previous = currentRun.get();
+        if (previous != null && previous.isRunning()) {
+            throw new IllegalStateException("A reconciliation run is already in progress: " + previous.runId);
+        }
+
+        Run run = new Run(UUID.randomUUID().toString());
+        currentRun.set(run);
+        coordinator.execute(() -> execute(run));
+        return run.toStatus();
+    }
+
+    public boolean isRunning() {
+        Run run = currentRun.get();
+        return run != null && run.isRunning();
+    }
+
+    public ReconciliationStatus getStatus() {
+        Run run = currentRun.get();
+        return run == null ? null : run.toStatus();
+    }
+
+    public Page<BalanceDiscrepancy> getDiscrepancies(String runId, Pageable pageable) {
+        return discrepancyRepository.findByRunId(runId, pageable);
+    }
+
+    private void execute(Run run) {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            Map<String, Object> bounds = jdbcTemplate.queryForMap(
+                    "SELECT MIN(id) AS min_id, MAX(id) AS max_id, COUNT(*) AS total FROM accounts");
+            run.totalAccounts = ((Number) bounds.get("total")).longValue();
+
+            if (run.totalAccounts > 0) {
+                long minId = ((Number) bounds.get("min_id")).longValue();
+                long maxId = ((Number) bounds.get("max_id")).longValue();
+                pool.invoke(new ReconcileRange(run, minId, maxId + 1));
+            }
+
+            logger.info("Reconciliation {} finished: {} accounts, {} transaction legs, {} discrepancies",
+                    run.runId, run.accountsProcessed.sum(), run.transactionLegsScanned.sum(), run.discrepancies.sum());
+        } catch (RuntimeException e) {
+            logger.error("Reconciliation {} failed", run.runId, e);
+            run.error = e.getMessage();
+        } finally {
+            pool.shutdown();
+            run.finishedAt = LocalDateTime.now();
+        }
+    }
+
+    private void reconcileChunk(Run run, long fromId, long toId) {
+        acquireChunkPermit();
+
+        int size = (int) (toId - fromId);
+        BigDecimal[] credits = new BigDecimal[size];
+        BigDecimal[] debits = new BigDecimal[size];
+        List<BalanceDiscrepancy> found = new ArrayList<>();
+
+        // Holding the archive's read lock keeps a segment from moving rows out of the table mid-chunk
+        Lock archiveLock = transactionArchiveService.readLock();
+        archiveLock.lock();
+        try {
+            reconcileAccounts(run, fromId, toId, credits, debits, found);
+        } finally {
+            archiveLock.unlock();
+        }
+
+        if (!found.isEmpty()) {
+            discrepancyRepository.saveAll(found);
+            run.discrepancies.add(found.size());
+        }
+        run.chunksProcessed.increment();
+    }
+
+    private void reconcileAccounts(Run run, long fromId, long toId, BigDecimal[] credits, BigDecimal[] debits,
+                                  List<BalanceDiscrepancy> found) {
+        transactionArchiveService.forEachAccountTotals(fromId, toId, (accountId, creditCents, debitCents, legs) -> {
+            int slot = (int) (accountId - fromId);
+            credits[slot] = zeroIfNull(credits[slot]).add(Money.ofMinorUnits(creditCents).toBigDecimal());
+            debits[slot] = zeroIfNull(debits[slot]).add(Money.ofMinorUnits(debitCents).toBigDecimal());
+            run.transactionLegsScanned.add(legs);
+        });
+
+        String accountsSql = journalLedgerService.isEnabled() ? JOURNAL_ACCOUNTS_SQL : ACCOUNTS_SQL;
+        jdbcTemplate.query(accountsSql, rs -> {
+            int slot = (int) (rs.getLong(1) - fromId);
+            BigDecimal computed = zeroIfNull(credits[slot]).add(zeroIfNull(rs.getBigDecimal(4)))
+                    .subtract(zeroIfNull(debits[slot])).subtract(zeroIfNull(rs.getBigDecimal(6)));
+            BigDecimal stored = rs.getBigDecimal(3);
+
+            if (stored.compareTo(computed) != 0) {
+                found.add(new BalanceDiscrepancy(run.runId, rs.getLong(1), rs.getString(2), stored, computed));
+            }
+            run.accountsProcessed.increment();
+            run.transactionLegsScanned.add(rs.getLong(5) + rs.getLong(7));
+        }, fromId, toId, fromId, toId, fromId, toId);
+    }
+
+    // Spaces chunk starts at least 1/maxChunksPerSecond apart across all workers, which caps the
+    // number of aggregate queries the job puts on the database regardless of parallelism
+    private void acquireChunkPermit() {
+        if (maxChunksPerSecond <= 0) {
+            return;
+        }
+
+        long interval = 1_000_000_000L / maxChunksPerSecond;
+        long now = System.nanoTime();
+        long slot = Math.max(nextChunkSlot.getAndUpdate(previous -> Math.max(previous, now) + interval), now);
+
+        long wait = slot - now;
+        while (wait > 0) {
+            LockSupport.parkNanos(wait);
+            wait = slot - System.nanoTime();
+        }
+    }
+
+    private static BigDecimal zeroIfNull(BigDecimal value) {
+        return value == null ? BigDecimal.ZERO : value;
+    }
+
+    private final class ReconcileRange extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient Run run;
+        private final long fromId;
+        private final long toId;
+
+        ReconcileRange(Run run, long fromId, long toId) {
+            this.run = run;
+            this.fromId = fromId;
+            this.toId = toId;
+        }
+
+        @Override
+        protected void compute() {
+            if (toId - fromId <= chunkSize) {
+                reconcileChunk(run, fromId, toId);
+                return;
+            }
+
+            long middle = fromId + (toId - fromId) / 2;
+            invokeAll(new ReconcileRange(run, fromId, middle), new ReconcileRange(run, middle, toId));
+        }
+    }
+
+    private static final class Run {
+
+        private final String runId;
+        private final LocalDateTime startedAt = LocalDateTime.now();
+        private final long startedNanos = System.nanoTime();
+        private final LongAdder accountsProcessed = new LongAdder();
+        private final LongAdder chunksProcessed = new LongAdder();
+        private final LongAdder transactionLegsScanned = new LongAdder();
+        private final LongAdder discrepancies = new LongAdder();
+        private volatile long totalAccounts;
+        private volatile LocalDateTime finishedAt;
+        private volatile String error;
+
+        Run(String runId) {
+            this.runId = runId;
+        }
+
+        boolean isRunning() {
+            return finishedAt == null;
+        }
+
+        ReconciliationStatus toStatus() {
+            LocalDateTime end = finishedAt;
+            double seconds = end == null
+                    ? (System.nanoTime() - startedNanos) / 1_000_000_000.0
+                    : Duration.between(startedAt, end).toNanos() / 1_000_000_000.0;
+            long accounts = accountsProcessed.sum();
+            long legs = transactionLegsScanned.sum();
+
+            return new ReconciliationStatus(
+                    runId,
+                    end == null,
+                    startedAt,
+                    end,
+                    totalAccounts,
+                    accounts,
+                    chunksProcessed.sum(),
+                    legs,
+                    discrepancies.sum(),
+                    seconds > 0 ? accounts / seconds : 0,
+                    seconds > 0 ? legs / seconds : 0,
+                    error);
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.firstrand.banking.service;
+
+import com.firstrand.banking.exception.TokenRefreshException;
+import com.firstrand.banking.model.RefreshToken;
+import com.firstrand.banking.model.User;
+import com.firstrand.banking.repository.RefreshTokenRepository;
+import com.firstrand.banking.repository.UserRepository;
+import com.firstrand.banking.security.UserDetailsImpl;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.UUID;
+
+/**
+ * Issues and rotates opaque refresh tokens so clients can renew short-lived access tokens without
+ * sending their password again. Only a SHA-256 digest of each token is stored; a token can be
+ * exchanged exactly once, and presenting one that was already rotated revokes its whole family.
+ * Rotated tokens keep the expiry of the signin that started the family, so a session cannot be
+ * kept alive past it by refreshing.
+ */
+@Service
+public class RefreshTokenService {
+    
+    private static final Logger logger = LoggerFactory.getLogger(RefreshTokenService.class);
+    
+    private static final int TOKEN_BYTES = 32;
+    
+    @Autowired
+    private RefreshTokenRepository refreshTokenRepository;
+    
+    @Autowired
+    private UserRepository userRepository;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    @Value("${jwt.refresh-expiration:2592000000}")
+    private long refreshExpirationMs;
+    
+    private final SecureRandom secureRandom = new SecureRandom();
+    
+    private Counter signinSuccess;
+    private Counter signinFailure;
+    private Counter refreshSuccess;
+    private Counter refreshRejected;
+    private Counter refreshReused;
+    
+    @PostConstruct
+    void registerMeters() {
+        signinSuccess = meterRegistry.counter("auth.signin", "result", "success");
+        signinFailure = meterRegistry.counter("auth.signin", "result", "failure");
+        refreshSuccess = meterRegistry.counter("auth.refresh", "result", "success");
+        refreshRejected = meterRegistry.counter("auth.refresh", "result", "rejected");
+        refreshReused = meterRegistry.counter("auth.refresh", "result", "reused");
+    }
+    
+    public void recordSignin(boolean success) {
+        (success ? signinSuccess : signinFailure).increment();
+    }
+    
+    @Transactional
+    public String createRefreshToken(Long userId) {
+        return issue(userId, UUID.randomUUID().toString(), LocalDateTime.now().plusNanos(refreshExpirationMs * 1_000_000));
+    }
+    
+    /**
+     * Exchanges a refresh token for a new one in the same family and returns the user it belongs to.
+     */
+    @Transactional(noRollbackFor = TokenRefreshException.class)
+    public Rotation rotate(String presentedToken) {
+        RefreshToken current = refreshTokenRepository.findByTokenHash(hash(presentedToken))
+                .orElseThrow(() -> reject("Refresh token is not recognised"));
+        
+        if (current.getExpiresAt().isBefore(LocalDateTime.now())) {
+            throw reject("Refresh token has expired");
+        }
+        
+        // The conditional update makes concurrent exchanges of the same token race on the row, so
+        // only one of them can win; everything else is treated as replay
+        if (current.isRevoked() || refreshTokenRepository.revokeIfActive(current.getId()) == 0) {
+            int revoked = refreshTokenRepository.revokeFamily(current.getFamilyId());
+            refreshReused.increment();
+            logger.warn("Refresh token reuse for user {}; revoked {} tokens in family {}",
+                    current.getUserId(), revoked, current.getFamilyId());
+            throw new TokenRefreshException("Refresh token has already been used");
+        }
+        
+        User user = userRepository.findById(current.getUserId())
+                .orElseThrow(() -> reject("Refresh token owner no longer exists"));
+        
+        String next = issue(user.getId(), current.getFamilyId(), current.getExpiresAt());
+        refreshSuccess.increment();
+        return new Rotation(UserDetailsImpl.build(user), next);
+    }
+    
+    // Logging out only ends the session the token belongs to
+    @Transactional
+    public void revokeFamilyOf(String presentedToken) {
+        refreshTokenRepository.findByTokenHash(hash(presentedToken))
+                .ifPresent(token -> refreshTokenRepository.revokeFamily(token.getFamilyId()));
+    }
+    
+    @Transactional
+    public int revokeAllForUser(Long userId) {
+        int revoked = refreshTokenRepository.revokeByUserId(userId);
+        logger.info("Revoked {} refresh tokens for user {}", revoked, userId);
+        return revoked;
+    }
+    
+    @Transactional
+    public int revokeAll() {
+        int revoked = refreshTokenRepository.revokeAll();
+        logger.warn("Revoked all {} active refresh tokens", revoked);
+        return revoked;
+    }
+    
+    @Scheduled(fixedDelayString = "${jwt.refresh-purge-interval-ms:3600000}")
+    @Transactional
+    public void purgeExpired() {
+        int purged = refreshTokenRepository.deleteExpired(LocalDateTime.now());
+        if (purged > 0) {
+            logger.debug("Purged {} expired refresh tokens", purged);
+        }
+    }
+    
+    private String issue(Long userId, String familyId, LocalDateTime expiresAt) {
+        byte[] raw = new byte[TOKEN_BYTES];
+        secureRandom.nextBytes(raw);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(raw);
+        
+        RefreshToken refreshToken = new RefreshToken(null, userId, hash(token), familyId,
+                expiresAt, false, LocalDateTime.now());
+        refreshTokenRepository.save(refreshToken);
+        
+        return token;
+    }
+    
+    private TokenRefreshException reject(String message) {
+        refreshRejected.increment();
+        return new TokenRefreshException(message);
+    }
+    
+    // A fast digest is enough here: the tokens carry 256 bits of entropy, so unlike passwords
+    // there is nothing for a slow hash to protect against
+    private static String hash(String token) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+    
+    @Data
+    @AllArgsConstructor
+    public static class Rotation {
+        private UserDetailsImpl user;
+        private String refreshToken;
+    }
+}
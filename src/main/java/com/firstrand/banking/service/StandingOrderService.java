@@ -0,0 +1,484 @@
+package com.firstrand.banking.service;
+
+import com.firstrand.banking.exception.ResourceNotFoundException;
+import com.firstrand.banking.model.StandingOrder;
+import com.firstrand.banking.model.StandingOrderStatus;
+import com.firstrand.banking.model.Transaction;
+import com.firstrand.banking.model.TransactionStatus;
+import com.firstrand.banking.model.TransactionType;
+import com.firstrand.banking.model.dto.StandingOrderRequest;
+import com.firstrand.banking.model.dto.TransferRequest;
+import com.firstrand.banking.repository.AccountRepository;
+import com.firstrand.banking.repository.StandingOrderRepository;
+import com.firstrand.banking.repository.TransactionRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Stores standing orders and pays them through {@link TransactionService#transferFunds}. Only
+ * orders due within the next {@code standing-orders.load-window-ms} are held in memory, as ids in a
+ * {@link HierarchicalTimingWheel}; the window is reloaded from the database once half of it has
+ * passed. Each payment and the move to the order's next occurrence commit together, so an order
+ * is never paid twice for one occurrence, and after a restart the first load picks up everything
+ * that fell due while the application was down.
+ */
+@Service
+public class StandingOrderService {
+
+    private static final Logger logger = LoggerFactory.getLogger(StandingOrderService.class);
+
+    private static final int LOAD_BUFFER_SIZE = 4096;
+
+    private static final int MAX_REASON_LENGTH = 200;
+
+    private static final String OVERDUE_SQL =
+            "SELECT id, next_attempt_at FROM standing_orders WHERE status = 'ACTIVE' AND next_attempt_at < ?";
+
+    private static final String WINDOW_SQL =
+            "SELECT id, next_attempt_at FROM standing_orders "
+            + "WHERE status = 'ACTIVE' AND next_attempt_at >= ? AND next_attempt_at < ?";
+
+    @Autowired
+    private StandingOrderRepository standingOrderRepository;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private AccountService accountService;
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private TransactionSearchIndex transactionSearchIndex;
+
+    @Autowired
+    private AccountStreamPublisher accountStreamPublisher;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${standing-orders.enabled:true}")
+    private boolean enabled;
+
+    @Value("${standing-orders.tick-ms:1000}")
+    private long tickMillis;
+
+    @Value("${standing-orders.wheel-size:64}")
+    private int wheelSize;
+
+    @Value("${standing-orders.load-window-ms:3600000}")
+    private long loadWindowMillis;
+
+    @Value("${standing-orders.batch-size:500}")
+    private int batchSize;
+
+    @Value("${standing-orders.firing-threads:4}")
+    private int firingThreads;
+
+    @Value("${standing-orders.max-attempts:5}")
+    private int maxAttempts;
+
+    @Value("${standing-orders.retry-base-delay-ms:60000}")
+    private long retryBaseDelayMillis;
+
+    @Value("${standing-orders.retry-max-delay-ms:3600000}")
+    private long retryMaxDelayMillis;
+
+    private TransactionTemplate transactionTemplate;
+
+    private HierarchicalTimingWheel wheel;
+
+    // Orders attempting before this instant are in the wheel, or are added to it as they are scheduled
+    private volatile long loadedUntil = Long.MIN_VALUE;
+
+    private ScheduledExecutorService ticker;
+
+    private ExecutorService firingPool;
+
+    private Counter paid;
+    private Counter retried;
+    private Counter abandoned;
+
+    @PostConstruct
+    void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        wheel = new HierarchicalTimingWheel(tickMillis, wheelSize, System.currentTimeMillis());
+
+        paid = meterRegistry.counter("standing_orders.fired", "result", "paid");
+        retried = meterRegistry.counter("standing_orders.fired", "result", "retry");
+        abandoned = meterRegistry.counter("standing_orders.fired", "result", "abandoned");
+        Gauge.builder("standing_orders.scheduled", this, StandingOrderService::scheduledCount)
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+
+        firingPool = Executors.newFixedThreadPool(firingThreads, daemonThreads("standing-order-firing"));
+        ticker = Executors.newSingleThreadScheduledExecutor(daemonThreads("standing-orders"));
+        ticker.scheduleWithFixedDelay(this::tick, 0, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (ticker != null) {
+            ticker.shutdownNow();
+            firingPool.shutdownNow();
+        }
+    }
+
+    @Transactional
+    public StandingOrder createStandingOrder(Long userId, StandingOrderRequest request) {
+        // Fails with 404 now rather than on every attempt later
+        accountService.getAccountByAccountNumber(request.getDestinationAccountNumber());
+
+        LocalDateTime now = LocalDateTime.now();
+        StandingOrder order = new StandingOrder();
+        order.setUserId(userId);
+        order.setSourceAccountNumber(request.getSourceAccountNumber());
+        order.setDestinationAccountNumber(request.getDestinationAccountNumber());
+        order.setAmount(request.getAmount());
+        order.setFrequency(request.getFrequency());
+        order.setFirstPaymentAt(request.getFirstPaymentAt());
+        order.setEndAt(request.getEndAt());
+        order.setReference(request.getReference());
+        order.setDescription(request.getDescription());
+        order.setStatus(StandingOrderStatus.ACTIVE);
+        order.setNextDueAt(request.getFirstPaymentAt());
+        order.setNextAttemptAt(request.getFirstPaymentAt());
+        order.setCreatedAt(now);
+        order.setUpdatedAt(now);
+
+        StandingOrder saved = standingOrderRepository.save(order);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                reschedule(saved);
+            }
+        });
+        return saved;
+    }
+
+    public StandingOrder getStandingOrder(Long id) {
+        return standingOrderRepository.findById(id)
+                .orElseThrow(() -> new ResourceNotFoundException("Standing order not found with id: " + id));
+    }
+
+    public List<StandingOrder> getStandingOrdersForUser(Long userId) {
+        return standingOrderRepository.findByUserIdOrderByIdAsc(userId);
+    }
+
+    // The order's wheel entry stays behind and is skipped when it fires
+    @Transactional
+    public StandingOrder cancelStandingOrder(Long id) {
+        StandingOrder order = getStandingOrder(id);
+        if (order.getStatus() == StandingOrderStatus.ACTIVE) {
+            order.setStatus(StandingOrderStatus.CANCELLED);
+            order.setNextAttemptAt(null);
+            order.setUpdatedAt(LocalDateTime.now());
+        }
+        return standingOrderRepository.save(order);
+    }
+
+    public int scheduledCount() {
+        synchronized (wheel) {
+            return wheel.size();
+        }
+    }
+
+    void tick() {
+        try {
+            long now = System.currentTimeMillis();
+            loadWindow(now);
+
+            LongBuffer due = new LongBuffer();
+            synchronized (wheel) {
+                wheel.advance(now, due::add);
+            }
+
+            long[] ids = due.distinct();
+            for (int from = 0; from < ids.length; from += batchSize) {
+                fireBatch(Arrays.copyOfRange(ids, from, Math.min(ids.length, from + batchSize)));
+            }
+        } catch (RuntimeException e) {
+            // Keep ticking; whatever was due is still due in the database and is reloaded on restart
+            logger.error("Standing order tick failed", e);
+        }
+    }
+
+    private void loadWindow(long now) {
+        long from = loadedUntil;
+        long until = now + loadWindowMillis;
+        if (from != Long.MIN_VALUE && from - now > loadWindowMillis / 2) {
+            return;
+        }
+
+        // Published before the query, so an order committed after this point is either seen by the
+        // query or finds the new bound in reschedule() and adds itself
+        loadedUntil = until;
+
+        LongBuffer ids = new LongBuffer();
+        LongBuffer attempts = new LongBuffer();
+        int[] loaded = new int[1];
+        Timestamp untilTimestamp = new Timestamp(until);
+
+        // The first load has no lower bound, which is what picks up orders missed while stopped
+        jdbcTemplate.query(from == Long.MIN_VALUE ? OVERDUE_SQL : WINDOW_SQL, rs -> {
+            ids.add(rs.getLong(1));
+            attempts.add(rs.getTimestamp(2).getTime());
+            if (ids.size == LOAD_BUFFER_SIZE) {
+                loaded[0] += addAll(ids, attempts);
+            }
+        }, from == Long.MIN_VALUE
+                ? new Object[]{untilTimestamp}
+                : new Object[]{new Timestamp(from), untilTimestamp});
+        loaded[0] += addAll(ids, attempts);
+
+        if (loaded[0] > 0) {
+            logger.debug("Loaded {} standing orders due before {}", loaded[0], untilTimestamp);
+        }
+    }
+
+    private int addAll(LongBuffer ids, LongBuffer attempts) {
+        int count = ids.size;
+        synchronized (wheel) {
+            for (int i = 0; i < count; i++) {
+                schedule(ids.values[i], attempts.values[i]);
+            }
+        }
+        ids.size = 0;
+        attempts.size = 0;
+        return count;
+    }
+
+    // Caller holds the wheel's monitor
+    private void schedule(long id, long attemptAt) {
+        if (!wheel.add(id, attemptAt)) {
+            wheel.add(id, wheel.currentTime());
+        }
+    }
+
+    private void reschedule(StandingOrder order) {
+        if (order.getStatus() != StandingOrderStatus.ACTIVE || order.getNextAttemptAt() == null) {
+            return;
+        }
+
+        long attemptAt = toEpochMillis(order.getNextAttemptAt());
+        if (attemptAt < loadedUntil) {
+            synchronized (wheel) {
+                schedule(order.getId(), attemptAt);
+            }
+        }
+    }
+
+    private void fireBatch(long[] ids) {
+        LocalDateTime now = LocalDateTime.now();
+        List<StandingOrder> due = standingOrderRepository.findAllById(
+                        Arrays.stream(ids).boxed().collect(Collectors.toList()))
+                .stream()
+                .filter(order -> order.getStatus() == StandingOrderStatus.ACTIVE)
+                .filter(order -> order.getNextAttemptAt() != null && !order.getNextAttemptAt().isAfter(now))
+                .collect(Collectors.toList());
+
+        if (firingThreads <= 1) {
+            due.forEach(this::fire);
+            return;
+        }
+
+        List<Future<?>> futures = new ArrayList<>(due.size());
+        for (StandingOrder order : due) {
+            futures.add(firingPool.submit(() -> fire(order)));
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                logger.error("Standing order firing failed", e.getCause());
+            }
+        }
+    }
+
+    private void fire(StandingOrder order) {
+        LocalDateTime now = LocalDateTime.now();
+        try {
+            StandingOrder updated = transactionTemplate.execute(status -> {
+                Transaction transaction = transactionService.transferFunds(toTransferRequest(order));
+                order.setLastTransactionId(transaction.getId());
+                order.setLastFailureReason(null);
+                advance(order, now);
+                return standingOrderRepository.save(order);
+            });
+            paid.increment();
+            reschedule(updated);
+        } catch (OptimisticLockingFailureException e) {
+            // Cancelled while firing; the transfer rolled back with the order update
+            logger.debug("Standing order {} changed while firing", order.getId());
+        } catch (RuntimeException e) {
+            recordFailure(order.getId(), e, now);
+        }
+    }
+
+    private void recordFailure(Long id, RuntimeException cause, LocalDateTime now) {
+        String reason = truncate(cause.getMessage() == null ? cause.getClass().getSimpleName() : cause.getMessage());
+
+        StandingOrder updated = transactionTemplate.execute(status -> {
+            StandingOrder order = standingOrderRepository.findById(id).orElse(null);
+            if (order == null || order.getStatus() != StandingOrderStatus.ACTIVE) {
+                return null;
+            }
+
+            Transaction failed = transactionRepository.save(failedTransaction(order, reason, now));
+            transactionSearchIndex.index(failed);
+            accountStreamPublisher.transactionCommitted(failed);
+            order.setFailedAttempts(order.getFailedAttempts() + 1);
+            order.setLastFailureReason(reason);
+
+            if (order.getFailedAttempts() >= maxAttempts) {
+                // Give up on this occurrence and wait for the next one; with none left the order failed
+                abandoned.increment();
+                advance(order, now);
+                if (order.getStatus() == StandingOrderStatus.COMPLETED) {
+                    order.setStatus(StandingOrderStatus.FAILED);
+                }
+            } else {
+                retried.increment();
+                order.setNextAttemptAt(now.plusNanos(retryDelayMillis(order.getFailedAttempts()) * 1_000_000));
+                order.setUpdatedAt(now);
+            }
+            return standingOrderRepository.save(order);
+        });
+
+        if (updated != null) {
+            logger.debug("Standing order {} attempt {} failed: {}", id, updated.getFailedAttempts(), reason);
+            reschedule(updated);
+        }
+    }
+
+    // Doubles with each failed attempt of an occurrence, up to the maximum
+    long retryDelayMillis(int failedAttempts) {
+        return Math.min(retryMaxDelayMillis, retryBaseDelayMillis << Math.min(failedAttempts - 1, 30));
+    }
+
+    private void advance(StandingOrder order, LocalDateTime now) {
+        int next = order.getOccurrence() + 1;
+        LocalDateTime due = order.getFrequency().occurrence(order.getFirstPaymentAt(), next);
+
+        order.setOccurrence(next);
+        order.setFailedAttempts(0);
+        order.setUpdatedAt(now);
+        if (due == null || (order.getEndAt() != null && due.isAfter(order.getEndAt()))) {
+            order.setStatus(StandingOrderStatus.COMPLETED);
+            order.setNextDueAt(null);
+            order.setNextAttemptAt(null);
+        } else {
+            order.setNextDueAt(due);
+            order.setNextAttemptAt(due);
+        }
+    }
+
+    private Transaction failedTransaction(StandingOrder order, String reason, LocalDateTime now) {
+        Transaction transaction = new Transaction();
+        transaction.setSourceAccount(accountRepository.findByAccountNumber(order.getSourceAccountNumber()).orElse(null));
+        transaction.setDestinationAccount(
+                accountRepository.findByAccountNumber(order.getDestinationAccountNumber()).orElse(null));
+        transaction.setAmount(order.getAmount());
+        transaction.setType(TransactionType.TRANSFER);
+        transaction.setReference(order.getReference());
+        transaction.setDescription("Standing order " + order.getId() + " failed: " + reason);
+        transaction.setTimestamp(now);
+        transaction.setStatus(TransactionStatus.FAILED);
+        return transaction;
+    }
+
+    private static TransferRequest toTransferRequest(StandingOrder order) {
+        TransferRequest request = new TransferRequest();
+        request.setSourceAccountNumber(order.getSourceAccountNumber());
+        request.setDestinationAccountNumber(order.getDestinationAccountNumber());
+        request.setAmount(order.getAmount());
+        request.setReference(order.getReference());
+        request.setDescription(order.getDescription());
+        return request;
+    }
+
+    private static String truncate(String reason) {
+        return reason.length() <= MAX_REASON_LENGTH ? reason : reason.substring(0, MAX_REASON_LENGTH);
+    }
+
+    private static long toEpochMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static final class LongBuffer {
+
+        private long[] values = new long[64];
+        private int size;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        long[] distinct() {
+            return Arrays.stream(values, 0, size).sorted().distinct().toArray();
+        }
+    }
+}
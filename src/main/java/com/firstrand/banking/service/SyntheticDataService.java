@@ -0,0 +1,689 @@
+package com.firstrand.banking.service;
+
+import com.firstrand.banking.config.SyntheticDataProperties;
+import com.firstrand.banking.model.AccountType;
+import com.firstrand.banking.model.ERole;
+import com.firstrand.banking.model.Role;
+import com.firstrand.banking.model.TransactionType;
+import com.firstrand.banking.model.dto.SyntheticDataStatus;
+import com.firstrand.banking.repository.RoleRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Generates datasets for performance environments and loads them straight into the schema: users
+ * with their roles, accounts of every type, and a transaction history whose account activity
+ * follows a Zipf distribution, so a few hot accounts see most postings. The same seed and sizes
+ * always generate the same rows, whatever the number of loader threads, because every chunk of
+ * users and every partition of the history draws from its own random stream.
+ *
+ * <p>Each table's ids are reserved as one block up front and written explicitly, so loader threads
+ * insert JDBC batches on their own connections without reading generated keys back. Every account
+ * opens with a deposit that covers all of its later debits, so no balance goes negative, and the
+ * stored balances, daily rollups and balance checkpoints all agree with the transactions.
+ *
+ * <p>The history is back-dated, so it is only loaded into a database without transactions. Anywhere
+ * else its ids would follow those of newer postings, and the archive and the search index rely on
+ * timestamps rising with ids.
+ */
+@Service
+public class SyntheticDataService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SyntheticDataService.class);
+
+    // Fixed, not configurable: they decide which random stream generates which rows
+    private static final int USERS_PER_CHUNK = 10_000;
+    private static final int TRANSACTIONS_PER_PARTITION = 250_000;
+
+    private static final int ACCOUNTS_PER_RANGE = 10_000;
+
+    // Twelve digits, so they never collide with the ten-digit numbers AccountService draws
+    private static final long ACCOUNT_NUMBER_BASE = 900_000_000_000L;
+
+    private static final String INSERT_USER_SQL =
+            "INSERT INTO users (id, username, email, password, first_name, last_name, phone_number) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String INSERT_USER_ROLE_SQL =
+            "INSERT INTO user_roles (user_id, role_id) VALUES (?, ?)";
+
+    private static final String INSERT_ACCOUNT_SQL =
+            "INSERT INTO accounts (id, account_number, account_type, balance, created_at, updated_at, account_name, "
+            + "active, user_id) VALUES (?, ?, ?, 0, ?, ?, ?, TRUE, ?)";
+
+    private static final String INSERT_TRANSACTION_SQL =
+            "INSERT INTO transactions (id, source_account_id, destination_account_id, amount, type, reference, "
+            + "description, timestamp, status) VALUES (?, ?, ?, ?, ?, NULL, ?, ?, 'COMPLETED')";
+
+    // Rolled back once they have drawn an id; see reserveIds
+    private static final String PLACEHOLDER_USER_SQL = "INSERT INTO users DEFAULT VALUES";
+
+    private static final String PLACEHOLDER_ACCOUNT_SQL =
+            "INSERT INTO accounts (account_type, active, balance, created_at, user_id) "
+            + "VALUES ('CHECKING', FALSE, 0, CURRENT_TIMESTAMP, ?)";
+
+    private static final String PLACEHOLDER_TRANSACTION_SQL =
+            "INSERT INTO transactions (amount, type, timestamp, status) VALUES (0, 'FEE', CURRENT_TIMESTAMP, 'FAILED')";
+
+    private static final String UPDATE_BALANCE_SQL =
+            "UPDATE accounts SET balance = ?, updated_at = ? WHERE id = ?";
+
+    // Same rows AccountSummaryService keeps per posting, built for a range of accounts at once
+    private static final String SUMMARIZE_SQL =
+            "INSERT INTO daily_account_summaries (account_id, summary_date, type, credit_count, credit_amount, "
+            + "debit_count, debit_amount) SELECT account_id, summary_date, type, SUM(credit_count), "
+            + "SUM(credit_amount), SUM(debit_count), SUM(debit_amount) FROM ("
+            + "SELECT destination_account_id AS account_id, CAST(timestamp AS DATE) AS summary_date, type, "
+            + "1 AS credit_count, amount AS credit_amount, 0 AS debit_count, 0 AS debit_amount "
+            + "FROM transactions WHERE destination_account_id BETWEEN ? AND ? "
+            + "UNION ALL SELECT source_account_id, CAST(timestamp AS DATE), type, 0, 0, 1, amount "
+            + "FROM transactions WHERE source_account_id BETWEEN ? AND ?) p "
+            + "GROUP BY account_id, summary_date, type";
+
+    private static final TransactionType[] HISTORY_TYPES = {
+            TransactionType.TRANSFER, TransactionType.PAYMENT, TransactionType.WITHDRAWAL,
+            TransactionType.DEPOSIT, TransactionType.FEE, TransactionType.INTEREST};
+
+    // Per history type: cumulative share in percent, median amount in cents, spread of its logarithm
+    private static final int[] TYPE_PERCENTILES = {35, 55, 70, 90, 95, 100};
+    private static final long[] MEDIAN_CENTS = {12_000, 3_500, 6_000, 25_000, 500, 150};
+    private static final double[] AMOUNT_SIGMAS = {1.0, 0.9, 0.8, 1.0, 0.3, 0.8};
+    private static final String[] DESCRIPTIONS = {
+            "Transfer", "Card payment", "ATM withdrawal", "Salary deposit", "Service fee", "Interest credit"};
+
+    private static final long MAX_AMOUNT_CENTS = 5_000_000;
+
+    private static final AccountType[] ACCOUNT_TYPES = {
+            AccountType.CHECKING, AccountType.SAVINGS, AccountType.CREDIT,
+            AccountType.MONEY_MARKET, AccountType.FIXED_DEPOSIT};
+    private static final int[] ACCOUNT_TYPE_PERCENTILES = {40, 70, 82, 92, 100};
+    private static final String[] ACCOUNT_NAMES = {
+            "Everyday Checking", "Savings", "Credit Card", "Money Market", "Fixed Deposit"};
+
+    private static final String[] FIRST_NAMES = {
+            "Alex", "Sam", "Jordan", "Taylor", "Morgan", "Casey", "Jamie", "Robin", "Avery", "Quinn"};
+    private static final String[] LAST_NAMES = {
+            "Smith", "Nkosi", "Garcia", "Chen", "Müller", "Dlamini", "Okafor", "Silva", "Kowalski", "Sato"};
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private RoleRepository roleRepository;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    @Autowired
+    private SyntheticDataProperties properties;
+
+    @Autowired
+    private TransactionArchiveService transactionArchiveService;
+
+    @Autowired
+    private BalanceHistoryService balanceHistoryService;
+
+    @Autowired
+    private JournalLedgerService journalLedgerService;
+
+    @Autowired
+    private UserExistenceFilter userExistenceFilter;
+
+    @Autowired
+    private TransactionSearchIndex transactionSearchIndex;
+
+    private TransactionTemplate transactionTemplate;
+
+    private final ExecutorService coordinator = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "synthetic-data");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AtomicReference<Run> currentRun = new AtomicReference<>();
+
+    @PostConstruct
+    void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        coordinator.shutdownNow();
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    public boolean isRunning() {
+        Run run = currentRun.get();
+        return run != null && run.isRunning();
+    }
+
+    /**
+     * Whether the database already holds transactions, in the table or in the archive. Synthetic
+     * history is only loaded into a database without any.
+     */
+    public boolean hasHistory() {
+        return transactionArchiveService.getWatermark() > 0
+                || jdbcTemplate.queryForObject("SELECT MAX(id) FROM transactions", Long.class) != null;
+    }
+
+    public SyntheticDataStatus getStatus() {
+        Run run = currentRun.get();
+        return run == null ? null : run.toStatus();
+    }
+
+    /**
+     * Starts loading a dataset in the background; null arguments take the configured sizes.
+     */
+    public synchronized SyntheticDataStatus start(Long seed, Integer users, Long transactions) {
+        Run run = begin(seed, users, transactions);
+        coordinator.execute(() -> execute(run));
+        return run.toStatus();
+    }
+
+    /**
+     * Loads a dataset on the calling thread and returns the final report.
+     */
+    public SyntheticDataStatus generate(Long seed, Integer users, Long transactions) {
+        Run run;
+        synchronized (this) {
+            run = begin(seed, users, transactions);
+        }
+        execute(run);
+        return run.toStatus();
+    }
+
+    private Run begin(Long seed, Integer users, Long transactions) {
+        Run previous = currentRun.get();
+        if (previous != null && previous.isRunning()) {
+            throw new IllegalStateException("A synthetic data load is already in progress");
+        }
+
+        Run run = new Run(
+                seed != null ? seed : properties.getSeed(),
+                users != null ? users : properties.getUsers(),
+                transactions != null ? transactions : properties.getTransactions());
+        if (run.users < 2 || run.transactions < 0) {
+            throw new IllegalArgumentException("A dataset needs at least two users and no negative transaction count");
+        }
+        if (properties.getMaxAccountsPerUser() < 1 || properties.getMaxAccountsPerUser() > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("synthetic-data.max-accounts-per-user must be between 1 and 127");
+        }
+        if (hasHistory()) {
+            throw new IllegalStateException("Synthetic history can only be loaded into a database without transactions");
+        }
+        currentRun.set(run);
+        return run;
+    }
+
+    private void execute(Run run) {
+        int threads = properties.getThreads() > 0 ? properties.getThreads() : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "synthetic-data-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try {
+            Plan plan = plan(run);
+
+            run.phase = "USERS";
+            List<Callable<Object>> tasks = new ArrayList<>();
+            for (int chunk = 0; chunk < plan.firstAccountOfChunk.length; chunk++) {
+                int userChunk = chunk;
+                tasks.add(() -> loadUsers(run, plan, userChunk));
+            }
+            runAll(workers, tasks);
+
+            run.phase = "TRANSACTIONS";
+            tasks.clear();
+            long partitions = (run.transactions + TRANSACTIONS_PER_PARTITION - 1) / TRANSACTIONS_PER_PARTITION;
+            for (int partition = 0; partition < partitions; partition++) {
+                int historyPartition = partition;
+                tasks.add(() -> loadTransactions(run, plan, historyPartition));
+            }
+            runAll(workers, tasks);
+
+            run.phase = "BALANCES";
+            tasks.clear();
+            for (int from = 0; from < plan.accounts; from += ACCOUNTS_PER_RANGE) {
+                int first = from;
+                tasks.add(() -> openAccounts(plan, first, Math.min(plan.accounts, first + ACCOUNTS_PER_RANGE)));
+            }
+            runAll(workers, tasks);
+
+            run.phase = "SUMMARIES";
+            tasks.clear();
+            for (int from = 0; from < plan.accounts; from += ACCOUNTS_PER_RANGE) {
+                long firstId = plan.accountBase + 1 + from;
+                long lastId = plan.accountBase + Math.min(plan.accounts, from + ACCOUNTS_PER_RANGE);
+                tasks.add(() -> jdbcTemplate.update(SUMMARIZE_SQL, firstId, lastId, firstId, lastId));
+            }
+            runAll(workers, tasks);
+
+            // The history lies behind days that may already be checkpointed, and the in-memory
+            // indexes only follow postings made through the services
+            run.phase = "INDEXES";
+            balanceHistoryService.checkpointLoadedAccounts(plan.accountBase + 1, plan.accountBase + plan.accounts);
+            if (journalLedgerService.isEnabled()) {
+                journalLedgerService.openCheckpoints();
+            }
+            userExistenceFilter.rebuild();
+            transactionSearchIndex.rebuild();
+
+            run.phase = "DONE";
+            logger.info("Synthetic dataset {} loaded: {} users, {} accounts, {} transactions in {} ms",
+                    run.seed, run.usersLoaded.sum(), run.accountsLoaded.sum(), run.transactionsLoaded.sum(),
+                    Duration.between(run.startedAt, LocalDateTime.now()).toMillis());
+        } catch (Exception e) {
+            logger.error("Synthetic dataset {} failed in phase {}", run.seed, run.phase, e);
+            run.error = e.getMessage();
+        } finally {
+            workers.shutdownNow();
+            run.finishedAt = LocalDateTime.now();
+        }
+    }
+
+    private Plan plan(Run run) throws SQLException {
+        Plan plan = new Plan();
+        plan.seed = run.seed;
+        plan.historyEnd = LocalDate.now().minusDays(1).atStartOfDay();
+        plan.historyStart = plan.historyEnd.minusDays(properties.getHistoryDays());
+
+        // Drawn up front from the main stream, so each user chunk knows where its accounts start
+        SplittableRandom random = new SplittableRandom(run.seed);
+        int chunks = (run.users + USERS_PER_CHUNK - 1) / USERS_PER_CHUNK;
+        plan.accountCounts = new byte[run.users];
+        plan.firstAccountOfChunk = new int[chunks];
+        long accounts = 0;
+        for (int user = 0; user < run.users; user++) {
+            if (user % USERS_PER_CHUNK == 0) {
+                plan.firstAccountOfChunk[user / USERS_PER_CHUNK] = (int) accounts;
+            }
+            plan.accountCounts[user] = (byte) (1 + random.nextInt(properties.getMaxAccountsPerUser()));
+            accounts += plan.accountCounts[user];
+        }
+        if (accounts > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many accounts for one dataset: " + accounts);
+        }
+        plan.accounts = (int) accounts;
+        plan.openingCents = new long[plan.accounts];
+        plan.credits = new AtomicLongArray(plan.accounts);
+        plan.debits = new AtomicLongArray(plan.accounts);
+        plan.sampler = new ZipfSampler(plan.accounts, properties.getSkew(), random);
+
+        plan.userBase = reserveIds("users", run.users, PLACEHOLDER_USER_SQL);
+        plan.accountBase = reserveIds("accounts", plan.accounts, PLACEHOLDER_USER_SQL, PLACEHOLDER_ACCOUNT_SQL);
+        plan.transactionBase = reserveIds("transactions", plan.accounts + run.transactions, PLACEHOLDER_TRANSACTION_SQL);
+
+        plan.passwordHash = passwordEncoder.encode(properties.getPassword());
+        plan.roleIds = new EnumMap<>(ERole.class);
+        for (Role role : roleRepository.findAll()) {
+            plan.roleIds.put(role.getName(), role.getId());
+        }
+        return plan;
+    }
+
+    // The block is taken from the table's own identity in one draw, so postings made through the API
+    // meanwhile get ids before or after it, never inside: while the increment is the block's size,
+    // the id the placeholder draws is the block's first and the next one drawn is past its end
+    private long reserveIds(String table, long count, String... placeholders) throws SQLException {
+        long maxId = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM " + table, Long.class);
+        jdbcTemplate.execute("ALTER TABLE " + table + " ALTER COLUMN id SET INCREMENT BY " + (count + 1));
+        long first;
+        try {
+            first = drawId(placeholders);
+        } finally {
+            jdbcTemplate.execute("ALTER TABLE " + table + " ALTER COLUMN id SET INCREMENT BY 1");
+        }
+
+        // Only rows written with explicit ids from outside the application can be past the identity
+        if (first <= maxId) {
+            throw new IllegalStateException("The " + table + " id identity is behind ids already in the table");
+        }
+        return first - 1;
+    }
+
+    // Inserts the placeholder rows and rolls them back; the ids they drew stay taken, since identities
+    // do not hand values back on rollback. Each placeholder gets the id drawn before it, if it needs one
+    private long drawId(String... placeholders) throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                long id = 0;
+                for (String sql : placeholders) {
+                    try (PreparedStatement statement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+                        if (sql.indexOf('?') >= 0) {
+                            statement.setLong(1, id);
+                        }
+                        statement.executeUpdate();
+                        try (ResultSet keys = statement.getGeneratedKeys()) {
+                            keys.next();
+                            id = keys.getLong(1);
+                        }
+                    }
+                }
+                return id;
+            } finally {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+
+    private Object loadUsers(Run run, Plan plan, int chunk) {
+        SplittableRandom random = new SplittableRandom(streamSeed(plan.seed, -1 - chunk));
+        int firstUser = chunk * USERS_PER_CHUNK;
+        int endUser = Math.min(run.users, firstUser + USERS_PER_CHUNK);
+        int account = plan.firstAccountOfChunk[chunk];
+        Timestamp opened = Timestamp.valueOf(plan.historyStart);
+
+        List<Object[]> users = new ArrayList<>(endUser - firstUser);
+        List<Object[]> userRoles = new ArrayList<>(endUser - firstUser);
+        List<Object[]> accounts = new ArrayList<>((endUser - firstUser) * 2);
+
+        for (int user = firstUser; user < endUser; user++) {
+            long userId = plan.userBase + 1 + user;
+            users.add(new Object[]{userId, "perf" + userId, "perf" + userId + "@example.com", plan.passwordHash,
+                    FIRST_NAMES[random.nextInt(FIRST_NAMES.length)], LAST_NAMES[random.nextInt(LAST_NAMES.length)],
+                    String.format("+1555%07d", userId % 10_000_000)});
+            userRoles.add(new Object[]{userId, plan.roleIds.get(ERole.ROLE_USER)});
+            // The first user of every dataset can call the admin endpoints
+            if (user == 0) {
+                userRoles.add(new Object[]{userId, plan.roleIds.get(ERole.ROLE_ADMIN)});
+            }
+
+            for (int i = 0; i < plan.accountCounts[user]; i++, account++) {
+                long accountId = plan.accountBase + 1 + account;
+                int type = pick(ACCOUNT_TYPE_PERCENTILES, random.nextInt(100));
+                accounts.add(new Object[]{accountId, String.valueOf(ACCOUNT_NUMBER_BASE + accountId),
+                        ACCOUNT_TYPES[type].name(), opened, opened, ACCOUNT_NAMES[type], userId});
+                plan.openingCents[account] = amountCents(random, 150_000, 1.0);
+            }
+        }
+
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.batchUpdate(INSERT_USER_SQL, users);
+            jdbcTemplate.batchUpdate(INSERT_USER_ROLE_SQL, userRoles);
+            jdbcTemplate.batchUpdate(INSERT_ACCOUNT_SQL, accounts);
+        });
+        run.usersLoaded.add(users.size());
+        run.accountsLoaded.add(accounts.size());
+        return null;
+    }
+
+    // Timestamps rise with ids, as they do for postings made through the API, so the archive and
+    // search index see the history in the order they would in production
+    private Object loadTransactions(Run run, Plan plan, int partition) throws SQLException {
+        SplittableRandom random = new SplittableRandom(streamSeed(plan.seed, partition));
+        long first = (long) partition * TRANSACTIONS_PER_PARTITION;
+        long end = Math.min(run.transactions, first + TRANSACTIONS_PER_PARTITION);
+        long startMillis = Timestamp.valueOf(plan.historyStart).getTime();
+        double millisPerTransaction = (double) (Timestamp.valueOf(plan.historyEnd).getTime() - startMillis) / run.transactions;
+        long idBase = plan.transactionBase + plan.accounts + 1;
+        long accountIdBase = plan.accountBase + 1;
+        int batchSize = properties.getBatchSize();
+
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(INSERT_TRANSACTION_SQL)) {
+            connection.setAutoCommit(false);
+            int pending = 0;
+
+            for (long i = first; i < end; i++) {
+                int type = pick(TYPE_PERCENTILES, random.nextInt(100));
+                long cents = amountCents(random, MEDIAN_CENTS[type], AMOUNT_SIGMAS[type]);
+                int source = -1;
+                int destination = -1;
+                switch (HISTORY_TYPES[type]) {
+                    case TRANSFER -> {
+                        source = plan.sampler.next(random);
+                        do {
+                            destination = plan.sampler.next(random);
+                        } while (destination == source);
+                    }
+                    case DEPOSIT, INTEREST -> destination = plan.sampler.next(random);
+                    default -> source = plan.sampler.next(random);
+                }
+
+                statement.setLong(1, idBase + i);
+                if (source >= 0) {
+                    statement.setLong(2, accountIdBase + source);
+                    plan.debits.addAndGet(source, cents);
+                } else {
+                    statement.setNull(2, Types.BIGINT);
+                }
+                if (destination >= 0) {
+                    statement.setLong(3, accountIdBase + destination);
+                    plan.credits.addAndGet(destination, cents);
+                } else {
+                    statement.setNull(3, Types.BIGINT);
+                }
+                statement.setBigDecimal(4, BigDecimal.valueOf(cents, 2));
+                statement.setString(5, HISTORY_TYPES[type].name());
+                statement.setString(6, DESCRIPTIONS[type]);
+                statement.setTimestamp(7, new Timestamp(startMillis + (long) (i * millisPerTransaction)));
+                statement.addBatch();
+
+                if (++pending == batchSize) {
+                    statement.executeBatch();
+                    connection.commit();
+                    run.transactionsLoaded.add(pending);
+                    pending = 0;
+                }
+            }
+
+            if (pending > 0) {
+                statement.executeBatch();
+                connection.commit();
+                run.transactionsLoaded.add(pending);
+            }
+        }
+        return null;
+    }
+
+    // Each account's opening deposit covers every debit in its history, and its balance is what
+    // the opening and the later postings add up to
+    private Object openAccounts(Plan plan, int firstAccount, int endAccount) {
+        Timestamp opened = Timestamp.valueOf(plan.historyStart);
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> deposits = new ArrayList<>(endAccount - firstAccount);
+        List<Object[]> balances = new ArrayList<>(endAccount - firstAccount);
+
+        for (int account = firstAccount; account < endAccount; account++) {
+            long accountId = plan.accountBase + 1 + account;
+            long opening = plan.openingCents[account] + plan.debits.get(account);
+            long balance = plan.openingCents[account] + plan.credits.get(account);
+            deposits.add(new Object[]{plan.transactionBase + 1 + account, null, accountId,
+                    BigDecimal.valueOf(opening, 2), TransactionType.DEPOSIT.name(), "Opening deposit", opened});
+            balances.add(new Object[]{BigDecimal.valueOf(balance, 2), now, accountId});
+        }
+
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.batchUpdate(INSERT_TRANSACTION_SQL, deposits);
+            jdbcTemplate.batchUpdate(UPDATE_BALANCE_SQL, balances);
+        });
+        return null;
+    }
+
+    private static void runAll(ExecutorService workers, List<Callable<Object>> tasks)
+            throws InterruptedException, ExecutionException {
+        for (Future<Object> future : workers.invokeAll(tasks)) {
+            future.get();
+        }
+    }
+
+    private static int pick(int[] percentiles, int draw) {
+        int index = 0;
+        while (draw >= percentiles[index]) {
+            index++;
+        }
+        return index;
+    }
+
+    // Log-normal around the median, which gives the long tail of a few large payments
+    private static long amountCents(SplittableRandom random, long medianCents, double sigma) {
+        long cents = Math.round(medianCents * Math.exp(sigma * random.nextGaussian()));
+        return Math.max(1, Math.min(MAX_AMOUNT_CENTS, cents));
+    }
+
+    // Seeds one random stream per chunk or partition; SplittableRandom seeds a small distance apart
+    // would give overlapping sequences, so the pair is scrambled first (MurmurHash3's finalizer)
+    private static long streamSeed(long seed, long stream) {
+        long z = seed + stream * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 33)) * 0xFF51AFD7ED558CCDL;
+        z = (z ^ (z >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return z ^ (z >>> 33);
+    }
+
+    /**
+     * Draws account indexes with probability proportional to 1 / rank^skew. Ranks are dealt to
+     * accounts in a shuffled order, so the hot accounts are spread across users and ids.
+     */
+    private static final class ZipfSampler {
+
+        private final double[] cumulative;
+        private final int[] accountByRank;
+
+        ZipfSampler(int accounts, double skew, SplittableRandom random) {
+            cumulative = new double[accounts];
+            double total = 0;
+            for (int rank = 0; rank < accounts; rank++) {
+                total += Math.pow(rank + 1, -skew);
+                cumulative[rank] = total;
+            }
+
+            accountByRank = new int[accounts];
+            for (int i = 0; i < accounts; i++) {
+                accountByRank[i] = i;
+            }
+            for (int i = accounts - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int swap = accountByRank[i];
+                accountByRank[i] = accountByRank[j];
+                accountByRank[j] = swap;
+            }
+        }
+
+        int next(SplittableRandom random) {
+            double target = random.nextDouble() * cumulative[cumulative.length - 1];
+            int rank = Arrays.binarySearch(cumulative, target);
+            if (rank < 0) {
+                rank = Math.min(-rank - 1, cumulative.length - 1);
+            }
+            return accountByRank[rank];
+        }
+    }
+
+    // Everything the loader threads share; written before they start and read-only after, apart
+    // from the per-account debit and credit totals
+    private static final class Plan {
+
+        private long seed;
+        private LocalDateTime historyStart;
+        private LocalDateTime historyEnd;
+        private byte[] accountCounts;
+        private int[] firstAccountOfChunk;
+        private int accounts;
+        private long[] openingCents;
+        private AtomicLongArray credits;
+        private AtomicLongArray debits;
+        private ZipfSampler sampler;
+        private long userBase;
+        private long accountBase;
+        private long transactionBase;
+        private String passwordHash;
+        private Map<ERole, Long> roleIds;
+    }
+
+    private static final class Run {
+
+        private final long seed;
+        private final int users;
+        private final long transactions;
+        private final LocalDateTime startedAt = LocalDateTime.now();
+        private final long startedNanos = System.nanoTime();
+        private final LongAdder usersLoaded = new LongAdder();
+        private final LongAdder accountsLoaded = new LongAdder();
+        private final LongAdder transactionsLoaded = new LongAdder();
+        private volatile String phase = "PLANNING";
+        private volatile LocalDateTime finishedAt;
+        private volatile String error;
+
+        Run(long seed, int users, long transactions) {
+            this.seed = seed;
+            this.users = users;
+            this.transactions = transactions;
+        }
+
+        boolean isRunning() {
+            return finishedAt == null;
+        }
+
+        SyntheticDataStatus toStatus() {
+            LocalDateTime end = finishedAt;
+            double seconds = end == null
+                    ? (System.nanoTime() - startedNanos) / 1_000_000_000.0
+                    : Duration.between(startedAt, end).toNanos() / 1_000_000_000.0;
+            long loaded = transactionsLoaded.sum();
+
+            return new SyntheticDataStatus(
+                    seed,
+                    end == null,
+                    phase,
+                    startedAt,
+                    end,
+                    usersLoaded.sum(),
+                    accountsLoaded.sum(),
+                    loaded,
+                    transactions,
+                    seconds > 0 ? loaded / seconds : 0,
+                    error);
+        }
+    }
+}
@@ -0,0 +1,437 @@
+package com.firstrand.banking.service;
+
+import com.firstrand.banking.model.ArchiveSegment;
+import com.firstrand.banking.model.Money;
+import com.firstrand.banking.model.TransactionStatus;
+import com.firstrand.banking.model.TransactionType;
+import com.firstrand.banking.model.dto.ArchiveStatus;
+import com.firstrand.banking.repository.ArchiveSegmentRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * Moves transactions older than {@code archive.min-age-days} out of the transactions table into
+ * immutable {@link ArchiveSegmentFile segment files} and serves them back to history, lookup,
+ * search and reconciliation.
+ *
+ * <p>Each run archives a prefix of the id space: from the end of the last segment up to the first
+ * transaction that is too recent, at most {@code archive.max-transactions-per-segment} per segment.
+ * A segment is written and forced to disk under a temporary name, renamed into place, and only
+ * then registered in {@code archive_segments} in the same database transaction that deletes its
+ * rows. A file without a registry row, left behind by a crash, is never read.
+ *
+ * <p>Code that reads the table and the archive as one must hold {@link #readLock()}, which keeps a
+ * segment from being published between its two reads.
+ */
+@Service
+public class TransactionArchiveService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TransactionArchiveService.class);
+
+    private static final String SELECT_SQL =
+            "SELECT id, source_account_id, destination_account_id, amount, type, status, timestamp, reference, description "
+            + "FROM transactions WHERE id >= ? AND id < ? AND timestamp < ? ORDER BY id";
+
+    private static final String DELETE_SQL =
+            "DELETE FROM transactions WHERE id >= ? AND id < ? AND timestamp < ?";
+
+    private static final String FIRST_ID_SQL = "SELECT MIN(id) FROM transactions WHERE id >= ?";
+
+    private static final String FIRST_RECENT_ID_SQL = "SELECT MIN(id) FROM transactions WHERE id >= ? AND timestamp >= ?";
+
+    private static final String LAST_ID_SQL = "SELECT MAX(id) FROM transactions WHERE id >= ?";
+
+    private static final String NTH_ID_SQL = "SELECT id FROM transactions WHERE id >= ? ORDER BY id LIMIT 1 OFFSET ?";
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ArchiveSegmentRepository segmentRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${archive.directory:data/archive}")
+    private String directory;
+
+    @Value("${archive.min-age-days:365}")
+    private int minAgeDays;
+
+    @Value("${archive.max-transactions-per-segment:200000}")
+    private int maxTransactionsPerSegment;
+
+    private JdbcTemplate jdbcTemplate;
+
+    private TransactionTemplate transactionTemplate;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Ascending by id range; replaced whole, under the write lock, when a segment is published
+    private volatile List<ArchiveSegmentFile> segments = List.of();
+
+    private final ExecutorService coordinator = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "transaction-archive");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AtomicReference<Run> currentRun = new AtomicReference<>();
+
+    @PostConstruct
+    void init() {
+        // Velocity limits rebuild from the last day of the table at startup
+        if (minAgeDays < 2) {
+            throw new IllegalStateException("archive.min-age-days must be at least 2, was " + minAgeDays);
+        }
+
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.setFetchSize(10_000);
+        transactionTemplate = new TransactionTemplate(transactionManager);
+
+        Gauge.builder("archive.segments", this, archive -> archive.segments.size()).register(meterRegistry);
+        Gauge.builder("archive.transactions", this, TransactionArchiveService::archivedCount).register(meterRegistry);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        coordinator.shutdownNow();
+    }
+
+    /**
+     * Maps every registered segment. A registered segment whose file is missing or does not match its
+     * registry row stops startup, since the transactions in it exist nowhere else.
+     */
+    public void open() throws IOException {
+        Path root = Paths.get(directory);
+        List<ArchiveSegmentFile> opened = new ArrayList<>();
+        Set<String> registered = new HashSet<>();
+
+        for (ArchiveSegment segment : segmentRepository.findAllByOrderByFromTransactionId()) {
+            Path file = root.resolve(segment.getFileName());
+            if (!Files.isRegularFile(file)) {
+                throw new IllegalStateException("Archive segment " + file + " is registered but missing");
+            }
+
+            ArchiveSegmentFile segmentFile = ArchiveSegmentFile.open(file);
+            if (segmentFile.getFromId() != segment.getFromTransactionId()
+                    || segmentFile.getToId() != segment.getToTransactionId()
+                    || segmentFile.getTransactionCount() != segment.getTransactionCount()) {
+                throw new IllegalStateException("Archive segment " + file + " does not match its registry row");
+            }
+            opened.add(segmentFile);
+            registered.add(segment.getFileName());
+        }
+
+        if (Files.isDirectory(root)) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(root)) {
+                for (Path file : files) {
+                    if (!registered.contains(file.getFileName().toString())) {
+                        logger.warn("Ignoring unregistered file {} in the archive directory, left by an interrupted run", file);
+                    }
+                }
+            }
+        }
+
+        lock.writeLock().lock();
+        try {
+            segments = List.copyOf(opened);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        logger.info("Opened {} archive segments holding {} transactions", opened.size(), archivedCount());
+    }
+
+    @Scheduled(cron = "${archive.cron:-}")
+    public void scheduledArchive() {
+        if (!isRunning()) {
+            startArchive();
+        }
+    }
+
+    public synchronized ArchiveStatus startArchive() {
+        Run previous = currentRun.get();
+        if (previous != null && previous.isRunning()) {
+            throw new IllegalStateException("An archive run is already in progress");
+        }
+
+        Run run = new Run(LocalDate.now().minusDays(minAgeDays).atStartOfDay());
+        currentRun.set(run);
+        coordinator.execute(() -> execute(run));
+        return toStatus(run);
+    }
+
+    public boolean isRunning() {
+        Run run = currentRun.get();
+        return run != null && run.isRunning();
+    }
+
+    public ArchiveStatus getStatus() {
+        Run run = currentRun.get();
+        return run == null ? null : toStatus(run);
+    }
+
+    /**
+     * Held while reading the transactions table and the archive together; a segment is published
+     * under the matching write lock, in the same step as its rows leave the table.
+     */
+    public Lock readLock() {
+        return lock.readLock();
+    }
+
+    /**
+     * Every id below this has been through archival. A transaction below it can still be in the
+     * table if it committed after the run that passed it, being too recent to archive.
+     */
+    public long getWatermark() {
+        List<ArchiveSegmentFile> current = segments;
+        return current.isEmpty() ? 0 : current.get(current.size() - 1).getToId();
+    }
+
+    public long countByAccount(long accountId) {
+        long count = 0;
+        for (ArchiveSegmentFile segment : segments) {
+            count += segment.countByAccount(accountId);
+        }
+        return count;
+    }
+
+    /**
+     * Up to {@code limit} of the account's archived transactions, newest first, skipping the first
+     * {@code offset}.
+     */
+    public List<ArchiveSegmentFile.Entry> findByAccount(long accountId, long offset, int limit) {
+        List<ArchiveSegmentFile> current = segments;
+        List<ArchiveSegmentFile.Entry> page = new ArrayList<>(Math.min(limit, 1024));
+        long skip = offset;
+
+        for (int i = current.size() - 1; i >= 0 && page.size() < limit; i--) {
+            int count = current.get(i).countByAccount(accountId);
+            if (skip >= count) {
+                skip -= count;
+                continue;
+            }
+            current.get(i).readAccount(accountId, (int) skip, limit - page.size(), page);
+            skip = 0;
+        }
+        return page;
+    }
+
+    public ArchiveSegmentFile.Entry findById(long id) {
+        List<ArchiveSegmentFile> current = segments;
+        int low = 0;
+        int high = current.size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            ArchiveSegmentFile segment = current.get(middle);
+            if (id < segment.getFromId()) {
+                high = middle - 1;
+            } else if (id >= segment.getToId()) {
+                low = middle + 1;
+            } else {
+                return segment.findById(id);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Adds up the archived completed credits and debits of the accounts in
+     * {@code [fromAccountId, toAccountId)}, one call per account and segment.
+     */
+    public void forEachAccountTotals(long fromAccountId, long toAccountId, ArchiveSegmentFile.TotalsSink sink) {
+        for (ArchiveSegmentFile segment : segments) {
+            segment.forEachAccountTotals(fromAccountId, toAccountId, sink);
+        }
+    }
+
+    /**
+     * The account's archived completed credits and debits, in cents, for transactions timestamped in
+     * {@code [from, to)}.
+     */
+    public long[] sumAccountBetween(long accountId, LocalDateTime from, LocalDateTime to) {
+        long[] totals = new long[2];
+        for (ArchiveSegmentFile segment : segments) {
+            segment.sumAccountBetween(accountId, from, to, totals);
+        }
+        return totals;
+    }
+
+    /**
+     * Passes every archived transaction to the consumer in ascending id order.
+     */
+    public void forEachArchived(Consumer<ArchiveSegmentFile.Entry> consumer) {
+        for (ArchiveSegmentFile segment : segments) {
+            segment.forEachById(consumer);
+        }
+    }
+
+    private long archivedCount() {
+        long count = 0;
+        for (ArchiveSegmentFile segment : segments) {
+            count += segment.getTransactionCount();
+        }
+        return count;
+    }
+
+    private void execute(Run run) {
+        try {
+            Files.createDirectories(Paths.get(directory));
+            while (archiveNextSegment(run)) {
+                // Each segment commits on its own, so a failed run keeps what it finished
+            }
+
+            logger.info("Archive run finished: {} segments, {} transactions, {} bytes, cutoff {}",
+                    run.segmentsWritten, run.transactionsArchived, run.bytesWritten, run.cutoff);
+        } catch (Exception e) {
+            logger.error("Archive run failed", e);
+            run.error = e.getMessage();
+        } finally {
+            run.finishedAt = LocalDateTime.now();
+        }
+    }
+
+    private boolean archiveNextSegment(Run run) throws IOException {
+        Timestamp cutoff = Timestamp.valueOf(run.cutoff);
+        Long fromId = jdbcTemplate.queryForObject(FIRST_ID_SQL, Long.class, getWatermark());
+        if (fromId == null) {
+            return false;
+        }
+
+        // Stop at the first transaction too recent to archive, or at the end of the table
+        Long toId = jdbcTemplate.queryForObject(FIRST_RECENT_ID_SQL, Long.class, fromId, cutoff);
+        if (toId == null) {
+            toId = jdbcTemplate.queryForObject(LAST_ID_SQL, Long.class, fromId) + 1;
+        }
+        List<Long> capped = jdbcTemplate.queryForList(NTH_ID_SQL, Long.class, fromId, maxTransactionsPerSegment);
+        if (!capped.isEmpty()) {
+            toId = Math.min(toId, capped.get(0));
+        }
+        if (toId <= fromId) {
+            return false;
+        }
+
+        List<ArchiveSegmentFile.Entry> entries = jdbcTemplate.query(SELECT_SQL, (rs, rowNum) -> new ArchiveSegmentFile.Entry(
+                rs.getLong(1),
+                rs.getObject(2, Long.class),
+                rs.getObject(3, Long.class),
+                Money.of(rs.getBigDecimal(4)).getMinorUnits(),
+                TransactionType.valueOf(rs.getString(5)),
+                TransactionStatus.valueOf(rs.getString(6)),
+                rs.getTimestamp(7).toLocalDateTime(),
+                rs.getString(8),
+                rs.getString(9)), fromId, toId, cutoff);
+        if (entries.isEmpty()) {
+            return false;
+        }
+
+        Path root = Paths.get(directory);
+        String fileName = "transactions-" + fromId + "-" + toId + SEGMENT_SUFFIX;
+        Path temporary = root.resolve(fileName + ".tmp");
+        long size = ArchiveSegmentFile.write(temporary, fromId, toId, entries);
+        Path file = Files.move(temporary, root.resolve(fileName),
+                StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        ArchiveSegmentFile segment = ArchiveSegmentFile.open(file);
+
+        long firstId = fromId;
+        long endId = toId;
+        lock.writeLock().lock();
+        try {
+            // If this fails the file stays behind unregistered; it is not deleted in case the commit
+            // went through and only its acknowledgement was lost
+            transactionTemplate.executeWithoutResult(status -> {
+                segmentRepository.save(new ArchiveSegment(fileName, firstId, endId, entries.size(), size));
+                int deleted = jdbcTemplate.update(DELETE_SQL, firstId, endId, cutoff);
+                if (deleted != entries.size()) {
+                    throw new IllegalStateException("Archived " + entries.size() + " transactions in "
+                            + firstId + ".." + endId + " but " + deleted + " matched the delete");
+                }
+            });
+
+            List<ArchiveSegmentFile> next = new ArrayList<>(segments);
+            next.add(segment);
+            segments = List.copyOf(next);
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        run.segmentsWritten++;
+        run.transactionsArchived += entries.size();
+        run.bytesWritten += size;
+        logger.info("Archived {} transactions with ids {}..{} into {} ({} bytes)",
+                entries.size(), fromId, toId, fileName, size);
+        return true;
+    }
+
+    private ArchiveStatus toStatus(Run run) {
+        return new ArchiveStatus(
+                run.isRunning(),
+                run.startedAt,
+                run.finishedAt,
+                run.cutoff,
+                run.segmentsWritten,
+                run.transactionsArchived,
+                run.bytesWritten,
+                segments.size(),
+                archivedCount(),
+                getWatermark(),
+                run.error);
+    }
+
+    private static final class Run {
+
+        private final LocalDateTime cutoff;
+        private final LocalDateTime startedAt = LocalDateTime.now();
+        private volatile int segmentsWritten;
+        private volatile long transactionsArchived;
+        private volatile long bytesWritten;
+        private volatile LocalDateTime finishedAt;
+        private volatile String error;
+
+        Run(LocalDateTime cutoff) {
+            this.cutoff = cutoff;
+        }
+
+        boolean isRunning() {
+            return finishedAt == null;
+        }
+    }
+}
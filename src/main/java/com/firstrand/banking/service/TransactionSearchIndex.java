@@ -0,0 +1,700 @@
+package com.firstrand.banking.service;
+
+import com.firstrand.banking.model.Money;
+import com.firstrand.banking.model.Transaction;
+import com.firstrand.banking.model.TransactionStatus;
+import com.firstrand.banking.model.TransactionType;
+import com.firstrand.banking.model.dto.TransactionSearchCriteria;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory search over all transactions for the admin search endpoint. Every transaction gets a
+ * document number in the order it was indexed. The words of its reference and description go into
+ * an inverted index whose posting lists are delta-encoded varints of document numbers, and its
+ * type, status, amount and time go into primitive columns. Each block of 1024 documents keeps the
+ * minimum and maximum amount and time and the set of types and statuses in it, so range filters
+ * skip whole blocks.
+ *
+ * <p>The index is loaded from the archive and, in parallel, the database at startup and then kept current by the
+ * code that inserts transactions, once their transaction commits. Results come newest first in
+ * indexing order, which follows commit order.
+ */
+@Service
+public class TransactionSearchIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(TransactionSearchIndex.class);
+
+    private static final String SELECT_RANGE_SQL =
+            "SELECT id, type, status, amount, timestamp, reference, description FROM transactions "
+            + "WHERE id >= ? AND id < ? ORDER BY id";
+
+    private static final int BLOCK_SHIFT = 10;
+
+    private static final int MAX_TOKEN_LENGTH = 40;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private TransactionArchiveService transactionArchiveService;
+
+    @Value("${search.enabled:true}")
+    private boolean enabled;
+
+    @Value("${search.rebuild-threads:4}")
+    private int rebuildThreads;
+
+    @Value("${search.rebuild-partitions:16}")
+    private int rebuildPartitions;
+
+    private JdbcTemplate jdbcTemplate;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Guarded by lock; empty until the first rebuild has finished
+    private Index index = new Index();
+
+    // Guarded by lock; documents committed while a rebuild is loading, replayed into its result
+    private List<Document> pending;
+
+    private volatile boolean ready;
+
+    @PostConstruct
+    void init() {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.setFetchSize(10_000);
+
+        Gauge.builder("transactions.search.indexed", this, TransactionSearchIndex::indexedCount).register(meterRegistry);
+    }
+
+    public boolean isReady() {
+        return ready || !enabled;
+    }
+
+    /**
+     * Indexes the transaction once the surrounding transaction commits, or straight away outside one.
+     */
+    public void index(Transaction transaction) {
+        index(List.of(transaction));
+    }
+
+    public void index(Collection<Transaction> transactions) {
+        if (!enabled || transactions.isEmpty()) {
+            return;
+        }
+
+        List<Document> documents = new ArrayList<>(transactions.size());
+        for (Transaction transaction : transactions) {
+            documents.add(new Document(transaction.getId(), transaction.getType().ordinal(),
+                    transaction.getStatus().ordinal(), transaction.getAmount().getMinorUnits(),
+                    Timestamp.valueOf(transaction.getTimestamp()).getTime(),
+                    transaction.getReference(), transaction.getDescription()));
+        }
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            add(documents);
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                add(documents);
+            }
+        });
+    }
+
+    /**
+     * Loads every transaction into a new index, {@code search.rebuild-partitions} id ranges at a time
+     * on {@code search.rebuild-threads} threads, and swaps it in. Transactions committed meanwhile
+     * are added to the new index as well.
+     */
+    public synchronized void rebuild() throws Exception {
+        if (!enabled) {
+            return;
+        }
+
+        long started = System.nanoTime();
+        lock.writeLock().lock();
+        try {
+            pending = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        Index next;
+        try {
+            next = load();
+        } catch (Exception e) {
+            lock.writeLock().lock();
+            try {
+                pending = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            throw e;
+        }
+
+        int replayed = 0;
+        lock.writeLock().lock();
+        try {
+            // A document committed during the load may or may not have been read by it
+            int loaded = next.size;
+            for (Document document : pending) {
+                if (!next.containsLoaded(document.id, loaded)) {
+                    next.add(document);
+                    replayed++;
+                }
+            }
+            index = next;
+            pending = null;
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        logger.info("Indexed {} transactions ({} tokens, {} added during the load) for search in {} ms",
+                next.size, next.postings.size(), replayed, (System.nanoTime() - started) / 1_000_000);
+    }
+
+    /**
+     * Returns the ids of the matching transactions, newest first.
+     */
+    public Page<Long> search(TransactionSearchCriteria criteria, Pageable pageable) {
+        Filter filter = new Filter(criteria);
+        List<String> tokens = new ArrayList<>();
+        tokenize(criteria.getQuery(), tokens::add);
+
+        lock.readLock().lock();
+        try {
+            long[] total = new long[1];
+            List<Long> ids = index.search(tokens, filter, pageable.getOffset(), pageable.getPageSize(), total);
+            return new PageImpl<>(ids, pageable, total[0]);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int indexedCount() {
+        lock.readLock().lock();
+        try {
+            return index.size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void add(List<Document> documents) {
+        lock.writeLock().lock();
+        try {
+            if (pending != null) {
+                pending.addAll(documents);
+            }
+            for (Document document : documents) {
+                index.add(document);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private Index load() throws Exception {
+        // Archival waits until the load has read both the table and the archive
+        Lock archiveLock = transactionArchiveService.readLock();
+        archiveLock.lock();
+        try {
+            long watermark = transactionArchiveService.getWatermark();
+            Index merged = loadArchived(watermark);
+
+            Map<String, Object> bounds = jdbcTemplate.queryForMap(
+                    "SELECT MIN(id) AS min_id, MAX(id) AS max_id FROM transactions WHERE id >= ?", watermark);
+            if (bounds.get("min_id") == null) {
+                return merged;
+            }
+
+            long minId = ((Number) bounds.get("min_id")).longValue();
+            long maxId = ((Number) bounds.get("max_id")).longValue() + 1;
+            long span = Math.max(1, (maxId - minId + rebuildPartitions - 1) / rebuildPartitions);
+
+            ExecutorService workers = Executors.newFixedThreadPool(rebuildThreads);
+            try {
+                List<Future<Index>> partitions = new ArrayList<>();
+                for (long fromId = minId; fromId < maxId; fromId += span) {
+                    long start = fromId;
+                    long end = Math.min(maxId, fromId + span);
+                    partitions.add(workers.submit(() -> loadRange(start, end)));
+                }
+
+                // Partitions cover ascending id ranges, so appending them in order keeps the ids sorted
+                for (Future<Index> partition : partitions) {
+                    merged.addAll(partition.get());
+                }
+                return merged;
+            } finally {
+                workers.shutdownNow();
+            }
+        } finally {
+            archiveLock.unlock();
+        }
+    }
+
+    // The archive in id order, with the few transactions below the watermark that are still in the
+    // table, having been too recent when archival passed them, merged in
+    private Index loadArchived(long watermark) {
+        Index archived = new Index();
+        if (watermark == 0) {
+            return archived;
+        }
+
+        List<Document> recent = new ArrayList<>();
+        jdbcTemplate.query(SELECT_RANGE_SQL, rs -> {
+            recent.add(document(rs));
+        }, 0, watermark);
+
+        int[] next = {0};
+        transactionArchiveService.forEachArchived(entry -> {
+            while (next[0] < recent.size() && recent.get(next[0]).id < entry.getId()) {
+                archived.add(recent.get(next[0]++));
+            }
+            archived.add(new Document(entry.getId(), entry.getType().ordinal(), entry.getStatus().ordinal(),
+                    entry.getAmount(), Timestamp.valueOf(entry.getTimestamp()).getTime(),
+                    entry.getReference(), entry.getDescription()));
+        });
+        while (next[0] < recent.size()) {
+            archived.add(recent.get(next[0]++));
+        }
+        return archived;
+    }
+
+    private Index loadRange(long fromId, long toId) {
+        Index partition = new Index();
+        jdbcTemplate.query(SELECT_RANGE_SQL, rs -> {
+            partition.add(document(rs));
+        }, fromId, toId);
+        return partition;
+    }
+
+    private static Document document(ResultSet rs) throws SQLException {
+        return new Document(rs.getLong(1), TransactionType.valueOf(rs.getString(2)).ordinal(),
+                TransactionStatus.valueOf(rs.getString(3)).ordinal(),
+                Money.of(rs.getBigDecimal(4)).getMinorUnits(), rs.getTimestamp(5).getTime(),
+                rs.getString(6), rs.getString(7));
+    }
+
+    // Lower-cased runs of letters and digits, two characters or longer
+    static void tokenize(String text, TokenSink sink) {
+        if (text == null) {
+            return;
+        }
+
+        int length = text.length();
+        int start = -1;
+        for (int i = 0; i <= length; i++) {
+            boolean wordChar = i < length && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                if (i - start >= 2) {
+                    sink.accept(text.substring(start, Math.min(i, start + MAX_TOKEN_LENGTH)).toLowerCase());
+                }
+                start = -1;
+            }
+        }
+    }
+
+    @FunctionalInterface
+    interface TokenSink {
+        void accept(String token);
+    }
+
+    private static final class Document {
+
+        private final long id;
+        private final int type;
+        private final int status;
+        private final long amount;
+        private final long time;
+        private final String reference;
+        private final String description;
+
+        Document(long id, int type, int status, long amount, long time, String reference, String description) {
+            this.id = id;
+            this.type = type;
+            this.status = status;
+            this.amount = amount;
+            this.time = time;
+            this.reference = reference;
+            this.description = description;
+        }
+    }
+
+    // Criteria flattened to primitives; an absent bound is the widest one
+    private static final class Filter {
+
+        private final int typeMask;
+        private final int statusMask;
+        private final long minAmount;
+        private final long maxAmount;
+        private final long fromTime;
+        private final long toTime;
+
+        Filter(TransactionSearchCriteria criteria) {
+            typeMask = criteria.getType() == null ? -1 : 1 << criteria.getType().ordinal();
+            statusMask = criteria.getStatus() == null ? -1 : 1 << criteria.getStatus().ordinal();
+            minAmount = criteria.getMinAmount() == null ? Long.MIN_VALUE : criteria.getMinAmount().getMinorUnits();
+            maxAmount = criteria.getMaxAmount() == null ? Long.MAX_VALUE : criteria.getMaxAmount().getMinorUnits();
+            fromTime = millis(criteria.getFrom(), Long.MIN_VALUE);
+            toTime = millis(criteria.getTo(), Long.MAX_VALUE);
+        }
+
+        private static long millis(LocalDateTime time, long absent) {
+            return time == null ? absent : Timestamp.valueOf(time).getTime();
+        }
+    }
+
+    /**
+     * Documents, block summaries and posting lists. Not thread-safe; the enclosing service guards the
+     * live instance with its lock, and a rebuild fills fresh instances on one thread each.
+     */
+    private static final class Index {
+
+        private static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+
+        private long[] ids = new long[BLOCK_SIZE];
+        private long[] amounts = new long[BLOCK_SIZE];
+        private long[] times = new long[BLOCK_SIZE];
+        private byte[] types = new byte[BLOCK_SIZE];
+        private byte[] statuses = new byte[BLOCK_SIZE];
+        private int size;
+
+        private long[] blockMinAmounts = new long[1];
+        private long[] blockMaxAmounts = new long[1];
+        private long[] blockMinTimes = new long[1];
+        private long[] blockMaxTimes = new long[1];
+        private int[] blockTypes = new int[1];
+        private int[] blockStatuses = new int[1];
+
+        private final Map<String, PostingList> postings = new HashMap<>();
+
+        void add(Document document) {
+            int doc = size;
+            if (doc == ids.length) {
+                grow();
+            }
+
+            ids[doc] = document.id;
+            amounts[doc] = document.amount;
+            times[doc] = document.time;
+            types[doc] = (byte) document.type;
+            statuses[doc] = (byte) document.status;
+            size++;
+
+            int block = doc >>> BLOCK_SHIFT;
+            if ((doc & (BLOCK_SIZE - 1)) == 0) {
+                blockMinAmounts[block] = document.amount;
+                blockMaxAmounts[block] = document.amount;
+                blockMinTimes[block] = document.time;
+                blockMaxTimes[block] = document.time;
+                blockTypes[block] = 0;
+                blockStatuses[block] = 0;
+            } else {
+                blockMinAmounts[block] = Math.min(blockMinAmounts[block], document.amount);
+                blockMaxAmounts[block] = Math.max(blockMaxAmounts[block], document.amount);
+                blockMinTimes[block] = Math.min(blockMinTimes[block], document.time);
+                blockMaxTimes[block] = Math.max(blockMaxTimes[block], document.time);
+            }
+            blockTypes[block] |= 1 << document.type;
+            blockStatuses[block] |= 1 << document.status;
+
+            TokenSink sink = token -> postings.computeIfAbsent(token, t -> new PostingList()).add(doc);
+            tokenize(document.reference, sink);
+            tokenize(document.description, sink);
+        }
+
+        // Appends another index's documents after this one's, renumbering them
+        void addAll(Index other) {
+            int base = size;
+            for (int doc = 0; doc < other.size; doc++) {
+                if (size == ids.length) {
+                    grow();
+                }
+                ids[size] = other.ids[doc];
+                amounts[size] = other.amounts[doc];
+                times[size] = other.times[doc];
+                types[size] = other.types[doc];
+                statuses[size] = other.statuses[doc];
+                size++;
+            }
+            recomputeBlocks(base);
+
+            for (Map.Entry<String, PostingList> entry : other.postings.entrySet()) {
+                PostingList target = postings.computeIfAbsent(entry.getKey(), t -> new PostingList());
+                int[] docs = entry.getValue().decode();
+                for (int doc : docs) {
+                    target.add(base + doc);
+                }
+            }
+        }
+
+        // True if the id is among the first loaded documents, which are in ascending id order
+        boolean containsLoaded(long id, int loaded) {
+            return Arrays.binarySearch(ids, 0, loaded, id) >= 0;
+        }
+
+        List<Long> search(List<String> tokens, Filter filter, long offset, int limit, long[] total) {
+            List<Long> page = new ArrayList<>(Math.min(limit, 1024));
+            long matched = 0;
+
+            if (!tokens.isEmpty()) {
+                int[] candidates = candidates(tokens);
+                for (int i = candidates.length - 1; i >= 0; i--) {
+                    int doc = candidates[i];
+                    if (matches(doc, filter)) {
+                        if (matched >= offset && page.size() < limit) {
+                            page.add(ids[doc]);
+                        }
+                        matched++;
+                    }
+                }
+            } else {
+                for (int block = (size - 1) >>> BLOCK_SHIFT; size > 0 && block >= 0; block--) {
+                    if (!blockMatches(block, filter)) {
+                        continue;
+                    }
+                    int first = block << BLOCK_SHIFT;
+                    for (int doc = Math.min(size, first + BLOCK_SIZE) - 1; doc >= first; doc--) {
+                        if (matches(doc, filter)) {
+                            if (matched >= offset && page.size() < limit) {
+                                page.add(ids[doc]);
+                            }
+                            matched++;
+                        }
+                    }
+                }
+            }
+
+            total[0] = matched;
+            return page;
+        }
+
+        // Documents holding every token, intersected from the shortest posting list up
+        private int[] candidates(List<String> tokens) {
+            List<PostingList> lists = new ArrayList<>(tokens.size());
+            for (String token : tokens) {
+                PostingList list = postings.get(token);
+                if (list == null) {
+                    return new int[0];
+                }
+                lists.add(list);
+            }
+            lists.sort(Comparator.comparingInt(list -> list.count));
+
+            int[] candidates = lists.get(0).decode();
+            for (int i = 1; i < lists.size() && candidates.length > 0; i++) {
+                candidates = lists.get(i).retain(candidates);
+            }
+            return candidates;
+        }
+
+        private boolean blockMatches(int block, Filter filter) {
+            return (blockTypes[block] & filter.typeMask) != 0
+                    && (blockStatuses[block] & filter.statusMask) != 0
+                    && blockMaxAmounts[block] >= filter.minAmount && blockMinAmounts[block] <= filter.maxAmount
+                    && blockMaxTimes[block] >= filter.fromTime && blockMinTimes[block] < filter.toTime;
+        }
+
+        private boolean matches(int doc, Filter filter) {
+            return (1 << types[doc] & filter.typeMask) != 0
+                    && (1 << statuses[doc] & filter.statusMask) != 0
+                    && amounts[doc] >= filter.minAmount && amounts[doc] <= filter.maxAmount
+                    && times[doc] >= filter.fromTime && times[doc] < filter.toTime;
+        }
+
+        private void grow() {
+            int capacity = ids.length * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            amounts = Arrays.copyOf(amounts, capacity);
+            times = Arrays.copyOf(times, capacity);
+            types = Arrays.copyOf(types, capacity);
+            statuses = Arrays.copyOf(statuses, capacity);
+
+            int blocks = capacity >>> BLOCK_SHIFT;
+            blockMinAmounts = Arrays.copyOf(blockMinAmounts, blocks);
+            blockMaxAmounts = Arrays.copyOf(blockMaxAmounts, blocks);
+            blockMinTimes = Arrays.copyOf(blockMinTimes, blocks);
+            blockMaxTimes = Arrays.copyOf(blockMaxTimes, blocks);
+            blockTypes = Arrays.copyOf(blockTypes, blocks);
+            blockStatuses = Arrays.copyOf(blockStatuses, blocks);
+        }
+
+        private void recomputeBlocks(int fromDoc) {
+            for (int block = fromDoc >>> BLOCK_SHIFT; block << BLOCK_SHIFT < size; block++) {
+                int first = block << BLOCK_SHIFT;
+                int last = Math.min(size, first + BLOCK_SIZE);
+                long minAmount = Long.MAX_VALUE, maxAmount = Long.MIN_VALUE;
+                long minTime = Long.MAX_VALUE, maxTime = Long.MIN_VALUE;
+                int blockType = 0, blockStatus = 0;
+                for (int doc = first; doc < last; doc++) {
+                    minAmount = Math.min(minAmount, amounts[doc]);
+                    maxAmount = Math.max(maxAmount, amounts[doc]);
+                    minTime = Math.min(minTime, times[doc]);
+                    maxTime = Math.max(maxTime, times[doc]);
+                    blockType |= 1 << types[doc];
+                    blockStatus |= 1 << statuses[doc];
+                }
+                blockMinAmounts[block] = minAmount;
+                blockMaxAmounts[block] = maxAmount;
+                blockMinTimes[block] = minTime;
+                blockMaxTimes[block] = maxTime;
+                blockTypes[block] = blockType;
+                blockStatuses[block] = blockStatus;
+            }
+        }
+    }
+
+    /**
+     * Ascending document numbers stored as varint gaps, usually one or two bytes per document. Every
+     * {@code SKIP_INTERVAL}th document is also recorded with its byte offset, so an intersection
+     * with a short list jumps over most of a long one instead of decoding it.
+     */
+    private static final class PostingList {
+
+        private static final int SKIP_INTERVAL = 64;
+
+        private byte[] bytes = new byte[4];
+        private int length;
+        private int count;
+        private int last = -1;
+
+        private int[] skipDocs = new int[0];
+        private int[] skipOffsets = new int[0];
+
+        void add(int doc) {
+            // A word repeated within one document is recorded once
+            if (doc == last) {
+                return;
+            }
+
+            if (length + 5 > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + 5));
+            }
+
+            int gap = doc - last;
+            while ((gap & ~0x7F) != 0) {
+                bytes[length++] = (byte) ((gap & 0x7F) | 0x80);
+                gap >>>= 7;
+            }
+            bytes[length++] = (byte) gap;
+
+            last = doc;
+            count++;
+
+            if (count % SKIP_INTERVAL == 0) {
+                int skips = count / SKIP_INTERVAL;
+                if (skips > skipDocs.length) {
+                    skipDocs = Arrays.copyOf(skipDocs, Math.max(4, skips * 2));
+                    skipOffsets = Arrays.copyOf(skipOffsets, skipDocs.length);
+                }
+                skipDocs[skips - 1] = doc;
+                skipOffsets[skips - 1] = length;
+            }
+        }
+
+        int[] decode() {
+            int[] docs = new int[count];
+            int doc = -1;
+            int position = 0;
+            for (int i = 0; i < count; i++) {
+                int gap = 0;
+                for (int shift = 0; ; shift += 7) {
+                    byte b = bytes[position++];
+                    gap |= (b & 0x7F) << shift;
+                    if (b >= 0) {
+                        break;
+                    }
+                }
+                doc += gap;
+                docs[i] = doc;
+            }
+            return docs;
+        }
+
+        // The candidates that are also in this list
+        int[] retain(int[] candidates) {
+            int[] kept = new int[Math.min(candidates.length, count)];
+            int keptCount = 0;
+            int skips = count / SKIP_INTERVAL;
+            int skip = 0;
+            int doc = -1;
+            int decoded = 0;
+            int position = 0;
+
+            for (int candidate : candidates) {
+                // Every document up to a skip entry below the candidate can be passed over
+                while (skip < skips && skipDocs[skip] < candidate) {
+                    if ((skip + 1) * SKIP_INTERVAL > decoded) {
+                        doc = skipDocs[skip];
+                        position = skipOffsets[skip];
+                        decoded = (skip + 1) * SKIP_INTERVAL;
+                    }
+                    skip++;
+                }
+
+                while (doc < candidate && decoded < count) {
+                    int gap = 0;
+                    for (int shift = 0; ; shift += 7) {
+                        byte b = bytes[position++];
+                        gap |= (b & 0x7F) << shift;
+                        if (b >= 0) {
+                            break;
+                        }
+                    }
+                    doc += gap;
+                    decoded++;
+                }
+
+                if (doc == candidate) {
+                    kept[keptCount++] = candidate;
+                } else if (doc < candidate) {
+                    break;
+                }
+            }
+            return Arrays.copyOf(kept, keptCount);
+        }
+    }
+}
@@ -3,25 +3,39 @@ package com.firstrand.banking.service;
 import com.firstrand.banking.exception.InsufficientFundsException;
 import com.firstrand.banking.exception.ResourceNotFoundException;
 import com.firstrand.banking.model.Account;
+import com.firstrand.banking.model.DeclineReason;
+import com.firstrand.banking.model.Money;
 import com.firstrand.banking.model.Transaction;
 import com.firstrand.banking.model.TransactionStatus;
 import com.firstrand.banking.model.TransactionType;
+import com.firstrand.banking.model.dto.TransactionSearchCriteria;
 import com.firstrand.banking.model.dto.TransferRequest;
 import com.firstrand.banking.repository.AccountRepository;
 import com.firstrand.banking.repository.TransactionRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 public class TransactionService {
     
+    private static final String BALANCE_SQL = "SELECT balance FROM accounts WHERE id = ?";
+    
     @Autowired
     private TransactionRepository transactionRepository;
     
@@ -31,13 +45,55 @@ public class TransactionService {
     @Autowired
     private AccountService accountService;
     
+    @Autowired
+    private AccountSummaryService accountSummaryService;
+    
+    @Autowired
+    private JournalLedgerService journalLedgerService;
+    
+    @Autowired
+    private VelocityService velocityService;
+    
+    @Autowired
+    private AccountVersionIndex accountVersionIndex;
+    
+    @Autowired
+    private TransactionSearchIndex transactionSearchIndex;
+    
+    @Autowired
+    private AccountStreamPublisher accountStreamPublisher;
+    
+    @Autowired
+    private AccountBalanceView accountBalanceView;
+    
+    @Autowired
+    private TransactionArchiveService transactionArchiveService;
+    
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    
     public List<Transaction> getAllTransactions() {
         return transactionRepository.findAll();
     }
     
     public Transaction getTransactionById(Long id) {
-        return transactionRepository.findById(id)
-                .orElseThrow(() -> new ResourceNotFoundException("Transaction not found with id: " + id));
+        Lock archiveLock = transactionArchiveService.readLock();
+        archiveLock.lock();
+        try {
+            Transaction transaction = transactionRepository.findById(id).orElse(null);
+            if (transaction == null) {
+                ArchiveSegmentFile.Entry archived = transactionArchiveService.findById(id);
+                if (archived != null) {
+                    transaction = fromArchive(List.of(archived)).get(0);
+                }
+            }
+            if (transaction == null) {
+                throw new ResourceNotFoundException("Transaction not found with id: " + id);
+            }
+            return transaction;
+        } finally {
+            archiveLock.unlock();
+        }
     }
     
     public List<Transaction> getTransactionsBySourceAccount(Account account) {
@@ -48,46 +104,176 @@ public class TransactionService {
         return transactionRepository.findByDestinationAccount(account);
     }
     
+    /**
+     * The account's history, newest first: the transactions still in the table, followed by the
+     * archived ones, which are all older.
+     */
     public Page<Transaction> getTransactionsByAccount(Account account, Pageable pageable) {
-        return transactionRepository.findBySourceAccountOrDestinationAccount(account, account, pageable);
+        Lock archiveLock = transactionArchiveService.readLock();
+        archiveLock.lock();
+        try {
+            Page<Transaction> recent = transactionRepository.findBySourceAccountOrDestinationAccount(account, account, pageable);
+            long archived = transactionArchiveService.countByAccount(account.getId());
+            if (archived == 0) {
+                return recent;
+            }
+            
+            List<Transaction> content = new ArrayList<>(recent.getContent());
+            long archiveOffset = pageable.getOffset() + content.size() - recent.getTotalElements();
+            if (content.size() < pageable.getPageSize() && archiveOffset >= 0) {
+                content.addAll(fromArchive(transactionArchiveService.findByAccount(
+                        account.getId(), archiveOffset, pageable.getPageSize() - content.size())));
+            }
+            return new PageImpl<>(content, pageable, recent.getTotalElements() + archived);
+        } finally {
+            archiveLock.unlock();
+        }
+    }
+    
+    /**
+     * Runs the search on the in-memory index, then loads the page of matches by id.
+     */
+    public Page<Transaction> searchTransactions(TransactionSearchCriteria criteria, Pageable pageable) {
+        Page<Long> ids = transactionSearchIndex.search(criteria, pageable);
+        Lock archiveLock = transactionArchiveService.readLock();
+        archiveLock.lock();
+        try {
+            Map<Long, Transaction> transactions = transactionRepository.findAllById(ids.getContent()).stream()
+                    .collect(Collectors.toMap(Transaction::getId, Function.identity()));
+            
+            List<ArchiveSegmentFile.Entry> archived = new ArrayList<>();
+            for (Long id : ids.getContent()) {
+                ArchiveSegmentFile.Entry entry = transactions.containsKey(id) ? null : transactionArchiveService.findById(id);
+                if (entry != null) {
+                    archived.add(entry);
+                }
+            }
+            for (Transaction transaction : fromArchive(archived)) {
+                transactions.put(transaction.getId(), transaction);
+            }
+            return ids.map(transactions::get);
+        } finally {
+            archiveLock.unlock();
+        }
+    }
+    
+    // Detached transactions for archived entries, with their accounts loaded in one query
+    private List<Transaction> fromArchive(List<ArchiveSegmentFile.Entry> entries) {
+        if (entries.isEmpty()) {
+            return List.of();
+        }
+        
+        Set<Long> accountIds = new HashSet<>();
+        for (ArchiveSegmentFile.Entry entry : entries) {
+            if (entry.getSourceAccountId() != null) {
+                accountIds.add(entry.getSourceAccountId());
+            }
+            if (entry.getDestinationAccountId() != null) {
+                accountIds.add(entry.getDestinationAccountId());
+            }
+        }
+        Map<Long, Account> accounts = accountRepository.findAllById(accountIds).stream()
+                .collect(Collectors.toMap(Account::getId, Function.identity()));
+        
+        List<Transaction> transactions = new ArrayList<>(entries.size());
+        for (ArchiveSegmentFile.Entry entry : entries) {
+            transactions.add(new Transaction(entry.getId(),
+                    entry.getSourceAccountId() == null ? null : accounts.get(entry.getSourceAccountId()),
+                    entry.getDestinationAccountId() == null ? null : accounts.get(entry.getDestinationAccountId()),
+                    Money.ofMinorUnits(entry.getAmount()), entry.getType(), entry.getReference(),
+                    entry.getDescription(), entry.getTimestamp(), entry.getStatus()));
+        }
+        return transactions;
+    }
+    
+    /**
+     * Screens a debit against the account's committed balance without opening a transaction, so a
+     * declined card or transfer costs one in-memory read instead of a rolled-back write. Returns why
+     * the debit would be declined, or null if it may go ahead; the posting itself still checks the
+     * balance it locks, so a debit that passes here can be declined there.
+     */
+    public DeclineReason checkDebit(String accountNumber, Money amount) {
+        Money available;
+        if (accountBalanceView.isEnabled()) {
+            available = accountBalanceView.getByAccountNumber(accountNumber).getBalance();
+        } else {
+            Account account = accountService.getAccountByAccountNumber(accountNumber);
+            available = journalLedgerService.isEnabled()
+                    ? Money.of(journalLedgerService.getBalance(account.getId()))
+                    : account.getBalance();
+        }
+        
+        return available.isLessThan(amount) ? DeclineReason.INSUFFICIENT_FUNDS : null;
     }
     
     @Transactional
     public Transaction transferFunds(TransferRequest transferRequest) {
+        FlightRecorderEvents.Posting event = new FlightRecorderEvents.Posting();
+        event.begin();
+        
         // Get source and destination accounts
         Account sourceAccount = accountService.getAccountByAccountNumber(transferRequest.getSourceAccountNumber());
         Account destinationAccount = accountService.getAccountByAccountNumber(transferRequest.getDestinationAccountNumber());
         
+        Money amount = transferRequest.getAmount();
+        accountService.lockAccountRows(sourceAccount, destinationAccount);
+        
         // Check if source account has sufficient funds
-        if (sourceAccount.getBalance().compareTo(transferRequest.getAmount()) < 0) {
+        if (availableBalanceForDebit(sourceAccount).isLessThan(amount)) {
+            event.finish(TransactionType.TRANSFER, "DECLINED", sourceAccount.getId(), destinationAccount.getId(), amount);
             throw new InsufficientFundsException("Insufficient funds in account: " + sourceAccount.getAccountNumber());
         }
         
+        // Count the debit against the account's velocity limits; a rollback takes it back out
+        velocityService.checkAndRecord(sourceAccount, amount);
+        
         // Create a transaction record
         Transaction transaction = new Transaction();
         transaction.setSourceAccount(sourceAccount);
         transaction.setDestinationAccount(destinationAccount);
-        transaction.setAmount(transferRequest.getAmount());
+        transaction.setAmount(amount);
         transaction.setType(TransactionType.TRANSFER);
         transaction.setReference(transferRequest.getReference());
         transaction.setDescription(transferRequest.getDescription());
         transaction.setTimestamp(LocalDateTime.now());
         transaction.setStatus(TransactionStatus.COMPLETED);
         
-        // Update account balances
-        sourceAccount.setBalance(sourceAccount.getBalance().subtract(transferRequest.getAmount()));
-        destinationAccount.setBalance(destinationAccount.getBalance().add(transferRequest.getAmount()));
+        // Registered before the ledger writes so the read model never loads a balance that has them
+        accountBalanceView.recordPosting(sourceAccount.getId(), destinationAccount.getId(), amount);
         
-        // Save changes
-        accountRepository.save(sourceAccount);
-        accountRepository.save(destinationAccount);
+        Transaction saved;
+        if (journalLedgerService.isEnabled()) {
+            // Append a debit/credit pair instead of updating either account row
+            saved = transactionRepository.save(transaction);
+            journalLedgerService.post(saved.getId(), sourceAccount.getId(), destinationAccount.getId(), amount.toBigDecimal());
+        } else {
+            // Update account balances
+            accountService.adjustBalance(sourceAccount, amount.negate());
+            accountService.adjustBalance(destinationAccount, amount);
+            
+            saved = transactionRepository.save(transaction);
+            accountVersionIndex.accountsChanged(sourceAccount.getUser().getId());
+            accountVersionIndex.accountsChanged(destinationAccount.getUser().getId());
+        }
+        transactionSearchIndex.index(saved);
+        accountStreamPublisher.transactionCommitted(saved);
+        if (!journalLedgerService.isEnabled()) {
+            // In journal mode the checkpointer builds the summaries from the entries
+            accountSummaryService.recordPosting(sourceAccount.getId(), destinationAccount.getId(),
+                    TransactionType.TRANSFER, amount, saved.getTimestamp());
+        }
         
-        return transactionRepository.save(transaction);
+        event.finish(TransactionType.TRANSFER, "COMPLETED", sourceAccount.getId(), destinationAccount.getId(), amount);
+        return saved;
     }
     
     @Transactional
-    public Transaction deposit(String accountNumber, BigDecimal amount, String reference, String description) {
+    public Transaction deposit(String accountNumber, Money amount, String reference, String description) {
+        FlightRecorderEvents.Posting event = new FlightRecorderEvents.Posting();
+        event.begin();
+        
         Account account = accountService.getAccountByAccountNumber(accountNumber);
+        accountService.lockAccountRows(account);
         
         // Create a transaction record
         Transaction transaction = new Transaction();
@@ -99,22 +285,47 @@ public class TransactionService {
         transaction.setTimestamp(LocalDateTime.now());
         transaction.setStatus(TransactionStatus.COMPLETED);
         
-        // Update account balance
-        account.setBalance(account.getBalance().add(amount));
-        accountRepository.save(account);
+        accountBalanceView.recordPosting(null, account.getId(), amount);
+        
+        Transaction saved;
+        if (journalLedgerService.isEnabled()) {
+            saved = transactionRepository.save(transaction);
+            journalLedgerService.post(saved.getId(), null, account.getId(), amount.toBigDecimal());
+        } else {
+            // Update account balance
+            accountService.adjustBalance(account, amount);
+            
+            saved = transactionRepository.save(transaction);
+            accountVersionIndex.accountsChanged(account.getUser().getId());
+        }
+        transactionSearchIndex.index(saved);
+        accountStreamPublisher.transactionCommitted(saved);
+        if (!journalLedgerService.isEnabled()) {
+            accountSummaryService.recordPosting(null, account.getId(),
+                    TransactionType.DEPOSIT, amount, saved.getTimestamp());
+        }
         
-        return transactionRepository.save(transaction);
+        event.finish(TransactionType.DEPOSIT, "COMPLETED", null, account.getId(), amount);
+        return saved;
     }
     
     @Transactional
-    public Transaction withdraw(String accountNumber, BigDecimal amount, String reference, String description) {
+    public Transaction withdraw(String accountNumber, Money amount, String reference, String description) {
+        FlightRecorderEvents.Posting event = new FlightRecorderEvents.Posting();
+        event.begin();
+        
         Account account = accountService.getAccountByAccountNumber(accountNumber);
+        accountService.lockAccountRows(account);
         
         // Check if account has sufficient funds
-        if (account.getBalance().compareTo(amount) < 0) {
+        if (availableBalanceForDebit(account).isLessThan(amount)) {
+            event.finish(TransactionType.WITHDRAWAL, "DECLINED", account.getId(), null, amount);
             throw new InsufficientFundsException("Insufficient funds in account: " + account.getAccountNumber());
         }
         
+        // Count the debit against the account's velocity limits; a rollback takes it back out
+        velocityService.checkAndRecord(account, amount);
+        
         // Create a transaction record
         Transaction transaction = new Transaction();
         transaction.setSourceAccount(account);
@@ -125,10 +336,39 @@ public class TransactionService {
         transaction.setTimestamp(LocalDateTime.now());
         transaction.setStatus(TransactionStatus.COMPLETED);
         
-        // Update account balance
-        account.setBalance(account.getBalance().subtract(amount));
-        accountRepository.save(account);
+        accountBalanceView.recordPosting(account.getId(), null, amount);
+        
+        Transaction saved;
+        if (journalLedgerService.isEnabled()) {
+            saved = transactionRepository.save(transaction);
+            journalLedgerService.post(saved.getId(), account.getId(), null, amount.toBigDecimal());
+        } else {
+            // Update account balance
+            accountService.adjustBalance(account, amount.negate());
+            
+            saved = transactionRepository.save(transaction);
+            accountVersionIndex.accountsChanged(account.getUser().getId());
+        }
+        transactionSearchIndex.index(saved);
+        accountStreamPublisher.transactionCommitted(saved);
+        if (!journalLedgerService.isEnabled()) {
+            accountSummaryService.recordPosting(account.getId(), null,
+                    TransactionType.WITHDRAWAL, amount, saved.getTimestamp());
+        }
+        
+        event.finish(TransactionType.WITHDRAWAL, "COMPLETED", account.getId(), null, amount);
+        return saved;
+    }
+    
+    // In journal mode the balance is derived from the journal, and the account stays locked against
+    // other debits until this transaction completes so the check cannot be raced. In balance mode the
+    // row is already locked, and read again past the persistence context
+    private Money availableBalanceForDebit(Account account) {
+        if (!journalLedgerService.isEnabled()) {
+            return Money.of(jdbcTemplate.queryForObject(BALANCE_SQL, BigDecimal.class, account.getId()));
+        }
         
-        return transactionRepository.save(transaction);
+        journalLedgerService.lockAccounts(List.of(account.getId()));
+        return Money.of(journalLedgerService.getBalance(account.getId()));
     }
 }
@@ -0,0 +1,164 @@
+package com.firstrand.banking.service;
+
+import com.firstrand.banking.model.Money;
+import com.firstrand.banking.model.dto.TransferRequest;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Wire format of {@code POST /api/transactions/batch}. Both directions are a sequence of frames,
+ * each a big-endian unsigned 16-bit payload length followed by the payload. Strings are a length
+ * (8 bits for account numbers, 16 bits otherwise) followed by their bytes; an empty reference or
+ * description means none.
+ *
+ * <pre>
+ * command: int64 commandId, str8 sourceAccount, str8 destinationAccount, int64 amountInCents,
+ *          str16 reference, str16 description
+ * result:  int64 commandId, uint16 status, int64 transactionId, str16 message
+ * </pre>
+ *
+ * The status is the HTTP status the JSON endpoint would have answered with. A frame that cannot
+ * be parsed ends the batch with a result for command id -1.
+ */
+public final class TransferBatchCodec {
+
+    public static final String MEDIA_TYPE = "application/vnd.firstrand.transfer-batch";
+
+    public static final int MAX_FRAME_LENGTH = 0xFFFF;
+
+    private TransferBatchCodec() {
+    }
+
+    public static final class Command {
+
+        private final long id;
+        private final TransferRequest request;
+
+        Command(long id, TransferRequest request) {
+            this.id = id;
+            this.request = request;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public TransferRequest getRequest() {
+            return request;
+        }
+    }
+
+    /**
+     * Reads the next command, or returns null at a clean end of the stream.
+     *
+     * @throws MalformedFrameException if the stream ends inside a frame or a frame does not parse
+     */
+    public static Command readCommand(DataInputStream input, byte[] buffer) throws IOException {
+        int high = input.read();
+        if (high < 0) {
+            return null;
+        }
+
+        try {
+            int length = (high << 8) | input.readUnsignedByte();
+            input.readFully(buffer, 0, length);
+
+            ByteBuffer frame = ByteBuffer.wrap(buffer, 0, length);
+            long id = frame.getLong();
+
+            TransferRequest request = new TransferRequest();
+            request.setSourceAccountNumber(readString(frame, frame.get() & 0xFF));
+            request.setDestinationAccountNumber(readString(frame, frame.get() & 0xFF));
+            request.setAmount(Money.ofMinorUnits(frame.getLong()));
+            request.setReference(emptyToNull(readString(frame, frame.getShort() & 0xFFFF)));
+            request.setDescription(emptyToNull(readString(frame, frame.getShort() & 0xFFFF)));
+
+            if (frame.hasRemaining()) {
+                throw new MalformedFrameException("Trailing bytes in command " + id);
+            }
+            return new Command(id, request);
+        } catch (EOFException e) {
+            throw new MalformedFrameException("Stream ended inside a frame");
+        } catch (BufferUnderflowException e) {
+            throw new MalformedFrameException("Frame shorter than its fields");
+        }
+    }
+
+    public static void writeResult(DataOutputStream output, long commandId, int status, long transactionId,
+                                   String message) throws IOException {
+        byte[] text = message == null ? new byte[0] : message.getBytes(StandardCharsets.UTF_8);
+        int textLength = Math.min(text.length, MAX_FRAME_LENGTH - 20);
+
+        // Cut before a character's continuation bytes, never through them
+        while (textLength < text.length && (text[textLength] & 0xC0) == 0x80) {
+            textLength--;
+        }
+
+        output.writeShort(20 + textLength);
+        output.writeLong(commandId);
+        output.writeShort(status);
+        output.writeLong(transactionId);
+        output.writeShort(textLength);
+        output.write(text, 0, textLength);
+    }
+
+    /**
+     * @throws IllegalArgumentException if an account number is longer than 255 bytes or the command
+     *                                  does not fit one frame; nothing is written then
+     */
+    public static void writeCommand(DataOutputStream output, long commandId, TransferRequest request) throws IOException {
+        byte[] source = request.getSourceAccountNumber().getBytes(StandardCharsets.US_ASCII);
+        byte[] destination = request.getDestinationAccountNumber().getBytes(StandardCharsets.US_ASCII);
+        byte[] reference = request.getReference() == null ? new byte[0] : request.getReference().getBytes(StandardCharsets.UTF_8);
+        byte[] description = request.getDescription() == null ? new byte[0] : request.getDescription().getBytes(StandardCharsets.UTF_8);
+
+        if (source.length > 0xFF || destination.length > 0xFF) {
+            throw new IllegalArgumentException("Account numbers are limited to 255 bytes in command " + commandId);
+        }
+        int length = 8 + 1 + source.length + 1 + destination.length + 8 + 2 + reference.length + 2 + description.length;
+        if (length > MAX_FRAME_LENGTH) {
+            throw new IllegalArgumentException("Command " + commandId + " is " + length + " bytes, over the frame limit of "
+                    + MAX_FRAME_LENGTH);
+        }
+
+        output.writeShort(length);
+        output.writeLong(commandId);
+        output.writeByte(source.length);
+        output.write(source);
+        output.writeByte(destination.length);
+        output.write(destination);
+        output.writeLong(request.getAmount().getMinorUnits());
+        output.writeShort(reference.length);
+        output.write(reference);
+        output.writeShort(description.length);
+        output.write(description);
+    }
+
+    private static String readString(ByteBuffer frame, int length) {
+        if (length > frame.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        String value = new String(frame.array(), frame.arrayOffset() + frame.position(), length, StandardCharsets.UTF_8);
+        frame.position(frame.position() + length);
+        return value;
+    }
+
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+
+    public static class MalformedFrameException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        public MalformedFrameException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package com.firstrand.banking.service;
+
+import com.firstrand.banking.config.RateLimitProperties;
+import com.firstrand.banking.exception.InsufficientFundsException;
+import com.firstrand.banking.exception.ResourceNotFoundException;
+import com.firstrand.banking.exception.VelocityLimitExceededException;
+import com.firstrand.banking.model.DeclineReason;
+import com.firstrand.banking.model.Transaction;
+import com.firstrand.banking.model.dto.TransferRequest;
+import com.firstrand.banking.security.TokenBucketRateLimiter;
+import com.firstrand.banking.security.UserDetailsImpl;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.AntPathMatcher;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs the transfer commands of a binary batch one after another through
+ * {@link TransactionService#transferFunds}, each in its own transaction, and writes one result
+ * frame per command. Every command gets the checks a JSON transfer gets: the same field rules, the
+ * same ownership check, and a token from each rate limit rule for {@code POST /api/transactions/transfer}.
+ */
+@Service
+public class TransferBatchService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TransferBatchService.class);
+
+    private static final String TRANSFER_PATH = "/api/transactions/transfer";
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private AccountService accountService;
+
+    @Autowired
+    private TokenBucketRateLimiter rateLimiter;
+
+    @Autowired
+    private RateLimitProperties rateLimitProperties;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${transfer-batch.max-commands:10000}")
+    private int maxCommands;
+
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+
+    private Counter completed;
+    private Counter rejected;
+
+    @PostConstruct
+    void init() {
+        completed = meterRegistry.counter("transfer_batch.commands", "result", "completed");
+        rejected = meterRegistry.counter("transfer_batch.commands", "result", "rejected");
+    }
+
+    /**
+     * Reads commands until the input ends and answers each one. Results are flushed whenever no more
+     * input is buffered, so a client that streams its commands sees results as they are produced.
+     */
+    public void process(InputStream input, OutputStream output, UserDetailsImpl user, boolean admin,
+                        String remoteAddress) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(input, 16 * 1024));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(output, 16 * 1024));
+        byte[] buffer = new byte[TransferBatchCodec.MAX_FRAME_LENGTH];
+
+        List<RateLimitProperties.Rule> rules = transferRules();
+        Map<String, Long> owners = new HashMap<>();
+        int processed = 0;
+
+        try {
+            TransferBatchCodec.Command command;
+            while ((command = TransferBatchCodec.readCommand(in, buffer)) != null) {
+                if (++processed > maxCommands) {
+                    TransferBatchCodec.writeResult(out, command.getId(), 413, 0,
+                            "Batch is limited to " + maxCommands + " commands");
+                    break;
+                }
+
+                execute(command, out, user, admin, remoteAddress, rules, owners);
+
+                if (in.available() == 0) {
+                    out.flush();
+                }
+            }
+        } catch (TransferBatchCodec.MalformedFrameException e) {
+            TransferBatchCodec.writeResult(out, -1, 400, 0, e.getMessage());
+        }
+        out.flush();
+
+        logger.debug("Transfer batch for user {} processed {} commands", user.getId(), processed);
+    }
+
+    private void execute(TransferBatchCodec.Command command, DataOutputStream out, UserDetailsImpl user,
+                         boolean admin, String remoteAddress, List<RateLimitProperties.Rule> rules,
+                         Map<String, Long> owners) throws IOException {
+        TransferRequest request = command.getRequest();
+        int status;
+        long transactionId = 0;
+        String message;
+        DeclineReason decline;
+
+        try {
+            message = validate(request);
+            if (message != null) {
+                status = 400;
+            } else if ((message = acquireRateLimits(rules, request, user, remoteAddress)) != null) {
+                status = 429;
+            } else if (!admin && !owners.computeIfAbsent(request.getSourceAccountNumber(), this::ownerOf).equals(user.getId())) {
+                status = 403;
+                message = "You don't have permission to transfer from this account";
+            } else if ((decline = transactionService.checkDebit(request.getSourceAccountNumber(), request.getAmount())) != null) {
+                status = 400;
+                message = decline.message(request.getSourceAccountNumber());
+            } else {
+                Transaction transaction = transactionService.transferFunds(request);
+                status = 200;
+                transactionId = transaction.getId();
+            }
+        } catch (ResourceNotFoundException e) {
+            status = 404;
+            message = e.getMessage();
+        } catch (InsufficientFundsException e) {
+            status = 400;
+            message = e.getMessage();
+        } catch (VelocityLimitExceededException e) {
+            status = 429;
+            message = e.getMessage();
+        } catch (RuntimeException e) {
+            logger.warn("Transfer batch command {} failed", command.getId(), e);
+            status = 500;
+            message = e.getMessage();
+        } finally {
+            // The open-session-in-view persistence context lives as long as the whole batch
+            entityManager.clear();
+        }
+
+        (status == 200 ? completed : rejected).increment();
+        TransferBatchCodec.writeResult(out, command.getId(), status, transactionId, message);
+    }
+
+    // The checks TransferRequest's constraints make on the JSON endpoint
+    private static String validate(TransferRequest request) {
+        if (request.getSourceAccountNumber().isBlank() || request.getDestinationAccountNumber().isBlank()) {
+            return "Account numbers must not be blank";
+        }
+        if (!request.getAmount().isPositive()) {
+            return "Amount must be positive";
+        }
+        return null;
+    }
+
+    private Long ownerOf(String accountNumber) {
+        return accountService.getAccountByAccountNumber(accountNumber).getUser().getId();
+    }
+
+    private List<RateLimitProperties.Rule> transferRules() {
+        List<RateLimitProperties.Rule> rules = new ArrayList<>();
+        if (!rateLimitProperties.isEnabled()) {
+            return rules;
+        }
+
+        for (RateLimitProperties.Rule rule : rateLimitProperties.getRules()) {
+            if ((rule.getMethods().isEmpty() || rule.getMethods().contains("POST"))
+                    && pathMatcher.match(rule.getPath(), TRANSFER_PATH)) {
+                rules.add(rule);
+            }
+        }
+        return rules;
+    }
+
+    private String acquireRateLimits(List<RateLimitProperties.Rule> rules, TransferRequest request,
+                                     UserDetailsImpl user, String remoteAddress) {
+        for (RateLimitProperties.Rule rule : rules) {
+            String key;
+            switch (rule.getKey()) {
+                case USER:
+                    key = String.valueOf(user.getId());
+                    break;
+                case IP:
+                    key = remoteAddress;
+                    break;
+                default:
+                    key = request.getSourceAccountNumber();
+            }
+
+            long waitNanos = rateLimiter.tryAcquire(rule.getName() + ':' + key, rule.getCapacity(), rule.getRefillPerSecond());
+            if (waitNanos > 0) {
+                meterRegistry.counter("rate_limit.rejected", "rule", rule.getName()).increment();
+                return "Rate limit exceeded, retry after " + Math.max(1, (waitNanos + 999_999_999L) / 1_000_000_000L) + " seconds";
+            }
+        }
+        return null;
+    }
+}
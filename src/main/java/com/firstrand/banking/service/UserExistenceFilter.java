@@ -0,0 +1,229 @@
+package com.firstrand.banking.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filters over every username and email, consulted before the signup uniqueness queries.
+ * A negative answer is definite, so most signups and name probes never reach the database; a
+ * positive one is confirmed with the usual query, and the unique constraints on {@code users}
+ * stay the source of truth.
+ *
+ * <p>At the default 1% false-positive rate a filter needs about 9.6 bits per entry, i.e. roughly
+ * 1.2 MB per million users for usernames plus the same again for emails.
+ */
+@Service
+public class UserExistenceFilter {
+    
+    private static final Logger logger = LoggerFactory.getLogger(UserExistenceFilter.class);
+    
+    @Autowired
+    private DataSource dataSource;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    @Value("${signup.bloom.expected-users:1000000}")
+    private long expectedUsers;
+    
+    @Value("${signup.bloom.false-positive-rate:0.01}")
+    private double falsePositiveRate;
+    
+    private JdbcTemplate jdbcTemplate;
+    
+    private Counter skipped;
+    private Counter queried;
+    
+    // Both stay null until the first load, and every lookup answers "maybe" until then
+    private volatile Filters current;
+    
+    // Registrations that land while a rebuild is streaming go into the replacement as well
+    private volatile Filters rebuilding;
+    
+    @PostConstruct
+    void init() {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.setFetchSize(10_000);
+        
+        skipped = meterRegistry.counter("signup.uniqueness.check", "result", "filtered");
+        queried = meterRegistry.counter("signup.uniqueness.check", "result", "queried");
+    }
+    
+    public boolean mightContainUsername(String username) {
+        Filters filters = current;
+        return record(filters == null || filters.usernames.mightContain(username));
+    }
+    
+    public boolean mightContainEmail(String email) {
+        Filters filters = current;
+        return record(filters == null || filters.emails.mightContain(email));
+    }
+    
+    /**
+     * Adds a user now and again once the surrounding transaction commits, so a rebuild that
+     * snapshots the table in between cannot end up without it.
+     */
+    public void add(String username, String email) {
+        put(username, email);
+        
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    put(username, email);
+                }
+            });
+        }
+    }
+    
+    /**
+     * Streams the users table into freshly sized filters and swaps them in. This also drops the
+     * names of deleted users and resizes the filters as the user base grows.
+     */
+    @Scheduled(initialDelayString = "${signup.bloom.rebuild-interval-ms:3600000}",
+               fixedDelayString = "${signup.bloom.rebuild-interval-ms:3600000}")
+    public synchronized void rebuild() {
+        long started = System.nanoTime();
+        Long userCount = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM users", Long.class);
+        
+        // Headroom for growth until the next rebuild keeps the false-positive rate near the target
+        long capacity = Math.max(expectedUsers, userCount * 2);
+        Filters next = new Filters(capacity, falsePositiveRate);
+        rebuilding = next;
+        
+        try {
+            jdbcTemplate.query("SELECT username, email FROM users",
+                    rs -> { next.put(rs.getString(1), rs.getString(2)); });
+            current = next;
+        } finally {
+            rebuilding = null;
+        }
+        
+        logger.info("Loaded {} users into the signup Bloom filters ({} KB) in {} ms", userCount,
+                next.sizeInBytes() / 1024, (System.nanoTime() - started) / 1_000_000);
+    }
+    
+    // Reads the replacement before the current filters: rebuild() publishes the new filters before
+    // clearing the replacement, so whichever state this sees, the filters that win get the entry
+    private void put(String username, String email) {
+        Filters pending = rebuilding;
+        if (pending != null) {
+            pending.put(username, email);
+        }
+        
+        Filters filters = current;
+        if (filters != null && filters != pending) {
+            filters.put(username, email);
+        }
+    }
+    
+    private boolean record(boolean mightContain) {
+        (mightContain ? queried : skipped).increment();
+        return mightContain;
+    }
+    
+    private static final class Filters {
+        
+        private final BloomFilter usernames;
+        private final BloomFilter emails;
+        
+        Filters(long capacity, double falsePositiveRate) {
+            usernames = new BloomFilter(capacity, falsePositiveRate);
+            emails = new BloomFilter(capacity, falsePositiveRate);
+        }
+        
+        void put(String username, String email) {
+            usernames.put(username);
+            emails.put(email);
+        }
+        
+        long sizeInBytes() {
+            return usernames.sizeInBytes() + emails.sizeInBytes();
+        }
+    }
+    
+    /**
+     * Lock-free Bloom filter on an {@link AtomicLongArray}; bits are only ever set, so concurrent
+     * puts and reads need nothing beyond the CAS on each word.
+     */
+    private static final class BloomFilter {
+        
+        private final AtomicLongArray words;
+        private final long bitCount;
+        private final int hashCount;
+        
+        BloomFilter(long capacity, double falsePositiveRate) {
+            long bits = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+            int wordCount = (int) Math.min(Integer.MAX_VALUE - 8, (bits + 63) / 64);
+            
+            this.words = new AtomicLongArray(wordCount);
+            this.bitCount = (long) wordCount * 64;
+            this.hashCount = Math.max(1, (int) Math.round((double) bitCount / capacity * Math.log(2)));
+        }
+        
+        void put(String value) {
+            long hash = hash(value);
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            
+            for (int i = 1; i <= hashCount; i++) {
+                long bit = Math.floorMod(h1 + (long) i * h2, bitCount);
+                int word = (int) (bit >>> 6);
+                long mask = 1L << bit;
+                
+                long previous = words.get(word);
+                while ((previous & mask) == 0 && !words.compareAndSet(word, previous, previous | mask)) {
+                    previous = words.get(word);
+                }
+            }
+        }
+        
+        boolean mightContain(String value) {
+            long hash = hash(value);
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            
+            for (int i = 1; i <= hashCount; i++) {
+                long bit = Math.floorMod(h1 + (long) i * h2, bitCount);
+                if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        
+        long sizeInBytes() {
+            return bitCount / 8;
+        }
+        
+        // FNV-1a over the UTF-16 code units followed by a murmur3 finalizer, which spreads both
+        // 32-bit halves well enough for double hashing
+        private static long hash(String value) {
+            long hash = 0xcbf29ce484222325L;
+            for (int i = 0; i < value.length(); i++) {
+                hash ^= value.charAt(i);
+                hash *= 0x100000001b3L;
+            }
+            
+            hash ^= hash >>> 33;
+            hash *= 0xff51afd7ed558ccdL;
+            hash ^= hash >>> 33;
+            hash *= 0xc4ceb9fe1a85ec53L;
+            hash ^= hash >>> 33;
+            return hash;
+        }
+    }
+}
@@ -29,6 +29,9 @@ public class UserService {
     @Autowired
     private PasswordEncoder encoder;
     
+    @Autowired
+    private UserExistenceFilter userExistenceFilter;
+    
     public List<User> getAllUsers() {
         return userRepository.findAll();
     }
@@ -79,14 +82,17 @@ public class UserService {
         }
         
         user.setRoles(roles);
-        return userRepository.save(user);
+        User saved = userRepository.save(user);
+        userExistenceFilter.add(saved.getUsername(), saved.getEmail());
+        return saved;
     }
     
+    // Only names the Bloom filter cannot rule out cost a query
     public boolean existsByUsername(String username) {
-        return userRepository.existsByUsername(username);
+        return userExistenceFilter.mightContainUsername(username) && userRepository.existsByUsername(username);
     }
     
     public boolean existsByEmail(String email) {
-        return userRepository.existsByEmail(email);
+        return userExistenceFilter.mightContainEmail(email) && userRepository.existsByEmail(email);
     }
 }
@@ -0,0 +1,268 @@
+package com.firstrand.banking.service;
+
+import com.firstrand.banking.config.VelocityLimitProperties;
+import com.firstrand.banking.exception.VelocityLimitExceededException;
+import com.firstrand.banking.model.Account;
+import com.firstrand.banking.model.AccountType;
+import com.firstrand.banking.model.Money;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Timestamp;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-account velocity limits on withdrawals and outgoing transfers, checked in memory. Each
+ * tracked account keeps one ring of bucketed count and amount totals per window (minute, hour,
+ * day) with running sums, so a check is a few array operations however busy the account is. The
+ * buckets cover the window plus up to one bucket width, which errs on the side of rejecting.
+ *
+ * <p>The rings are rebuilt from the last day of transactions at startup. An account whose day
+ * window has emptied carries no state and is evicted.
+ */
+@Service
+public class VelocityService {
+
+    private static final Logger logger = LoggerFactory.getLogger(VelocityService.class);
+
+    private static final long[] WINDOW_MILLIS = {60_000L, 3_600_000L, 86_400_000L};
+
+    private static final String[] WINDOW_NAMES = {"minute", "hour", "day"};
+
+    private static final int BUCKETS_PER_WINDOW = 12;
+
+    // One extra slot so the ring always spans the full window behind the current bucket
+    private static final int SLOTS = BUCKETS_PER_WINDOW + 1;
+
+    private static final String RECENT_DEBITS_SQL =
+            "SELECT source_account_id, amount, timestamp FROM transactions "
+            + "WHERE timestamp >= ? AND status = 'COMPLETED' AND type IN ('WITHDRAWAL', 'TRANSFER') "
+            + "AND source_account_id IS NOT NULL ORDER BY timestamp";
+
+    @Autowired
+    private VelocityLimitProperties properties;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final ConcurrentHashMap<Long, AccountVelocity> accounts = new ConcurrentHashMap<>();
+
+    // [account type ordinal][window] -> limit, with Long.MAX_VALUE for none
+    private long[][] maxCounts;
+    private long[][] maxAmounts;
+
+    private Counter[] rejected;
+
+    @PostConstruct
+    void init() {
+        AccountType[] types = AccountType.values();
+        maxCounts = new long[types.length][WINDOW_MILLIS.length];
+        maxAmounts = new long[types.length][WINDOW_MILLIS.length];
+        for (AccountType type : types) {
+            VelocityLimitProperties.Limits limits = properties.getLimits().get(type);
+            VelocityLimitProperties.Window[] windows = limits == null
+                    ? new VelocityLimitProperties.Window[WINDOW_MILLIS.length]
+                    : new VelocityLimitProperties.Window[]{limits.getPerMinute(), limits.getPerHour(), limits.getPerDay()};
+
+            for (int w = 0; w < WINDOW_MILLIS.length; w++) {
+                VelocityLimitProperties.Window window = windows[w];
+                maxCounts[type.ordinal()][w] = window == null || window.getMaxCount() <= 0
+                        ? Long.MAX_VALUE : window.getMaxCount();
+                maxAmounts[type.ordinal()][w] = window == null || window.getMaxAmount() == null
+                        ? Long.MAX_VALUE : Money.of(window.getMaxAmount()).getMinorUnits();
+            }
+        }
+
+        rejected = new Counter[WINDOW_MILLIS.length];
+        for (int w = 0; w < WINDOW_MILLIS.length; w++) {
+            rejected[w] = meterRegistry.counter("velocity.rejected", "window", WINDOW_NAMES[w]);
+        }
+        Gauge.builder("velocity.accounts", accounts, ConcurrentHashMap::size).register(meterRegistry);
+    }
+
+    /**
+     * Counts a debit of {@code amount} from {@code account} against its type's limits, or throws
+     * {@link VelocityLimitExceededException} without counting it. Inside a transaction the debit is
+     * taken back out again if the transaction rolls back.
+     */
+    public void checkAndRecord(Account account, Money amount) {
+        checkAndRecord(account, amount, System.currentTimeMillis());
+    }
+
+    void checkAndRecord(Account account, Money amount, long now) {
+        if (!properties.isEnabled()) {
+            return;
+        }
+
+        int type = account.getAccountType().ordinal();
+        long minorUnits = amount.getMinorUnits();
+
+        int violated;
+        while (true) {
+            AccountVelocity velocity = accounts.computeIfAbsent(account.getId(), id -> new AccountVelocity());
+            synchronized (velocity) {
+                if (velocity.evicted) {
+                    continue;
+                }
+                violated = velocity.tryRecord(now, minorUnits, maxCounts[type], maxAmounts[type]);
+                if (violated < 0) {
+                    registerRollback(account.getId(), velocity, now, minorUnits);
+                }
+            }
+            break;
+        }
+
+        if (violated >= 0) {
+            rejected[violated].increment();
+            throw new VelocityLimitExceededException("Velocity limit per " + WINDOW_NAMES[violated]
+                    + " exceeded for account: " + account.getAccountNumber());
+        }
+    }
+
+    /**
+     * Replays the last day of withdrawals and transfers. Meant to run once at startup; debits
+     * posted while it runs may be counted twice, which only makes the limits stricter for a day.
+     */
+    public void rebuild() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+
+        long since = System.currentTimeMillis() - WINDOW_MILLIS[WINDOW_MILLIS.length - 1];
+        long[] replayed = new long[1];
+
+        jdbcTemplate.query(RECENT_DEBITS_SQL, rs -> {
+            long accountId = rs.getLong(1);
+            long minorUnits = Money.of(rs.getBigDecimal(2)).getMinorUnits();
+            long time = rs.getTimestamp(3).getTime();
+
+            AccountVelocity velocity = accounts.computeIfAbsent(accountId, id -> new AccountVelocity());
+            synchronized (velocity) {
+                if (!velocity.evicted) {
+                    velocity.add(time, minorUnits, 1);
+                }
+            }
+            replayed[0]++;
+        }, new Timestamp(since));
+
+        logger.info("Velocity limits rebuilt from {} debits across {} accounts", replayed[0], accounts.size());
+    }
+
+    @Scheduled(fixedDelayString = "${velocity.eviction-interval-ms:300000}")
+    public void evictIdleAccounts() {
+        evictIdleAccounts(System.currentTimeMillis());
+    }
+
+    void evictIdleAccounts(long now) {
+        accounts.values().removeIf(velocity -> {
+            synchronized (velocity) {
+                if (velocity.lastActivity < now - WINDOW_MILLIS[WINDOW_MILLIS.length - 1] - bucketMillis(2)) {
+                    velocity.evicted = true;
+                }
+                return velocity.evicted;
+            }
+        });
+    }
+
+    public int trackedAccounts() {
+        return accounts.size();
+    }
+
+    private void registerRollback(Long accountId, AccountVelocity velocity, long time, long minorUnits) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    synchronized (velocity) {
+                        velocity.add(time, -minorUnits, -1);
+                    }
+                }
+            }
+        });
+    }
+
+    private static long bucketMillis(int window) {
+        return WINDOW_MILLIS[window] / BUCKETS_PER_WINDOW;
+    }
+
+    /**
+     * Rings for all windows of one account, laid out window after window in flat arrays. Guarded by
+     * the instance's monitor.
+     */
+    private static final class AccountVelocity {
+
+        private final long[] amounts = new long[WINDOW_MILLIS.length * SLOTS];
+        private final int[] counts = new int[WINDOW_MILLIS.length * SLOTS];
+        private final long[] heads = new long[WINDOW_MILLIS.length];
+        private final long[] sumAmounts = new long[WINDOW_MILLIS.length];
+        private final long[] sumCounts = new long[WINDOW_MILLIS.length];
+        private long lastActivity;
+        private boolean evicted;
+
+        // Returns the index of the first window the debit would exceed, or -1 after recording it
+        int tryRecord(long now, long minorUnits, long[] maxCounts, long[] maxAmounts) {
+            for (int w = 0; w < heads.length; w++) {
+                advance(w, now / bucketMillis(w));
+                if (sumCounts[w] + 1 > maxCounts[w] || sumAmounts[w] + minorUnits > maxAmounts[w]) {
+                    return w;
+                }
+            }
+            add(now, minorUnits, 1);
+            return -1;
+        }
+
+        // Adds to the bucket holding time; a time older than the ring is dropped
+        void add(long time, long minorUnits, int count) {
+            for (int w = 0; w < heads.length; w++) {
+                long epoch = time / bucketMillis(w);
+                if (epoch > heads[w]) {
+                    advance(w, epoch);
+                } else if (heads[w] - epoch >= SLOTS) {
+                    continue;
+                }
+
+                int slot = w * SLOTS + (int) (epoch % SLOTS);
+                amounts[slot] += minorUnits;
+                counts[slot] += count;
+                sumAmounts[w] += minorUnits;
+                sumCounts[w] += count;
+            }
+            lastActivity = Math.max(lastActivity, time);
+        }
+
+        // Clears the slots between the old head and the new one, at most the whole ring
+        private void advance(int w, long epoch) {
+            long head = heads[w];
+            if (epoch <= head) {
+                return;
+            }
+
+            long from = Math.max(head + 1, epoch - SLOTS + 1);
+            for (long e = from; e <= epoch; e++) {
+                int slot = w * SLOTS + (int) (e % SLOTS);
+                sumAmounts[w] -= amounts[slot];
+                sumCounts[w] -= counts[slot];
+                amounts[slot] = 0;
+                counts[slot] = 0;
+            }
+            heads[w] = epoch;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.firstrand.banking.controller;
+
+import com.firstrand.banking.model.Account;
+import com.firstrand.banking.model.AccountType;
+import com.firstrand.banking.model.ERole;
+import com.firstrand.banking.model.Money;
+import com.firstrand.banking.model.User;
+import com.firstrand.banking.repository.AccountRepository;
+import com.firstrand.banking.repository.RoleRepository;
+import com.firstrand.banking.repository.UserRepository;
+import com.firstrand.banking.security.JwtUtils;
+import com.firstrand.banking.service.AccountVersionIndex;
+import com.firstrand.banking.service.TransactionService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * The account list's ETag: a client holding the current tag gets a {@code 304}, and once the
+ * user's accounts change, only after that change commits, the same tag gets the new list.
+ */
+@SpringBootTest(properties = {
+        "rate-limit.enabled=false",
+        "velocity.enabled=false",
+        "standing-orders.enabled=false",
+        "balance-checkpoints.enabled=false"
+})
+@AutoConfigureMockMvc
+public class AccountControllerTest {
+
+    private static final AtomicLong accountNumbers = new AtomicLong(9_000_000_000L);
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private JwtUtils jwtUtils;
+
+    @Autowired
+    private AccountVersionIndex accountVersionIndex;
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private RoleRepository roleRepository;
+
+    private User user;
+    private Account account;
+    private String authorization;
+
+    @BeforeEach
+    void setUp() {
+        long number = accountNumbers.incrementAndGet();
+        user = new User();
+        user.setUsername("etag" + number);
+        user.setEmail(user.getUsername() + "@example.com");
+        user.setPassword("unused");
+        user.setFirstName("Etag");
+        user.setLastName("Test");
+        user.setRoles(Set.of(roleRepository.findByName(ERole.ROLE_USER).orElseThrow()));
+        user = userRepository.save(user);
+        authorization = "Bearer " + jwtUtils.generateTokenFromUsername(user.getUsername());
+
+        account = new Account();
+        account.setAccountNumber(Long.toString(number));
+        account.setAccountType(AccountType.CHECKING);
+        account.setAccountName("Etag");
+        account.setUser(user);
+        account = accountRepository.save(account);
+    }
+
+    @Test
+    void getAllAccounts_ShouldAnswerNotModifiedUntilTheAccountsChange() throws Exception {
+        String etag = getAccounts(null, 200).getResponse().getHeader("ETag");
+        assertNotNull(etag);
+
+        MvcResult notModified = getAccounts(etag, 304);
+        assertEquals(0, notModified.getResponse().getContentLength());
+        assertEquals(etag, notModified.getResponse().getHeader("ETag"));
+
+        // A committed deposit changes the tag, so the old one gets the new balance
+        transactionService.deposit(account.getAccountNumber(), Money.of(40), null, "etag test");
+        MvcResult changed = mockMvc.perform(get("/api/accounts")
+                        .header("Authorization", authorization)
+                        .header("If-None-Match", etag))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].accountNumber").value(account.getAccountNumber()))
+                .andExpect(jsonPath("$[0].balance").value(40.0))
+                .andReturn();
+        String newEtag = changed.getResponse().getHeader("ETag");
+        assertNotEquals(etag, newEtag);
+        getAccounts(newEtag, 304);
+    }
+
+    @Test
+    void getAllAccounts_ShouldKeepTheTagWhenTheChangeRollsBack() throws Exception {
+        String etag = getAccounts(null, 200).getResponse().getHeader("ETag");
+
+        // Inside a transaction the bump waits for the commit, which never comes
+        transactionTemplate.executeWithoutResult(tx -> {
+            accountVersionIndex.accountsChanged(user.getId());
+            getAccountsUnchecked(etag, 304);
+            tx.setRollbackOnly();
+        });
+        getAccounts(etag, 304);
+
+        // Invalidating everything changes every user's tag
+        accountVersionIndex.invalidateAll();
+        String newEtag = getAccounts(etag, 200).getResponse().getHeader("ETag");
+        assertNotEquals(etag, newEtag);
+        getAccounts(newEtag, 304);
+    }
+
+    private MvcResult getAccounts(String ifNoneMatch, int expectedStatus) throws Exception {
+        MockHttpServletRequestBuilder request = get("/api/accounts").header("Authorization", authorization);
+        if (ifNoneMatch != null) {
+            request.header("If-None-Match", ifNoneMatch);
+        }
+        return mockMvc.perform(request)
+                .andExpect(status().is(expectedStatus))
+                .andReturn();
+    }
+
+    private void getAccountsUnchecked(String ifNoneMatch, int expectedStatus) {
+        try {
+            getAccounts(ifNoneMatch, expectedStatus);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.firstrand.banking.controller;
+
+import com.firstrand.banking.exception.PasswordHashingUnavailableException;
+import com.firstrand.banking.model.ERole;
+import com.firstrand.banking.model.User;
+import com.firstrand.banking.repository.RoleRepository;
+import com.firstrand.banking.repository.UserRepository;
+import com.firstrand.banking.security.JwtUtils;
+import com.firstrand.banking.service.RefreshTokenService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * {@code /api/auth/**} is open in the filter chain, so {@code /revoke} is guarded by its
+ * {@code @PreAuthorize} alone. Tests that need hashing to be unavailable swap the encoder of the
+ * shared authentication provider and put it back afterwards.
+ */
+@SpringBootTest(properties = {
+        "rate-limit.enabled=false",
+        "velocity.enabled=false",
+        "standing-orders.enabled=false",
+        "balance-checkpoints.enabled=false"
+})
+@AutoConfigureMockMvc
+public class AuthControllerTest {
+
+    private static final AtomicLong names = new AtomicLong(100_000);
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private JwtUtils jwtUtils;
+
+    @Autowired
+    private RefreshTokenService refreshTokenService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private RoleRepository roleRepository;
+
+    @Autowired
+    private DaoAuthenticationProvider authenticationProvider;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    private User user;
+    private String refreshToken;
+
+    @BeforeEach
+    void setUp() {
+        user = user(ERole.ROLE_USER);
+        refreshToken = refreshTokenService.createRefreshToken(user.getId());
+    }
+
+    @AfterEach
+    void tearDown() {
+        authenticationProvider.setPasswordEncoder(passwordEncoder);
+    }
+
+    @Test
+    void signin_ShouldAskForARetryWhenHashingIsUnavailableWhetherOrNotTheUserExists() throws Exception {
+        authenticationProvider.setPasswordEncoder(new PasswordEncoder() {
+            @Override
+            public String encode(CharSequence rawPassword) {
+                throw new PasswordHashingUnavailableException("Password hashing capacity exhausted, retry shortly");
+            }
+
+            @Override
+            public boolean matches(CharSequence rawPassword, String encodedPassword) {
+                throw new PasswordHashingUnavailableException("Password hashing capacity exhausted, retry shortly");
+            }
+        });
+
+        for (String username : List.of(user.getUsername(), "auth-unknown" + names.incrementAndGet())) {
+            signin(username, "password")
+                    .andExpect(status().isServiceUnavailable())
+                    .andExpect(header().string("Retry-After", "1"));
+        }
+    }
+
+    @Test
+    void signin_ShouldRefuseWrongCredentials() throws Exception {
+        signin(user.getUsername(), "wrong-password").andExpect(status().isUnauthorized());
+        signin("auth-unknown" + names.incrementAndGet(), "password").andExpect(status().isUnauthorized());
+    }
+
+    @Test
+    void revoke_ShouldSignOutEverySessionOfTheUserForAnAdmin() throws Exception {
+        String otherSession = refreshTokenService.createRefreshToken(user.getId());
+        User bystander = user(ERole.ROLE_USER);
+        String bystanderToken = refreshTokenService.createRefreshToken(bystander.getId());
+
+        mockMvc.perform(post("/api/auth/revoke")
+                        .param("userId", user.getId().toString())
+                        .header("Authorization", bearer(user(ERole.ROLE_ADMIN))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.message").value("Revoked 2 refresh tokens"));
+
+        refresh(refreshToken).andExpect(status().isUnauthorized());
+        refresh(otherSession).andExpect(status().isUnauthorized());
+        refresh(bystanderToken)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.username").value(bystander.getUsername()));
+    }
+
+    @Test
+    void revoke_ShouldBeForbiddenToAnyoneElse() throws Exception {
+        mockMvc.perform(post("/api/auth/revoke").header("Authorization", bearer(user)))
+                .andExpect(status().isForbidden());
+        mockMvc.perform(post("/api/auth/revoke").param("userId", user.getId().toString()))
+                .andExpect(status().isForbidden());
+
+        refresh(refreshToken).andExpect(status().isOk());
+    }
+
+    private ResultActions signin(String username, String password) throws Exception {
+        return mockMvc.perform(post("/api/auth/signin")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"username\":\"" + username + "\",\"password\":\"" + password + "\"}"));
+    }
+
+    private ResultActions refresh(String token) throws Exception {
+        return mockMvc.perform(post("/api/auth/refresh")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"refreshToken\":\"" + token + "\"}"));
+    }
+
+    private String bearer(User user) {
+        return "Bearer " + jwtUtils.generateTokenFromUsername(user.getUsername());
+    }
+
+    private User user(ERole role) {
+        User user = new User();
+        user.setUsername("auth" + names.incrementAndGet());
+        user.setEmail(user.getUsername() + "@example.com");
+        user.setPassword("unused");
+        user.setFirstName("Auth");
+        user.setLastName("Test");
+        user.setRoles(Set.of(roleRepository.findByName(role).orElseThrow()));
+        return userRepository.save(user);
+    }
+}
@@ -0,0 +1,177 @@
+package com.firstrand.banking.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.firstrand.banking.exception.ErrorDetails;
+import com.firstrand.banking.model.Account;
+import com.firstrand.banking.model.AccountType;
+import com.firstrand.banking.model.DeclineReason;
+import com.firstrand.banking.model.ERole;
+import com.firstrand.banking.model.Money;
+import com.firstrand.banking.model.User;
+import com.firstrand.banking.repository.AccountRepository;
+import com.firstrand.banking.repository.RoleRepository;
+import com.firstrand.banking.repository.TransactionRepository;
+import com.firstrand.banking.repository.UserRepository;
+import com.firstrand.banking.security.JwtUtils;
+import com.firstrand.banking.service.TransactionService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.util.AopTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.lang.management.ManagementFactory;
+import java.util.Date;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * CPU time and allocation per declined withdrawal, first through the full filter chain on MockMvc
+ * and then for the 400 body alone: built and serialized for every decline, as it was before bodies
+ * were cached, against {@code TransactionController.declined}. MockMvc runs the request on the
+ * calling thread, so the thread's counters cover all of it. Run with
+ * {@code mvn test -Dtest=DeclineBenchmark}.
+ */
+@SpringBootTest(properties = {
+        "rate-limit.enabled=false",
+        "velocity.enabled=false",
+        "standing-orders.enabled=false",
+        "balance-checkpoints.enabled=false"
+})
+@AutoConfigureMockMvc
+public class DeclineBenchmark {
+
+    private static final int REQUESTS = 5_000;
+    private static final int BODIES = 1_000_000;
+    private static final int ROUNDS = 3;
+
+    private static final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private TransactionController transactionController;
+
+    @Autowired
+    private JwtUtils jwtUtils;
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private RoleRepository roleRepository;
+
+    private String authorization;
+    private Account account;
+
+    @Test
+    void declinedWithdrawals() throws Exception {
+        setUp();
+        String path = "/api/transactions/withdraw/" + account.getAccountNumber();
+        String message = DeclineReason.INSUFFICIENT_FUNDS.message(account.getAccountNumber());
+
+        // The same body the exception handler gives a decline that reaches the posting path
+        MvcResult result = withdraw(path);
+        JsonNode body = objectMapper.readTree(result.getResponse().getContentAsByteArray());
+        assertEquals(message, body.get("message").asText());
+        assertEquals("uri=" + path, body.get("details").asText());
+        assertTrue(body.hasNonNull("timestamp"));
+        long transactions = transactionRepository.count();
+
+        TransactionController controller = AopTestUtils.getTargetObject(transactionController);
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", path);
+
+        for (int round = 0; round < ROUNDS; round++) {
+            boolean warmup = round < ROUNDS - 1;
+
+            long allocated = threads.getCurrentThreadAllocatedBytes();
+            long started = threads.getCurrentThreadCpuTime();
+            for (int i = 0; i < REQUESTS; i++) {
+                withdraw(path);
+            }
+            long requestNanos = threads.getCurrentThreadCpuTime() - started;
+            long requestBytes = threads.getCurrentThreadAllocatedBytes() - allocated;
+
+            allocated = threads.getCurrentThreadAllocatedBytes();
+            started = threads.getCurrentThreadCpuTime();
+            long length = 0;
+            for (int i = 0; i < BODIES; i++) {
+                length += objectMapper.writeValueAsBytes(new ErrorDetails(new Date(), message, "uri=" + path)).length;
+            }
+            long builtNanos = threads.getCurrentThreadCpuTime() - started;
+            long builtBytes = threads.getCurrentThreadAllocatedBytes() - allocated;
+
+            allocated = threads.getCurrentThreadAllocatedBytes();
+            started = threads.getCurrentThreadCpuTime();
+            for (int i = 0; i < BODIES; i++) {
+                length -= ((byte[]) controller.declined(DeclineReason.INSUFFICIENT_FUNDS,
+                        account.getAccountNumber(), request).getBody()).length;
+            }
+            long cachedNanos = threads.getCurrentThreadCpuTime() - started;
+            long cachedBytes = threads.getCurrentThreadAllocatedBytes() - allocated;
+
+            assertEquals(0, length);
+            if (!warmup) {
+                System.out.printf("declined request: %.1f us CPU and %d B per request%n",
+                        requestNanos / 1e3 / REQUESTS, requestBytes / REQUESTS);
+                System.out.printf("body built:       %.1f ns CPU and %d B per decline%n",
+                        (double) builtNanos / BODIES, builtBytes / BODIES);
+                System.out.printf("body cached:      %.1f ns CPU and %d B per decline%n",
+                        (double) cachedNanos / BODIES, cachedBytes / BODIES);
+            }
+        }
+
+        // None of the declines posted anything
+        assertEquals(transactions, transactionRepository.count());
+    }
+
+    private MvcResult withdraw(String path) throws Exception {
+        return mockMvc.perform(post(path)
+                        .header("Authorization", authorization)
+                        .param("amount", "1000.00"))
+                .andExpect(status().isBadRequest())
+                .andReturn();
+    }
+
+    private void setUp() {
+        String suffix = String.format("%09d", System.nanoTime() % 1_000_000_000L);
+        User user = new User();
+        user.setUsername("declines" + suffix);
+        user.setEmail(user.getUsername() + "@example.com");
+        user.setPassword("unused");
+        user.setFirstName("Decline");
+        user.setLastName("Benchmark");
+        user.setRoles(Set.of(roleRepository.findByName(ERole.ROLE_USER).orElseThrow()));
+        user = userRepository.save(user);
+        authorization = "Bearer " + jwtUtils.generateTokenFromUsername(user.getUsername());
+
+        account = new Account();
+        account.setAccountNumber("8" + suffix + "3");
+        account.setAccountType(AccountType.CHECKING);
+        account.setAccountName("Benchmark");
+        account.setUser(user);
+        account = accountRepository.save(account);
+        transactionService.deposit(account.getAccountNumber(), Money.of(10), null, "opening");
+    }
+}
@@ -0,0 +1,135 @@
+package com.firstrand.banking.controller;
+
+import com.firstrand.banking.model.ERole;
+import com.firstrand.banking.model.User;
+import com.firstrand.banking.repository.RoleRepository;
+import com.firstrand.banking.repository.UserRepository;
+import com.firstrand.banking.security.JwtUtils;
+import com.firstrand.banking.service.FlightRecorderService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.RequestBuilder;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Starting, inspecting and downloading recordings is for admins only. Recordings go to
+ * {@code target/} rather than the configured directory.
+ */
+@SpringBootTest(properties = {
+        "rate-limit.enabled=false",
+        "velocity.enabled=false",
+        "standing-orders.enabled=false",
+        "balance-checkpoints.enabled=false"
+})
+@AutoConfigureMockMvc
+public class ProfilingControllerTest {
+
+    private static final AtomicLong names = new AtomicLong(100_000);
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private JwtUtils jwtUtils;
+
+    @Autowired
+    private FlightRecorderService flightRecorderService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private RoleRepository roleRepository;
+
+    private Object defaultDirectory;
+
+    @BeforeEach
+    void setUp() {
+        defaultDirectory = ReflectionTestUtils.getField(flightRecorderService, "directory");
+        ReflectionTestUtils.setField(flightRecorderService, "directory", "target/recordings");
+    }
+
+    @AfterEach
+    void tearDown() {
+        flightRecorderService.stop();
+        ReflectionTestUtils.setField(flightRecorderService, "directory", defaultDirectory);
+    }
+
+    @Test
+    void profiling_ShouldBeForbiddenToAnyoneButAnAdmin() throws Exception {
+        String customer = bearer(user(ERole.ROLE_USER));
+
+        for (RequestBuilder request : List.of(post("/api/profiling").header("Authorization", customer),
+                get("/api/profiling").header("Authorization", customer),
+                post("/api/profiling/stop").header("Authorization", customer))) {
+            mockMvc.perform(request).andExpect(status().isForbidden());
+        }
+        for (RequestBuilder request : List.of(post("/api/profiling"), get("/api/profiling"), post("/api/profiling/stop"))) {
+            mockMvc.perform(request).andExpect(status().isUnauthorized());
+        }
+
+        // None of them got as far as starting a recording
+        assertTrue(flightRecorderService.getStatus() == null || !flightRecorderService.getStatus().isRunning());
+    }
+
+    @Test
+    void profiling_ShouldStartInspectAndDownloadARecordingForAnAdmin() throws Exception {
+        String admin = bearer(user(ERole.ROLE_ADMIN));
+
+        mockMvc.perform(post("/api/profiling").param("settings", "default").param("durationSeconds", "60")
+                        .header("Authorization", admin))
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("$.running").value(true))
+                .andExpect(jsonPath("$.settings").value("default"));
+        mockMvc.perform(post("/api/profiling").header("Authorization", admin))
+                .andExpect(status().isConflict());
+        mockMvc.perform(post("/api/profiling").param("settings", "everything").header("Authorization", admin))
+                .andExpect(status().isBadRequest());
+
+        mockMvc.perform(get("/api/profiling").header("Authorization", admin))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.running").value(true));
+
+        byte[] recording = mockMvc.perform(post("/api/profiling/stop").header("Authorization", admin))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Disposition", startsWith("attachment")))
+                .andReturn().getResponse().getContentAsByteArray();
+        assertTrue(recording.length > 0);
+
+        mockMvc.perform(get("/api/profiling").header("Authorization", admin))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.running").value(false));
+    }
+
+    private String bearer(User user) {
+        return "Bearer " + jwtUtils.generateTokenFromUsername(user.getUsername());
+    }
+
+    private User user(ERole role) {
+        User user = new User();
+        user.setUsername("profiling" + names.incrementAndGet());
+        user.setEmail(user.getUsername() + "@example.com");
+        user.setPassword("unused");
+        user.setFirstName("Profiling");
+        user.setLastName("Test");
+        user.setRoles(Set.of(roleRepository.findByName(role).orElseThrow()));
+        return userRepository.save(user);
+    }
+}
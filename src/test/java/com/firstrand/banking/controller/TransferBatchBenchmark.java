@@ -0,0 +1,186 @@
+package com.firstrand.banking.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.firstrand.banking.model.Account;
+import com.firstrand.banking.model.AccountType;
+import com.firstrand.banking.model.ERole;
+import com.firstrand.banking.model.Money;
+import com.firstrand.banking.model.User;
+import com.firstrand.banking.model.dto.TransferRequest;
+import com.firstrand.banking.repository.AccountRepository;
+import com.firstrand.banking.repository.RoleRepository;
+import com.firstrand.banking.repository.UserRepository;
+import com.firstrand.banking.security.JwtUtils;
+import com.firstrand.banking.service.TransactionService;
+import com.firstrand.banking.service.TransferBatchCodec;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * CPU time and bytes on the wire per transfer for {@code POST /api/transactions/transfer} (one JSON
+ * request each) and {@code POST /api/transactions/batch} (one binary request for all of them),
+ * through the full filter chain on MockMvc and H2. MockMvc runs the request on the calling thread,
+ * so the thread's CPU time covers all of it. Run with {@code mvn test -Dtest=TransferBatchBenchmark}.
+ */
+@SpringBootTest(properties = {
+        "rate-limit.enabled=false",
+        "velocity.enabled=false",
+        "standing-orders.enabled=false",
+        "balance-checkpoints.enabled=false"
+})
+@AutoConfigureMockMvc
+public class TransferBatchBenchmark {
+
+    private static final int TRANSFERS = 2_000;
+    private static final int ROUNDS = 3;
+
+    private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private JwtUtils jwtUtils;
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private RoleRepository roleRepository;
+
+    private String authorization;
+    private Account source;
+    private Account destination;
+
+    @Test
+    void jsonAgainstBatch() throws Exception {
+        setUp();
+
+        for (int round = 0; round < ROUNDS; round++) {
+            boolean warmup = round < ROUNDS - 1;
+            long[] json = json();
+            long[] batch = batch();
+            if (!warmup) {
+                System.out.printf("JSON:  %.2f ms CPU and %d bytes per transfer%n", json[0] / 1e6 / TRANSFERS, json[1] / TRANSFERS);
+                System.out.printf("batch: %.2f ms CPU and %d bytes per transfer%n", batch[0] / 1e6 / TRANSFERS, batch[1] / TRANSFERS);
+            }
+        }
+    }
+
+    // Request and response bodies plus the Authorization header each request carries
+    private long[] json() throws Exception {
+        long bytes = 0;
+        long started = threads.getCurrentThreadCpuTime();
+        for (int i = 0; i < TRANSFERS; i++) {
+            byte[] body = objectMapper.writeValueAsBytes(request(i));
+            MvcResult result = mockMvc.perform(post("/api/transactions/transfer")
+                            .header("Authorization", authorization)
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(body))
+                    .andExpect(status().isOk())
+                    .andReturn();
+            bytes += authorization.length() + body.length + result.getResponse().getContentAsByteArray().length;
+        }
+        return new long[]{threads.getCurrentThreadCpuTime() - started, bytes};
+    }
+
+    private long[] batch() throws Exception {
+        long started = threads.getCurrentThreadCpuTime();
+        ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(frames);
+        for (int i = 0; i < TRANSFERS; i++) {
+            TransferBatchCodec.writeCommand(output, i, request(i));
+        }
+
+        MvcResult result = mockMvc.perform(post("/api/transactions/batch")
+                        .header("Authorization", authorization)
+                        .contentType(TransferBatchCodec.MEDIA_TYPE)
+                        .content(frames.toByteArray()))
+                .andExpect(status().isOk())
+                .andReturn();
+        byte[] response = result.getResponse().getContentAsByteArray();
+        long cpu = threads.getCurrentThreadCpuTime() - started;
+
+        assertEquals(TRANSFERS, countOk(response));
+        return new long[]{cpu, authorization.length() + frames.size() + response.length};
+    }
+
+    private static int countOk(byte[] response) throws IOException {
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(response));
+        int ok = 0;
+        while (input.available() > 0) {
+            int length = input.readUnsignedShort();
+            input.readLong();
+            if (input.readUnsignedShort() == 200) {
+                ok++;
+            }
+            input.skipBytes(length - 10);
+        }
+        return ok;
+    }
+
+    private TransferRequest request(int i) {
+        TransferRequest request = new TransferRequest();
+        boolean forward = i % 2 == 0;
+        request.setSourceAccountNumber((forward ? source : destination).getAccountNumber());
+        request.setDestinationAccountNumber((forward ? destination : source).getAccountNumber());
+        request.setAmount(Money.ofMinorUnits(100 + i % 900));
+        request.setReference("BENCH-" + i);
+        request.setDescription("Benchmark transfer");
+        return request;
+    }
+
+    private void setUp() {
+        String suffix = String.format("%09d", System.nanoTime() % 1_000_000_000L);
+        User user = new User();
+        user.setUsername("bench" + suffix);
+        user.setEmail(user.getUsername() + "@example.com");
+        user.setPassword("unused");
+        user.setFirstName("Batch");
+        user.setLastName("Benchmark");
+        user.setRoles(Set.of(roleRepository.findByName(ERole.ROLE_USER).orElseThrow()));
+        user = userRepository.save(user);
+        authorization = "Bearer " + jwtUtils.generateTokenFromUsername(user.getUsername());
+
+        source = openAccount(user, "8" + suffix + "1");
+        destination = openAccount(user, "8" + suffix + "2");
+    }
+
+    private Account openAccount(User user, String number) {
+        Account account = new Account();
+        account.setAccountNumber(number);
+        account.setAccountType(AccountType.CHECKING);
+        account.setAccountName("Benchmark");
+        account.setUser(user);
+        account = accountRepository.save(account);
+        transactionService.deposit(number, Money.of(1_000_000), null, "opening");
+        return account;
+    }
+}
@@ -0,0 +1,83 @@
+package com.firstrand.banking.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Time and allocation of a posting's balance arithmetic (a cover check, a debit and a credit) on
+ * BigDecimal and on Money. JMH is not on the build, so this is a warmed-up loop measured with the
+ * thread's allocation counter. Surefire only picks up {@code *Test} classes, so it runs only when
+ * asked for: {@code mvn test -Dtest=MoneyBenchmark}.
+ */
+public class MoneyBenchmark {
+
+    private static final int POSTINGS = 5_000_000;
+    private static final int ROUNDS = 5;
+
+    private static final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    @Test
+    void postingArithmetic() {
+        BigDecimal[] bigDecimalAmounts = new BigDecimal[1024];
+        Money[] moneyAmounts = new Money[1024];
+        for (int i = 0; i < moneyAmounts.length; i++) {
+            moneyAmounts[i] = Money.ofMinorUnits(1 + (i * 7919L) % 10_000);
+            bigDecimalAmounts[i] = moneyAmounts[i].toBigDecimal();
+        }
+
+        for (int round = 0; round < ROUNDS; round++) {
+            boolean warmup = round < ROUNDS - 1;
+
+            long allocated = threads.getCurrentThreadAllocatedBytes();
+            long started = System.nanoTime();
+            BigDecimal bigDecimalBalance = bigDecimalPostings(bigDecimalAmounts);
+            long bigDecimalNanos = System.nanoTime() - started;
+            long bigDecimalBytes = threads.getCurrentThreadAllocatedBytes() - allocated;
+
+            allocated = threads.getCurrentThreadAllocatedBytes();
+            started = System.nanoTime();
+            Money moneyBalance = moneyPostings(moneyAmounts);
+            long moneyNanos = System.nanoTime() - started;
+            long moneyBytes = threads.getCurrentThreadAllocatedBytes() - allocated;
+
+            assertEquals(Money.of(bigDecimalBalance), moneyBalance);
+            if (!warmup) {
+                System.out.printf("BigDecimal: %.1f ns and %d B per posting%n",
+                        (double) bigDecimalNanos / POSTINGS, bigDecimalBytes / POSTINGS);
+                System.out.printf("Money:      %.1f ns and %d B per posting%n",
+                        (double) moneyNanos / POSTINGS, moneyBytes / POSTINGS);
+            }
+        }
+    }
+
+    private static BigDecimal bigDecimalPostings(BigDecimal[] amounts) {
+        BigDecimal source = new BigDecimal("1000000000.00");
+        BigDecimal destination = BigDecimal.ZERO.setScale(2);
+        for (int i = 0; i < POSTINGS; i++) {
+            BigDecimal amount = amounts[i & (amounts.length - 1)];
+            if (source.compareTo(amount) >= 0) {
+                source = source.subtract(amount);
+                destination = destination.add(amount);
+            }
+        }
+        return source.add(destination);
+    }
+
+    private static Money moneyPostings(Money[] amounts) {
+        Money source = Money.of(1_000_000_000L);
+        Money destination = Money.ZERO;
+        for (int i = 0; i < POSTINGS; i++) {
+            Money amount = amounts[i & (amounts.length - 1)];
+            if (!source.isLessThan(amount)) {
+                source = source.minus(amount);
+                destination = destination.plus(amount);
+            }
+        }
+        return source.plus(destination);
+    }
+}
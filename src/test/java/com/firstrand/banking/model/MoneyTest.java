@@ -0,0 +1,103 @@
+package com.firstrand.banking.model;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.exc.InvalidFormatException;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MoneyTest {
+
+    private final Money.JpaConverter converter = new Money.JpaConverter();
+
+    @Test
+    void plus_ShouldRejectOverflowInsteadOfWrapping() {
+        Money max = Money.ofMinorUnits(Long.MAX_VALUE);
+
+        assertThrows(ArithmeticException.class, () -> max.plus(Money.ofMinorUnits(1)));
+        assertThrows(ArithmeticException.class, () -> Money.ofMinorUnits(Long.MIN_VALUE).plus(Money.ofMinorUnits(-1)));
+        assertEquals(Money.ofMinorUnits(Long.MAX_VALUE), max.plus(Money.ZERO));
+    }
+
+    @Test
+    void minus_ShouldRejectOverflowInsteadOfWrapping() {
+        Money min = Money.ofMinorUnits(Long.MIN_VALUE);
+
+        assertThrows(ArithmeticException.class, () -> min.minus(Money.ofMinorUnits(1)));
+        assertThrows(ArithmeticException.class, () -> Money.ofMinorUnits(Long.MAX_VALUE).minus(Money.ofMinorUnits(-1)));
+        assertThrows(ArithmeticException.class, min::negate);
+        assertThrows(ArithmeticException.class, () -> Money.of(Long.MAX_VALUE / 10));
+    }
+
+    @Test
+    void ofBigDecimal_ShouldRejectAmountsThatWouldNeedRounding() {
+        assertThrows(ArithmeticException.class, () -> Money.of(new BigDecimal("0.001")));
+        assertThrows(ArithmeticException.class, () -> Money.of(new BigDecimal("10.125")));
+        assertThrows(ArithmeticException.class, () -> Money.of(new BigDecimal("-10.125")));
+        assertThrows(ArithmeticException.class, () -> Money.of(new BigDecimal("1E-3")));
+    }
+
+    @Test
+    void ofBigDecimal_ShouldAcceptAnyScaleThatIsExact() {
+        assertEquals(1050, Money.of(new BigDecimal("10.5")).getMinorUnits());
+        assertEquals(1050, Money.of(new BigDecimal("10.500")).getMinorUnits());
+        assertEquals(1000, Money.of(new BigDecimal("10")).getMinorUnits());
+        assertEquals(1000, Money.of(new BigDecimal("1E+1")).getMinorUnits());
+        assertSame(Money.ZERO, Money.of(new BigDecimal("0.000")));
+    }
+
+    @Test
+    void ofBigDecimal_ShouldRejectAmountsBeyondALong() {
+        BigDecimal max = BigDecimal.valueOf(Long.MAX_VALUE, Money.SCALE);
+
+        assertEquals(Long.MAX_VALUE, Money.of(max).getMinorUnits());
+        assertThrows(ArithmeticException.class, () -> Money.of(max.add(new BigDecimal("0.01"))));
+        assertThrows(ArithmeticException.class, () -> Money.of(new BigDecimal("1E+30")));
+    }
+
+    @Test
+    void negativeAmounts_ShouldKeepTheirSignThroughArithmeticAndConversion() {
+        Money debt = Money.of(new BigDecimal("-12.34"));
+
+        assertEquals(-1234, debt.getMinorUnits());
+        assertTrue(debt.isNegative());
+        assertFalse(debt.isPositive());
+        assertEquals("-12.34", debt.toString());
+        assertEquals(new BigDecimal("-12.34"), debt.toBigDecimal());
+        assertEquals(Money.of(new BigDecimal("-2.34")), debt.plus(Money.of(10)));
+        assertEquals(Money.of(new BigDecimal("12.34")), debt.negate());
+        assertTrue(debt.isLessThan(Money.ZERO));
+        assertEquals(Money.of(new BigDecimal("-0.05")), Money.valueOf(" -0.05 "));
+    }
+
+    @Test
+    void jpaConverter_ShouldRoundTripThroughTheColumnType() {
+        for (String amount : new String[]{"0.00", "0.01", "-0.01", "25.25", "-1234567.89", "92233720368547758.07"}) {
+            Money money = Money.of(new BigDecimal(amount));
+            BigDecimal column = converter.convertToDatabaseColumn(money);
+
+            assertEquals(Money.SCALE, column.scale());
+            assertEquals(new BigDecimal(amount), column);
+            assertEquals(money, converter.convertToEntityAttribute(column));
+        }
+
+        // NUMERIC(38, 2) values come back at the column scale, but a wider one still converts exactly
+        assertEquals(Money.of(3), converter.convertToEntityAttribute(new BigDecimal("3.0000")));
+        assertNull(converter.convertToDatabaseColumn(null));
+        assertNull(converter.convertToEntityAttribute(null));
+    }
+
+    @Test
+    void json_ShouldWriteNumbersAndRejectExtraDecimals() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+
+        assertEquals("25.50", mapper.writeValueAsString(Money.of(new BigDecimal("25.5"))));
+        assertEquals(Money.of(new BigDecimal("25.5")), mapper.readValue("25.5", Money.class));
+        assertEquals(Money.of(7), mapper.readValue("7", Money.class));
+        assertEquals(Money.of(new BigDecimal("-3.10")), mapper.readValue("\"-3.1\"", Money.class));
+        assertThrows(InvalidFormatException.class, () -> mapper.readValue("1.005", Money.class));
+        assertThrows(InvalidFormatException.class, () -> mapper.readValue("\"abc\"", Money.class));
+    }
+}
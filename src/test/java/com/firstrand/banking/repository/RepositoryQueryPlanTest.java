@@ -0,0 +1,250 @@
+package com.firstrand.banking.repository;
+
+import com.firstrand.banking.model.Account;
+import com.firstrand.banking.model.TransactionType;
+import com.firstrand.banking.model.User;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs every repository finder against a seeded H2 database, captures the SQL Hibernate generates
+ * for it and asserts that H2's {@code EXPLAIN} plan reads through an index rather than scanning
+ * the whole table.
+ */
+@DataJpaTest(properties = {
+        "spring.jpa.show-sql=false",
+        "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+                + "com.firstrand.banking.repository.RepositoryQueryPlanTest$CapturingStatementInspector"
+})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class RepositoryQueryPlanTest {
+
+    private static final int USERS = 500;
+    private static final int ACCOUNTS_PER_USER = 4;
+    private static final int TRANSACTIONS = 50_000;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private DailyAccountSummaryRepository dailyAccountSummaryRepository;
+
+    @Autowired
+    private RefreshTokenRepository refreshTokenRepository;
+
+    @Autowired
+    private StandingOrderRepository standingOrderRepository;
+
+    private User user;
+    private Account account;
+
+    @BeforeEach
+    void setUp() {
+        seed();
+        user = userRepository.findById(1L).orElseThrow();
+        account = accountRepository.findById(1L).orElseThrow();
+    }
+
+    @Test
+    void findBySourceAccountOrDestinationAccount_ShouldUseIndex() {
+        assertIndexUsed("transactions", () -> transactionRepository.findBySourceAccountOrDestinationAccount(
+                account, account, PageRequest.of(0, 10, Sort.by("timestamp").descending())));
+    }
+
+    @Test
+    void findBySourceAccount_ShouldUseIndex() {
+        assertIndexUsed("transactions", () -> transactionRepository.findBySourceAccount(account));
+    }
+
+    @Test
+    void findByDestinationAccount_ShouldUseIndex() {
+        assertIndexUsed("transactions", () -> transactionRepository.findByDestinationAccount(account));
+    }
+
+    @Test
+    void findByTimestampBetween_ShouldUseIndex() {
+        LocalDateTime end = LocalDateTime.now();
+        assertIndexUsed("transactions", () -> transactionRepository.findByTimestampBetween(end.minusHours(1), end));
+    }
+
+    @Test
+    void findByType_ShouldUseIndex() {
+        assertIndexUsed("transactions", () -> transactionRepository.findByType(TransactionType.FEE));
+    }
+
+    @Test
+    void findDailySummariesByAccountAndDateRange_ShouldUseIndex() {
+        LocalDate today = LocalDate.now();
+        assertIndexUsed("daily_account_summaries", () -> dailyAccountSummaryRepository
+                .findByAccountIdAndSummaryDateBetweenOrderBySummaryDate(account.getId(), today.minusDays(30), today));
+    }
+
+    @Test
+    void findByUser_ShouldUseIndex() {
+        assertIndexUsed("accounts", () -> accountRepository.findByUser(user));
+    }
+
+    @Test
+    void findByAccountNumber_ShouldUseIndex() {
+        assertIndexUsed("accounts", () -> accountRepository.findByAccountNumber("1000000000"));
+    }
+
+    @Test
+    void findByUsername_ShouldUseIndex() {
+        assertIndexUsed("users", () -> userRepository.findByUsername("user1"));
+    }
+
+    @Test
+    void existsByEmail_ShouldUseIndex() {
+        assertIndexUsed("users", () -> userRepository.existsByEmail("user1@example.com"));
+    }
+
+    @Test
+    void findRefreshTokenByTokenHash_ShouldUseIndex() {
+        assertIndexUsed("refresh_tokens", () -> refreshTokenRepository.findByTokenHash("0".repeat(64)));
+    }
+
+    @Test
+    void findStandingOrdersByUserId_ShouldUseIndex() {
+        assertIndexUsed("standing_orders", () -> standingOrderRepository.findByUserIdOrderByIdAsc(user.getId()));
+    }
+
+    private void assertIndexUsed(String table, Runnable query) {
+        CapturingStatementInspector.clear();
+        query.run();
+        List<String> statements = CapturingStatementInspector.captured();
+        assertFalse(statements.isEmpty(), "No SQL was captured for the query");
+
+        for (String sql : statements) {
+            String plan = explain(sql);
+            String tableScan = ("PUBLIC." + table + ".tableScan").toUpperCase();
+            assertFalse(plan.toUpperCase().contains(tableScan),
+                    "Full table scan on " + table + " for:\n" + sql + "\nPlan:\n" + plan);
+        }
+    }
+
+    private String explain(String sql) {
+        return jdbcTemplate.execute((ConnectionCallback<String>) connection -> {
+            try (PreparedStatement statement = connection.prepareStatement("EXPLAIN " + sql)) {
+                int parameters = statement.getParameterMetaData().getParameterCount();
+                for (int i = 1; i <= parameters; i++) {
+                    statement.setObject(i, null);
+                }
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    StringBuilder plan = new StringBuilder();
+                    while (resultSet.next()) {
+                        plan.append(resultSet.getString(1)).append('\n');
+                    }
+                    return plan.toString();
+                }
+            }
+        });
+    }
+
+    private void seed() {
+        if (transactionRepository.count() > 0) {
+            return;
+        }
+
+        Random random = new Random(42);
+
+        List<Object[]> users = new ArrayList<>();
+        for (long id = 1; id <= USERS; id++) {
+            users.add(new Object[]{id, "user" + id, "user" + id + "@example.com", "secret", "First", "Last"});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO users (id, username, email, password, first_name, last_name) "
+                + "VALUES (?, ?, ?, ?, ?, ?)", users);
+
+        Timestamp createdAt = Timestamp.valueOf(LocalDateTime.now().minusYears(2));
+        List<Object[]> accounts = new ArrayList<>();
+        long accountCount = (long) USERS * ACCOUNTS_PER_USER;
+        for (long id = 1; id <= accountCount; id++) {
+            accounts.add(new Object[]{id, String.valueOf(1_000_000_000L + id), "SAVINGS", 1000, createdAt,
+                    "Account " + id, true, (id - 1) / ACCOUNTS_PER_USER + 1});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO accounts (id, account_number, account_type, balance, created_at, "
+                + "account_name, active, user_id) VALUES (?, ?, ?, ?, ?, ?, ?, ?)", accounts);
+
+        TransactionType[] types = TransactionType.values();
+        LocalDateTime start = LocalDateTime.now().minusYears(2);
+        List<Object[]> transactions = new ArrayList<>();
+        for (long id = 1; id <= TRANSACTIONS; id++) {
+            long source = 1 + random.nextInt((int) accountCount);
+            long destination = 1 + random.nextInt((int) accountCount);
+            transactions.add(new Object[]{id, source, destination, 10, types[random.nextInt(types.length)].name(),
+                    Timestamp.valueOf(start.plusMinutes(id * 20)), "COMPLETED"});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO transactions (id, source_account_id, destination_account_id, amount, "
+                + "type, timestamp, status) VALUES (?, ?, ?, ?, ?, ?, ?)", transactions);
+
+        jdbcTemplate.update("INSERT INTO daily_account_summaries (account_id, summary_date, type, credit_count, "
+                + "credit_amount, debit_count, debit_amount) SELECT destination_account_id, CAST(timestamp AS DATE), "
+                + "type, COUNT(*), SUM(amount), 0, 0 FROM transactions "
+                + "GROUP BY destination_account_id, CAST(timestamp AS DATE), type");
+
+        Timestamp firstPayment = Timestamp.valueOf(LocalDateTime.now().plusDays(1));
+        List<Object[]> standingOrders = new ArrayList<>();
+        for (long id = 1; id <= USERS; id++) {
+            standingOrders.add(new Object[]{id, String.valueOf(1_000_000_000L + id), String.valueOf(1_000_000_001L + id),
+                    firstPayment, firstPayment, firstPayment, createdAt});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO standing_orders (user_id, source_account_number, "
+                + "destination_account_number, amount, frequency, first_payment_at, status, occurrence, next_due_at, "
+                + "next_attempt_at, failed_attempts, created_at) VALUES (?, ?, ?, 10, 'MONTHLY', ?, 'ACTIVE', 0, ?, ?, 0, ?)",
+                standingOrders);
+
+        jdbcTemplate.execute("ANALYZE");
+    }
+
+    public static class CapturingStatementInspector implements StatementInspector {
+
+        private static final List<String> STATEMENTS = new ArrayList<>();
+
+        static synchronized void clear() {
+            STATEMENTS.clear();
+        }
+
+        static synchronized List<String> captured() {
+            return new ArrayList<>(STATEMENTS);
+        }
+
+        @Override
+        public String inspect(String sql) {
+            synchronized (CapturingStatementInspector.class) {
+                if (sql.trim().toLowerCase().startsWith("select")) {
+                    STATEMENTS.add(sql);
+                }
+            }
+            return sql;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.firstrand.banking.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AdaptiveConcurrencyLimitTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(10);
+
+    @Test
+    void constructor_ShouldClampTheInitialLimit() {
+        assertEquals(100, new AdaptiveConcurrencyLimit(500, 1, 100, 2.0).getLimit());
+        assertEquals(5, new AdaptiveConcurrencyLimit(0, 5, 100, 2.0).getLimit());
+    }
+
+    @Test
+    void tryAcquire_ShouldAdmitOnlyUpToTheLimit() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(3, 1, 10, 2.0);
+
+        assertTrue(limit.tryAcquire());
+        assertTrue(limit.tryAcquire());
+        assertTrue(limit.tryAcquire());
+        assertFalse(limit.tryAcquire());
+        assertEquals(3, limit.getInFlight());
+
+        limit.release();
+        assertEquals(2, limit.getInFlight());
+        assertTrue(limit.tryAcquire());
+    }
+
+    @Test
+    void steadyLatencyAtTheLimit_ShouldGrowTheLimitUpToTheMaximum() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(10, 1, 40, 2.0);
+
+        // Smoothing adds a fraction of the square root per window, so growth shows over a few of them
+        int previous = limit.getLimit();
+        for (int window = 0; window < 10; window++) {
+            saturatedWindow(limit, FAST);
+            assertTrue(limit.getLimit() >= previous, "window " + window + " shrank from " + previous);
+            previous = limit.getLimit();
+        }
+        assertTrue(limit.getLimit() >= 15, "grew only to " + limit.getLimit());
+
+        for (int window = 0; window < 100; window++) {
+            saturatedWindow(limit, FAST);
+        }
+        assertEquals(40, limit.getLimit());
+    }
+
+    @Test
+    void risingLatency_ShouldShrinkTheLimitDownToTheMinimum() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(40, 20, 40, 2.0);
+
+        // Establishes the baseline at the fast latency
+        saturatedWindow(limit, FAST);
+        assertEquals(40, limit.getLimit());
+
+        int previous = limit.getLimit();
+        for (int window = 0; window < 5; window++) {
+            saturatedWindow(limit, SLOW);
+            assertTrue(limit.getLimit() < previous, "window " + window + " stayed at " + previous);
+            previous = limit.getLimit();
+        }
+
+        for (int window = 0; window < 10; window++) {
+            saturatedWindow(limit, SLOW);
+        }
+        assertEquals(20, limit.getLimit());
+    }
+
+    @Test
+    void latencyWithinTolerance_ShouldNotShrinkTheLimit() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(20, 1, 20, 2.0);
+        saturatedWindow(limit, FAST);
+
+        // Under twice the baseline is within a tolerance of 2
+        for (int window = 0; window < 10; window++) {
+            saturatedWindow(limit, FAST * 19 / 10);
+        }
+        assertEquals(20, limit.getLimit());
+    }
+
+    @Test
+    void windowFarBelowTheLimit_ShouldNotGrowIt() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(10, 1, 40, 2.0);
+
+        // One request at a time says nothing about whether more than ten would fit
+        for (int i = 0; i < 50 * 10; i++) {
+            assertTrue(limit.tryAcquire());
+            limit.release(FAST);
+        }
+        assertEquals(10, limit.getLimit());
+    }
+
+    // One window of samples, each taken with every slot of the current limit in use
+    private static void saturatedWindow(AdaptiveConcurrencyLimit limit, long rttNanos) {
+        int samples = 0;
+        while (samples < 50) {
+            int acquired = 0;
+            while (limit.tryAcquire()) {
+                acquired++;
+            }
+            for (int i = 0; i < acquired && samples < 50; i++, samples++) {
+                limit.release(rttNanos);
+            }
+            while (limit.getInFlight() > 0) {
+                limit.release();
+            }
+        }
+    }
+}
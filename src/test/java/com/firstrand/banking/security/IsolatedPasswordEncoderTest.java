@@ -0,0 +1,84 @@
+package com.firstrand.banking.security;
+
+import com.firstrand.banking.exception.PasswordHashingUnavailableException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * One hashing thread at cost {@value #STRENGTH}, a few tens of milliseconds a hash, so a tenth of
+ * its time leaves the thread idle for several hashes' worth between starts.
+ */
+public class IsolatedPasswordEncoderTest {
+
+    private static final int STRENGTH = 10;
+
+    private static final String HASH = new BCryptPasswordEncoder(STRENGTH).encode("password");
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private IsolatedPasswordEncoder encoder;
+
+    @AfterEach
+    void tearDown() {
+        encoder.shutdown();
+    }
+
+    @Test
+    void pacing_ShouldHoldBackTheNextCallerRatherThanTheHashingThread() {
+        encoder = encoder(1, 0.1);
+        ThreadPoolExecutor executor = (ThreadPoolExecutor) ReflectionTestUtils.getField(encoder, "executor");
+
+        // The first hash is timed, and the one after it is the first to be spaced out by that time
+        assertTrue(encoder.matches("password", HASH));
+        assertTrue(encoder.matches("password", HASH));
+        long cost = (Long) ReflectionTestUtils.getField(encoder, "lastCostNanos");
+        assertTrue(cost > 0);
+
+        long deadline = System.nanoTime() + cost;
+        while (executor.getActiveCount() > 0) {
+            assertTrue(System.nanoTime() < deadline, "the hashing thread is still busy after its hash");
+            Thread.onSpinWait();
+        }
+
+        long started = System.nanoTime();
+        assertTrue(encoder.matches("password", HASH));
+        assertTrue(System.nanoTime() - started >= 5 * cost, "the next hash started without waiting its turn");
+    }
+
+    @Test
+    void submit_ShouldTurnCallersAwayOnceThreadsAndQueueAreTaken() throws Exception {
+        encoder = encoder(1, 1);
+
+        // Both admissions are held by hashes that keep the only thread busy for a while
+        CompletableFuture<?>[] held = new CompletableFuture<?>[2];
+        for (int i = 0; i < held.length; i++) {
+            held[i] = CompletableFuture.runAsync(() -> encoder.encode("p".repeat(60)));
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (((Semaphore) ReflectionTestUtils.getField(encoder, "admissions")).availablePermits() > 0) {
+            assertTrue(System.nanoTime() < deadline, "the hashes were never admitted");
+            Thread.onSpinWait();
+        }
+
+        assertThrows(PasswordHashingUnavailableException.class, () -> encoder.matches("password", HASH));
+        assertEquals(1, meterRegistry.counter("password.hash.rejected").count());
+
+        CompletableFuture.allOf(held).get(30, TimeUnit.SECONDS);
+        assertTrue(encoder.matches("password", HASH));
+    }
+
+    private IsolatedPasswordEncoder encoder(int queueCapacity, double cpuShare) {
+        meterRegistry = new SimpleMeterRegistry();
+        return new IsolatedPasswordEncoder(STRENGTH, 1, queueCapacity, 30_000, cpuShare, meterRegistry);
+    }
+}
@@ -0,0 +1,174 @@
+package com.firstrand.banking.security;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.firstrand.banking.model.Account;
+import com.firstrand.banking.model.AccountType;
+import com.firstrand.banking.model.ERole;
+import com.firstrand.banking.model.User;
+import com.firstrand.banking.model.dto.LoginRequest;
+import com.firstrand.banking.repository.AccountRepository;
+import com.firstrand.banking.repository.RoleRepository;
+import com.firstrand.banking.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Deposit latency through the full filter chain on MockMvc, alone and while {@value #CLIENTS}
+ * clients flood {@code /api/auth/signin}, each backing off {@value #BACK_OFF_MS} ms after a 503.
+ * One hashing thread and a queue of four at cost 11 keep the flood at the pool's edge on any host.
+ * Run with {@code mvn test -Dtest=PasswordHashingBenchmark}; add
+ * {@code -Dsecurity.password-hashing.cpu-share=1} to see the pool without pacing.
+ */
+@SpringBootTest(properties = {
+        "rate-limit.enabled=false",
+        "velocity.enabled=false",
+        "standing-orders.enabled=false",
+        "balance-checkpoints.enabled=false",
+        "security.password-hashing.bcrypt-strength=11",
+        "security.password-hashing.threads=1",
+        "security.password-hashing.queue-capacity=4"
+})
+@AutoConfigureMockMvc
+public class PasswordHashingBenchmark {
+
+    private static final int CLIENTS = 40;
+    private static final long BACK_OFF_MS = 200;
+    private static final int DEPOSITS = 300;
+    private static final String PASSWORD = "benchmark-password";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private JwtUtils jwtUtils;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private RoleRepository roleRepository;
+
+    private String authorization;
+    private String depositPath;
+    private byte[] signin;
+
+    @Test
+    void depositsDuringSigninFlood() throws Exception {
+        setUp();
+
+        // Warm up, then measure alone
+        deposits();
+        long[] alone = deposits();
+
+        AtomicBoolean flooding = new AtomicBoolean(true);
+        AtomicInteger accepted = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+        List<Future<?>> floods = new ArrayList<>();
+        for (int i = 0; i < CLIENTS; i++) {
+            floods.add(clients.submit(() -> {
+                while (flooding.get()) {
+                    int status = mockMvc.perform(post("/api/auth/signin")
+                                    .contentType(MediaType.APPLICATION_JSON)
+                                    .content(signin))
+                            .andReturn().getResponse().getStatus();
+                    if (status == 200) {
+                        accepted.incrementAndGet();
+                    } else {
+                        assertEquals(503, status);
+                        rejected.incrementAndGet();
+                        Thread.sleep(BACK_OFF_MS);
+                    }
+                }
+                return null;
+            }));
+        }
+
+        long[] flooded;
+        try {
+            Thread.sleep(1_000);
+            flooded = deposits();
+        } finally {
+            flooding.set(false);
+            clients.shutdown();
+        }
+        assertTrue(clients.awaitTermination(1, TimeUnit.MINUTES));
+        for (Future<?> flood : floods) {
+            flood.get();
+        }
+
+        System.out.printf("deposits alone:        p50 %.1f ms, p99 %.1f ms%n", alone[0] / 1e6, alone[1] / 1e6);
+        System.out.printf("deposits during flood: p50 %.1f ms, p99 %.1f ms%n", flooded[0] / 1e6, flooded[1] / 1e6);
+        System.out.printf("signins: %d accepted, %d rejected with 503%n", accepted.get(), rejected.get());
+    }
+
+    // p50 and p99 of one deposit after another, in nanoseconds
+    private long[] deposits() throws Exception {
+        long[] latencies = new long[DEPOSITS];
+        for (int i = 0; i < DEPOSITS; i++) {
+            long started = System.nanoTime();
+            mockMvc.perform(post(depositPath)
+                            .header("Authorization", authorization)
+                            .param("amount", "1.00"))
+                    .andExpect(status().isOk());
+            latencies[i] = System.nanoTime() - started;
+        }
+        Arrays.sort(latencies);
+        return new long[]{latencies[DEPOSITS / 2], latencies[DEPOSITS * 99 / 100]};
+    }
+
+    private void setUp() throws Exception {
+        String suffix = String.format("%09d", System.nanoTime() % 1_000_000_000L);
+        User user = new User();
+        user.setUsername("hashing" + suffix);
+        user.setEmail(user.getUsername() + "@example.com");
+        user.setPassword(passwordEncoder.encode(PASSWORD));
+        user.setFirstName("Hashing");
+        user.setLastName("Benchmark");
+        user.setRoles(Set.of(roleRepository.findByName(ERole.ROLE_USER).orElseThrow()));
+        user = userRepository.save(user);
+        authorization = "Bearer " + jwtUtils.generateTokenFromUsername(user.getUsername());
+
+        LoginRequest login = new LoginRequest();
+        login.setUsername(user.getUsername());
+        login.setPassword(PASSWORD);
+        signin = objectMapper.writeValueAsBytes(login);
+
+        Account account = new Account();
+        account.setAccountNumber("8" + suffix + "4");
+        account.setAccountType(AccountType.CHECKING);
+        account.setAccountName("Benchmark");
+        account.setUser(user);
+        accountRepository.save(account);
+        depositPath = "/api/transactions/deposit/" + account.getAccountNumber();
+    }
+}
@@ -0,0 +1,209 @@
+package com.firstrand.banking.security;
+
+import com.firstrand.banking.config.RateLimitProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.ServletRequest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Transfers limited by the source account in their JSON body, which the filter reads and the
+ * controller then reads again, blocking or not. A body the filter cannot take the account from
+ * never reaches the controller.
+ */
+public class RateLimitFilterTest {
+
+    private static final String PATH = "/api/transactions/transfer";
+
+    private RateLimitFilter filter;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private ServletRequest forwarded;
+
+    @BeforeEach
+    void setUp() {
+        RateLimitProperties.Rule rule = new RateLimitProperties.Rule();
+        rule.setName("transfer-account");
+        rule.setPath(PATH);
+        rule.setMethods(List.of("POST"));
+        rule.setKey(RateLimitProperties.Key.ACCOUNT);
+        rule.setCapacity(2);
+        rule.setRefillPerSecond(0.01);
+        RateLimitProperties properties = new RateLimitProperties();
+        properties.setRules(List.of(rule));
+
+        meterRegistry = new SimpleMeterRegistry();
+        TokenBucketRateLimiter rateLimiter = new TokenBucketRateLimiter();
+        ReflectionTestUtils.setField(rateLimiter, "meterRegistry", meterRegistry);
+        filter = new RateLimitFilter(rateLimiter, properties, meterRegistry);
+    }
+
+    @Test
+    void transfers_ShouldBeLimitedByTheSourceAccountInTheirBody() throws Exception {
+        assertEquals(200, transfer("111").getStatus());
+        assertEquals(200, transfer("111").getStatus());
+
+        forwarded = null;
+        MockHttpServletResponse rejected = transfer("111");
+        assertEquals(429, rejected.getStatus());
+        assertNull(forwarded);
+        assertNotNull(rejected.getHeader("Retry-After"));
+        assertEquals(1, meterRegistry.counter("rate_limit.rejected", "rule", "transfer-account").count());
+
+        assertEquals(200, transfer("222").getStatus());
+    }
+
+    @Test
+    void transfers_ShouldBeLimitedWhateverTheFramingOrContentType() throws Exception {
+        byte[] body = body("111").getBytes(StandardCharsets.UTF_8);
+        assertEquals(200, transfer(MediaType.APPLICATION_JSON_VALUE, body, true).getStatus());
+        assertArrayEquals(body, forwarded.getInputStream().readAllBytes());
+        assertEquals(200, transfer("application/vnd.firstrand+json", body, false).getStatus());
+
+        forwarded = null;
+        assertEquals(429, transfer(null, body, true).getStatus());
+        assertNull(forwarded);
+    }
+
+    @Test
+    void transfers_ShouldBeRejectedWhenTheBodyCannotBeInspected() throws Exception {
+        // Padding inside the JSON keeps the oversized body well-formed
+        byte[] oversized = ("{\"sourceAccountNumber\":\"111\",\"description\":\"" + "x".repeat(16 * 1024) + "\"}")
+                .getBytes(StandardCharsets.UTF_8);
+        forwarded = null;
+        assertEquals(413, transfer(MediaType.APPLICATION_JSON_VALUE, oversized, false).getStatus());
+        assertEquals(413, transfer(MediaType.APPLICATION_JSON_VALUE, oversized, true).getStatus());
+
+        for (String body : new String[]{"", "{\"sourceAccountNumber\":", "{\"amount\":\"12.50\"}", "{\"sourceAccountNumber\":111}", "[]"}) {
+            MockHttpServletResponse response = transfer(MediaType.APPLICATION_JSON_VALUE, body.getBytes(StandardCharsets.UTF_8), false);
+            assertEquals(400, response.getStatus(), body);
+            assertTrue(response.getContentAsString().contains("sourceAccountNumber"));
+        }
+        assertNull(forwarded);
+        assertEquals(0, meterRegistry.counter("rate_limit.rejected", "rule", "transfer-account").count());
+
+        // None of them used up the account's tokens
+        assertEquals(200, transfer("111").getStatus());
+        assertEquals(200, transfer("111").getStatus());
+    }
+
+    @Test
+    void bufferedBody_ShouldReadAgainBlocking() throws Exception {
+        String body = body("111");
+        transfer("111");
+
+        assertArrayEquals(body.getBytes(StandardCharsets.UTF_8), forwarded.getInputStream().readAllBytes());
+        assertEquals(body, forwarded.getReader().lines().collect(Collectors.joining("\n")));
+    }
+
+    @Test
+    void bufferedBody_ShouldReadAgainThroughAReadListener() throws Exception {
+        byte[] body = body("111").getBytes(StandardCharsets.UTF_8);
+        transfer("111");
+
+        // Outside an asynchronous request there is nothing to call the listener back on
+        ServletInputStream blocking = forwarded.getInputStream();
+        assertThrows(IllegalStateException.class, () -> blocking.setReadListener(new RecordingListener(blocking, 8)));
+
+        forwarded.startAsync();
+        ServletInputStream input = forwarded.getInputStream();
+        RecordingListener listener = new RecordingListener(input, 8);
+        input.setReadListener(listener);
+        assertArrayEquals(body, listener.read.toByteArray());
+        assertEquals(List.of("data", "all"), listener.events.subList(listener.events.size() - 2, listener.events.size()));
+        assertEquals((body.length + 7) / 8, listener.events.stream().filter("data"::equals).count());
+        assertThrows(IllegalStateException.class, () -> input.setReadListener(listener));
+
+        // Failures reach the listener rather than the caller
+        ServletInputStream failing = forwarded.getInputStream();
+        RecordingListener failed = new RecordingListener(failing, 8) {
+            @Override
+            public void onDataAvailable() throws IOException {
+                throw new IOException("client went away");
+            }
+        };
+        failing.setReadListener(failed);
+        assertEquals(List.of("error"), failed.events);
+    }
+
+    private MockHttpServletResponse transfer(String sourceAccount) throws Exception {
+        return transfer(MediaType.APPLICATION_JSON_VALUE, body(sourceAccount).getBytes(StandardCharsets.UTF_8), false);
+    }
+
+    // A chunked body does not declare its length
+    private MockHttpServletResponse transfer(String contentType, byte[] body, boolean chunked) throws Exception {
+        MockHttpServletRequest request = chunked
+                ? new MockHttpServletRequest("POST", PATH) {
+                    @Override
+                    public int getContentLength() {
+                        return -1;
+                    }
+
+                    @Override
+                    public long getContentLengthLong() {
+                        return -1;
+                    }
+                }
+                : new MockHttpServletRequest("POST", PATH);
+        request.setAsyncSupported(true);
+        request.setContentType(contentType);
+        request.setContent(body);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, (req, res) -> forwarded = req);
+        return response;
+    }
+
+    private static String body(String sourceAccount) {
+        return "{\"sourceAccountNumber\":\"" + sourceAccount + "\",\"destinationAccountNumber\":\"999\",\"amount\":\"12.50\"}";
+    }
+
+    // Reads up to chunk bytes per callback, the way a listener that is careful with its buffers does
+    private static class RecordingListener implements ReadListener {
+
+        final ServletInputStream input;
+        final int chunk;
+        final ByteArrayOutputStream read = new ByteArrayOutputStream();
+        final List<String> events = new ArrayList<>();
+
+        RecordingListener(ServletInputStream input, int chunk) {
+            this.input = input;
+            this.chunk = chunk;
+        }
+
+        @Override
+        public void onDataAvailable() throws IOException {
+            events.add("data");
+            byte[] buffer = new byte[chunk];
+            int length = input.read(buffer, 0, chunk);
+            if (length > 0) {
+                read.write(buffer, 0, length);
+            }
+        }
+
+        @Override
+        public void onAllDataRead() {
+            events.add("all");
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            events.add("error");
+        }
+    }
+}
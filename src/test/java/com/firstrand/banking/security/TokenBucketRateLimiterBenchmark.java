@@ -0,0 +1,92 @@
+package com.firstrand.banking.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Wall time, CPU time and allocation per rate-limit decision with {@value #THREADS} threads taking
+ * tokens from {@value #KEYS} buckets, keyed the way {@link RateLimitFilter} keys them. The buckets
+ * refill fast enough that both outcomes occur. Run with
+ * {@code mvn test -Dtest=TokenBucketRateLimiterBenchmark}.
+ */
+public class TokenBucketRateLimiterBenchmark {
+
+    private static final int THREADS = 8;
+    private static final int KEYS = 1024;
+    private static final int DECISIONS_PER_THREAD = 2_000_000;
+    private static final int ROUNDS = 3;
+
+    private static final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    @Test
+    void concurrentDecisions() throws Exception {
+        TokenBucketRateLimiter rateLimiter = new TokenBucketRateLimiter();
+        ReflectionTestUtils.setField(rateLimiter, "meterRegistry", new SimpleMeterRegistry());
+        rateLimiter.registerMeters();
+
+        String[] keys = new String[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            keys[i] = "money-user:" + (100_000 + i);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            for (int round = 0; round < ROUNDS; round++) {
+                boolean warmup = round < ROUNDS - 1;
+
+                long started = System.nanoTime();
+                List<Future<long[]>> results = new ArrayList<>();
+                for (int t = 0; t < THREADS; t++) {
+                    int offset = t * 131;
+                    results.add(executor.submit(() -> decide(rateLimiter, keys, offset)));
+                }
+                long cpu = 0;
+                long bytes = 0;
+                long admitted = 0;
+                for (Future<long[]> result : results) {
+                    long[] totals = result.get();
+                    cpu += totals[0];
+                    bytes += totals[1];
+                    admitted += totals[2];
+                }
+                long wall = System.nanoTime() - started;
+
+                long decisions = (long) THREADS * DECISIONS_PER_THREAD;
+                assertTrue(admitted > 0 && admitted < decisions);
+                if (!warmup) {
+                    System.out.printf("%d decisions on %d threads: %.1f ns wall and %.1f ns CPU per decision, "
+                                    + "%d B allocated per decision, %.1f%% admitted%n",
+                            decisions, THREADS, (double) wall / decisions, (double) cpu / decisions,
+                            bytes / decisions, 100.0 * admitted / decisions);
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    // CPU nanoseconds, allocated bytes and admitted decisions for one thread
+    private static long[] decide(TokenBucketRateLimiter rateLimiter, String[] keys, int offset) {
+        long allocated = threads.getCurrentThreadAllocatedBytes();
+        long started = threads.getCurrentThreadCpuTime();
+        long admitted = 0;
+        for (int i = 0; i < DECISIONS_PER_THREAD; i++) {
+            if (rateLimiter.tryAcquire(keys[(offset + i) & (KEYS - 1)], 50, 2_000) == 0) {
+                admitted++;
+            }
+        }
+        return new long[]{threads.getCurrentThreadCpuTime() - started,
+                threads.getCurrentThreadAllocatedBytes() - allocated, admitted};
+    }
+}
@@ -0,0 +1,115 @@
+package com.firstrand.banking.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Drives the buckets on a clock the test moves by hand. Each bucket here holds 5 tokens and gets one
+ * back every second.
+ */
+public class TokenBucketRateLimiterTest {
+
+    private static final long SECOND = 1_000_000_000L;
+    private static final long CAPACITY = 5;
+    private static final double REFILL_PER_SECOND = 1;
+
+    private TokenBucketRateLimiter rateLimiter;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        rateLimiter = new TokenBucketRateLimiter();
+        ReflectionTestUtils.setField(rateLimiter, "meterRegistry", meterRegistry);
+        rateLimiter.registerMeters();
+    }
+
+    @Test
+    void newBucket_ShouldAllowABurstOfItsCapacity() {
+        // nanoTime can be anywhere, including just short of overflowing
+        for (long start : new long[]{0, -7 * SECOND, Long.MAX_VALUE - 3 * SECOND}) {
+            String key = "burst" + start;
+            for (int i = 0; i < CAPACITY; i++) {
+                assertEquals(0, acquire(key, start), "token " + i + " from " + start);
+            }
+            assertEquals(SECOND, acquire(key, start));
+            assertEquals(SECOND / 4, acquire(key, start + 3 * SECOND / 4));
+
+            // Rejections take nothing, so the token is there once the wait is over
+            assertEquals(0, acquire(key, start + SECOND));
+            assertEquals(SECOND, acquire(key, start + SECOND));
+        }
+
+        // Every key has its own bucket
+        assertEquals(0, acquire("other", 0));
+        assertEquals(4, meterRegistry.get("rate_limit.buckets").gauge().value());
+    }
+
+    @Test
+    void bucket_ShouldRefillAtItsRateUpToItsCapacity() {
+        for (int i = 0; i < CAPACITY; i++) {
+            assertEquals(0, acquire("refill", 0));
+        }
+
+        // One token a second for as long as requests keep pace
+        for (int second = 1; second <= 10; second++) {
+            assertEquals(0, acquire("refill", second * SECOND), "second " + second);
+            assertTrue(acquire("refill", second * SECOND) > 0, "second " + second);
+        }
+
+        // Idle for longer than a full refill, the bucket holds its capacity and no more
+        long later = 100 * SECOND;
+        for (int i = 0; i < CAPACITY; i++) {
+            assertEquals(0, acquire("refill", later));
+        }
+        assertEquals(SECOND, acquire("refill", later));
+
+        // A faster rate and a single-token bucket
+        assertEquals(0, rateLimiter.tryAcquire("fast", 1, 4, 0));
+        assertEquals(SECOND / 4, rateLimiter.tryAcquire("fast", 1, 4, 0));
+        assertEquals(0, rateLimiter.tryAcquire("fast", 1, 4, SECOND / 4));
+    }
+
+    @Test
+    void evictIdleBuckets_ShouldDropOnlyBucketsThatAreFullAgain() {
+        // "drained" is full again 5 seconds on, "touched" after 1
+        for (int i = 0; i < CAPACITY; i++) {
+            acquire("drained", 0);
+        }
+        acquire("touched", 0);
+        assertEquals(2, meterRegistry.get("rate_limit.buckets").gauge().value());
+
+        rateLimiter.evictIdleBuckets(SECOND - 1);
+        assertEquals(2, meterRegistry.get("rate_limit.buckets").gauge().value());
+
+        rateLimiter.evictIdleBuckets(SECOND);
+        assertEquals(1, meterRegistry.get("rate_limit.buckets").gauge().value());
+
+        // A bucket that is not full yet keeps its debt: four of its five tokens are back
+        rateLimiter.evictIdleBuckets(4 * SECOND);
+        assertEquals(1, meterRegistry.get("rate_limit.buckets").gauge().value());
+        for (int i = 0; i < CAPACITY - 1; i++) {
+            assertEquals(0, acquire("drained", 4 * SECOND));
+        }
+        assertEquals(SECOND, acquire("drained", 4 * SECOND));
+
+        // Once evicted it comes back full, just as it would have been
+        rateLimiter.evictIdleBuckets(9 * SECOND - 1);
+        assertEquals(1, meterRegistry.get("rate_limit.buckets").gauge().value());
+        rateLimiter.evictIdleBuckets(9 * SECOND);
+        assertEquals(0, meterRegistry.get("rate_limit.buckets").gauge().value());
+        for (int i = 0; i < CAPACITY; i++) {
+            assertEquals(0, acquire("drained", 9 * SECOND));
+        }
+        assertEquals(SECOND, acquire("drained", 9 * SECOND));
+    }
+
+    private long acquire(String key, long now) {
+        return rateLimiter.tryAcquire(key, CAPACITY, REFILL_PER_SECOND, now);
+    }
+}
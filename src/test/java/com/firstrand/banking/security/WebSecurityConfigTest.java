@@ -0,0 +1,43 @@
+package com.firstrand.banking.security;
+
+import jakarta.servlet.Filter;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.web.SecurityFilterChain;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {
+        "rate-limit.enabled=false",
+        "velocity.enabled=false",
+        "standing-orders.enabled=false",
+        "balance-checkpoints.enabled=false"
+})
+public class WebSecurityConfigTest {
+
+    @Autowired
+    private SecurityFilterChain filterChain;
+
+    @Test
+    void filterChain_ShouldShedLoadBeforeAuthenticatingAndRateLimitAfter() {
+        List<Filter> filters = filterChain.getFilters();
+        int bulkheads = indexOf(filters, ConcurrencyLimitFilter.class);
+        int authentication = indexOf(filters, AuthTokenFilter.class);
+        int rateLimits = indexOf(filters, RateLimitFilter.class);
+
+        assertTrue(bulkheads < authentication, "bulkheads at " + bulkheads + ", authentication at " + authentication);
+        assertTrue(authentication < rateLimits, "authentication at " + authentication + ", rate limits at " + rateLimits);
+    }
+
+    private static int indexOf(List<Filter> filters, Class<? extends Filter> type) {
+        for (int i = 0; i < filters.size(); i++) {
+            if (type.isInstance(filters.get(i))) {
+                return i;
+            }
+        }
+        return fail(type.getSimpleName() + " is not in the chain");
+    }
+}
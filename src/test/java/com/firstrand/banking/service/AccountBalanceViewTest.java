@@ -0,0 +1,249 @@
+package com.firstrand.banking.service;
+
+import com.firstrand.banking.model.Account;
+import com.firstrand.banking.model.AccountType;
+import com.firstrand.banking.model.Money;
+import com.firstrand.banking.model.User;
+import com.firstrand.banking.model.dto.TransferRequest;
+import com.firstrand.banking.repository.AccountRepository;
+import com.firstrand.banking.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks the balance read model against the account rows it mirrors: reads that overlap a write,
+ * postings whose transaction rolls back, and many postings committing at once.
+ */
+@SpringBootTest(properties = {
+        "rate-limit.enabled=false",
+        "velocity.enabled=false",
+        "standing-orders.enabled=false",
+        "balance-checkpoints.enabled=false"
+})
+public class AccountBalanceViewTest {
+
+    private static final AtomicLong accountNumbers = new AtomicLong(6_000_000_000L + System.currentTimeMillis() % 1_000_000_000L);
+
+    @Autowired
+    private AccountBalanceView accountBalanceView;
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        user = new User();
+        user.setUsername("view" + accountNumbers.incrementAndGet());
+        user.setEmail(user.getUsername() + "@example.com");
+        user.setPassword("unused");
+        user.setFirstName("Balance");
+        user.setLastName("View");
+        user = userRepository.save(user);
+    }
+
+    @Test
+    void read_ShouldWaitForAWriterInsteadOfReturningAnUnvalidatedBalance() throws Exception {
+        Account account = openAccount(100_00);
+        assertNotNull(accountBalanceView.etag(accountBalanceView.getByAccountNumber(account.getAccountNumber())));
+
+        StampedLock lock = (StampedLock) ReflectionTestUtils.getField(accountBalanceView, "lock");
+        long stamp = lock.writeLock();
+        CompletableFuture<AccountBalanceView.Snapshot> read;
+        Thread reader;
+        try {
+            CountDownLatch started = new CountDownLatch(1);
+            Thread[] holder = new Thread[1];
+            read = CompletableFuture.supplyAsync(() -> {
+                holder[0] = Thread.currentThread();
+                started.countDown();
+                return accountBalanceView.getByAccountNumber(account.getAccountNumber());
+            });
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            reader = holder[0];
+
+            // The optimistic read cannot validate while the write lock is held, so it falls back to the read lock
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (reader.getState() != Thread.State.WAITING && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            assertEquals(Thread.State.WAITING, reader.getState());
+            assertFalse(read.isDone());
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+
+        assertEquals(Money.ofMinorUnits(100_00), read.get(5, TimeUnit.SECONDS).getBalance());
+    }
+
+    @Test
+    void readsDuringPostings_ShouldNeverSeeABalanceFromOneWriteAndAVersionFromAnother() throws Exception {
+        Account account = openAccount(0);
+        AccountBalanceView.Snapshot initial = accountBalanceView.getByAccountNumber(account.getAccountNumber());
+        long initialVersion = versionOf(initial);
+
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < 200; i++) {
+                transactionService.deposit(account.getAccountNumber(), Money.ofMinorUnits(1), null, "view");
+            }
+        });
+        writer.start();
+
+        // Every posting adds one cent and one version, so the two must move together in every read
+        List<String> torn = new ArrayList<>();
+        while (writer.isAlive()) {
+            AccountBalanceView.Snapshot snapshot = accountBalanceView.getByAccountNumber(account.getAccountNumber());
+            long version = versionOf(snapshot);
+            if (snapshot.getBalance().getMinorUnits() != version - initialVersion) {
+                torn.add(snapshot.getBalance() + " at version " + version);
+            }
+        }
+        writer.join();
+
+        assertEquals(List.of(), torn);
+        assertEquals(Money.ofMinorUnits(200), accountBalanceView.getByAccountNumber(account.getAccountNumber()).getBalance());
+    }
+
+    @Test
+    void rolledBackPosting_ShouldNotApplyItsDelta() {
+        Account account = openAccount(100_00);
+        AccountBalanceView.Snapshot before = accountBalanceView.getByAccountNumber(account.getAccountNumber());
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            transactionService.deposit(account.getAccountNumber(), Money.of(25), null, "rolled back");
+            status.setRollbackOnly();
+        });
+
+        AccountBalanceView.Snapshot after = accountBalanceView.getByAccountNumber(account.getAccountNumber());
+        assertEquals(Money.ofMinorUnits(100_00), after.getBalance());
+        assertEquals(accountBalanceView.etag(before), accountBalanceView.etag(after));
+        assertEquals(balanceOf(account), after.getBalance());
+
+        // The rolled back posting is no longer in flight, so the next one is applied as usual
+        transactionService.deposit(account.getAccountNumber(), Money.of(5), null, "committed");
+        assertEquals(Money.ofMinorUnits(105_00), accountBalanceView.getByAccountNumber(account.getAccountNumber()).getBalance());
+    }
+
+    @Test
+    void concurrentPostings_ShouldLeaveTheViewAgreeingWithTheRows() throws InterruptedException {
+        Account[] accounts = {openAccount(500_00), openAccount(500_00), openAccount(500_00)};
+        for (Account account : accounts) {
+            accountBalanceView.getByAccountNumber(account.getAccountNumber());
+        }
+
+        List<Throwable> failures = new CopyOnWriteArrayList<>();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Random random = new Random(t);
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < 40; i++) {
+                        Account from = accounts[random.nextInt(accounts.length)];
+                        Account to = accounts[(random.nextInt(accounts.length - 1) + 1 + indexOf(accounts, from)) % accounts.length];
+                        Money amount = Money.ofMinorUnits(1 + random.nextInt(10_00));
+                        try {
+                            switch (random.nextInt(3)) {
+                                case 0:
+                                    transactionService.deposit(from.getAccountNumber(), amount, null, "view");
+                                    break;
+                                case 1:
+                                    transactionService.withdraw(from.getAccountNumber(), amount, null, "view");
+                                    break;
+                                default:
+                                    TransferRequest request = new TransferRequest();
+                                    request.setSourceAccountNumber(from.getAccountNumber());
+                                    request.setDestinationAccountNumber(to.getAccountNumber());
+                                    request.setAmount(amount);
+                                    request.setDescription("view");
+                                    transactionService.transferFunds(request);
+                            }
+                        } catch (RuntimeException declined) {
+                            // Declined postings change neither the rows nor the view
+                        }
+                        accountBalanceView.getByAccountNumber(to.getAccountNumber());
+                    }
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(List.of(), failures);
+        for (Account account : accounts) {
+            assertEquals(balanceOf(account), accountBalanceView.getByAccountNumber(account.getAccountNumber()).getBalance(),
+                    "account " + account.getAccountNumber());
+        }
+    }
+
+    private Account openAccount(long openingCents) {
+        Account account = new Account();
+        account.setAccountNumber(Long.toString(accountNumbers.incrementAndGet()));
+        account.setAccountType(AccountType.CHECKING);
+        account.setAccountName("View");
+        account.setUser(user);
+        account = accountRepository.save(account);
+        if (openingCents > 0) {
+            transactionService.deposit(account.getAccountNumber(), Money.ofMinorUnits(openingCents), null, "opening");
+        }
+        return account;
+    }
+
+    private Money balanceOf(Account account) {
+        return Money.of(jdbcTemplate.queryForObject("SELECT balance FROM accounts WHERE id = ?", BigDecimal.class, account.getId()));
+    }
+
+    private long versionOf(AccountBalanceView.Snapshot snapshot) {
+        String etag = accountBalanceView.etag(snapshot);
+        assertNotNull(etag, "balance was not kept in the view");
+        return Long.parseLong(etag.substring(etag.lastIndexOf('-') + 1));
+    }
+
+    private static int indexOf(Account[] accounts, Account account) {
+        for (int i = 0; i < accounts.length; i++) {
+            if (accounts[i] == account) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
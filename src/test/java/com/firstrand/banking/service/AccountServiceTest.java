@@ -3,16 +3,19 @@ package com.firstrand.banking.service;
 import com.firstrand.banking.exception.ResourceNotFoundException;
 import com.firstrand.banking.model.Account;
 import com.firstrand.banking.model.AccountType;
+import com.firstrand.banking.model.Money;
 import com.firstrand.banking.model.User;
 import com.firstrand.banking.model.dto.AccountRequest;
 import com.firstrand.banking.repository.AccountRepository;
 import com.firstrand.banking.repository.UserRepository;
+import jakarta.persistence.EntityManager;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
@@ -34,6 +37,24 @@ public class AccountServiceTest {
     @Mock
     private UserRepository userRepository;
 
+    @Mock
+    private AccountVersionIndex accountVersionIndex;
+
+    @Mock
+    private AccountStreamPublisher accountStreamPublisher;
+
+    @Mock
+    private AccountBalanceView accountBalanceView;
+
+    @Mock
+    private JournalLedgerService journalLedgerService;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private EntityManager entityManager;
+
     @InjectMocks
     private AccountService accountService;
 
@@ -57,7 +78,7 @@ public class AccountServiceTest {
         testAccount.setId(1L);
         testAccount.setAccountNumber("1234567890");
         testAccount.setAccountType(AccountType.SAVINGS);
-        testAccount.setBalance(BigDecimal.valueOf(1000));
+        testAccount.setBalance(Money.of(1000));
         testAccount.setCreatedAt(LocalDateTime.now());
         testAccount.setUpdatedAt(LocalDateTime.now());
         testAccount.setAccountName("Test Savings");
@@ -174,7 +195,7 @@ public class AccountServiceTest {
         assertNotNull(result);
         assertEquals(accountRequest.getAccountName(), result.getAccountName());
         assertEquals(accountRequest.getAccountType(), result.getAccountType());
-        assertEquals(BigDecimal.ZERO, result.getBalance());
+        assertEquals(Money.ZERO, result.getBalance());
         assertEquals(testUser, result.getUser());
         assertTrue(result.isActive());
         verify(userRepository, times(1)).findByUsername("testuser");
@@ -184,11 +205,12 @@ public class AccountServiceTest {
     @Test
     void updateAccountBalance_ShouldUpdateAndReturnAccount() {
         // Arrange
-        BigDecimal amountToAdd = BigDecimal.valueOf(500);
-        BigDecimal expectedBalance = testAccount.getBalance().add(amountToAdd);
+        Money amountToAdd = Money.of(500);
+        Money expectedBalance = testAccount.getBalance().plus(amountToAdd);
         
         when(accountRepository.findByAccountNumber(testAccount.getAccountNumber())).thenReturn(Optional.of(testAccount));
-        when(accountRepository.save(any(Account.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(jdbcTemplate.queryForObject(anyString(), eq(BigDecimal.class), eq(testAccount.getId())))
+                .thenReturn(expectedBalance.toBigDecimal());
 
         // Act
         Account result = accountService.updateAccountBalance(testAccount.getAccountNumber(), amountToAdd);
@@ -197,6 +219,20 @@ public class AccountServiceTest {
         assertNotNull(result);
         assertEquals(expectedBalance, result.getBalance());
         verify(accountRepository, times(1)).findByAccountNumber(testAccount.getAccountNumber());
-        verify(accountRepository, times(1)).save(testAccount);
+        verify(jdbcTemplate, times(1)).update(anyString(), eq(amountToAdd.toBigDecimal()), any(), eq(testAccount.getId()));
+        verify(entityManager, times(1)).detach(testAccount);
+        verify(accountRepository, never()).save(any(Account.class));
+    }
+
+    @Test
+    void updateAccountBalance_InJournalMode_ShouldRefuse() {
+        // Arrange
+        when(journalLedgerService.isEnabled()).thenReturn(true);
+
+        // Act & Assert
+        assertThrows(IllegalStateException.class,
+                () -> accountService.updateAccountBalance(testAccount.getAccountNumber(), Money.of(500)));
+        verify(accountRepository, never()).findByAccountNumber(anyString());
+        verifyNoInteractions(jdbcTemplate, accountBalanceView);
     }
 }
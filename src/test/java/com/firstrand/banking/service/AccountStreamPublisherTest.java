@@ -0,0 +1,248 @@
+package com.firstrand.banking.service;
+
+import com.firstrand.banking.model.Account;
+import com.firstrand.banking.model.Money;
+import com.firstrand.banking.model.Transaction;
+import com.firstrand.banking.model.TransactionStatus;
+import com.firstrand.banking.model.TransactionType;
+import com.firstrand.banking.model.User;
+import com.firstrand.banking.repository.AccountRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Runs the publisher without a servlet container: each stream's emitter records the events written
+ * to it and can hold a write for as long as a test needs, standing in for a client that is slow to
+ * read or has stopped reading altogether.
+ */
+public class AccountStreamPublisherTest {
+
+    private static final Pattern EVENT_NAME = Pattern.compile("^event:(\\w+)", Pattern.MULTILINE);
+
+    private final AtomicLong transactionIds = new AtomicLong();
+
+    private final AccountRepository accountRepository = mock(AccountRepository.class);
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    // Emitters handed to the next subscriptions, in order
+    private final Deque<RecordingEmitter> emitters = new ArrayDeque<>();
+
+    private AccountStreamPublisher publisher;
+
+    private Account account;
+
+    @BeforeEach
+    void setUp() {
+        User user = new User();
+        user.setId(1L);
+        account = new Account();
+        account.setId(11L);
+        account.setAccountNumber("1000000011");
+        account.setBalance(Money.of(100));
+        account.setUser(user);
+        when(accountRepository.findByUserId(anyLong())).thenReturn(List.of(account));
+        when(accountRepository.findAllById(any())).thenReturn(List.of(account));
+
+        publisher = new AccountStreamPublisher() {
+            @Override
+            SseEmitter newEmitter() {
+                return emitters.isEmpty() ? new RecordingEmitter() : emitters.poll();
+            }
+        };
+        ReflectionTestUtils.setField(publisher, "maxSubscribers", 100);
+        ReflectionTestUtils.setField(publisher, "maxPerUser", 5);
+        ReflectionTestUtils.setField(publisher, "bufferSize", 64);
+        ReflectionTestUtils.setField(publisher, "timeoutMs", 60_000L);
+        ReflectionTestUtils.setField(publisher, "heartbeatMs", 60_000L);
+        ReflectionTestUtils.setField(publisher, "dispatchThreads", 2);
+        ReflectionTestUtils.setField(publisher, "sendTimeoutMs", 60_000L);
+        ReflectionTestUtils.setField(publisher, "maxStalledSends", 4);
+        ReflectionTestUtils.setField(publisher, "accountRepository", accountRepository);
+        ReflectionTestUtils.setField(publisher, "journalLedgerService", mock(JournalLedgerService.class));
+        ReflectionTestUtils.setField(publisher, "meterRegistry", meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        publisher.shutdown();
+    }
+
+    @Test
+    void balanceChanges_ShouldCoalesceWhileAWriteIsInProgress() {
+        publisher.init();
+        RecordingEmitter emitter = held();
+        emitters.add(emitter);
+        assertNotNull(publisher.subscribe(1L));
+        awaitTrue(() -> emitter.waiting.getCount() == 0);
+
+        // Three postings land while the opening balance is still being written
+        for (int i = 0; i < 3; i++) {
+            publisher.transactionCommitted(deposit());
+        }
+        account.setBalance(Money.of(103));
+        emitter.release();
+
+        awaitTrue(() -> emitter.events.size() >= 5);
+        assertEquals(List.of("balance", "transaction", "transaction", "transaction", "balance"), emitter.events);
+    }
+
+    @Test
+    void fullTransactionBuffer_ShouldBeDroppedForAResync() {
+        ReflectionTestUtils.setField(publisher, "bufferSize", 2);
+        publisher.init();
+        RecordingEmitter emitter = held();
+        emitters.add(emitter);
+        assertNotNull(publisher.subscribe(1L));
+        awaitTrue(() -> emitter.waiting.getCount() == 0);
+
+        for (int i = 0; i < 5; i++) {
+            publisher.transactionCommitted(deposit());
+        }
+        emitter.release();
+
+        awaitTrue(() -> emitter.events.size() >= 3);
+        assertEquals(List.of("balance", "resync", "balance"), emitter.events);
+        assertEquals(1, meterRegistry.counter("account_stream.resyncs").count());
+    }
+
+    @Test
+    void subscribe_ShouldRefuseStreamsPastEitherLimit() {
+        ReflectionTestUtils.setField(publisher, "maxPerUser", 2);
+        ReflectionTestUtils.setField(publisher, "maxSubscribers", 3);
+        publisher.init();
+
+        assertNotNull(publisher.subscribe(1L));
+        assertNotNull(publisher.subscribe(1L));
+        assertNull(publisher.subscribe(1L));
+        assertNotNull(publisher.subscribe(2L));
+        assertNull(publisher.subscribe(3L));
+
+        // Refused streams give their place back
+        assertEquals(3, meterRegistry.get("account_stream.subscribers").gauge().value());
+    }
+
+    @Test
+    void stalledWrite_ShouldDropTheSubscriberWithoutHoldingUpOthers() {
+        ReflectionTestUtils.setField(publisher, "dispatchThreads", 1);
+        ReflectionTestUtils.setField(publisher, "sendTimeoutMs", 100L);
+        publisher.init();
+        ThreadPoolExecutor dispatcher = (ThreadPoolExecutor) ReflectionTestUtils.getField(publisher, "dispatcher");
+
+        // The only dispatcher thread blocks writing to a client that stopped reading
+        RecordingEmitter stuck = held();
+        emitters.add(stuck);
+        assertNotNull(publisher.subscribe(1L));
+        awaitTrue(() -> meterRegistry.counter("account_stream.stalls").count() == 1);
+        assertEquals(0, meterRegistry.get("account_stream.subscribers").gauge().value());
+        assertEquals(2, dispatcher.getCorePoolSize());
+
+        // Updates for the dropped stream are not buffered, and the next stream is served on the new thread
+        publisher.transactionCommitted(deposit());
+        RecordingEmitter next = new RecordingEmitter();
+        emitters.add(next);
+        assertNotNull(publisher.subscribe(1L));
+        awaitTrue(() -> next.events.size() == 1);
+        assertEquals(List.of("balance"), next.events);
+
+        // Once the write returns the client is disconnected and the extra thread goes
+        stuck.release();
+        awaitTrue(() -> stuck.completed);
+        assertEquals(List.of("balance"), stuck.events);
+        awaitTrue(() -> dispatcher.getCorePoolSize() == 1);
+    }
+
+    private Transaction deposit() {
+        Transaction transaction = new Transaction();
+        transaction.setId(transactionIds.incrementAndGet());
+        transaction.setType(TransactionType.DEPOSIT);
+        transaction.setStatus(TransactionStatus.COMPLETED);
+        transaction.setAmount(Money.of(1));
+        transaction.setDestinationAccount(account);
+        return transaction;
+    }
+
+    private static RecordingEmitter held() {
+        RecordingEmitter emitter = new RecordingEmitter();
+        emitter.gate = new CountDownLatch(1);
+        return emitter;
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                fail("condition never became true");
+            }
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail("interrupted");
+            }
+        }
+    }
+
+    private static final class RecordingEmitter extends SseEmitter {
+
+        final List<String> events = new CopyOnWriteArrayList<>();
+
+        // Counted down when the first write starts; that write then waits for the gate
+        final CountDownLatch waiting = new CountDownLatch(1);
+        volatile CountDownLatch gate = new CountDownLatch(0);
+        volatile boolean completed;
+
+        @Override
+        public void send(SseEventBuilder builder) {
+            Set<DataWithMediaType> parts = builder.build();
+            StringBuilder text = new StringBuilder();
+            parts.forEach(part -> text.append(part.getData()));
+            Matcher name = EVENT_NAME.matcher(text);
+            if (!name.find()) {
+                return;
+            }
+
+            waiting.countDown();
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            events.add(name.group(1));
+        }
+
+        @Override
+        public void complete() {
+            completed = true;
+        }
+
+        void release() {
+            gate.countDown();
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.firstrand.banking.service;
+
+import com.firstrand.banking.model.Account;
+import com.firstrand.banking.model.AccountType;
+import com.firstrand.banking.model.Money;
+import com.firstrand.banking.model.User;
+import com.firstrand.banking.model.dto.TransferRequest;
+import com.firstrand.banking.repository.AccountRepository;
+import com.firstrand.banking.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Every test compares the rollup rows of its own accounts with the completed transactions behind
+ * them, grouped the same way: credits by destination, debits by source.
+ */
+@SpringBootTest(properties = {
+        "rate-limit.enabled=false",
+        "velocity.enabled=false",
+        "standing-orders.enabled=false",
+        "balance-checkpoints.enabled=false"
+})
+public class AccountSummaryServiceTest {
+
+    private static final AtomicLong accountNumbers = new AtomicLong(7_500_000_000L);
+
+    private static final String LEDGER_SQL = "SELECT type, SUM(credit_count) AS credit_count, "
+            + "SUM(credit_amount) AS credit_amount, SUM(debit_count) AS debit_count, SUM(debit_amount) AS debit_amount "
+            + "FROM (SELECT CAST(timestamp AS DATE) AS summary_date, type, 1 AS credit_count, amount AS credit_amount, "
+            + "0 AS debit_count, 0 AS debit_amount FROM transactions WHERE destination_account_id = ? AND status = 'COMPLETED' "
+            + "UNION ALL SELECT CAST(timestamp AS DATE), type, 0, 0, 1, amount FROM transactions "
+            + "WHERE source_account_id = ? AND status = 'COMPLETED') t GROUP BY summary_date, type ORDER BY summary_date, type";
+
+    private static final String ROLLUP_SQL = "SELECT type, credit_count, credit_amount, debit_count, debit_amount "
+            + "FROM daily_account_summaries WHERE account_id = ? ORDER BY summary_date, type";
+
+    @Autowired
+    private AccountSummaryService accountSummaryService;
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private DataSource dataSource;
+
+    private Object summaryTemplate;
+
+    private List<Account> accounts;
+
+    @BeforeEach
+    void setUp() {
+        summaryTemplate = ReflectionTestUtils.getField(accountSummaryService, "jdbcTemplate");
+
+        User user = new User();
+        user.setUsername("summary" + accountNumbers.incrementAndGet());
+        user.setEmail(user.getUsername() + "@example.com");
+        user.setPassword("unused");
+        user.setFirstName("Account");
+        user.setLastName("Summary");
+        user = userRepository.save(user);
+
+        accounts = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Account account = new Account();
+            account.setAccountNumber(Long.toString(accountNumbers.incrementAndGet()));
+            account.setAccountType(AccountType.CHECKING);
+            account.setAccountName("Summary");
+            account.setUser(user);
+            accounts.add(accountRepository.save(account));
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        ReflectionTestUtils.setField(accountSummaryService, "jdbcTemplate", summaryTemplate);
+    }
+
+    @Test
+    void recordPosting_ShouldKeepTheRollupsInStepWithTheLedger() {
+        deposit(0, "100.00");
+        deposit(0, "25.50");
+        deposit(1, "40.00");
+        withdraw(0, "10.25");
+        transfer(0, 1, "30.00");
+        transfer(1, 2, "45.00");
+        transfer(2, 0, "5.00");
+        withdraw(2, "12.00");
+
+        // A declined withdrawal posts nothing
+        assertThrows(RuntimeException.class, () -> withdraw(2, "1000.00"));
+
+        for (Account account : accounts) {
+            assertRollupsMatchLedger(account);
+        }
+        assertEquals(List.of(Map.of("type", "DEPOSIT", "credit_count", 2L, "credit_amount", new BigDecimal("125.50"),
+                        "debit_count", 0L, "debit_amount", new BigDecimal("0.00")),
+                Map.of("type", "TRANSFER", "credit_count", 1L, "credit_amount", new BigDecimal("5.00"),
+                        "debit_count", 1L, "debit_amount", new BigDecimal("30.00")),
+                Map.of("type", "WITHDRAWAL", "credit_count", 0L, "credit_amount", new BigDecimal("0.00"),
+                        "debit_count", 1L, "debit_amount", new BigDecimal("10.25"))),
+                rollups(accounts.get(0)));
+    }
+
+    @Test
+    void recordPosting_ShouldCountAPostingOnceWhenItsFirstMergeLosesARace() {
+        deposit(0, "100.00");
+
+        // Each first attempt writes its row and then fails as if another posting had created it
+        // first, so only a rollback to the savepoint keeps the retry from counting the leg twice
+        AtomicInteger duplicates = new AtomicInteger();
+        ReflectionTestUtils.setField(accountSummaryService, "jdbcTemplate", new JdbcTemplate(dataSource) {
+            private boolean retrying;
+
+            @Override
+            public int update(String sql, Object... args) throws DataAccessException {
+                int updated = super.update(sql, args);
+                retrying = !retrying;
+                if (retrying) {
+                    duplicates.incrementAndGet();
+                    throw new DuplicateKeyException("Simulated race on the rollup row of account " + args[0]);
+                }
+                return updated;
+            }
+        });
+
+        deposit(1, "40.00");
+        transfer(0, 1, "30.00");
+        withdraw(0, "10.00");
+
+        assertEquals(4, duplicates.get());
+        for (Account account : accounts) {
+            assertRollupsMatchLedger(account);
+        }
+        assertEquals(new BigDecimal("60.00"), balance(accounts.get(0)));
+        assertEquals(new BigDecimal("70.00"), balance(accounts.get(1)));
+    }
+
+    private void assertRollupsMatchLedger(Account account) {
+        List<Map<String, Object>> ledger = jdbcTemplate.queryForList(LEDGER_SQL, account.getId(), account.getId());
+        assertEquals(normalize(ledger), rollups(account), "rollups of account " + account.getAccountNumber());
+    }
+
+    private List<Map<String, Object>> rollups(Account account) {
+        return normalize(jdbcTemplate.queryForList(ROLLUP_SQL, account.getId()));
+    }
+
+    // Counts as longs and amounts at two decimals, whatever the query's column types
+    private static List<Map<String, Object>> normalize(List<Map<String, Object>> rows) {
+        return rows.stream().map(row -> Map.<String, Object>of(
+                "type", row.get("type"),
+                "credit_count", ((Number) row.get("credit_count")).longValue(),
+                "credit_amount", new BigDecimal(row.get("credit_amount").toString()).setScale(2),
+                "debit_count", ((Number) row.get("debit_count")).longValue(),
+                "debit_amount", new BigDecimal(row.get("debit_amount").toString()).setScale(2))).toList();
+    }
+
+    private void deposit(int account, String amount) {
+        transactionService.deposit(accounts.get(account).getAccountNumber(), Money.of(new BigDecimal(amount)), null, "summary");
+    }
+
+    private void withdraw(int account, String amount) {
+        transactionService.withdraw(accounts.get(account).getAccountNumber(), Money.of(new BigDecimal(amount)), null, "summary");
+    }
+
+    private void transfer(int from, int to, String amount) {
+        TransferRequest request = new TransferRequest();
+        request.setSourceAccountNumber(accounts.get(from).getAccountNumber());
+        request.setDestinationAccountNumber(accounts.get(to).getAccountNumber());
+        request.setAmount(Money.of(new BigDecimal(amount)));
+        request.setDescription("summary");
+        transactionService.transferFunds(request);
+    }
+
+    private BigDecimal balance(Account account) {
+        return accountRepository.findById(account.getId()).orElseThrow().getBalance().toBigDecimal();
+    }
+}
@@ -0,0 +1,198 @@
+package com.firstrand.banking.service;
+
+import com.firstrand.banking.model.TransactionStatus;
+import com.firstrand.banking.model.TransactionType;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Writes segments of random transactions, several blocks long, and checks every way of reading them
+ * back against the same questions answered by scanning the entries that were written.
+ */
+public class ArchiveSegmentFileTest {
+
+    private static final long ACCOUNTS = 7;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void entries_ShouldReadBackAsWritten() throws IOException {
+        List<ArchiveSegmentFile.Entry> entries = randomEntries(new Random(45), 1_000, 1_500);
+        ArchiveSegmentFile segment = write(1_000, 2_600, entries);
+
+        assertEquals(1_000, segment.getFromId());
+        assertEquals(2_600, segment.getToId());
+        assertEquals(entries.size(), segment.getTransactionCount());
+        assertTrue(segment.getRowCount() > 2 * ArchiveSegmentFile.BLOCK_ROWS);
+
+        List<String> read = new ArrayList<>();
+        segment.forEachById(entry -> read.add(key(entry)));
+        assertEquals(entries.stream().map(ArchiveSegmentFileTest::key).toList(), read);
+
+        Map<Long, ArchiveSegmentFile.Entry> byId = new HashMap<>();
+        entries.forEach(entry -> byId.put(entry.getId(), entry));
+        for (long id = 990; id < 2_610; id++) {
+            ArchiveSegmentFile.Entry found = segment.findById(id);
+            assertEquals(byId.containsKey(id) ? key(byId.get(id)) : null, found == null ? null : key(found), "id " + id);
+        }
+    }
+
+    @Test
+    void readAccount_ShouldPageThroughTheAccountNewestFirst() throws IOException {
+        List<ArchiveSegmentFile.Entry> entries = randomEntries(new Random(46), 1, 1_200);
+        ArchiveSegmentFile segment = write(1, 1_201, entries);
+
+        for (long account = 0; account <= ACCOUNTS + 1; account++) {
+            List<String> expected = history(entries, account);
+            assertEquals(expected.size(), segment.countByAccount(account));
+
+            List<ArchiveSegmentFile.Entry> all = new ArrayList<>();
+            segment.readAccount(account, 0, Integer.MAX_VALUE, all);
+            assertEquals(expected, all.stream().map(ArchiveSegmentFileTest::key).toList(), "account " + account);
+
+            // Pages whose edges fall anywhere relative to the blocks
+            for (int pageSize : new int[]{1, 7, 100}) {
+                List<String> paged = new ArrayList<>();
+                for (int offset = 0; offset < expected.size() + pageSize; offset += pageSize) {
+                    List<ArchiveSegmentFile.Entry> page = new ArrayList<>();
+                    segment.readAccount(account, offset, pageSize, page);
+                    assertTrue(page.size() <= pageSize);
+                    page.forEach(entry -> paged.add(key(entry)));
+                }
+                assertEquals(expected, paged, "account " + account + " in pages of " + pageSize);
+            }
+        }
+    }
+
+    @Test
+    void totals_ShouldMatchTheCompletedLegsOfEachAccount() throws IOException {
+        Random random = new Random(47);
+        List<ArchiveSegmentFile.Entry> entries = randomEntries(random, 1, 1_500);
+        ArchiveSegmentFile segment = write(1, 1_501, entries);
+
+        Map<Long, long[]> reported = new TreeMap<>();
+        segment.forEachAccountTotals(2, ACCOUNTS, (accountId, credits, debits, legs) ->
+                assertNull(reported.put(accountId, new long[]{credits, debits, legs})));
+        assertEquals(List.of(2L, 3L, 4L, 5L, 6L), new ArrayList<>(reported.keySet()));
+
+        LocalDateTime first = entries.get(0).getTimestamp();
+        LocalDateTime last = entries.get(entries.size() - 1).getTimestamp();
+        for (long account = 1; account <= ACCOUNTS; account++) {
+            long[] all = sumBetween(entries, account, first, last.plusNanos(1));
+            if (reported.containsKey(account)) {
+                assertEquals(all[0], reported.get(account)[0]);
+                assertEquals(all[1], reported.get(account)[1]);
+            }
+
+            long[] totals = new long[2];
+            segment.sumAccountBetween(account, first, last.plusNanos(1), totals);
+            assertArrayEquals(all, totals, "account " + account);
+
+            // Bounds on, between and around timestamps, including ones several rows share
+            for (int i = 0; i < 50; i++) {
+                LocalDateTime from = entries.get(random.nextInt(entries.size())).getTimestamp();
+                LocalDateTime to = entries.get(random.nextInt(entries.size())).getTimestamp().plusNanos(random.nextInt(2));
+                if (to.isBefore(from)) {
+                    LocalDateTime swap = from;
+                    from = to;
+                    to = swap;
+                }
+                totals = new long[2];
+                segment.sumAccountBetween(account, from, to, totals);
+                assertArrayEquals(sumBetween(entries, account, from, to), totals,
+                        "account " + account + " in [" + from + ", " + to + ")");
+            }
+        }
+    }
+
+    @Test
+    void open_ShouldRefuseAFileThatIsNotASegment() throws IOException {
+        Path file = directory.resolve("other.seg");
+        Files.write(file, new byte[128]);
+        assertThrows(IOException.class, () -> ArchiveSegmentFile.open(file));
+    }
+
+    private ArchiveSegmentFile write(long fromId, long toId, List<ArchiveSegmentFile.Entry> entries) throws IOException {
+        Path file = directory.resolve("transactions-" + fromId + "-" + toId + ".seg");
+        long size = ArchiveSegmentFile.write(file, fromId, toId, entries);
+        assertEquals(Files.size(file), size);
+        return ArchiveSegmentFile.open(file);
+    }
+
+    // About one id in five is left out, as rolled-back or too recent transactions are
+    static List<ArchiveSegmentFile.Entry> randomEntries(Random random, long fromId, int span) {
+        List<ArchiveSegmentFile.Entry> entries = new ArrayList<>();
+        LocalDateTime timestamp = LocalDateTime.of(2020, 1, 1, 9, 0);
+        for (long id = fromId; id < fromId + span; id++) {
+            if (random.nextInt(5) == 0) {
+                continue;
+            }
+            // Several transactions can share a timestamp
+            if (random.nextInt(4) > 0) {
+                timestamp = timestamp.plusSeconds(random.nextInt(90_000)).plusNanos(random.nextInt(1_000_000) * 1_000L);
+            }
+
+            TransactionType type = TransactionType.values()[random.nextInt(TransactionType.values().length)];
+            Long source = type == TransactionType.DEPOSIT ? null : 1 + (long) random.nextInt((int) ACCOUNTS);
+            Long destination = type == TransactionType.WITHDRAWAL ? null
+                    : random.nextInt(20) == 0 && source != null ? source : 1 + (long) random.nextInt((int) ACCOUNTS);
+            TransactionStatus status = random.nextInt(10) == 0 ? TransactionStatus.FAILED : TransactionStatus.COMPLETED;
+            long amount = random.nextInt(3) == 0 ? random.nextLong() >>> 20 : 1 + random.nextInt(100_000);
+            String reference = random.nextBoolean() ? null : "REF-" + id;
+            String description = random.nextInt(3) == 0 ? null : random.nextBoolean() ? "Überweisung " + id : "";
+            entries.add(new ArchiveSegmentFile.Entry(id, source, destination, amount, type, status, timestamp,
+                    reference, description));
+        }
+        return entries;
+    }
+
+    // The account's entries, newest first and the later id first among equal timestamps
+    static List<String> history(List<ArchiveSegmentFile.Entry> entries, long account) {
+        return entries.stream()
+                .filter(entry -> Objects.equals(entry.getSourceAccountId(), account)
+                        || Objects.equals(entry.getDestinationAccountId(), account))
+                .sorted(Comparator.comparing(ArchiveSegmentFile.Entry::getTimestamp)
+                        .thenComparingLong(ArchiveSegmentFile.Entry::getId).reversed())
+                .map(ArchiveSegmentFileTest::key)
+                .toList();
+    }
+
+    static long[] sumBetween(List<ArchiveSegmentFile.Entry> entries, long account, LocalDateTime from, LocalDateTime to) {
+        long[] totals = new long[2];
+        for (ArchiveSegmentFile.Entry entry : entries) {
+            if (entry.getStatus() != TransactionStatus.COMPLETED
+                    || entry.getTimestamp().isBefore(from) || !entry.getTimestamp().isBefore(to)) {
+                continue;
+            }
+            if (Objects.equals(entry.getDestinationAccountId(), account)) {
+                totals[0] += entry.getAmount();
+            }
+            if (Objects.equals(entry.getSourceAccountId(), account)) {
+                totals[1] += entry.getAmount();
+            }
+        }
+        return totals;
+    }
+
+    static String key(ArchiveSegmentFile.Entry entry) {
+        return entry.getId() + "|" + entry.getSourceAccountId() + "|" + entry.getDestinationAccountId() + "|"
+                + entry.getAmount() + "|" + entry.getType() + "|" + entry.getStatus() + "|" + entry.getTimestamp() + "|"
+                + entry.getReference() + "|" + entry.getDescription();
+    }
+}
@@ -0,0 +1,177 @@
+package com.firstrand.banking.service;
+
+import com.firstrand.banking.model.Account;
+import com.firstrand.banking.model.AccountType;
+import com.firstrand.banking.model.Money;
+import com.firstrand.banking.model.Transaction;
+import com.firstrand.banking.model.User;
+import com.firstrand.banking.repository.AccountRepository;
+import com.firstrand.banking.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Writes back-dated history by posting through {@link TransactionService} and then moving the
+ * account's transactions and rollups back by whole days, so checkpoints, rollups and transactions
+ * agree just as they would for postings made on those days.
+ */
+@SpringBootTest(properties = {
+        "rate-limit.enabled=false",
+        "velocity.enabled=false",
+        "standing-orders.enabled=false",
+        "balance-checkpoints.enabled=false"
+})
+public class BalanceHistoryServiceTest {
+
+    private static final AtomicLong accountNumbers = new AtomicLong(3_000_000_000L + System.currentTimeMillis() % 1_000_000_000L);
+
+    @Autowired
+    private BalanceHistoryService balanceHistoryService;
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        user = new User();
+        user.setUsername("history" + accountNumbers.incrementAndGet());
+        user.setEmail(user.getUsername() + "@example.com");
+        user.setPassword("unused");
+        user.setFirstName("Balance");
+        user.setLastName("History");
+        user = userRepository.save(user);
+
+        // As if the application had just started with the job switched on; no other test reads checkpoints
+        jdbcTemplate.update("DELETE FROM balance_checkpoints");
+        ReflectionTestUtils.setField(balanceHistoryService, "checkpointedThrough", null);
+        ReflectionTestUtils.setField(balanceHistoryService, "ready", false);
+        ReflectionTestUtils.setField(balanceHistoryService, "lagMs", 0L);
+        ReflectionTestUtils.setField(balanceHistoryService, "enabled", true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        ReflectionTestUtils.setField(balanceHistoryService, "enabled", false);
+    }
+
+    @Test
+    void getBalanceAsOf_ShouldAddTheSameDayTailToTheLatestCheckpoint() {
+        LocalDate today = LocalDate.now();
+        Account account = openAccount();
+
+        Transaction opening = transactionService.deposit(account.getAccountNumber(), Money.of(100), null, "opening");
+        Transaction rent = transactionService.withdraw(account.getAccountNumber(), Money.of(30), null, "rent");
+        moveBack(account, 2);
+        Transaction salary = transactionService.deposit(account.getAccountNumber(), Money.of(40), null, "salary");
+        Transaction coffee = transactionService.withdraw(account.getAccountNumber(), Money.of(5), null, "coffee");
+        moveBack(account, 1);
+        transactionService.deposit(account.getAccountNumber(), Money.of(7), null, "refund");
+
+        // Refused until the first roll-forward has caught up, rather than adding up all history
+        assertFalse(balanceHistoryService.isReady());
+        assertThrows(IllegalStateException.class,
+                () -> balanceHistoryService.getBalanceAsOf(account.getId(), LocalDateTime.now()));
+
+        balanceHistoryService.rollForward();
+        assertTrue(balanceHistoryService.isReady());
+        assertEquals(Map.of(today.minusDays(2), new BigDecimal("70.00"), today.minusDays(1), new BigDecimal("105.00")),
+                checkpoints(account));
+
+        // Yesterday's checkpoint and today's refund
+        assertEquals(Money.of(112), balanceHistoryService.getBalanceAsOf(account.getId(), LocalDateTime.now()));
+        // The day before's checkpoint and yesterday's salary, but not the coffee bought at the time asked for
+        assertEquals(Money.of(110), balanceHistoryService.getBalanceAsOf(account.getId(), timestamp(coffee)));
+        assertEquals(Money.of(70), balanceHistoryService.getBalanceAsOf(account.getId(), timestamp(salary)));
+        // Before the first checkpoint there is only the first day's tail
+        assertEquals(Money.of(100), balanceHistoryService.getBalanceAsOf(account.getId(), timestamp(rent)));
+        assertEquals(Money.ZERO, balanceHistoryService.getBalanceAsOf(account.getId(), timestamp(opening)));
+    }
+
+    @Test
+    void checkpointLoadedAccounts_ShouldFillInDaysAlreadyRolledPast() {
+        LocalDate today = LocalDate.now();
+        balanceHistoryService.rollForward();
+        assertTrue(balanceHistoryService.isReady());
+
+        // History written behind days the job has already done, as the synthetic data loader does
+        Account account = openAccount();
+        transactionService.deposit(account.getAccountNumber(), Money.of(50), null, "opening");
+        moveBack(account, 3);
+        transactionService.withdraw(account.getAccountNumber(), Money.of(20), null, "rent");
+        moveBack(account, 1);
+
+        balanceHistoryService.rollForward();
+        assertEquals(Map.of(), checkpoints(account));
+        assertEquals(Money.ZERO, balanceHistoryService.getBalanceAsOf(account.getId(), LocalDateTime.now()));
+
+        balanceHistoryService.checkpointLoadedAccounts(account.getId(), account.getId());
+        assertEquals(Map.of(today.minusDays(3), new BigDecimal("50.00"), today.minusDays(1), new BigDecimal("30.00")),
+                checkpoints(account));
+        assertEquals(Money.of(30), balanceHistoryService.getBalanceAsOf(account.getId(), LocalDateTime.now()));
+        assertEquals(Money.of(50), balanceHistoryService.getBalanceAsOf(account.getId(), today.minusDays(1).atStartOfDay()));
+
+        // Running it again rewrites the same checkpoints instead of adding to them
+        balanceHistoryService.checkpointLoadedAccounts(account.getId(), account.getId());
+        assertEquals(2, checkpoints(account).size());
+    }
+
+    // Moves the account's postings made today back by whole days, keeping their time of day
+    private void moveBack(Account account, int days) {
+        LocalDateTime startOfToday = LocalDate.now().atStartOfDay();
+        jdbcTemplate.update("UPDATE transactions SET timestamp = DATEADD(DAY, ?, timestamp) "
+                        + "WHERE (source_account_id = ? OR destination_account_id = ?) AND timestamp >= ?",
+                -days, account.getId(), account.getId(), startOfToday);
+        jdbcTemplate.update("UPDATE daily_account_summaries SET summary_date = ? WHERE account_id = ? AND summary_date = ?",
+                Date.valueOf(LocalDate.now().minusDays(days)), account.getId(), Date.valueOf(LocalDate.now()));
+    }
+
+    private LocalDateTime timestamp(Transaction transaction) {
+        return jdbcTemplate.queryForObject("SELECT timestamp FROM transactions WHERE id = ?",
+                LocalDateTime.class, transaction.getId());
+    }
+
+    private Map<LocalDate, BigDecimal> checkpoints(Account account) {
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                "SELECT checkpoint_date, balance FROM balance_checkpoints WHERE account_id = ?", account.getId());
+        Map<LocalDate, BigDecimal> checkpoints = new HashMap<>();
+        rows.forEach(row -> checkpoints.put(((Date) row.get("CHECKPOINT_DATE")).toLocalDate(),
+                ((BigDecimal) row.get("BALANCE")).setScale(2)));
+        return checkpoints;
+    }
+
+    private Account openAccount() {
+        Account account = new Account();
+        account.setAccountNumber(Long.toString(accountNumbers.incrementAndGet()));
+        account.setAccountType(AccountType.CHECKING);
+        account.setAccountName("History");
+        account.setUser(user);
+        return accountRepository.save(account);
+    }
+}
@@ -0,0 +1,232 @@
+package com.firstrand.banking.service;
+
+import com.firstrand.banking.model.ImportFormat;
+import com.firstrand.banking.model.User;
+import com.firstrand.banking.model.dto.ImportRowError;
+import com.firstrand.banking.model.dto.ImportStatus;
+import com.firstrand.banking.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Imports run with chunks of {@value #CHUNK_SIZE} rows, so a few lines are enough to cross chunk
+ * boundaries: a duplicate inside one chunk is caught in memory, one in a later chunk by the query
+ * against rows the earlier chunk committed.
+ */
+@SpringBootTest(properties = {
+        "rate-limit.enabled=false",
+        "velocity.enabled=false",
+        "standing-orders.enabled=false",
+        "balance-checkpoints.enabled=false"
+})
+public class BulkImportServiceTest {
+
+    private static final int CHUNK_SIZE = 3;
+
+    private static final AtomicLong names = new AtomicLong(100_000);
+
+    @Autowired
+    private BulkImportService bulkImportService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Object defaultChunkSize;
+    private Object defaultMaxReportedErrors;
+
+    @BeforeEach
+    void setUp() {
+        defaultChunkSize = ReflectionTestUtils.getField(bulkImportService, "chunkSize");
+        defaultMaxReportedErrors = ReflectionTestUtils.getField(bulkImportService, "maxReportedErrors");
+        ReflectionTestUtils.setField(bulkImportService, "chunkSize", CHUNK_SIZE);
+    }
+
+    @AfterEach
+    void tearDown() {
+        ReflectionTestUtils.setField(bulkImportService, "chunkSize", defaultChunkSize);
+        ReflectionTestUtils.setField(bulkImportService, "maxReportedErrors", defaultMaxReportedErrors);
+    }
+
+    @Test
+    void importUsers_ShouldCreateValidRowsChunkByChunkAndReportTheRestByLine() {
+        String existing = existingUser();
+        String u1 = name(), u2 = name(), u3 = name(), u4 = name(), u5 = name(), u6 = name(), u7 = name(), u8 = name();
+        String hash = new BCryptPasswordEncoder(4).encode("imported-elsewhere");
+
+        String ndjson = String.join("\n",
+                row(u1, "password1", null, "", "[{\"accountType\":\"CHECKING\",\"accountName\":\"Everyday\"}]"),
+                row(u2, "password2", null, "", "[]"),
+                "{\"username\": ",
+                "",
+                row("x!", "password5", null, "", "[]"),
+                row(u3, "password6", null, ",\"role\":[\"admin\"]",
+                        "[{\"accountType\":\"CHECKING\",\"accountName\":\"Main\"},"
+                                + "{\"accountType\":\"SAVINGS\",\"accountName\":\"Rainy day\"}]"),
+                // Chunk 1 above: lines 1, 2 and 6
+                row(u1, "password7", u1 + "-again@example.com", "", "[]"),
+                row(u4, "password8", existing + "@example.com", "", "[]"),
+                "{\"username\":\"" + u5 + "\",\"email\":\"" + u5 + "@example.com\",\"passwordHash\":\"" + hash
+                        + "\",\"firstName\":\"Bulk\",\"lastName\":\"Import\"}",
+                // Chunk 2 above: lines 7 to 9
+                row(u6, "password10", null, "", "[]"),
+                row(u6, "password11", u6 + "-again@example.com", "", "[]"),
+                row(u7, "password12", u6 + "@example.com", "", "[]"),
+                // Chunk 3 above: lines 10 to 12
+                "{\"username\":\"" + u8 + "\",\"email\":\"" + u8 + "@example.com\",\"passwordHash\":\"not-a-hash\","
+                        + "\"firstName\":\"Bulk\",\"lastName\":\"Import\"}");
+
+        ImportStatus status = bulkImportService.importUsers(stream(ndjson), ImportFormat.NDJSON);
+
+        assertNull(status.getError());
+        assertFalse(status.isRunning());
+        assertEquals(12, status.getRowsRead());
+        assertEquals(5, status.getUsersCreated());
+        assertEquals(3, status.getAccountsCreated());
+        assertEquals(7, status.getRowsRejected());
+        assertFalse(status.isErrorsTruncated());
+
+        List<ImportRowError> errors = status.getErrors();
+        assertEquals(List.of(3L, 5L, 7L, 8L, 11L, 12L, 13L), errors.stream().map(ImportRowError::getLine).toList());
+        assertTrue(errors.get(0).getMessage().startsWith("Malformed row: "));
+        assertNull(errors.get(0).getUsername());
+        assertEquals("x!", errors.get(1).getUsername());
+        assertTrue(errors.get(1).getMessage().contains("username"), errors.get(1).getMessage());
+        assertEquals(new ImportRowError(7, u1, "Username is already taken"), errors.get(2));
+        assertEquals(new ImportRowError(8, u4, "Email is already in use"), errors.get(3));
+        assertEquals(new ImportRowError(11, u6, "Username appears more than once in the import"), errors.get(4));
+        assertEquals(new ImportRowError(12, u7, "Email appears more than once in the import"), errors.get(5));
+        assertEquals(new ImportRowError(13, u8, "passwordHash is not a BCrypt hash"), errors.get(6));
+
+        assertEquals(List.of("ROLE_USER"), roles(u1));
+        assertEquals(List.of("ROLE_ADMIN"), roles(u3));
+        assertEquals(List.of("Main", "Rainy day"), jdbcTemplate.queryForList("SELECT a.account_name FROM accounts a "
+                + "JOIN users u ON a.user_id = u.id WHERE u.username = ? ORDER BY a.account_name", String.class, u3));
+        assertEquals(hash, password(u5));
+        assertTrue(new BCryptPasswordEncoder().matches("password1", password(u1)));
+        assertEquals(u1 + "@example.com", jdbcTemplate.queryForObject(
+                "SELECT email FROM users WHERE username = ?", String.class, u1));
+        assertEquals(0, userCount(u7, u8));
+    }
+
+    @Test
+    void importUsers_ShouldKeepCommittedChunksWhenTheStreamFails() {
+        String u1 = name(), u2 = name(), u3 = name(), u4 = name();
+        InputStream input = new SequenceInputStream(
+                stream(String.join("\n", row(u1, "password1", null, "", "[]"), row(u2, "password2", null, "", "[]"),
+                        row(u3, "password3", null, "", "[]"), row(u4, "password4", null, "", "[]")) + "\n"),
+                new InputStream() {
+                    @Override
+                    public int read() throws IOException {
+                        throw new IOException("Connection reset");
+                    }
+                });
+
+        ImportStatus status = bulkImportService.importUsers(input, ImportFormat.NDJSON);
+
+        // The fourth row was still waiting for its chunk to fill up
+        assertEquals("Connection reset", status.getError());
+        assertFalse(status.isRunning());
+        assertEquals(4, status.getRowsRead());
+        assertEquals(3, status.getUsersCreated());
+        assertEquals(3, userCount(u1, u2, u3));
+        assertEquals(0, userCount(u4));
+        assertFalse(bulkImportService.isRunning());
+        assertEquals(status.getImportId(), bulkImportService.getStatus().getImportId());
+    }
+
+    @Test
+    void importUsers_ShouldCountEveryRejectionButReportOnlyTheFirstOnes() {
+        ReflectionTestUtils.setField(bulkImportService, "maxReportedErrors", 2);
+
+        ImportStatus status = bulkImportService.importUsers(stream("{\n[\nnot json\n"), ImportFormat.NDJSON);
+
+        assertEquals(3, status.getRowsRejected());
+        assertEquals(List.of(1L, 2L), status.getErrors().stream().map(ImportRowError::getLine).toList());
+        assertTrue(status.isErrorsTruncated());
+    }
+
+    @Test
+    void importUsers_ShouldReadCsvWithQuotedValuesAndNumberLinesFromTheHeader() {
+        String u1 = name(), u2 = name(), u3 = name();
+        String csv = String.join("\n",
+                "username,email,password,firstName,lastName,roles,accountType,accountName",
+                u1 + "," + u1 + "@example.com,password1,Bulk,\"Import, Jr.\",admin|user,SAVINGS,\"Rainy \"\"day\"\" fund\"",
+                u2 + "," + u2 + "@example.com,password2,Bulk,Import,,BOGUS,Broken",
+                u3 + "," + u3 + "@example.com,password3,Bulk,\"Import,,,");
+
+        ImportStatus status = bulkImportService.importUsers(stream(csv), ImportFormat.CSV);
+
+        assertEquals(3, status.getRowsRead());
+        assertEquals(1, status.getUsersCreated());
+        assertEquals(1, status.getAccountsCreated());
+        assertEquals(List.of(3L, 4L), status.getErrors().stream().map(ImportRowError::getLine).toList());
+        assertTrue(status.getErrors().stream().allMatch(error -> error.getMessage().startsWith("Malformed row: ")));
+
+        assertEquals(List.of("ROLE_ADMIN", "ROLE_USER"), roles(u1));
+        assertEquals("Import, Jr.", jdbcTemplate.queryForObject(
+                "SELECT last_name FROM users WHERE username = ?", String.class, u1));
+        assertEquals("Rainy \"day\" fund", jdbcTemplate.queryForObject("SELECT a.account_name FROM accounts a "
+                + "JOIN users u ON a.user_id = u.id WHERE u.username = ?", String.class, u1));
+    }
+
+    private static String name() {
+        return "bulk" + names.incrementAndGet();
+    }
+
+    // One NDJSON line; the email defaults to the username's
+    private static String row(String username, String password, String email, String extra, String accounts) {
+        return "{\"username\":\"" + username + "\",\"email\":\"" + (email != null ? email : username + "@example.com")
+                + "\",\"password\":\"" + password + "\",\"firstName\":\"Bulk\",\"lastName\":\"Import\""
+                + extra + ",\"accounts\":" + accounts + "}";
+    }
+
+    private static InputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String existingUser() {
+        User user = new User();
+        user.setUsername(name());
+        user.setEmail(user.getUsername() + "@example.com");
+        user.setPassword("unused");
+        user.setFirstName("Already");
+        user.setLastName("Here");
+        return userRepository.save(user).getUsername();
+    }
+
+    private List<String> roles(String username) {
+        return jdbcTemplate.queryForList("SELECT r.name FROM user_roles ur JOIN roles r ON ur.role_id = r.id "
+                + "JOIN users u ON ur.user_id = u.id WHERE u.username = ? ORDER BY r.name", String.class, username);
+    }
+
+    private String password(String username) {
+        return jdbcTemplate.queryForObject("SELECT password FROM users WHERE username = ?", String.class, username);
+    }
+
+    private int userCount(String... usernames) {
+        int count = 0;
+        for (String username : usernames) {
+            count += jdbcTemplate.queryForObject("SELECT COUNT(*) FROM users WHERE username = ?", Integer.class, username);
+        }
+        return count;
+    }
+}
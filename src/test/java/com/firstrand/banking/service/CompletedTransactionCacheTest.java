@@ -0,0 +1,136 @@
+package com.firstrand.banking.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.firstrand.banking.model.Account;
+import com.firstrand.banking.model.Money;
+import com.firstrand.banking.model.Transaction;
+import com.firstrand.banking.model.TransactionStatus;
+import com.firstrand.banking.model.TransactionType;
+import com.firstrand.banking.model.User;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Room for three completed transactions of the usual size. Ids all have three digits so those bodies
+ * weigh the same, and longer descriptions make the heavier ones. The budget is set after the first
+ * put, which is too large for the empty one and so measures an entry without keeping it.
+ */
+public class CompletedTransactionCacheTest {
+
+    private CompletedTransactionCache cache;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private long weight;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new CompletedTransactionCache();
+        ReflectionTestUtils.setField(cache, "objectMapper", new ObjectMapper().findAndRegisterModules());
+        ReflectionTestUtils.setField(cache, "meterRegistry", meterRegistry);
+        cache.init();
+
+        weight = cache.put(transaction(100, TransactionStatus.COMPLETED, "")).weight();
+        ReflectionTestUtils.setField(cache, "maxBytes", 3 * weight);
+    }
+
+    @Test
+    void put_ShouldEvictTheLeastRecentlyReadOnceTheBodiesExceedTheBudget() throws Exception {
+        cache.put(transaction(101, TransactionStatus.COMPLETED, ""));
+        cache.put(transaction(102, TransactionStatus.COMPLETED, ""));
+        cache.put(transaction(103, TransactionStatus.COMPLETED, ""));
+        assertEquals(3 * weight, cache.sizeInBytes());
+
+        // Reading 101 makes 102 the eldest
+        assertNotNull(cache.get(101L));
+        cache.put(transaction(104, TransactionStatus.COMPLETED, ""));
+        assertNull(cache.get(102L));
+        assertEquals(3 * weight, cache.sizeInBytes());
+        assertEquals(3 * weight, meterRegistry.get("transactions.cache.bytes").gauge().value());
+
+        // One body the size of two pushes out two entries, oldest first: 103, then 101
+        CompletedTransactionCache.Entry heavy = cache.put(transaction(105, TransactionStatus.COMPLETED, "x".repeat((int) weight)));
+        assertEquals(2 * weight, heavy.weight());
+        assertNull(cache.get(103L));
+        assertNull(cache.get(101L));
+        assertNotNull(cache.get(104L));
+        assertSame(heavy, cache.get(105L));
+        assertEquals(3 * weight, cache.sizeInBytes());
+
+        // Storing the same id again replaces it rather than counting it twice
+        cache.put(transaction(104, TransactionStatus.COMPLETED, ""));
+        assertEquals(3 * weight, cache.sizeInBytes());
+
+        assertEquals(3, meterRegistry.counter("transactions.cache", "result", "hit").count());
+        assertEquals(3, meterRegistry.counter("transactions.cache", "result", "miss").count());
+    }
+
+    @Test
+    void put_ShouldAnswerButNotKeepTransactionsThatCanStillChangeOrNeverFit() throws Exception {
+        cache.put(transaction(101, TransactionStatus.COMPLETED, ""));
+
+        CompletedTransactionCache.Entry pending = cache.put(transaction(102, TransactionStatus.PENDING, ""));
+        assertEquals("t102-PENDING", pending.getEtag());
+        assertTrue(new String(pending.getBody()).contains("\"id\":102"));
+        assertNull(cache.get(102L));
+
+        // Larger than the whole budget: kept out, and nothing is evicted to make room for it
+        CompletedTransactionCache.Entry oversized = cache.put(transaction(103, TransactionStatus.COMPLETED, "x".repeat((int) (3 * weight))));
+        assertNotNull(oversized.getBody());
+        assertNull(cache.get(103L));
+        assertNotNull(cache.get(101L));
+        assertEquals(weight, cache.sizeInBytes());
+
+        // Failed and reversed are as final as completed
+        cache.put(transaction(104, TransactionStatus.FAILED, ""));
+        cache.put(transaction(105, TransactionStatus.REVERSED, ""));
+        assertEquals("t104-FAILED", cache.get(104L).getEtag());
+        assertEquals("t105-REVERSED", cache.get(105L).getEtag());
+    }
+
+    @Test
+    void entry_ShouldKnowTheOwnersOfEitherSide() throws Exception {
+        CompletedTransactionCache.Entry transfer = cache.put(transaction(101, TransactionStatus.COMPLETED, ""));
+        assertEquals("t101-COMPLETED", transfer.getEtag());
+        assertTrue(transfer.involvesUser(7L));
+        assertTrue(transfer.involvesUser(8L));
+        assertFalse(transfer.involvesUser(9L));
+
+        // A deposit has no source account, which must not match a user either
+        Transaction deposit = transaction(102, TransactionStatus.COMPLETED, "");
+        deposit.setSourceAccount(null);
+        CompletedTransactionCache.Entry entry = cache.put(deposit);
+        assertFalse(entry.involvesUser(7L));
+        assertTrue(entry.involvesUser(8L));
+    }
+
+    private static Transaction transaction(long id, TransactionStatus status, String description) {
+        Transaction transaction = new Transaction();
+        transaction.setId(id);
+        transaction.setSourceAccount(account(1, "1000000001", 7));
+        transaction.setDestinationAccount(account(2, "1000000002", 8));
+        transaction.setAmount(Money.of(25));
+        transaction.setType(TransactionType.TRANSFER);
+        transaction.setDescription(description);
+        transaction.setTimestamp(LocalDateTime.of(2024, 3, 1, 12, 0));
+        transaction.setStatus(status);
+        return transaction;
+    }
+
+    private static Account account(long id, String accountNumber, long ownerId) {
+        User owner = new User();
+        owner.setId(ownerId);
+        Account account = new Account();
+        account.setId(id);
+        account.setAccountNumber(accountNumber);
+        account.setUser(owner);
+        return account;
+    }
+}
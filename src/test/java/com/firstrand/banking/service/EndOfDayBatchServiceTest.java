@@ -0,0 +1,251 @@
+package com.firstrand.banking.service;
+
+import com.firstrand.banking.model.Account;
+import com.firstrand.banking.model.AccountType;
+import com.firstrand.banking.model.Money;
+import com.firstrand.banking.model.User;
+import com.firstrand.banking.model.dto.BatchJobStatus;
+import com.firstrand.banking.repository.AccountRepository;
+import com.firstrand.banking.repository.UserRepository;
+import org.h2.api.Trigger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs on one thread and one partition in chunks of {@value #CHUNK_SIZE} accounts, against a
+ * database of its own so the run sees only the accounts a test opens. Opening deposits are moved
+ * back before the business date; deposits made today are after its close and must not count.
+ * 3650.00 at 2.5% earns exactly 0.25 a day.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:batchdb;DB_CLOSE_DELAY=-1",
+        "rate-limit.enabled=false",
+        "velocity.enabled=false",
+        "standing-orders.enabled=false",
+        "balance-checkpoints.enabled=false"
+})
+public class EndOfDayBatchServiceTest {
+
+    private static final int CHUNK_SIZE = 2;
+
+    private static final AtomicLong accountNumbers = new AtomicLong(6_500_000_000L);
+
+    @Autowired
+    private EndOfDayBatchService endOfDayBatchService;
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Map<String, Object> defaults;
+
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        defaults = Map.of(
+                "parallelism", ReflectionTestUtils.getField(endOfDayBatchService, "parallelism"),
+                "partitions", ReflectionTestUtils.getField(endOfDayBatchService, "partitions"),
+                "chunkSize", ReflectionTestUtils.getField(endOfDayBatchService, "chunkSize"),
+                "creditRate", ReflectionTestUtils.getField(endOfDayBatchService, "creditRate"));
+        ReflectionTestUtils.setField(endOfDayBatchService, "parallelism", 1);
+        ReflectionTestUtils.setField(endOfDayBatchService, "partitions", 1);
+        ReflectionTestUtils.setField(endOfDayBatchService, "chunkSize", CHUNK_SIZE);
+
+        user = new User();
+        user.setUsername("eod" + accountNumbers.incrementAndGet());
+        user.setEmail(user.getUsername() + "@example.com");
+        user.setPassword("unused");
+        user.setFirstName("End");
+        user.setLastName("Of Day");
+        user = userRepository.save(user);
+    }
+
+    @AfterEach
+    void tearDown() {
+        defaults.forEach((field, value) -> ReflectionTestUtils.setField(endOfDayBatchService, field, value));
+        jdbcTemplate.execute("DROP TRIGGER IF EXISTS fail_interest");
+        jdbcTemplate.update("DELETE FROM batch_checkpoints");
+        jdbcTemplate.update("UPDATE accounts SET active = FALSE");
+    }
+
+    @Test
+    void startEndOfDay_ShouldResumeAfterTheLastCommittedChunkWithoutPostingTwice() {
+        LocalDate businessDate = LocalDate.now().withDayOfMonth(1).minusMonths(1).withDayOfMonth(15);
+        List<Account> savings = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            savings.add(open(AccountType.SAVINGS, "3650.00", businessDate));
+        }
+        Account checking = open(AccountType.CHECKING, "100.00", businessDate);
+        transactionService.deposit(savings.get(0).getAccountNumber(), Money.of(1000), null, "after the close");
+
+        // The third chunk fails as it inserts, after two have committed
+        FailInterest.accountId = savings.get(4).getId();
+        jdbcTemplate.execute("CREATE TRIGGER fail_interest BEFORE INSERT ON transactions FOR EACH ROW CALL \""
+                + FailInterest.class.getName() + "\"");
+        BatchJobStatus failed = run(businessDate);
+        assertNotNull(failed.getError());
+        assertEquals(4, failed.getInterestPostings());
+        assertEquals(savings.get(3).getId(), jdbcTemplate.queryForObject(
+                "SELECT last_account_id FROM batch_checkpoints WHERE job_name = ?", Long.class, "EOD-" + businessDate));
+        assertEquals(0, interestPostings(savings.get(4)));
+        assertEquals(new BigDecimal("3650.00"), balance(savings.get(4)));
+
+        jdbcTemplate.execute("DROP TRIGGER fail_interest");
+        BatchJobStatus resumed = run(businessDate);
+        assertNull(resumed.getError());
+        assertEquals(2, resumed.getInterestPostings());
+        assertEquals(0, resumed.getFeePostings());
+
+        // Every account once, on the balance it closed the day with, dated that day
+        for (Account account : savings) {
+            assertEquals(1, interestPostings(account));
+            assertEquals(new BigDecimal("0.25"), jdbcTemplate.queryForObject("SELECT amount FROM transactions "
+                    + "WHERE destination_account_id = ? AND type = 'INTEREST'", BigDecimal.class, account.getId()));
+            assertEquals(Timestamp.valueOf(businessDate.atTime(23, 59, 59)), jdbcTemplate.queryForObject(
+                    "SELECT timestamp FROM transactions WHERE destination_account_id = ? AND type = 'INTEREST'",
+                    Timestamp.class, account.getId()));
+        }
+        assertEquals(new BigDecimal("4650.25"), balance(savings.get(0)));
+        assertEquals(new BigDecimal("3650.25"), balance(savings.get(5)));
+        assertEquals(new BigDecimal("100.00"), balance(checking));
+
+        // A run that already finished has nothing left to do
+        assertEquals(0, run(businessDate).getInterestPostings());
+        assertEquals(1, interestPostings(savings.get(5)));
+    }
+
+    @Test
+    void startEndOfDay_ShouldChargeTheMonthlyFeeOnTheBalanceAtMonthEnd() {
+        LocalDate monthEnd = LocalDate.now().withDayOfMonth(1).minusDays(1);
+        ReflectionTestUtils.setField(endOfDayBatchService, "creditRate", new BigDecimal("0.0250"));
+        Account funded = open(AccountType.CHECKING, "100.00", monthEnd);
+        Account toppedUp = open(AccountType.CHECKING, "3.00", monthEnd);
+        transactionService.deposit(toppedUp.getAccountNumber(), Money.of(100), null, "after the close");
+        Account savings = open(AccountType.SAVINGS, "3650.00", monthEnd);
+        Account credit = open(AccountType.CREDIT, "3650.00", monthEnd);
+
+        BatchJobStatus status = run(monthEnd);
+
+        assertNull(status.getError());
+        assertEquals(4, status.getAccountsProcessed());
+        assertEquals(1, status.getFeePostings());
+        assertEquals(2, status.getInterestPostings());
+        assertEquals(new BigDecimal("95.00"), balance(funded));
+        assertEquals(new BigDecimal("103.00"), balance(toppedUp));
+        assertEquals(new BigDecimal("3650.25"), balance(savings));
+        assertEquals(new BigDecimal("3650.25"), balance(credit));
+
+        // The fee lands in the summary of the day it was charged for
+        assertEquals(new BigDecimal("5.00"), jdbcTemplate.queryForObject("SELECT debit_amount FROM daily_account_summaries "
+                + "WHERE account_id = ? AND summary_date = ? AND type = 'FEE'", BigDecimal.class, funded.getId(), monthEnd));
+    }
+
+    @Test
+    void startEndOfDay_ShouldRefuseDatesItCannotWorkOutBalancesFor() {
+        assertThrows(IllegalArgumentException.class, () -> endOfDayBatchService.startEndOfDay(LocalDate.now()));
+        assertThrows(IllegalArgumentException.class, () -> endOfDayBatchService.startEndOfDay(LocalDate.now().minusYears(2)));
+        assertFalse(endOfDayBatchService.isRunning());
+    }
+
+    // An account holding the amount since the day before the business date
+    private Account open(AccountType type, String amount, LocalDate businessDate) {
+        Account account = new Account();
+        account.setAccountNumber(Long.toString(accountNumbers.incrementAndGet()));
+        account.setAccountType(type);
+        account.setAccountName(type.name());
+        account.setUser(user);
+        account = accountRepository.save(account);
+
+        transactionService.deposit(account.getAccountNumber(), Money.of(new BigDecimal(amount)), null, "opening");
+        jdbcTemplate.update("UPDATE transactions SET timestamp = ? WHERE destination_account_id = ?",
+                Timestamp.valueOf(businessDate.minusDays(1).atTime(12, 0)), account.getId());
+        return account;
+    }
+
+    private BatchJobStatus run(LocalDate businessDate) {
+        endOfDayBatchService.startEndOfDay(businessDate);
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (endOfDayBatchService.isRunning()) {
+            assertTrue(System.currentTimeMillis() < deadline, "the batch run did not finish");
+            sleep(20);
+        }
+        return endOfDayBatchService.getStatus();
+    }
+
+    private int interestPostings(Account account) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM transactions WHERE destination_account_id = ? "
+                + "AND type = 'INTEREST'", Integer.class, account.getId());
+    }
+
+    private BigDecimal balance(Account account) {
+        return accountRepository.findById(account.getId()).orElseThrow().getBalance().toBigDecimal();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Fails the insert of an interest posting to one account
+    public static class FailInterest implements Trigger {
+
+        static volatile long accountId;
+
+        private int typeColumn;
+        private int destinationColumn;
+
+        @Override
+        public void init(Connection connection, String schemaName, String triggerName, String tableName,
+                         boolean before, int type) throws SQLException {
+            try (ResultSet columns = connection.getMetaData().getColumns(null, schemaName, tableName, null)) {
+                while (columns.next()) {
+                    String column = columns.getString("COLUMN_NAME");
+                    if (column.equalsIgnoreCase("type")) {
+                        typeColumn = columns.getInt("ORDINAL_POSITION") - 1;
+                    } else if (column.equalsIgnoreCase("destination_account_id")) {
+                        destinationColumn = columns.getInt("ORDINAL_POSITION") - 1;
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void fire(Connection connection, Object[] oldRow, Object[] newRow) throws SQLException {
+            if ("INTEREST".equals(newRow[typeColumn]) && newRow[destinationColumn] != null
+                    && ((Number) newRow[destinationColumn]).longValue() == accountId) {
+                throw new SQLException("Simulated crash posting to account " + accountId);
+            }
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.firstrand.banking.service;
+
+import com.firstrand.banking.exception.InsufficientFundsException;
+import com.firstrand.banking.model.Account;
+import com.firstrand.banking.model.AccountType;
+import com.firstrand.banking.model.Money;
+import com.firstrand.banking.model.User;
+import com.firstrand.banking.model.dto.ProfilingStatus;
+import com.firstrand.banking.repository.AccountRepository;
+import com.firstrand.banking.repository.UserRepository;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Records into {@code target/} rather than the configured directory, and stops whatever a test
+ * left running so the next one can start its own.
+ */
+@SpringBootTest(properties = {
+        "rate-limit.enabled=false",
+        "velocity.enabled=false",
+        "standing-orders.enabled=false",
+        "balance-checkpoints.enabled=false"
+})
+public class FlightRecorderServiceTest {
+
+    private static final AtomicLong accountNumbers = new AtomicLong(4_500_000_000L);
+
+    @Autowired
+    private FlightRecorderService flightRecorderService;
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private Object defaultDirectory;
+
+    private Account account;
+
+    @BeforeEach
+    void setUp() {
+        defaultDirectory = ReflectionTestUtils.getField(flightRecorderService, "directory");
+        ReflectionTestUtils.setField(flightRecorderService, "directory", "target/recordings");
+
+        User user = new User();
+        user.setUsername("jfr" + accountNumbers.incrementAndGet());
+        user.setEmail(user.getUsername() + "@example.com");
+        user.setPassword("unused");
+        user.setFirstName("Flight");
+        user.setLastName("Recorder");
+        user = userRepository.save(user);
+
+        account = new Account();
+        account.setAccountNumber(Long.toString(accountNumbers.incrementAndGet()));
+        account.setAccountType(AccountType.CHECKING);
+        account.setAccountName("Flight recorder");
+        account.setUser(user);
+        account = accountRepository.save(account);
+    }
+
+    @AfterEach
+    void tearDown() {
+        flightRecorderService.stop();
+        ReflectionTestUtils.setField(flightRecorderService, "directory", defaultDirectory);
+    }
+
+    @Test
+    void start_ShouldEnableTheApplicationEventsWithTheGivenThreshold() {
+        ProfilingStatus status = flightRecorderService.start("default", 60_000, 5L);
+        assertNotNull(status);
+        assertTrue(status.isRunning());
+        assertNull(flightRecorderService.start("profile", 60_000, null));
+
+        Recording recording = FlightRecorder.getFlightRecorder().getRecordings().stream()
+                .filter(candidate -> candidate.getName().equals("banking-default"))
+                .findFirst().orElseThrow();
+        Map<String, String> settings = recording.getSettings();
+        // Settings enabled by class are keyed by the event type's id rather than its name
+        for (Class<? extends Event> event : List.of(FlightRecorderEvents.Posting.class, FlightRecorderEvents.Authentication.class,
+                FlightRecorderEvents.RepositoryCall.class, FlightRecorderEvents.LockWait.class)) {
+            long id = EventType.getEventType(event).getId();
+            assertEquals("true", settings.get(id + "#enabled"), event.getSimpleName());
+            assertEquals("5000000 ns", settings.get(id + "#threshold"), event.getSimpleName());
+        }
+    }
+
+    @Test
+    void recording_ShouldHoldAPostingEventForEachPostingAndDecline() throws Exception {
+        assertNotNull(flightRecorderService.start("default", 60_000, 0L));
+        transactionService.deposit(account.getAccountNumber(), Money.of(25), null, "recorded");
+        assertThrows(InsufficientFundsException.class,
+                () -> transactionService.withdraw(account.getAccountNumber(), Money.of(40), null, "recorded"));
+
+        Path file = flightRecorderService.stop();
+        assertNotNull(file);
+        assertTrue(Files.size(file) > 0);
+        assertFalse(flightRecorderService.getStatus().isRunning());
+        assertNotNull(flightRecorderService.getStatus().getStoppedAt());
+
+        List<RecordedEvent> postings = RecordingFile.readAllEvents(file).stream()
+                .filter(event -> event.getEventType().getName().equals("com.firstrand.banking.Posting"))
+                .filter(event -> event.getLong("sourceAccountId") == account.getId()
+                        || event.getLong("destinationAccountId") == account.getId())
+                .toList();
+        assertEquals(2, postings.size());
+
+        RecordedEvent deposit = postings.stream()
+                .filter(event -> event.getString("operation").equals("DEPOSIT")).findFirst().orElseThrow();
+        assertEquals("COMPLETED", deposit.getString("outcome"));
+        assertEquals(0, deposit.getLong("sourceAccountId"));
+        assertEquals(2500, deposit.getLong("amount"));
+        assertFalse(deposit.getDuration().isNegative());
+
+        RecordedEvent withdrawal = postings.stream()
+                .filter(event -> event.getString("operation").equals("WITHDRAWAL")).findFirst().orElseThrow();
+        assertEquals("DECLINED", withdrawal.getString("outcome"));
+        assertEquals(4000, withdrawal.getLong("amount"));
+    }
+}
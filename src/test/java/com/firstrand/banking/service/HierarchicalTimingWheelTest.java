@@ -0,0 +1,119 @@
+package com.firstrand.banking.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HierarchicalTimingWheelTest {
+
+    @Test
+    void add_ShouldPlaceDeadlinesAtLevelBoundariesOnTheNextLevel() {
+        // Level 0 spans [0, 4), level 1 [0, 16) and level 2 [0, 64)
+        HierarchicalTimingWheel wheel = new HierarchicalTimingWheel(1, 4, 0);
+
+        assertTrue(wheel.add(1, 3));
+        assertEquals(1, levels(wheel));
+        assertTrue(wheel.add(2, 4));
+        assertEquals(2, levels(wheel));
+        assertTrue(wheel.add(3, 15));
+        assertEquals(2, levels(wheel));
+        assertTrue(wheel.add(4, 16));
+        assertEquals(3, levels(wheel));
+        assertTrue(wheel.add(5, 64));
+        assertEquals(4, levels(wheel));
+
+        Map<Long, Long> fired = runUntil(wheel, 100);
+        assertEquals(Map.of(1L, 4L, 2L, 5L, 3L, 16L, 4L, 17L, 5L, 65L), fired);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void advance_ShouldCascadeEntriesDownThroughEveryLevel() {
+        HierarchicalTimingWheel wheel = new HierarchicalTimingWheel(1, 4, 0);
+        wheel.add(1, 63);
+
+        // Held on level 2 until its bucket comes round, then moved to level 1 and on to level 0
+        List<Long> fired = new ArrayList<>();
+        wheel.advance(63, fired::add);
+        assertEquals(List.of(), fired);
+        assertEquals(1, wheel.size());
+
+        wheel.advance(64, fired::add);
+        assertEquals(List.of(1L), fired);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void advance_ShouldFireEveryIdNoEarlierThanItsDeadlineAndAtMostOneTickLate() {
+        long tick = 10;
+        long start = 1_000_003;
+        HierarchicalTimingWheel wheel = new HierarchicalTimingWheel(tick, 8, start);
+        Random random = new Random(38);
+
+        Map<Long, Long> deadlines = new HashMap<>();
+        long now = start;
+        long id = 1;
+        while (now < start + 200_000) {
+            // Entries are also added while the wheel turns, relative to where it has got to
+            for (int i = random.nextInt(3); i > 0; i--) {
+                long deadline = now + (random.nextInt(4) == 0 ? random.nextInt(100_000) : random.nextInt(700));
+                if (wheel.add(id, deadline)) {
+                    deadlines.put(id, deadline);
+                }
+                id++;
+            }
+            long at = ++now;
+            wheel.advance(at, firedId -> {
+                long deadline = deadlines.remove(firedId);
+                assertTrue(at >= deadline, "id " + firedId + " due at " + deadline + " fired early at " + at);
+                assertTrue(at - deadline <= tick, "id " + firedId + " due at " + deadline + " fired late at " + at);
+            });
+        }
+
+        wheel.advance(now + 200_000, deadlines::remove);
+        assertEquals(Map.of(), deadlines);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void add_ShouldRefuseADeadlineThatHasAlreadyPassed() {
+        HierarchicalTimingWheel wheel = new HierarchicalTimingWheel(10, 8, 1005);
+        assertEquals(1000, wheel.currentTime());
+
+        assertFalse(wheel.add(1, 999));
+        assertTrue(wheel.add(2, 1000));
+        assertEquals(1, wheel.size());
+    }
+
+    @Test
+    void cancelledEntries_ShouldStillFireForTheCallerToSkip() {
+        // The wheel cannot remove ids; StandingOrderService re-checks each one against the database
+        HierarchicalTimingWheel wheel = new HierarchicalTimingWheel(1, 4, 0);
+        wheel.add(7, 20);
+        wheel.add(7, 30);
+
+        List<Long> fired = new ArrayList<>();
+        wheel.advance(31, fired::add);
+        assertEquals(List.of(7L, 7L), fired);
+    }
+
+    private static Map<Long, Long> runUntil(HierarchicalTimingWheel wheel, long end) {
+        Map<Long, Long> fired = new HashMap<>();
+        for (long now = wheel.currentTime() + 1; now <= end; now++) {
+            long at = now;
+            wheel.advance(at, id -> assertNull(fired.put(id, at)));
+        }
+        return fired;
+    }
+
+    private static int levels(HierarchicalTimingWheel wheel) {
+        return ((List<?>) ReflectionTestUtils.getField(wheel, "levels")).size();
+    }
+}
@@ -0,0 +1,11 @@
+package com.firstrand.banking.service;
+
+import org.springframework.test.context.TestPropertySource;
+
+/**
+ * {@link LedgerConcurrencyTest}'s schedules against the journal ledger, where debits are
+ * serialised by in-memory account locks and credits take no lock at all.
+ */
+@TestPropertySource(properties = "ledger.mode=JOURNAL")
+public class JournalLedgerConcurrencyTest extends LedgerConcurrencyTest {
+}
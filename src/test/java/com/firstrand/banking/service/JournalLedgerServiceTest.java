@@ -0,0 +1,179 @@
+package com.firstrand.banking.service;
+
+import com.firstrand.banking.model.Account;
+import com.firstrand.banking.model.AccountType;
+import com.firstrand.banking.model.Money;
+import com.firstrand.banking.model.User;
+import com.firstrand.banking.repository.AccountRepository;
+import com.firstrand.banking.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checkpoint rounds run by hand while a deposit is held open after inserting its entries, so the
+ * round's horizon is above an entry that has not committed yet.
+ */
+@SpringBootTest(properties = {
+        "rate-limit.enabled=false",
+        "velocity.enabled=false",
+        "standing-orders.enabled=false",
+        "balance-checkpoints.enabled=false",
+        "ledger.mode=JOURNAL",
+        "ledger.checkpoint-interval-ms=3600000"
+})
+public class JournalLedgerServiceTest {
+
+    private static final AtomicLong accountNumbers = new AtomicLong(8_500_000_000L);
+
+    @Autowired
+    private JournalLedgerService journalLedgerService;
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Object defaultWaitMs;
+
+    private Account account;
+
+    @BeforeEach
+    void setUp() {
+        defaultWaitMs = ReflectionTestUtils.getField(journalLedgerService, "checkpointWaitMs");
+
+        User user = new User();
+        user.setUsername("journal" + accountNumbers.incrementAndGet());
+        user.setEmail(user.getUsername() + "@example.com");
+        user.setPassword("unused");
+        user.setFirstName("Journal");
+        user.setLastName("Checkpoint");
+        user = userRepository.save(user);
+
+        account = new Account();
+        account.setAccountNumber(Long.toString(accountNumbers.incrementAndGet()));
+        account.setAccountType(AccountType.CHECKING);
+        account.setAccountName("Journal");
+        account.setUser(user);
+        account = accountRepository.save(account);
+
+        // Start from a round that has nothing left behind it
+        journalLedgerService.rollForwardCheckpoints();
+    }
+
+    @AfterEach
+    void tearDown() {
+        ReflectionTestUtils.setField(journalLedgerService, "checkpointWaitMs", defaultWaitMs);
+    }
+
+    @Test
+    void rollForward_ShouldWaitForAPostingStillInFlightBelowItsHorizon() throws Exception {
+        HeldDeposit held = holdDeposit(10);
+        transactionService.deposit(account.getAccountNumber(), Money.of(5), null, "committed first");
+
+        CompletableFuture<Void> round = CompletableFuture.runAsync(journalLedgerService::rollForwardCheckpoints);
+        Thread.sleep(300);
+        assertFalse(round.isDone(), "the round went ahead past an uncommitted entry");
+
+        held.commit();
+        round.get(10, TimeUnit.SECONDS);
+
+        assertEquals(new BigDecimal("15.00"), checkpointBalance());
+        assertEquals(new BigDecimal("15.00"), journalLedgerService.getBalance(account.getId()));
+        assertEquals(new BigDecimal("15.00"), accountRepository.findById(account.getId()).orElseThrow().getBalance().toBigDecimal());
+        assertSummary(2, "15.00", 0, "0.00");
+    }
+
+    @Test
+    void rollForward_ShouldLeaveTheRangeToTheNextRoundWhenAPostingOutlastsTheWait() throws Exception {
+        ReflectionTestUtils.setField(journalLedgerService, "checkpointWaitMs", 50L);
+        transactionService.deposit(account.getAccountNumber(), Money.of(20), null, "opening");
+        journalLedgerService.rollForwardCheckpoints();
+        assertEquals(new BigDecimal("20.00"), checkpointBalance());
+
+        HeldDeposit held = holdDeposit(10);
+        transactionService.withdraw(account.getAccountNumber(), Money.of(7), null, "committed first");
+        journalLedgerService.rollForwardCheckpoints();
+        assertEquals(new BigDecimal("20.00"), checkpointBalance());
+
+        // Once the slow posting is in, the next round takes both, and the derived balance never moved
+        held.commit();
+        assertEquals(new BigDecimal("23.00"), journalLedgerService.getBalance(account.getId()));
+        journalLedgerService.rollForwardCheckpoints();
+        assertEquals(new BigDecimal("23.00"), checkpointBalance());
+        assertEquals(new BigDecimal("23.00"), journalLedgerService.getBalance(account.getId()));
+        assertSummary(2, "30.00", 1, "7.00");
+
+        // A round with nothing new changes nothing
+        journalLedgerService.rollForwardCheckpoints();
+        assertSummary(2, "30.00", 1, "7.00");
+    }
+
+    // A deposit whose transaction has inserted its entries and waits to commit
+    private HeldDeposit holdDeposit(long amount) throws InterruptedException {
+        HeldDeposit held = new HeldDeposit();
+        held.done = CompletableFuture.runAsync(() -> transactionTemplate.executeWithoutResult(status -> {
+            transactionService.deposit(account.getAccountNumber(), Money.of(amount), null, "held open");
+            held.posted.countDown();
+            try {
+                held.release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }));
+        assertTrue(held.posted.await(10, TimeUnit.SECONDS));
+        return held;
+    }
+
+    private BigDecimal checkpointBalance() {
+        return jdbcTemplate.queryForObject("SELECT balance FROM journal_checkpoints WHERE account_id = ?",
+                BigDecimal.class, account.getId());
+    }
+
+    private void assertSummary(long creditCount, String creditAmount, long debitCount, String debitAmount) {
+        Map<String, Object> totals = jdbcTemplate.queryForMap("SELECT SUM(credit_count) AS credit_count, "
+                + "SUM(credit_amount) AS credit_amount, SUM(debit_count) AS debit_count, SUM(debit_amount) AS debit_amount "
+                + "FROM daily_account_summaries WHERE account_id = ?", account.getId());
+        assertEquals(creditCount, ((Number) totals.get("credit_count")).longValue());
+        assertEquals(new BigDecimal(creditAmount), totals.get("credit_amount"));
+        assertEquals(debitCount, ((Number) totals.get("debit_count")).longValue());
+        assertEquals(new BigDecimal(debitAmount), totals.get("debit_amount"));
+    }
+
+    private static final class HeldDeposit {
+
+        final CountDownLatch posted = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> done;
+
+        void commit() throws Exception {
+            release.countDown();
+            done.get(10, TimeUnit.SECONDS);
+        }
+    }
+}
@@ -0,0 +1,406 @@
+package com.firstrand.banking.service;
+
+import com.firstrand.banking.exception.InsufficientFundsException;
+import com.firstrand.banking.model.Account;
+import com.firstrand.banking.model.AccountType;
+import com.firstrand.banking.model.Money;
+import com.firstrand.banking.model.Transaction;
+import com.firstrand.banking.model.User;
+import com.firstrand.banking.model.dto.TransferRequest;
+import com.firstrand.banking.repository.AccountRepository;
+import com.firstrand.banking.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs seeded random schedules of transfers, deposits and withdrawals from several threads against
+ * a few hot accounts on the embedded H2 database, then checks the ledger's invariants and that the
+ * recorded history is linearizable against a sequential model of the ledger.
+ *
+ * <p>The operations each thread runs are fixed by the seed; only their interleaving is left to the
+ * scheduler. A failure names its seed, and {@code -Dledger.stress.seed=<seed>} reruns exactly that
+ * schedule first.
+ */
+@SpringBootTest(properties = {
+        "rate-limit.enabled=false",
+        "velocity.enabled=false",
+        "standing-orders.enabled=false",
+        "balance-checkpoints.enabled=false"
+})
+public class LedgerConcurrencyTest {
+
+    private static final int ACCOUNTS = 4;
+    private static final int THREADS = 4;
+    private static final int OPERATIONS_PER_THREAD = 40;
+    private static final int SCHEDULES = 20;
+    private static final long OPENING_CENTS = 50_00;
+    private static final long MAX_AMOUNT_CENTS = 40_00;
+
+    private static final AtomicLong accountNumbers = new AtomicLong(7_000_000_000L + System.currentTimeMillis() % 1_000_000_000L);
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private JournalLedgerService journalLedgerService;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        user = new User();
+        user.setUsername("ledger" + accountNumbers.incrementAndGet());
+        user.setEmail(user.getUsername() + "@example.com");
+        user.setPassword("unused");
+        user.setFirstName("Ledger");
+        user.setLastName("Stress");
+        user = userRepository.save(user);
+    }
+
+    @Test
+    void randomSchedules_ShouldKeepInvariantsAndBeLinearizable() throws InterruptedException {
+        long baseSeed = Long.getLong("ledger.stress.seed", 20240601L);
+        for (int i = 0; i < SCHEDULES; i++) {
+            runSchedule(baseSeed + i);
+        }
+    }
+
+    @Test
+    void linearizable_ShouldRejectHistoryNoOrderExplains() {
+        // Two withdrawals that both completed, one strictly after the other, cannot both fit a balance of 50
+        Operation withdraw = new Operation(Kind.WITHDRAW, 0, 1, 30_00);
+        List<Call> overdrawn = List.of(new Call(withdraw, 0, 10, true, 1), new Call(withdraw, 20, 30, true, 2));
+        assertFalse(linearizable(overdrawn, new long[]{50_00, 0}));
+
+        // A declined withdrawal overlapping a deposit that covers it can be ordered before the deposit
+        Operation deposit = new Operation(Kind.DEPOSIT, 0, 1, 40_00);
+        List<Call> overlapping = List.of(new Call(new Operation(Kind.WITHDRAW, 0, 1, 60_00), 0, 30, false, 0),
+                new Call(deposit, 10, 20, true, 3));
+        assertTrue(linearizable(overlapping, new long[]{50_00, 0}));
+        assertFalse(linearizable(List.of(new Call(deposit, 0, 10, true, 3),
+                new Call(new Operation(Kind.WITHDRAW, 0, 1, 60_00), 20, 30, false, 0)), new long[]{50_00, 0}));
+    }
+
+    private void runSchedule(long seed) throws InterruptedException {
+        Account[] accounts = openAccounts();
+        long[] opening = new long[ACCOUNTS];
+        for (int a = 0; a < ACCOUNTS; a++) {
+            opening[a] = balanceOf(accounts[a]);
+        }
+        Long watermark = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM transactions", Long.class);
+
+        List<List<Operation>> schedule = generate(new Random(seed));
+        List<Call> history = execute(accounts, schedule, seed);
+
+        String where = "seed " + seed;
+        long[] closing = new long[ACCOUNTS];
+        for (int a = 0; a < ACCOUNTS; a++) {
+            closing[a] = balanceOf(accounts[a]);
+            assertTrue(closing[a] >= 0, where + ": account " + a + " went negative: " + closing[a]);
+        }
+
+        // Money only enters through deposits and leaves through withdrawals
+        long expectedTotal = Arrays.stream(opening).sum();
+        for (Call call : history) {
+            if (call.completed && call.operation.kind == Kind.DEPOSIT) {
+                expectedTotal += call.operation.amount;
+            } else if (call.completed && call.operation.kind == Kind.WITHDRAW) {
+                expectedTotal -= call.operation.amount;
+            }
+        }
+        assertEquals(expectedTotal, Arrays.stream(closing).sum(), where + ": money was created or destroyed");
+
+        assertRowsMatchBalances(accounts, opening, closing, history, watermark, where);
+
+        assertTrue(linearizable(history, opening),
+                where + ": history has no sequential order that explains its outcomes: " + history);
+    }
+
+    // Every completed call left exactly one row, and the rows alone explain every balance change
+    private void assertRowsMatchBalances(Account[] accounts, long[] opening, long[] closing, List<Call> history,
+                                         long watermark, String where) {
+        Map<Long, Integer> index = new HashMap<>();
+        for (int a = 0; a < ACCOUNTS; a++) {
+            index.put(accounts[a].getId(), a);
+        }
+
+        long[] deltas = new long[ACCOUNTS];
+        Set<Long> rowIds = new HashSet<>();
+        MapSqlParameterSource parameters = new MapSqlParameterSource("ids", index.keySet()).addValue("watermark", watermark);
+        namedParameterJdbcTemplate.query("SELECT id, source_account_id, destination_account_id, amount FROM transactions "
+                + "WHERE id > :watermark AND (source_account_id IN (:ids) OR destination_account_id IN (:ids))",
+                parameters, rs -> {
+                    rowIds.add(rs.getLong(1));
+                    long cents = rs.getBigDecimal(4).movePointRight(2).longValueExact();
+                    Integer source = index.get(rs.getObject(2, Long.class));
+                    Integer destination = index.get(rs.getObject(3, Long.class));
+                    if (source != null) {
+                        deltas[source] -= cents;
+                    }
+                    if (destination != null) {
+                        deltas[destination] += cents;
+                    }
+                });
+
+        Set<Long> completedIds = history.stream()
+                .filter(call -> call.completed)
+                .map(call -> call.transactionId)
+                .collect(Collectors.toSet());
+        assertEquals(completedIds, rowIds, where + ": transaction rows differ from the completed calls");
+
+        for (int a = 0; a < ACCOUNTS; a++) {
+            assertEquals(opening[a] + deltas[a], closing[a], where + ": account " + a + " balance differs from its rows");
+        }
+    }
+
+    private List<List<Operation>> generate(Random random) {
+        List<List<Operation>> schedule = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            List<Operation> operations = new ArrayList<>();
+            for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                int roll = random.nextInt(4);
+                Kind kind = roll < 2 ? Kind.TRANSFER : roll == 2 ? Kind.WITHDRAW : Kind.DEPOSIT;
+                int account = random.nextInt(ACCOUNTS);
+                int counterparty = (account + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+                long amount = 1 + random.nextInt((int) MAX_AMOUNT_CENTS);
+                operations.add(new Operation(kind, account, counterparty, amount));
+            }
+            schedule.add(operations);
+        }
+        return schedule;
+    }
+
+    private List<Call> execute(Account[] accounts, List<List<Operation>> schedule, long seed) throws InterruptedException {
+        List<Call> history = new ArrayList<>();
+        List<Throwable> failures = new ArrayList<>();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+
+        for (List<Operation> operations : schedule) {
+            Thread thread = new Thread(() -> {
+                List<Call> calls = new ArrayList<>();
+                try {
+                    start.await();
+                    for (Operation operation : operations) {
+                        calls.add(call(accounts, operation));
+                    }
+                } catch (Throwable e) {
+                    synchronized (failures) {
+                        failures.add(e);
+                    }
+                }
+                synchronized (history) {
+                    history.addAll(calls);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        if (!failures.isEmpty()) {
+            fail("seed " + seed + ": a posting failed unexpectedly", failures.get(0));
+        }
+        return history;
+    }
+
+    private Call call(Account[] accounts, Operation operation) {
+        String account = accounts[operation.account].getAccountNumber();
+        Money amount = Money.ofMinorUnits(operation.amount);
+
+        long invoked = System.nanoTime();
+        Transaction transaction;
+        try {
+            switch (operation.kind) {
+                case DEPOSIT:
+                    transaction = transactionService.deposit(account, amount, null, "stress");
+                    break;
+                case WITHDRAW:
+                    transaction = transactionService.withdraw(account, amount, null, "stress");
+                    break;
+                default:
+                    TransferRequest request = new TransferRequest();
+                    request.setSourceAccountNumber(account);
+                    request.setDestinationAccountNumber(accounts[operation.counterparty].getAccountNumber());
+                    request.setAmount(amount);
+                    request.setDescription("stress");
+                    transaction = transactionService.transferFunds(request);
+                    break;
+            }
+        } catch (InsufficientFundsException e) {
+            return new Call(operation, invoked, System.nanoTime(), false, 0);
+        }
+        return new Call(operation, invoked, System.nanoTime(), true, transaction.getId());
+    }
+
+    /**
+     * Wing and Gong's search: repeatedly pick a call that no other pending call finished before,
+     * apply it to the model, and keep going if the model agrees with its outcome. Visited
+     * (calls done, balances) states are remembered, so each is explored once.
+     */
+    static boolean linearizable(List<Call> history, long[] opening) {
+        List<Call> calls = new ArrayList<>(history);
+        calls.sort(Comparator.comparingLong(call -> call.invoked));
+        return search(calls, new BitSet(calls.size()), opening.clone(), new HashSet<>());
+    }
+
+    private static boolean search(List<Call> calls, BitSet done, long[] balances, Set<String> visited) {
+        int next = done.nextClearBit(0);
+        if (next >= calls.size()) {
+            return true;
+        }
+        if (!visited.add(done + Arrays.toString(balances))) {
+            return false;
+        }
+
+        long firstResponse = Long.MAX_VALUE;
+        for (int i = next; i < calls.size(); i = done.nextClearBit(i + 1)) {
+            firstResponse = Math.min(firstResponse, calls.get(i).responded);
+        }
+
+        for (int i = next; i < calls.size() && calls.get(i).invoked <= firstResponse; i = done.nextClearBit(i + 1)) {
+            long[] after = apply(calls.get(i), balances);
+            if (after != null) {
+                done.set(i);
+                if (search(calls, done, after, visited)) {
+                    return true;
+                }
+                done.clear(i);
+            }
+        }
+        return false;
+    }
+
+    // The sequential ledger; null when it disagrees with the call's recorded outcome
+    private static long[] apply(Call call, long[] balances) {
+        Operation operation = call.operation;
+        boolean covered = operation.kind == Kind.DEPOSIT || balances[operation.account] >= operation.amount;
+        if (covered != call.completed) {
+            return null;
+        }
+
+        long[] after = balances.clone();
+        if (covered) {
+            switch (operation.kind) {
+                case DEPOSIT:
+                    after[operation.account] += operation.amount;
+                    break;
+                case WITHDRAW:
+                    after[operation.account] -= operation.amount;
+                    break;
+                default:
+                    after[operation.account] -= operation.amount;
+                    after[operation.counterparty] += operation.amount;
+                    break;
+            }
+        }
+        return after;
+    }
+
+    private Account[] openAccounts() {
+        Account[] accounts = new Account[ACCOUNTS];
+        for (int a = 0; a < ACCOUNTS; a++) {
+            Account account = new Account();
+            account.setAccountNumber(Long.toString(accountNumbers.incrementAndGet()));
+            account.setAccountType(AccountType.CHECKING);
+            account.setAccountName("Stress " + a);
+            account.setUser(user);
+            accounts[a] = accountRepository.save(account);
+
+            // Funded through the ledger so the opening balance is the same in both ledger modes
+            transactionService.deposit(accounts[a].getAccountNumber(), Money.ofMinorUnits(OPENING_CENTS), null, "opening");
+        }
+        return accounts;
+    }
+
+    private long balanceOf(Account account) {
+        BigDecimal balance = journalLedgerService.isEnabled()
+                ? journalLedgerService.getBalance(account.getId())
+                : jdbcTemplate.queryForObject("SELECT balance FROM accounts WHERE id = ?", BigDecimal.class, account.getId());
+        return balance.movePointRight(2).longValueExact();
+    }
+
+    enum Kind { TRANSFER, WITHDRAW, DEPOSIT }
+
+    static final class Operation {
+
+        final Kind kind;
+        final int account;
+        final int counterparty;
+        final long amount;
+
+        Operation(Kind kind, int account, int counterparty, long amount) {
+            this.kind = kind;
+            this.account = account;
+            this.counterparty = counterparty;
+            this.amount = amount;
+        }
+
+        @Override
+        public String toString() {
+            return kind == Kind.TRANSFER
+                    ? kind + " " + amount + " " + account + "->" + counterparty
+                    : kind + " " + amount + " " + account;
+        }
+    }
+
+    static final class Call {
+
+        final Operation operation;
+        final long invoked;
+        final long responded;
+        final boolean completed;
+        final long transactionId;
+
+        Call(Operation operation, long invoked, long responded, boolean completed, long transactionId) {
+            this.operation = operation;
+            this.invoked = invoked;
+            this.responded = responded;
+            this.completed = completed;
+            this.transactionId = transactionId;
+        }
+
+        @Override
+        public String toString() {
+            return operation + (completed ? " ok" : " declined");
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package com.firstrand.banking.service;
+
+import com.firstrand.banking.model.Account;
+import com.firstrand.banking.model.AccountType;
+import com.firstrand.banking.model.BalanceDiscrepancy;
+import com.firstrand.banking.model.Money;
+import com.firstrand.banking.model.User;
+import com.firstrand.banking.model.dto.ReconciliationStatus;
+import com.firstrand.banking.model.dto.TransferRequest;
+import com.firstrand.banking.repository.AccountRepository;
+import com.firstrand.banking.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Reconciles in chunks of {@value #CHUNK_SIZE} accounts against a database of its own, so every
+ * balance in it is one a test wrote through the service and any discrepancy is the test's doing.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:reconciliationdb;DB_CLOSE_DELAY=-1",
+        "archive.directory=target/reconciliation-archive",
+        "rate-limit.enabled=false",
+        "velocity.enabled=false",
+        "standing-orders.enabled=false",
+        "balance-checkpoints.enabled=false"
+})
+public class ReconciliationServiceTest {
+
+    private static final int CHUNK_SIZE = 2;
+
+    private static final AtomicLong accountNumbers = new AtomicLong(5_500_000_000L);
+
+    @Autowired
+    private ReconciliationService reconciliationService;
+
+    @Autowired
+    private TransactionArchiveService transactionArchiveService;
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private DataSource dataSource;
+
+    private Map<String, Object> defaults;
+
+    private Object reconciliationTemplate;
+
+    private List<Account> accounts;
+
+    private Account drifted;
+
+    @BeforeEach
+    void setUp() {
+        defaults = Map.of(
+                "parallelism", ReflectionTestUtils.getField(reconciliationService, "parallelism"),
+                "chunkSize", ReflectionTestUtils.getField(reconciliationService, "chunkSize"),
+                "maxChunksPerSecond", ReflectionTestUtils.getField(reconciliationService, "maxChunksPerSecond"));
+        reconciliationTemplate = ReflectionTestUtils.getField(reconciliationService, "jdbcTemplate");
+        ReflectionTestUtils.setField(reconciliationService, "chunkSize", CHUNK_SIZE);
+        ReflectionTestUtils.setField(reconciliationService, "maxChunksPerSecond", 0);
+
+        User user = new User();
+        user.setUsername("reconcile" + accountNumbers.incrementAndGet());
+        user.setEmail(user.getUsername() + "@example.com");
+        user.setPassword("unused");
+        user.setFirstName("Balance");
+        user.setLastName("Reconciliation");
+        user = userRepository.save(user);
+
+        accounts = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            Account account = new Account();
+            account.setAccountNumber(Long.toString(accountNumbers.incrementAndGet()));
+            account.setAccountType(AccountType.CHECKING);
+            account.setAccountName("Reconciliation");
+            account.setUser(user);
+            accounts.add(accountRepository.save(account));
+            transactionService.deposit(account.getAccountNumber(), Money.of(100), null, "opening");
+        }
+        transfer(0, 1, 30);
+        transfer(1, 2, 45);
+        transactionService.withdraw(accounts.get(5).getAccountNumber(), Money.of(12), null, "cash");
+    }
+
+    @AfterEach
+    void tearDown() {
+        defaults.forEach((field, value) -> ReflectionTestUtils.setField(reconciliationService, field, value));
+        ReflectionTestUtils.setField(reconciliationService, "jdbcTemplate", reconciliationTemplate);
+        if (drifted != null) {
+            jdbcTemplate.update("UPDATE accounts SET balance = balance - 1.50 WHERE id = ?", drifted.getId());
+        }
+    }
+
+    @Test
+    void reconciliation_ShouldReportAStoredBalanceThatDriftedFromItsTransactions() {
+        drifted = accounts.get(2);
+        jdbcTemplate.update("UPDATE accounts SET balance = balance + 1.50 WHERE id = ?", drifted.getId());
+
+        ReconciliationStatus status = run();
+
+        assertNull(status.getError());
+        assertEquals(1, status.getDiscrepancies());
+        List<BalanceDiscrepancy> discrepancies = reconciliationService.getDiscrepancies(status.getRunId(),
+                PageRequest.of(0, 10)).getContent();
+        assertEquals(1, discrepancies.size());
+        BalanceDiscrepancy discrepancy = discrepancies.get(0);
+        assertEquals(drifted.getId(), discrepancy.getAccountId());
+        assertEquals(drifted.getAccountNumber(), discrepancy.getAccountNumber());
+        assertEquals(new BigDecimal("146.50"), discrepancy.getStoredBalance());
+        assertEquals(new BigDecimal("145.00"), discrepancy.getComputedBalance());
+        assertEquals(new BigDecimal("1.50"), discrepancy.getDifference());
+    }
+
+    @Test
+    void reconciliation_ShouldCountArchivedAndLiveTransactionsOnceEach() {
+        // Everything posted so far is old enough to archive, in this test and the ones before it
+        jdbcTemplate.update("UPDATE transactions SET timestamp = ?", Timestamp.valueOf(LocalDateTime.now().minusYears(2)));
+        long archivedLegs = legsInTable();
+        transactionArchiveService.startArchive();
+        awaitArchive();
+        assertNull(transactionArchiveService.getStatus().getError());
+        assertEquals(0, legsInTable());
+
+        transfer(2, 3, 20);
+        transactionService.deposit(accounts.get(4).getAccountNumber(), Money.of(7), null, "after the archive");
+
+        ReconciliationStatus status = run();
+
+        assertNull(status.getError());
+        assertEquals(0, status.getDiscrepancies());
+        assertEquals(archivedLegs + 3, status.getTransactionLegsScanned());
+        assertEquals(archivedLegs + 3, legsInArchive() + legsInTable());
+    }
+
+    @Test
+    void reconciliation_ShouldReportProgressChunkByChunk() {
+        ReflectionTestUtils.setField(reconciliationService, "maxChunksPerSecond", 10);
+        Map<String, Object> bounds = jdbcTemplate.queryForMap(
+                "SELECT MIN(id) AS min_id, MAX(id) AS max_id, COUNT(*) AS total FROM accounts");
+        long total = ((Number) bounds.get("total")).longValue();
+        long chunks = chunks(((Number) bounds.get("min_id")).longValue(), ((Number) bounds.get("max_id")).longValue() + 1);
+        assertTrue(chunks >= 3);
+
+        ReconciliationStatus started = reconciliationService.startReconciliation();
+        assertTrue(started.isRunning());
+        assertThrows(IllegalStateException.class, () -> reconciliationService.startReconciliation());
+
+        // Chunks are spaced 100 ms apart, which leaves time to see the run partway through
+        ReconciliationStatus partway = null;
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (reconciliationService.isRunning()) {
+            ReconciliationStatus status = reconciliationService.getStatus();
+            assertTrue(status.getAccountsProcessed() <= total);
+            if (status.isRunning() && status.getChunksProcessed() > 0 && status.getChunksProcessed() < chunks) {
+                partway = status;
+            }
+            assertTrue(System.currentTimeMillis() < deadline, "the reconciliation run did not finish");
+            sleep(10);
+        }
+        assertNotNull(partway);
+        assertEquals(total, partway.getTotalAccounts());
+
+        ReconciliationStatus finished = reconciliationService.getStatus();
+        assertFalse(finished.isRunning());
+        assertNotNull(finished.getFinishedAt());
+        assertEquals(started.getRunId(), finished.getRunId());
+        assertEquals(total, finished.getTotalAccounts());
+        assertEquals(total, finished.getAccountsProcessed());
+        assertEquals(chunks, finished.getChunksProcessed());
+    }
+
+    @Test
+    void reconciliation_ShouldNotMistakePostingsDuringTheRunForDiscrepancies() {
+        ReflectionTestUtils.setField(reconciliationService, "parallelism", 2);
+
+        // Every chunk holding one of the accounts has a deposit to it commit partway through, after
+        // its archived totals were added up and before the table is read
+        AtomicInteger postings = new AtomicInteger();
+        ReflectionTestUtils.setField(reconciliationService, "jdbcTemplate", new JdbcTemplate(dataSource) {
+            @Override
+            public void query(String sql, RowCallbackHandler rch, Object... args) throws DataAccessException {
+                if (sql.contains("FROM accounts")) {
+                    for (Account account : accounts) {
+                        if (account.getId() >= (Long) args[0] && account.getId() < (Long) args[1]) {
+                            CompletableFuture.runAsync(() -> transactionService.deposit(account.getAccountNumber(),
+                                    Money.of(2), null, "during the run")).join();
+                            postings.incrementAndGet();
+                        }
+                    }
+                }
+                super.query(sql, rch, args);
+            }
+        });
+
+        ReconciliationStatus status = run();
+
+        assertNull(status.getError());
+        assertEquals(0, status.getDiscrepancies());
+        assertEquals(accounts.size(), postings.get());
+    }
+
+    private ReconciliationStatus run() {
+        reconciliationService.startReconciliation();
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (reconciliationService.isRunning()) {
+            assertTrue(System.currentTimeMillis() < deadline, "the reconciliation run did not finish");
+            sleep(10);
+        }
+        return reconciliationService.getStatus();
+    }
+
+    private void awaitArchive() {
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (transactionArchiveService.isRunning()) {
+            assertTrue(System.currentTimeMillis() < deadline, "the archive run did not finish");
+            sleep(10);
+        }
+    }
+
+    private void transfer(int from, int to, long amount) {
+        TransferRequest request = new TransferRequest();
+        request.setSourceAccountNumber(accounts.get(from).getAccountNumber());
+        request.setDestinationAccountNumber(accounts.get(to).getAccountNumber());
+        request.setAmount(Money.of(amount));
+        request.setDescription("reconciliation");
+        transactionService.transferFunds(request);
+    }
+
+    // One leg per account side of a completed transaction
+    private long legsInTable() {
+        return jdbcTemplate.queryForObject("SELECT COUNT(source_account_id) + COUNT(destination_account_id) "
+                + "FROM transactions WHERE status = 'COMPLETED'", Long.class);
+    }
+
+    private long legsInArchive() {
+        AtomicLong legs = new AtomicLong();
+        transactionArchiveService.forEachAccountTotals(0, Long.MAX_VALUE,
+                (accountId, creditCents, debitCents, count) -> legs.addAndGet(count));
+        return legs.get();
+    }
+
+    // A range is halved until each half fits in a chunk
+    private static long chunks(long fromId, long toId) {
+        if (toId - fromId <= CHUNK_SIZE) {
+            return 1;
+        }
+        long middle = fromId + (toId - fromId) / 2;
+        return chunks(fromId, middle) + chunks(middle, toId);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
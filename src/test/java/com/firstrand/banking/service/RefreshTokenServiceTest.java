@@ -0,0 +1,109 @@
+package com.firstrand.banking.service;
+
+import com.firstrand.banking.exception.TokenRefreshException;
+import com.firstrand.banking.model.RefreshToken;
+import com.firstrand.banking.model.User;
+import com.firstrand.banking.repository.RefreshTokenRepository;
+import com.firstrand.banking.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {
+        "rate-limit.enabled=false",
+        "velocity.enabled=false",
+        "standing-orders.enabled=false",
+        "balance-checkpoints.enabled=false"
+})
+public class RefreshTokenServiceTest {
+
+    private static final AtomicLong names = new AtomicLong(100_000);
+
+    @Autowired
+    private RefreshTokenService refreshTokenService;
+
+    @Autowired
+    private RefreshTokenRepository refreshTokenRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        user = new User();
+        user.setUsername("refresh" + names.incrementAndGet());
+        user.setEmail(user.getUsername() + "@example.com");
+        user.setPassword("unused");
+        user.setFirstName("Refresh");
+        user.setLastName("Token");
+        user = userRepository.save(user);
+    }
+
+    @Test
+    void rotate_ShouldExchangeEachTokenOnceWithinTheSignInsExpiry() {
+        String first = refreshTokenService.createRefreshToken(user.getId());
+        LocalDateTime expiresAt = tokens().get(0).getExpiresAt();
+
+        RefreshTokenService.Rotation rotation = refreshTokenService.rotate(first);
+        assertEquals(user.getUsername(), rotation.getUser().getUsername());
+        assertNotEquals(first, rotation.getRefreshToken());
+
+        String third = refreshTokenService.rotate(rotation.getRefreshToken()).getRefreshToken();
+        assertNotNull(third);
+
+        // Refreshing does not push the end of the session out
+        List<RefreshToken> family = tokens();
+        assertEquals(3, family.size());
+        assertTrue(family.stream().allMatch(token -> token.getExpiresAt().equals(expiresAt)));
+        assertTrue(family.stream().allMatch(token -> token.getFamilyId().equals(family.get(0).getFamilyId())));
+        assertEquals(1, family.stream().filter(token -> !token.isRevoked()).count());
+    }
+
+    @Test
+    void rotate_ShouldRevokeTheWholeFamilyWhenAUsedTokenComesBack() {
+        String first = refreshTokenService.createRefreshToken(user.getId());
+        String second = refreshTokenService.rotate(first).getRefreshToken();
+        String otherSession = refreshTokenService.createRefreshToken(user.getId());
+
+        TokenRefreshException replay = assertThrows(TokenRefreshException.class, () -> refreshTokenService.rotate(first));
+        assertEquals("Refresh token has already been used", replay.getMessage());
+
+        // The legitimate holder of the newest token is signed out too, but other signins are not
+        assertThrows(TokenRefreshException.class, () -> refreshTokenService.rotate(second));
+        assertNotNull(refreshTokenService.rotate(otherSession).getRefreshToken());
+    }
+
+    @Test
+    void rotate_ShouldRejectTokensPastTheFamilyExpiry() {
+        String first = refreshTokenService.createRefreshToken(user.getId());
+        String second = refreshTokenService.rotate(first).getRefreshToken();
+        jdbcTemplate.update("UPDATE refresh_tokens SET expires_at = ? WHERE user_id = ?",
+                LocalDateTime.now().minusSeconds(1), user.getId());
+
+        TokenRefreshException expired = assertThrows(TokenRefreshException.class, () -> refreshTokenService.rotate(second));
+        assertEquals("Refresh token has expired", expired.getMessage());
+        assertThrows(TokenRefreshException.class, () -> refreshTokenService.rotate("not-a-token"));
+
+        refreshTokenService.purgeExpired();
+        assertTrue(tokens().isEmpty());
+    }
+
+    private List<RefreshToken> tokens() {
+        return refreshTokenRepository.findAll().stream()
+                .filter(token -> token.getUserId().equals(user.getId()))
+                .toList();
+    }
+}
@@ -0,0 +1,181 @@
+package com.firstrand.banking.service;
+
+import com.firstrand.banking.model.Account;
+import com.firstrand.banking.model.AccountType;
+import com.firstrand.banking.model.Money;
+import com.firstrand.banking.model.StandingOrder;
+import com.firstrand.banking.model.StandingOrderFrequency;
+import com.firstrand.banking.model.StandingOrderStatus;
+import com.firstrand.banking.model.User;
+import com.firstrand.banking.model.dto.StandingOrderRequest;
+import com.firstrand.banking.repository.AccountRepository;
+import com.firstrand.banking.repository.StandingOrderRepository;
+import com.firstrand.banking.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.AopTestUtils;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Drives the standing order ticker by hand (the scheduled one is off) against the embedded
+ * database, so each tick loads, fires and retries exactly as it would in production.
+ */
+@SpringBootTest(properties = {
+        "rate-limit.enabled=false",
+        "velocity.enabled=false",
+        "standing-orders.enabled=false",
+        "balance-checkpoints.enabled=false"
+})
+public class StandingOrderServiceTest {
+
+    private static final AtomicLong accountNumbers = new AtomicLong(5_000_000_000L + System.currentTimeMillis() % 1_000_000_000L);
+
+    @Autowired
+    private StandingOrderService standingOrderService;
+
+    @Autowired
+    private StandingOrderRepository standingOrderRepository;
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        user = new User();
+        user.setUsername("orders" + accountNumbers.incrementAndGet());
+        user.setEmail(user.getUsername() + "@example.com");
+        user.setPassword("unused");
+        user.setFirstName("Standing");
+        user.setLastName("Order");
+        user = userRepository.save(user);
+
+        // Normally created when the scheduled ticker starts
+        if (ReflectionTestUtils.getField(standingOrderService, "firingPool") == null) {
+            ReflectionTestUtils.setField(standingOrderService, "firingPool", Executors.newFixedThreadPool(2, runnable -> {
+                Thread thread = new Thread(runnable, "standing-order-firing");
+                thread.setDaemon(true);
+                return thread;
+            }));
+        }
+    }
+
+    @Test
+    void retryDelayMillis_ShouldDoubleWithEachAttemptUpToTheMaximum() {
+        StandingOrderService service = new StandingOrderService();
+        ReflectionTestUtils.setField(service, "retryBaseDelayMillis", 60_000L);
+        ReflectionTestUtils.setField(service, "retryMaxDelayMillis", 3_600_000L);
+
+        assertEquals(60_000, service.retryDelayMillis(1));
+        assertEquals(120_000, service.retryDelayMillis(2));
+        assertEquals(240_000, service.retryDelayMillis(3));
+        assertEquals(1_920_000, service.retryDelayMillis(6));
+        assertEquals(3_600_000, service.retryDelayMillis(7));
+        assertEquals(3_600_000, service.retryDelayMillis(1_000));
+    }
+
+    @Test
+    void failedAttempts_ShouldBeRetriedAfterADoublingDelay() {
+        Account source = openAccount(0);
+        Account destination = openAccount(0);
+        StandingOrder order = standingOrderService.createStandingOrder(user.getId(), request(source, destination));
+
+        StandingOrder failed = tickUntil(order.getId(), o -> o.getFailedAttempts() == 1);
+        assertEquals(StandingOrderStatus.ACTIVE, failed.getStatus());
+        assertEquals(0, failed.getOccurrence());
+        assertNotNull(failed.getLastFailureReason());
+        assertEquals(Duration.ofSeconds(60), Duration.between(failed.getUpdatedAt(), failed.getNextAttemptAt()));
+
+        // Bring the retry forward instead of waiting a minute for it
+        jdbcTemplate.update("UPDATE standing_orders SET next_attempt_at = ? WHERE id = ?",
+                Timestamp.valueOf(LocalDateTime.now().minusSeconds(1)), order.getId());
+        StandingOrderService target = AopTestUtils.getTargetObject(standingOrderService);
+        ReflectionTestUtils.invokeMethod(target, "reschedule", standingOrderService.getStandingOrder(order.getId()));
+
+        StandingOrder failedAgain = tickUntil(order.getId(), o -> o.getFailedAttempts() == 2);
+        assertEquals(Duration.ofSeconds(120), Duration.between(failedAgain.getUpdatedAt(), failedAgain.getNextAttemptAt()));
+        assertEquals(Money.ZERO, accountRepository.findById(destination.getId()).orElseThrow().getBalance());
+    }
+
+    @Test
+    void cancelledOrder_ShouldBeSkippedWhenItsEntryFires() {
+        Account source = openAccount(100_00);
+        Account destination = openAccount(0);
+        StandingOrder kept = standingOrderService.createStandingOrder(user.getId(), request(source, destination));
+        StandingOrder cancelled = standingOrderService.createStandingOrder(user.getId(), request(source, destination));
+        standingOrderService.cancelStandingOrder(cancelled.getId());
+
+        // Both were due on the same tick, so once one is paid the other's entry has fired too
+        StandingOrder paid = tickUntil(kept.getId(), o -> o.getLastTransactionId() != null);
+        assertEquals(StandingOrderStatus.COMPLETED, paid.getStatus());
+
+        StandingOrder skipped = standingOrderService.getStandingOrder(cancelled.getId());
+        assertEquals(StandingOrderStatus.CANCELLED, skipped.getStatus());
+        assertNull(skipped.getLastTransactionId());
+        assertEquals(Money.of(10), accountRepository.findById(destination.getId()).orElseThrow().getBalance());
+    }
+
+    private StandingOrder tickUntil(Long orderId, Predicate<StandingOrder> done) {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (System.nanoTime() < deadline) {
+            standingOrderService.tick();
+            StandingOrder order = standingOrderRepository.findById(orderId).orElseThrow();
+            if (done.test(order)) {
+                return order;
+            }
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return fail("standing order " + orderId + " never reached the expected state");
+    }
+
+    private StandingOrderRequest request(Account source, Account destination) {
+        StandingOrderRequest request = new StandingOrderRequest();
+        request.setSourceAccountNumber(source.getAccountNumber());
+        request.setDestinationAccountNumber(destination.getAccountNumber());
+        request.setAmount(Money.of(10));
+        request.setFrequency(StandingOrderFrequency.ONCE);
+        request.setFirstPaymentAt(LocalDateTime.now());
+        request.setDescription("rent");
+        return request;
+    }
+
+    private Account openAccount(long openingCents) {
+        Account account = new Account();
+        account.setAccountNumber(Long.toString(accountNumbers.incrementAndGet()));
+        account.setAccountType(AccountType.CHECKING);
+        account.setAccountName("Orders");
+        account.setUser(user);
+        account = accountRepository.save(account);
+        if (openingCents > 0) {
+            transactionService.deposit(account.getAccountNumber(), Money.ofMinorUnits(openingCents), null, "opening");
+        }
+        return account;
+    }
+}
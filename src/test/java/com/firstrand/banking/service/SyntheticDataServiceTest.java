@@ -0,0 +1,183 @@
+package com.firstrand.banking.service;
+
+import com.firstrand.banking.config.SyntheticDataProperties;
+import com.firstrand.banking.model.Account;
+import com.firstrand.banking.model.AccountType;
+import com.firstrand.banking.model.Money;
+import com.firstrand.banking.model.User;
+import com.firstrand.banking.model.dto.SyntheticDataStatus;
+import com.firstrand.banking.repository.AccountRepository;
+import com.firstrand.banking.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Loads the same dataset on one thread and on three, the second time while deposits are being
+ * posted through the service, and compares the two table by table with every id taken relative to
+ * its block. Two chunks of users and two partitions of history make the threads load them in
+ * different orders. Synthetic history only goes into a database without transactions, so this
+ * class has one of its own.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:syntheticdb;DB_CLOSE_DELAY=-1",
+        "rate-limit.enabled=false",
+        "velocity.enabled=false",
+        "standing-orders.enabled=false",
+        "balance-checkpoints.enabled=false",
+        "synthetic-data.history-days=30"
+})
+public class SyntheticDataServiceTest {
+
+    private static final long SEED = 50;
+    private static final int USERS = 10_001;
+    private static final long TRANSACTIONS = 250_500;
+
+    @Autowired
+    private SyntheticDataService syntheticDataService;
+
+    @Autowired
+    private SyntheticDataProperties properties;
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    void tearDown() {
+        properties.setThreads(0);
+        clear();
+    }
+
+    @Test
+    void sameSeed_ShouldLoadTheSameRowsWhateverTheThreadCount() throws Exception {
+        properties.setThreads(1);
+        SyntheticDataStatus status = syntheticDataService.generate(SEED, USERS, TRANSACTIONS);
+        assertNull(status.getError());
+        assertEquals(TRANSACTIONS, status.getTransactionsLoaded());
+        Map<String, String> oneThread = snapshot();
+
+        // History is never loaded behind other transactions
+        assertTrue(syntheticDataService.hasHistory());
+        assertThrows(IllegalStateException.class, () -> syntheticDataService.generate(SEED, USERS, TRANSACTIONS));
+
+        clear();
+        Account other = openOtherAccount();
+        properties.setThreads(3);
+        syntheticDataService.start(SEED, USERS, TRANSACTIONS);
+
+        // Deposits posted meanwhile take their ids from the same identity as the reserved block
+        int deposits = 0;
+        while (syntheticDataService.isRunning()) {
+            transactionService.deposit(other.getAccountNumber(), Money.of(1), null, "during load");
+            deposits++;
+        }
+        status = syntheticDataService.getStatus();
+        assertNull(status.getError());
+        assertTrue(deposits > 0);
+        assertEquals(deposits, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM transactions WHERE destination_account_id = ?", Integer.class, other.getId()));
+
+        assertEquals(oneThread, snapshot());
+    }
+
+    // Row count and digest per table, ids relative to the blocks the load reserved
+    private Map<String, String> snapshot() throws NoSuchAlgorithmException {
+        long userBase = jdbcTemplate.queryForObject(
+                "SELECT MIN(id) - 1 FROM users WHERE username LIKE 'perf%'", Long.class);
+        long accountBase = jdbcTemplate.queryForObject(
+                "SELECT MIN(a.id) - 1 FROM accounts a JOIN users u ON a.user_id = u.id WHERE u.username LIKE 'perf%'",
+                Long.class);
+        long accounts = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM accounts WHERE id > ?", Long.class, accountBase);
+        long transactionBase = jdbcTemplate.queryForObject(
+                "SELECT MIN(id) - 1 FROM transactions WHERE description = 'Opening deposit'", Long.class);
+
+        Map<String, String> tables = new LinkedHashMap<>();
+        tables.put("users", digest("SELECT id - ?, username = CONCAT('perf', id), first_name, last_name "
+                + "FROM users WHERE id > ? ORDER BY id", userBase, userBase));
+        tables.put("user_roles", digest("SELECT ur.user_id - ?, r.name FROM user_roles ur JOIN roles r ON ur.role_id = r.id "
+                + "WHERE ur.user_id > ? ORDER BY 1, 2", userBase, userBase));
+        tables.put("accounts", digest("SELECT id - ?, user_id - ?, account_type, account_name, balance, "
+                        + "CAST(account_number AS BIGINT) - id FROM accounts WHERE id > ? ORDER BY id",
+                accountBase, userBase, accountBase));
+        tables.put("transactions", digest("SELECT id - ?, source_account_id - ?, destination_account_id - ?, amount, type, "
+                        + "description, timestamp, status FROM transactions WHERE id > ? AND id <= ? ORDER BY id",
+                transactionBase, accountBase, accountBase, transactionBase, transactionBase + accounts + TRANSACTIONS));
+        tables.put("daily_account_summaries", digest("SELECT account_id - ?, summary_date, type, credit_count, "
+                        + "credit_amount, debit_count, debit_amount FROM daily_account_summaries WHERE account_id > ? "
+                        + "ORDER BY 1, 2, 3",
+                accountBase, accountBase));
+        tables.put("balance_checkpoints", digest("SELECT account_id - ?, checkpoint_date, balance "
+                + "FROM balance_checkpoints WHERE account_id > ? ORDER BY 1, 2", accountBase, accountBase));
+
+        assertEquals(String.valueOf(USERS), tables.get("users").split(" ")[0]);
+        assertEquals(accounts + TRANSACTIONS, Long.parseLong(tables.get("transactions").split(" ")[0]));
+        return tables;
+    }
+
+    private String digest(String sql, Object... args) throws NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        long[] rows = new long[1];
+        jdbcTemplate.query(sql, (ResultSet row) -> {
+            digest.update(line(row).getBytes(StandardCharsets.UTF_8));
+            rows[0]++;
+        }, args);
+        return rows[0] + " " + HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static String line(ResultSet row) throws SQLException {
+        StringBuilder line = new StringBuilder();
+        for (int column = 1; column <= row.getMetaData().getColumnCount(); column++) {
+            line.append(row.getObject(column)).append('|');
+        }
+        return line.append('\n').toString();
+    }
+
+    private Account openOtherAccount() {
+        User user = new User();
+        user.setUsername("during-load");
+        user.setEmail("during-load@example.com");
+        user.setPassword("unused");
+        user.setFirstName("During");
+        user.setLastName("Load");
+        user = userRepository.save(user);
+
+        Account account = new Account();
+        account.setAccountNumber("5000000001");
+        account.setAccountType(AccountType.CHECKING);
+        account.setAccountName("During load");
+        account.setUser(user);
+        return accountRepository.save(account);
+    }
+
+    private void clear() {
+        jdbcTemplate.update("DELETE FROM balance_checkpoints");
+        jdbcTemplate.update("DELETE FROM daily_account_summaries");
+        jdbcTemplate.update("DELETE FROM transactions");
+        jdbcTemplate.update("DELETE FROM user_roles");
+        jdbcTemplate.update("DELETE FROM accounts");
+        jdbcTemplate.update("DELETE FROM users");
+    }
+}
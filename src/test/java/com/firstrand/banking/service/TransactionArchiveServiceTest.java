@@ -0,0 +1,261 @@
+package com.firstrand.banking.service;
+
+import com.firstrand.banking.model.Account;
+import com.firstrand.banking.model.AccountType;
+import com.firstrand.banking.model.Money;
+import com.firstrand.banking.model.Transaction;
+import com.firstrand.banking.model.TransactionStatus;
+import com.firstrand.banking.model.TransactionType;
+import com.firstrand.banking.model.User;
+import com.firstrand.banking.repository.AccountRepository;
+import com.firstrand.banking.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Serves the account's archived history from two segments written for the test and swapped in for
+ * the service's own, then put back. Their ids are far above any the table hands out, so nothing
+ * else running against the same database can mistake them for its own transactions.
+ */
+@SpringBootTest(properties = {
+        "rate-limit.enabled=false",
+        "velocity.enabled=false",
+        "standing-orders.enabled=false",
+        "balance-checkpoints.enabled=false"
+})
+public class TransactionArchiveServiceTest {
+
+    private static final AtomicLong accountNumbers = new AtomicLong(2_000_000_000L + System.currentTimeMillis() % 1_000_000_000L);
+
+    private static final long FIRST_ARCHIVED_ID = 1L << 50;
+
+    @TempDir
+    Path directory;
+
+    @Autowired
+    private TransactionArchiveService transactionArchiveService;
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private Object originalSegments;
+
+    private Account account;
+    private Account counterparty;
+
+    // Everything written to the two segments, oldest first
+    private final List<ArchiveSegmentFile.Entry> archived = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        User user = new User();
+        user.setUsername("archive" + accountNumbers.incrementAndGet());
+        user.setEmail(user.getUsername() + "@example.com");
+        user.setPassword("unused");
+        user.setFirstName("Transaction");
+        user.setLastName("Archive");
+        user = userRepository.save(user);
+        account = openAccount(user);
+        counterparty = openAccount(user);
+
+        // Together more than two blocks of the account's rows, with the boundary inside a block
+        Random random = new Random(45);
+        LocalDateTime timestamp = LocalDateTime.of(2021, 3, 1, 8, 0);
+        List<ArchiveSegmentFile.Entry> older = entries(random, FIRST_ARCHIVED_ID, 700, timestamp);
+        List<ArchiveSegmentFile.Entry> newer = entries(random, FIRST_ARCHIVED_ID + 700, 650,
+                older.get(older.size() - 1).getTimestamp());
+        archived.addAll(older);
+        archived.addAll(newer);
+
+        originalSegments = ReflectionTestUtils.getField(transactionArchiveService, "segments");
+        ReflectionTestUtils.setField(transactionArchiveService, "segments", List.of(
+                segment(FIRST_ARCHIVED_ID, FIRST_ARCHIVED_ID + 700, older),
+                segment(FIRST_ARCHIVED_ID + 700, FIRST_ARCHIVED_ID + 1_350, newer)));
+    }
+
+    @AfterEach
+    void tearDown() {
+        ReflectionTestUtils.setField(transactionArchiveService, "segments", originalSegments);
+    }
+
+    @Test
+    void findByAccount_ShouldPageAcrossSegments() {
+        List<Long> expected = archivedIds(account);
+        assertEquals(expected.size(), transactionArchiveService.countByAccount(account.getId()));
+
+        for (int pageSize : new int[]{1, 9, 250}) {
+            List<Long> paged = new ArrayList<>();
+            for (int offset = 0; offset < expected.size() + pageSize; offset += pageSize) {
+                List<ArchiveSegmentFile.Entry> page = transactionArchiveService.findByAccount(account.getId(), offset, pageSize);
+                assertEquals(Math.min(pageSize, Math.max(0, expected.size() - offset)), page.size());
+                page.forEach(entry -> paged.add(entry.getId()));
+            }
+            assertEquals(expected, paged, "pages of " + pageSize);
+        }
+    }
+
+    @Test
+    void sumAccountBetween_ShouldAddUpBothSegments() {
+        Random random = new Random(46);
+        LocalDateTime first = archived.get(0).getTimestamp();
+        LocalDateTime last = archived.get(archived.size() - 1).getTimestamp();
+
+        assertArrayEquals(sum(account, first, last.plusNanos(1)),
+                transactionArchiveService.sumAccountBetween(account.getId(), first, last.plusNanos(1)));
+        assertArrayEquals(new long[2], transactionArchiveService.sumAccountBetween(account.getId(), last.plusNanos(1), LocalDateTime.now()));
+
+        // Ranges inside either segment and across the boundary
+        for (int i = 0; i < 100; i++) {
+            LocalDateTime from = archived.get(random.nextInt(archived.size())).getTimestamp();
+            LocalDateTime to = archived.get(random.nextInt(archived.size())).getTimestamp();
+            if (to.isBefore(from)) {
+                LocalDateTime swap = from;
+                from = to;
+                to = swap;
+            }
+            assertArrayEquals(sum(account, from, to), transactionArchiveService.sumAccountBetween(account.getId(), from, to),
+                    "[" + from + ", " + to + ")");
+        }
+    }
+
+    @Test
+    void getTransactionsByAccount_ShouldContinueIntoTheArchiveWhereTheTableEnds() throws InterruptedException {
+        List<Long> expected = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            expected.add(0, transactionService.deposit(account.getAccountNumber(), Money.of(1 + i), null, "recent").getId());
+            // The table is ordered by timestamp alone
+            Thread.sleep(2);
+        }
+        expected.addAll(archivedIds(account));
+
+        // Page edges fall before, on and after the end of the table rows
+        for (int pageSize : new int[]{3, 5, 7, 100}) {
+            List<Long> paged = new ArrayList<>();
+            for (int page = 0; page * pageSize < expected.size() + pageSize; page++) {
+                Page<Transaction> transactions = transactionService.getTransactionsByAccount(account,
+                        PageRequest.of(page, pageSize, Sort.by("timestamp").descending()));
+                assertEquals(expected.size(), transactions.getTotalElements());
+                transactions.forEach(transaction -> paged.add(transaction.getId()));
+            }
+            assertEquals(expected, paged, "pages of " + pageSize);
+        }
+
+        // Archived transactions come back with their accounts
+        Transaction oldest = transactionService.getTransactionsByAccount(account,
+                PageRequest.of(expected.size() - 1, 1, Sort.by("timestamp").descending())).getContent().get(0);
+        assertEquals(expected.get(expected.size() - 1), oldest.getId());
+        assertTrue(account.getId().equals(oldest.getSourceAccount() == null ? null : oldest.getSourceAccount().getId())
+                || account.getId().equals(oldest.getDestinationAccount() == null ? null : oldest.getDestinationAccount().getId()));
+    }
+
+    private List<ArchiveSegmentFile.Entry> entries(Random random, long fromId, int span, LocalDateTime start) {
+        List<ArchiveSegmentFile.Entry> entries = new ArrayList<>();
+        LocalDateTime timestamp = start;
+        for (long id = fromId; id < fromId + span; id++) {
+            if (random.nextInt(6) == 0) {
+                continue;
+            }
+            if (random.nextInt(4) > 0) {
+                timestamp = timestamp.plusMinutes(1 + random.nextInt(600));
+            }
+
+            Long source;
+            Long destination;
+            TransactionType type;
+            switch (random.nextInt(4)) {
+                case 0 -> {
+                    type = TransactionType.DEPOSIT;
+                    source = null;
+                    destination = account.getId();
+                }
+                case 1 -> {
+                    type = TransactionType.WITHDRAWAL;
+                    source = account.getId();
+                    destination = null;
+                }
+                case 2 -> {
+                    type = TransactionType.TRANSFER;
+                    source = account.getId();
+                    destination = counterparty.getId();
+                }
+                default -> {
+                    // Transfers in, and withdrawals from the counterparty the account is not part of
+                    type = TransactionType.TRANSFER;
+                    source = counterparty.getId();
+                    destination = random.nextBoolean() ? account.getId() : null;
+                }
+            }
+            TransactionStatus status = random.nextInt(10) == 0 ? TransactionStatus.FAILED : TransactionStatus.COMPLETED;
+            entries.add(new ArchiveSegmentFile.Entry(id, source, destination, 100 + random.nextInt(100_000), type, status,
+                    timestamp, null, "archived " + id));
+        }
+        return entries;
+    }
+
+    private ArchiveSegmentFile segment(long fromId, long toId, List<ArchiveSegmentFile.Entry> entries) throws IOException {
+        Path file = directory.resolve("transactions-" + fromId + "-" + toId + ".seg");
+        ArchiveSegmentFile.write(file, fromId, toId, entries);
+        return ArchiveSegmentFile.open(file);
+    }
+
+    // Newest first, the later id first among equal timestamps
+    private List<Long> archivedIds(Account of) {
+        return archived.stream()
+                .filter(entry -> of.getId().equals(entry.getSourceAccountId()) || of.getId().equals(entry.getDestinationAccountId()))
+                .sorted(Comparator.comparing(ArchiveSegmentFile.Entry::getTimestamp)
+                        .thenComparingLong(ArchiveSegmentFile.Entry::getId).reversed())
+                .map(ArchiveSegmentFile.Entry::getId)
+                .toList();
+    }
+
+    private long[] sum(Account of, LocalDateTime from, LocalDateTime to) {
+        long[] totals = new long[2];
+        for (ArchiveSegmentFile.Entry entry : archived) {
+            if (entry.getStatus() == TransactionStatus.COMPLETED
+                    && !entry.getTimestamp().isBefore(from) && entry.getTimestamp().isBefore(to)) {
+                if (Objects.equals(of.getId(), entry.getDestinationAccountId())) {
+                    totals[0] += entry.getAmount();
+                }
+                if (Objects.equals(of.getId(), entry.getSourceAccountId())) {
+                    totals[1] += entry.getAmount();
+                }
+            }
+        }
+        return totals;
+    }
+
+    private Account openAccount(User user) {
+        Account account = new Account();
+        account.setAccountNumber(Long.toString(accountNumbers.incrementAndGet()));
+        account.setAccountType(AccountType.CHECKING);
+        account.setAccountName("Archive");
+        account.setUser(user);
+        return accountRepository.save(account);
+    }
+}
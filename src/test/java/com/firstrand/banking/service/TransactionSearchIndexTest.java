@@ -0,0 +1,244 @@
+package com.firstrand.banking.service;
+
+import com.firstrand.banking.model.Account;
+import com.firstrand.banking.model.AccountType;
+import com.firstrand.banking.model.Money;
+import com.firstrand.banking.model.Transaction;
+import com.firstrand.banking.model.TransactionStatus;
+import com.firstrand.banking.model.TransactionType;
+import com.firstrand.banking.model.User;
+import com.firstrand.banking.model.dto.TransactionSearchCriteria;
+import com.firstrand.banking.model.dto.TransferRequest;
+import com.firstrand.banking.repository.AccountRepository;
+import com.firstrand.banking.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks the search index against the transactions table: every search must return the ids the
+ * equivalent SQL returns, in the same order, and a rebuild must keep what was committed during it.
+ */
+@SpringBootTest(properties = {
+        "rate-limit.enabled=false",
+        "velocity.enabled=false",
+        "standing-orders.enabled=false",
+        "balance-checkpoints.enabled=false"
+})
+public class TransactionSearchIndexTest {
+
+    private static final AtomicLong accountNumbers = new AtomicLong(4_000_000_000L + System.currentTimeMillis() % 1_000_000_000L);
+
+    private static final String[] WORDS = {"alpha", "bravo", "charlie"};
+
+    @Autowired
+    private TransactionSearchIndex transactionSearchIndex;
+
+    @Autowired
+    private TransactionArchiveService transactionArchiveService;
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private User user;
+
+    // Unique to each test, so searches only see the test's own transactions
+    private String token;
+
+    @BeforeEach
+    void setUp() {
+        user = new User();
+        user.setUsername("search" + accountNumbers.incrementAndGet());
+        user.setEmail(user.getUsername() + "@example.com");
+        user.setPassword("unused");
+        user.setFirstName("Search");
+        user.setLastName("Index");
+        user = userRepository.save(user);
+        token = "tk" + Long.toString(accountNumbers.get(), 36);
+    }
+
+    @Test
+    void rebuild_ShouldReplayDocumentsCommittedWhileItLoadsWithoutDuplicatingThem() throws Exception {
+        Account account = openAccount();
+        ReadWriteLock archiveLock = (ReadWriteLock) ReflectionTestUtils.getField(transactionArchiveService, "lock");
+
+        // Holding the archive lock stops the rebuild after it starts collecting documents but before it reads any
+        Transaction committed;
+        Transaction unread = new Transaction();
+        CompletableFuture<Void> rebuild;
+        archiveLock.writeLock().lock();
+        try {
+            rebuild = CompletableFuture.runAsync(() -> {
+                try {
+                    transactionSearchIndex.rebuild();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (ReflectionTestUtils.getField(transactionSearchIndex, "pending") == null && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            assertNotNull(ReflectionTestUtils.getField(transactionSearchIndex, "pending"));
+
+            // Committed before the load reads the table, so both the load and the replay see it
+            committed = transactionService.deposit(account.getAccountNumber(), Money.of(7), null, token + " committed");
+
+            // Never in the table, so only the replay can put it in the new index
+            unread.setId(Long.MAX_VALUE - accountNumbers.get());
+            unread.setType(TransactionType.DEPOSIT);
+            unread.setStatus(TransactionStatus.COMPLETED);
+            unread.setAmount(Money.of(3));
+            unread.setTimestamp(LocalDateTime.now());
+            unread.setDescription(token + " unread");
+            transactionSearchIndex.index(unread);
+        } finally {
+            archiveLock.writeLock().unlock();
+        }
+
+        try {
+            rebuild.get(60, TimeUnit.SECONDS);
+
+            assertEquals(List.of(committed.getId()), ids(criteria(token + " committed")));
+            assertEquals(List.of(unread.getId()), ids(criteria(token + " unread")));
+            assertEquals(List.of(unread.getId(), committed.getId()), ids(criteria(token)));
+        } finally {
+            // Drops the transaction that does not exist from the index other tests search
+            transactionSearchIndex.rebuild();
+        }
+    }
+
+    @Test
+    void search_ShouldReturnWhatTheEquivalentSqlReturns() throws Exception {
+        LocalDateTime started = LocalDateTime.now();
+        Account[] accounts = {openAccount(), openAccount()};
+        for (Account account : accounts) {
+            transactionService.deposit(account.getAccountNumber(), Money.of(1_000), null, token + " opening");
+        }
+
+        Random random = new Random(41);
+        LocalDateTime middle = null;
+        for (int i = 0; i < 60; i++) {
+            if (i == 30) {
+                Thread.sleep(20);
+                middle = LocalDateTime.now();
+                Thread.sleep(20);
+            }
+            Account account = accounts[random.nextInt(2)];
+            Money amount = Money.ofMinorUnits(100 + random.nextInt(5_000));
+            String description = token + " " + WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)];
+            switch (random.nextInt(3)) {
+                case 0:
+                    transactionService.deposit(account.getAccountNumber(), amount, null, description);
+                    break;
+                case 1:
+                    transactionService.withdraw(account.getAccountNumber(), amount, null, description);
+                    break;
+                default:
+                    TransferRequest request = new TransferRequest();
+                    request.setSourceAccountNumber(account.getAccountNumber());
+                    request.setDestinationAccountNumber(accounts[0] == account ? accounts[1].getAccountNumber() : accounts[0].getAccountNumber());
+                    request.setAmount(amount);
+                    request.setDescription(description);
+                    transactionService.transferFunds(request);
+            }
+        }
+
+        // Both as maintained from commits and as loaded by a rebuild
+        for (int pass = 0; pass < 2; pass++) {
+            assertSameAsSql(criteria(token), "description LIKE ?", like(token));
+            assertSameAsSql(criteria(token + " alpha"), "description LIKE ? AND description LIKE ?", like(token), like("alpha"));
+            assertSameAsSql(criteria("ALPHA, " + token + " bravo"), "description LIKE ? AND description LIKE ? AND description LIKE ?",
+                    like(token), like("alpha"), like("bravo"));
+
+            TransactionSearchCriteria withdrawals = criteria(token);
+            withdrawals.setType(TransactionType.WITHDRAWAL);
+            assertSameAsSql(withdrawals, "description LIKE ? AND type = 'WITHDRAWAL'", like(token));
+
+            TransactionSearchCriteria amounts = criteria(token + " charlie");
+            amounts.setMinAmount(Money.of(10));
+            amounts.setMaxAmount(Money.of(30));
+            assertSameAsSql(amounts, "description LIKE ? AND description LIKE ? AND amount BETWEEN 10 AND 30",
+                    like(token), like("charlie"));
+
+            TransactionSearchCriteria later = criteria(token);
+            later.setFrom(middle);
+            assertSameAsSql(later, "description LIKE ? AND timestamp >= ?", like(token), Timestamp.valueOf(middle));
+
+            // Without words the index scans its blocks instead of posting lists
+            TransactionSearchCriteria earlierDeposits = new TransactionSearchCriteria();
+            earlierDeposits.setType(TransactionType.DEPOSIT);
+            earlierDeposits.setFrom(started);
+            earlierDeposits.setTo(middle);
+            assertSameAsSql(earlierDeposits, "type = 'DEPOSIT' AND timestamp >= ? AND timestamp < ?",
+                    Timestamp.valueOf(started), Timestamp.valueOf(middle));
+
+            transactionSearchIndex.rebuild();
+        }
+
+        // Pages are slices of the same order
+        List<Long> all = ids(criteria(token));
+        Page<Long> second = transactionSearchIndex.search(criteria(token), PageRequest.of(1, 7));
+        assertEquals(all.size(), second.getTotalElements());
+        assertEquals(all.subList(7, 14), second.getContent());
+    }
+
+    private void assertSameAsSql(TransactionSearchCriteria criteria, String where, Object... args) {
+        List<Long> expected = jdbcTemplate.queryForList(
+                "SELECT id FROM transactions WHERE " + where + " ORDER BY id DESC", Long.class, args);
+        Page<Long> found = transactionSearchIndex.search(criteria, PageRequest.of(0, 1_000));
+
+        assertFalse(expected.isEmpty(), where);
+        assertEquals(expected, found.getContent(), where);
+        assertEquals(expected.size(), found.getTotalElements(), where);
+    }
+
+    private List<Long> ids(TransactionSearchCriteria criteria) {
+        return new ArrayList<>(transactionSearchIndex.search(criteria, PageRequest.of(0, 1_000)).getContent());
+    }
+
+    private static TransactionSearchCriteria criteria(String query) {
+        TransactionSearchCriteria criteria = new TransactionSearchCriteria();
+        criteria.setQuery(query);
+        return criteria;
+    }
+
+    private static String like(String word) {
+        return "%" + word + "%";
+    }
+
+    private Account openAccount() {
+        Account account = new Account();
+        account.setAccountNumber(Long.toString(accountNumbers.incrementAndGet()));
+        account.setAccountType(AccountType.CHECKING);
+        account.setAccountName("Search");
+        account.setUser(user);
+        return accountRepository.save(account);
+    }
+}
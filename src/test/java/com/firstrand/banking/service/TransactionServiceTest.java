@@ -0,0 +1,111 @@
+package com.firstrand.banking.service;
+
+import com.firstrand.banking.exception.ResourceNotFoundException;
+import com.firstrand.banking.model.Account;
+import com.firstrand.banking.model.AccountType;
+import com.firstrand.banking.model.DeclineReason;
+import com.firstrand.banking.model.Money;
+import com.firstrand.banking.model.User;
+import com.firstrand.banking.repository.AccountRepository;
+import com.firstrand.banking.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Screens debits with {@link TransactionService#checkDebit} both from the balance read model and,
+ * with the read model switched off, from the account row.
+ */
+@SpringBootTest(properties = {
+        "rate-limit.enabled=false",
+        "velocity.enabled=false",
+        "standing-orders.enabled=false",
+        "balance-checkpoints.enabled=false"
+})
+public class TransactionServiceTest {
+
+    private static final AtomicLong accountNumbers = new AtomicLong(1_000_000_000L + System.currentTimeMillis() % 1_000_000_000L);
+
+    @Autowired
+    private TransactionService transactionService;
+
+    @Autowired
+    private AccountBalanceView accountBalanceView;
+
+    @Autowired
+    private AccountRepository accountRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        user = new User();
+        user.setUsername("debits" + accountNumbers.incrementAndGet());
+        user.setEmail(user.getUsername() + "@example.com");
+        user.setPassword("unused");
+        user.setFirstName("Check");
+        user.setLastName("Debit");
+        user = userRepository.save(user);
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    void checkDebit_ShouldDeclineWhatTheCommittedBalanceCannotCover(boolean readModel) {
+        boolean enabled = accountBalanceView.isEnabled();
+        ReflectionTestUtils.setField(accountBalanceView, "enabled", readModel);
+        try {
+            Account account = openAccount();
+            String number = account.getAccountNumber();
+            transactionService.deposit(number, Money.of(50), null, "opening");
+
+            assertNull(transactionService.checkDebit(number, Money.of(50)));
+            assertEquals(DeclineReason.INSUFFICIENT_FUNDS, transactionService.checkDebit(number, Money.ofMinorUnits(5_001)));
+            assertEquals("Insufficient funds in account: " + number, DeclineReason.INSUFFICIENT_FUNDS.message(number));
+
+            // Screening posts nothing and holds nothing back
+            assertEquals(1, countTransactions(account));
+            assertEquals(Money.of(50), accountRepository.findById(account.getId()).orElseThrow().getBalance());
+
+            // Later postings are seen at once
+            transactionService.deposit(number, Money.ofMinorUnits(1), null, "top up");
+            assertNull(transactionService.checkDebit(number, Money.ofMinorUnits(5_001)));
+            transactionService.withdraw(number, Money.of(50), null, "rent");
+            assertEquals(DeclineReason.INSUFFICIENT_FUNDS, transactionService.checkDebit(number, Money.ofMinorUnits(2)));
+            assertNull(transactionService.checkDebit(number, Money.ofMinorUnits(1)));
+
+            assertThrows(ResourceNotFoundException.class,
+                    () -> transactionService.checkDebit("9" + number, Money.of(1)));
+        } finally {
+            ReflectionTestUtils.setField(accountBalanceView, "enabled", enabled);
+        }
+    }
+
+    private int countTransactions(Account account) {
+        return jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM transactions WHERE source_account_id = ? OR destination_account_id = ?",
+                Integer.class, account.getId(), account.getId());
+    }
+
+    private Account openAccount() {
+        Account account = new Account();
+        account.setAccountNumber(Long.toString(accountNumbers.incrementAndGet()));
+        account.setAccountType(AccountType.CHECKING);
+        account.setAccountName("Debits");
+        account.setUser(user);
+        return accountRepository.save(account);
+    }
+}
@@ -0,0 +1,179 @@
+package com.firstrand.banking.service;
+
+import com.firstrand.banking.model.Money;
+import com.firstrand.banking.model.dto.TransferRequest;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TransferBatchCodecTest {
+
+    private final byte[] buffer = new byte[TransferBatchCodec.MAX_FRAME_LENGTH];
+
+    @Test
+    void commands_ShouldRoundTrip() throws IOException {
+        TransferRequest full = request("1000000001", "1000000002", Money.ofMinorUnits(12_345));
+        full.setReference("INV-7");
+        full.setDescription("Miete für März ✓");
+        TransferRequest bare = request("1000000003", "1000000001", Money.ofMinorUnits(1));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        TransferBatchCodec.writeCommand(output, 7, full);
+        TransferBatchCodec.writeCommand(output, Long.MAX_VALUE, bare);
+
+        DataInputStream input = input(bytes.toByteArray());
+        TransferBatchCodec.Command first = TransferBatchCodec.readCommand(input, buffer);
+        assertEquals(7, first.getId());
+        assertEquals(full, first.getRequest());
+
+        TransferBatchCodec.Command second = TransferBatchCodec.readCommand(input, buffer);
+        assertEquals(Long.MAX_VALUE, second.getId());
+        assertEquals(bare, second.getRequest());
+        assertNull(second.getRequest().getReference());
+        assertNull(second.getRequest().getDescription());
+
+        assertNull(TransferBatchCodec.readCommand(input, buffer));
+    }
+
+    @Test
+    void writeCommand_ShouldRefuseAccountNumbersTheLengthByteCannotHold() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+
+        String longNumber = "1".repeat(256);
+        assertThrows(IllegalArgumentException.class,
+                () -> TransferBatchCodec.writeCommand(output, 1, request(longNumber, "1000000002", Money.of(1))));
+        assertThrows(IllegalArgumentException.class,
+                () -> TransferBatchCodec.writeCommand(output, 2, request("1000000001", longNumber, Money.of(1))));
+        assertEquals(0, bytes.size());
+
+        // 255 bytes is the most the length byte holds
+        TransferBatchCodec.writeCommand(output, 3, request("1".repeat(255), "1000000002", Money.of(1)));
+        assertEquals("1".repeat(255),
+                TransferBatchCodec.readCommand(input(bytes.toByteArray()), buffer).getRequest().getSourceAccountNumber());
+    }
+
+    @Test
+    void writeCommand_ShouldRefuseCommandsOverOneFrame() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        TransferRequest request = request("1000000001", "1000000002", Money.of(1));
+        request.setDescription("x".repeat(TransferBatchCodec.MAX_FRAME_LENGTH));
+
+        assertThrows(IllegalArgumentException.class,
+                () -> TransferBatchCodec.writeCommand(new DataOutputStream(bytes), 1, request));
+        assertEquals(0, bytes.size());
+    }
+
+    @Test
+    void writeResult_ShouldRoundTrip() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        TransferBatchCodec.writeResult(output, 9, 200, 123_456_789L, null);
+        TransferBatchCodec.writeResult(output, 10, 400, 0, "Insufficient funds – balance is 0.00");
+
+        DataInputStream input = input(bytes.toByteArray());
+        assertResult(input, 9, 200, 123_456_789L, "");
+        assertResult(input, 10, 400, 0, "Insufficient funds – balance is 0.00");
+        assertEquals(-1, input.read());
+    }
+
+    @Test
+    void writeResult_ShouldTruncateLongMessagesAtACharacterBoundary() throws IOException {
+        // Three-byte characters, so the byte limit falls inside one unless the cut backs off
+        String message = "€".repeat(TransferBatchCodec.MAX_FRAME_LENGTH);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        TransferBatchCodec.writeResult(new DataOutputStream(bytes), 1, 500, 0, message);
+
+        DataInputStream input = input(bytes.toByteArray());
+        int frameLength = input.readUnsignedShort();
+        assertTrue(frameLength <= TransferBatchCodec.MAX_FRAME_LENGTH);
+        input.readLong();
+        input.readUnsignedShort();
+        input.readLong();
+        byte[] text = new byte[input.readUnsignedShort()];
+        input.readFully(text);
+
+        assertEquals(frameLength, 20 + text.length);
+        assertEquals(0, text.length % 3);
+        assertEquals("€".repeat(text.length / 3), new String(text, StandardCharsets.UTF_8));
+        assertEquals(-1, input.read());
+    }
+
+    @Test
+    void readCommand_ShouldRejectAStreamThatEndsInsideAFrame() throws IOException {
+        byte[] command = command(1, request("1000000001", "1000000002", Money.of(5)));
+
+        for (int cut : new int[]{1, 2, 10, command.length - 1}) {
+            DataInputStream input = input(Arrays.copyOf(command, cut));
+            assertThrows(TransferBatchCodec.MalformedFrameException.class, () -> TransferBatchCodec.readCommand(input, buffer),
+                    "cut at " + cut);
+        }
+    }
+
+    @Test
+    void readCommand_ShouldRejectFramesWhoseFieldsDoNotMatchTheirLength() throws IOException {
+        byte[] command = command(1, request("1000000001", "1000000002", Money.of(5)));
+
+        // Declared one byte shorter than the fields, with the last byte left over as the next frame
+        byte[] shorter = command.clone();
+        ByteBuffer.wrap(shorter).putShort((short) (command.length - 3));
+        assertThrows(TransferBatchCodec.MalformedFrameException.class,
+                () -> TransferBatchCodec.readCommand(input(shorter), buffer));
+
+        // One byte of padding after the last field
+        byte[] longer = Arrays.copyOf(command, command.length + 1);
+        ByteBuffer.wrap(longer).putShort((short) (command.length - 1));
+        assertThrows(TransferBatchCodec.MalformedFrameException.class,
+                () -> TransferBatchCodec.readCommand(input(longer), buffer));
+
+        // A string length running past the end of the frame
+        byte[] overrun = command.clone();
+        overrun[2 + 8] = (byte) 0xFF;
+        assertThrows(TransferBatchCodec.MalformedFrameException.class,
+                () -> TransferBatchCodec.readCommand(input(overrun), buffer));
+
+        // An empty frame
+        assertThrows(TransferBatchCodec.MalformedFrameException.class,
+                () -> TransferBatchCodec.readCommand(input(new byte[]{0, 0}), buffer));
+    }
+
+    private static void assertResult(DataInputStream input, long commandId, int status, long transactionId,
+                                     String message) throws IOException {
+        int length = input.readUnsignedShort();
+        assertEquals(commandId, input.readLong());
+        assertEquals(status, input.readUnsignedShort());
+        assertEquals(transactionId, input.readLong());
+        byte[] text = new byte[input.readUnsignedShort()];
+        input.readFully(text);
+        assertEquals(20 + text.length, length);
+        assertEquals(message, new String(text, StandardCharsets.UTF_8));
+    }
+
+    private static byte[] command(long id, TransferRequest request) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        TransferBatchCodec.writeCommand(new DataOutputStream(bytes), id, request);
+        return bytes.toByteArray();
+    }
+
+    private static DataInputStream input(byte[] bytes) {
+        return new DataInputStream(new ByteArrayInputStream(bytes));
+    }
+
+    private static TransferRequest request(String source, String destination, Money amount) {
+        TransferRequest request = new TransferRequest();
+        request.setSourceAccountNumber(source);
+        request.setDestinationAccountNumber(destination);
+        request.setAmount(amount);
+        return request;
+    }
+}
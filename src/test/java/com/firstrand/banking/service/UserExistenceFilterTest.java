@@ -0,0 +1,159 @@
+package com.firstrand.banking.service;
+
+import com.firstrand.banking.model.User;
+import com.firstrand.banking.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.sql.DataSource;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Each test loads its own filters from the shared users table, sized so the outcome it looks for
+ * is either near certain or practically impossible. The one wired into {@link UserService} is put
+ * back afterwards.
+ */
+@SpringBootTest(properties = {
+        "rate-limit.enabled=false",
+        "velocity.enabled=false",
+        "standing-orders.enabled=false",
+        "balance-checkpoints.enabled=false"
+})
+public class UserExistenceFilterTest {
+
+    private static final AtomicLong names = new AtomicLong(100_000);
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private UserExistenceFilter sharedFilter;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private User existing;
+
+    @BeforeEach
+    void setUp() {
+        existing = new User();
+        existing.setUsername(name());
+        existing.setEmail(existing.getUsername() + "@example.com");
+        existing.setPassword("unused");
+        existing.setFirstName("Bloom");
+        existing.setLastName("Filter");
+        existing = userRepository.save(existing);
+    }
+
+    @AfterEach
+    void tearDown() {
+        ReflectionTestUtils.setField(userService, "userExistenceFilter", sharedFilter);
+    }
+
+    @Test
+    void lookups_ShouldAnswerMaybeUntilTheFirstLoad() {
+        UserExistenceFilter filter = filter(1000, 1e-6);
+        assertTrue(filter.mightContainUsername(name()));
+        assertTrue(filter.mightContainEmail(name() + "@example.com"));
+
+        filter.rebuild();
+        assertTrue(filter.mightContainUsername(existing.getUsername()));
+        assertTrue(filter.mightContainEmail(existing.getEmail()));
+        assertFalse(filter.mightContainUsername(name()));
+        assertFalse(filter.mightContainEmail(name() + "@example.com"));
+
+        assertEquals(4, meterRegistry.counter("signup.uniqueness.check", "result", "queried").count());
+        assertEquals(2, meterRegistry.counter("signup.uniqueness.check", "result", "filtered").count());
+    }
+
+    @Test
+    void falsePositives_ShouldFallThroughToTheDatabase() {
+        // Half the bits set: about every other unknown name is a false positive
+        UserExistenceFilter filter = filter(1, 0.5);
+        filter.rebuild();
+        ReflectionTestUtils.setField(userService, "userExistenceFilter", filter);
+
+        String falsePositive = null;
+        String ruledOut = null;
+        for (int i = 0; i < 1000 && (falsePositive == null || ruledOut == null); i++) {
+            String candidate = name();
+            if (filter.mightContainUsername(candidate)) {
+                falsePositive = candidate;
+            } else {
+                ruledOut = candidate;
+            }
+        }
+        assertNotNull(falsePositive);
+        assertNotNull(ruledOut);
+
+        double queried = meterRegistry.counter("signup.uniqueness.check", "result", "queried").count();
+        double filtered = meterRegistry.counter("signup.uniqueness.check", "result", "filtered").count();
+
+        // The query has the last word on a maybe, so a false positive is still free to sign up
+        assertFalse(userService.existsByUsername(falsePositive));
+        assertTrue(userService.existsByUsername(existing.getUsername()));
+        assertTrue(userService.existsByEmail(existing.getEmail()));
+        assertEquals(queried + 3, meterRegistry.counter("signup.uniqueness.check", "result", "queried").count());
+
+        assertFalse(userService.existsByUsername(ruledOut));
+        assertEquals(filtered + 1, meterRegistry.counter("signup.uniqueness.check", "result", "filtered").count());
+    }
+
+    @Test
+    void rebuild_ShouldFollowTheTableRatherThanWhatWasAdded() {
+        UserExistenceFilter filter = filter(1000, 1e-6);
+        filter.rebuild();
+
+        // Registrations through the service are added straight away
+        String added = name();
+        filter.add(added, added + "@example.com");
+        assertTrue(filter.mightContainUsername(added));
+        assertTrue(filter.mightContainEmail(added + "@example.com"));
+
+        // Rows written behind the filter's back, and rows deleted, only show after a rebuild
+        String inserted = name();
+        jdbcTemplate.update("INSERT INTO users (username, email, password, first_name, last_name) VALUES (?, ?, ?, ?, ?)",
+                inserted, inserted + "@example.com", "unused", "Bloom", "Filter");
+        userRepository.delete(existing);
+        assertFalse(filter.mightContainUsername(inserted));
+        assertTrue(filter.mightContainUsername(existing.getUsername()));
+
+        filter.rebuild();
+        assertTrue(filter.mightContainUsername(inserted));
+        assertTrue(filter.mightContainEmail(inserted + "@example.com"));
+        assertFalse(filter.mightContainUsername(existing.getUsername()));
+        assertFalse(filter.mightContainEmail(existing.getEmail()));
+        assertFalse(filter.mightContainUsername(added));
+    }
+
+    private UserExistenceFilter filter(long expectedUsers, double falsePositiveRate) {
+        meterRegistry = new SimpleMeterRegistry();
+        UserExistenceFilter filter = new UserExistenceFilter();
+        ReflectionTestUtils.setField(filter, "dataSource", dataSource);
+        ReflectionTestUtils.setField(filter, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(filter, "expectedUsers", expectedUsers);
+        ReflectionTestUtils.setField(filter, "falsePositiveRate", falsePositiveRate);
+        filter.init();
+        return filter;
+    }
+
+    private static String name() {
+        return "bloom" + names.incrementAndGet();
+    }
+}
@@ -0,0 +1,217 @@
+package com.firstrand.banking.service;
+
+import com.firstrand.banking.config.VelocityLimitProperties;
+import com.firstrand.banking.exception.VelocityLimitExceededException;
+import com.firstrand.banking.model.Account;
+import com.firstrand.banking.model.AccountType;
+import com.firstrand.banking.model.Money;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.ConfigurationPropertySources;
+import org.springframework.core.io.support.ResourcePropertySource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the limits configured in {@code application.properties} on a clock the test moves by hand.
+ * Time starts at midnight UTC, so every window's buckets start there too.
+ */
+public class VelocityServiceTest {
+
+    private static final long MINUTE = 60_000L;
+    private static final long HOUR = 60 * MINUTE;
+    private static final long DAY = 24 * HOUR;
+
+    private static final long START = 20_000 * DAY;
+
+    private VelocityService velocityService;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private long nextAccountId;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        VelocityLimitProperties properties = new Binder(ConfigurationPropertySources.from(
+                new ResourcePropertySource("classpath:application.properties")))
+                .bind("velocity", Bindable.ofInstance(new VelocityLimitProperties()))
+                .orElseThrow(IllegalStateException::new);
+        assertTrue(properties.isEnabled());
+
+        meterRegistry = new SimpleMeterRegistry();
+        velocityService = new VelocityService();
+        ReflectionTestUtils.setField(velocityService, "properties", properties);
+        ReflectionTestUtils.setField(velocityService, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.invokeMethod(velocityService, "init");
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void limits_ShouldDependOnTheAccountType() {
+        // CHECKING: 10 a minute and 10,000 an hour
+        Account checking = account(AccountType.CHECKING);
+        recordTimes(checking, Money.of(1), 10, START);
+        assertRejected(checking, Money.of(1), START, "minute");
+
+        Account largeChecking = account(AccountType.CHECKING);
+        debit(largeChecking, Money.of(10_000), START);
+        assertRejected(largeChecking, Money.ofMinorUnits(1), START + 10 * MINUTE, "hour");
+
+        // SAVINGS: 5 a minute and 10,000 a day
+        Account savings = account(AccountType.SAVINGS);
+        recordTimes(savings, Money.of(1), 5, START);
+        assertRejected(savings, Money.of(1), START, "minute");
+
+        Account largeSavings = account(AccountType.SAVINGS);
+        debit(largeSavings, Money.of(6_000), START);
+        debit(largeSavings, Money.of(4_000), START + 3 * HOUR);
+        assertRejected(largeSavings, Money.ofMinorUnits(1), START + 6 * HOUR, "day");
+
+        // MONEY_MARKET: 6 a day
+        Account moneyMarket = account(AccountType.MONEY_MARKET);
+        for (int i = 0; i < 6; i++) {
+            debit(moneyMarket, Money.of(100), START + i * HOUR);
+        }
+        assertRejected(moneyMarket, Money.of(100), START + 12 * HOUR, "day");
+
+        // FIXED_DEPOSIT: 1 a day
+        Account fixedDeposit = account(AccountType.FIXED_DEPOSIT);
+        debit(fixedDeposit, Money.of(1), START);
+        assertRejected(fixedDeposit, Money.of(1), START + HOUR, "day");
+
+        // CREDIT has no limits
+        Account credit = account(AccountType.CREDIT);
+        recordTimes(credit, Money.of(1_000_000), 500, START);
+
+        // Limits are per account, and a rejected debit does not count
+        Account other = account(AccountType.CHECKING);
+        recordTimes(other, Money.of(1), 10, START);
+        assertEquals(6, meterRegistry.get("velocity.rejected").counters().stream().mapToDouble(Counter::count).sum());
+        assertEquals(2, meterRegistry.counter("velocity.rejected", "window", "minute").count());
+    }
+
+    @Test
+    void windows_ShouldRollOverOnceTheirOldestBucketFallsOut() {
+        // The minute ring has 5 second buckets and keeps the full minute behind the current one
+        Account checking = account(AccountType.CHECKING);
+        recordTimes(checking, Money.of(1), 10, START + 1_000);
+        assertRejected(checking, Money.of(1), START + MINUTE - 1, "minute");
+        assertRejected(checking, Money.of(1), START + MINUTE + 4_999, "minute");
+        recordTimes(checking, Money.of(1), 10, START + MINUTE + 5_000);
+        assertRejected(checking, Money.of(1), START + MINUTE + 5_000, "minute");
+
+        // The hour ring has 5 minute buckets
+        Account large = account(AccountType.CHECKING);
+        debit(large, Money.of(9_000), START);
+        debit(large, Money.of(1_000), START + 30 * MINUTE);
+        assertRejected(large, Money.of(1), START + HOUR + 4 * MINUTE, "hour");
+        debit(large, Money.of(9_000), START + HOUR + 5 * MINUTE);
+        assertRejected(large, Money.of(1), START + HOUR + 5 * MINUTE, "hour");
+
+        // The day ring has 2 hour buckets
+        Account fixedDeposit = account(AccountType.FIXED_DEPOSIT);
+        debit(fixedDeposit, Money.of(1), START + HOUR);
+        assertRejected(fixedDeposit, Money.of(1), START + DAY + HOUR, "day");
+        debit(fixedDeposit, Money.of(1), START + DAY + 2 * HOUR);
+
+        // A gap longer than the whole ring clears it in one step
+        debit(fixedDeposit, Money.of(1), START + 30 * DAY);
+        assertRejected(fixedDeposit, Money.of(1), START + 30 * DAY, "day");
+    }
+
+    @Test
+    void rolledBackDebits_ShouldReleaseWhatTheyCounted() {
+        Account checking = account(AccountType.CHECKING);
+
+        // Five debits commit
+        TransactionSynchronizationManager.initSynchronization();
+        recordTimes(checking, Money.of(1), 5, START);
+        complete(TransactionSynchronization.STATUS_COMMITTED);
+
+        // Five more roll back, and the one rejected on the way registers nothing
+        TransactionSynchronizationManager.initSynchronization();
+        recordTimes(checking, Money.of(1), 5, START);
+        assertRejected(checking, Money.of(1), START, "minute");
+        assertEquals(5, TransactionSynchronizationManager.getSynchronizations().size());
+        complete(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        // So only the committed five count
+        recordTimes(checking, Money.of(1), 5, START + 1_000);
+        assertRejected(checking, Money.of(1), START + 1_000, "minute");
+
+        // An unknown outcome is treated as a rollback too
+        Account other = account(AccountType.FIXED_DEPOSIT);
+        TransactionSynchronizationManager.initSynchronization();
+        debit(other, Money.of(1), START);
+        complete(TransactionSynchronization.STATUS_UNKNOWN);
+        debit(other, Money.of(1), START + MINUTE);
+    }
+
+    @Test
+    void idleAccounts_ShouldBeEvictedOnceTheirDayWindowHasEmptied() {
+        Account fixedDeposit = account(AccountType.FIXED_DEPOSIT);
+        debit(fixedDeposit, Money.of(1), START);
+        assertEquals(1, velocityService.trackedAccounts());
+
+        velocityService.evictIdleAccounts(START + DAY);
+        assertEquals(1, velocityService.trackedAccounts());
+        assertRejected(fixedDeposit, Money.of(1), START + DAY - 1, "day");
+
+        velocityService.evictIdleAccounts(START + DAY + 5 * HOUR);
+        assertEquals(0, velocityService.trackedAccounts());
+
+        // Comes back with empty rings
+        debit(fixedDeposit, Money.of(1), START + DAY + 5 * HOUR);
+        assertEquals(1, velocityService.trackedAccounts());
+        assertRejected(fixedDeposit, Money.of(1), START + DAY + 5 * HOUR, "day");
+    }
+
+    private void recordTimes(Account account, Money amount, int times, long now) {
+        for (int i = 0; i < times; i++) {
+            debit(account, amount, now);
+        }
+    }
+
+    private void debit(Account account, Money amount, long now) {
+        assertDoesNotThrow(() -> velocityService.checkAndRecord(account, amount, now),
+                account.getAccountType() + " debit of " + amount + " at " + (now - START));
+    }
+
+    private void assertRejected(Account account, Money amount, long now, String window) {
+        VelocityLimitExceededException e = assertThrows(VelocityLimitExceededException.class,
+                () -> velocityService.checkAndRecord(account, amount, now),
+                account.getAccountType() + " debit of " + amount + " at " + (now - START));
+        assertEquals("Velocity limit per " + window + " exceeded for account: " + account.getAccountNumber(), e.getMessage());
+    }
+
+    private static void complete(int status) {
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        synchronizations.forEach(synchronization -> synchronization.afterCompletion(status));
+    }
+
+    private Account account(AccountType type) {
+        Account account = new Account();
+        account.setId(++nextAccountId);
+        account.setAccountNumber(Long.toString(1_000_000_000L + nextAccountId));
+        account.setAccountType(type);
+        return account;
+    }
+}